@@ -59,6 +59,10 @@ public final class Settings implements Serializable {
   private static final String DEBUG_KEY = MAIN_PREFIX_KEY + "debug";
   private static final String AWS_ACCESS_KEY = "aws.access.key";
   private static final String AWS_SECRET_KEY = "aws.secret.key";
+  private static final String AWS_S3_TRANSFER_THREADS_KEY =
+      "aws.s3.transfer.threads";
+  private static final String AWS_S3_TRANSFER_PART_SIZE_KEY =
+      "aws.s3.transfer.part.size";
 
   private static final String PRINT_STACK_TRACE_KEY =
       MAIN_PREFIX_KEY + "printstacktrace";
@@ -74,6 +78,12 @@ public final class Settings implements Serializable {
   private static final String LOCAL_THREADS_NUMBER =
       MAIN_PREFIX_KEY + "local.threads";
 
+  private static final String LOCAL_SCHEDULER_RESOURCE_AWARE_KEY =
+      MAIN_PREFIX_KEY + "local.scheduler.resource.aware";
+
+  private static final String LOCAL_SCHEDULER_MEMORY_KEY =
+      MAIN_PREFIX_KEY + "local.scheduler.memory";
+
   private static final String OUTPUT_TREE_TYPE =
       MAIN_PREFIX_KEY + "output.tree.type";
 
@@ -115,12 +125,42 @@ public final class Settings implements Serializable {
   private static final String DEFAULT_FASTQ_FORMAT_KEY =
       MAIN_PREFIX_KEY + "default.fastq.format";
 
+  private static final String FASTQ_BUFFER_READER_KEY =
+      MAIN_PREFIX_KEY + "fastq.buffer.reader";
+
+  private static final String COMPRESSION_THREADS_NUMBER_KEY =
+      MAIN_PREFIX_KEY + "compression.threads";
+
+  private static final String STAGING_THREADS_NUMBER_KEY =
+      MAIN_PREFIX_KEY + "staging.threads";
+
+  private static final String STAGING_PROTOCOL_CONNECTIONS_KEY =
+      MAIN_PREFIX_KEY + "staging.protocol.connections";
+
+  private static final String TASK_CACHE_ENABLED_KEY =
+      MAIN_PREFIX_KEY + "task.cache.enabled";
+
+  private static final String TASK_CACHE_DIRECTORY_KEY =
+      MAIN_PREFIX_KEY + "task.cache.directory";
+
+  private static final String TASK_CACHE_CONTENT_HASH_KEY =
+      MAIN_PREFIX_KEY + "task.cache.content.hash";
+
+  private static final String MAPPER_INDEX_CACHE_DIRECTORY_KEY =
+      MAIN_PREFIX_KEY + "mapper.index.cache.directory";
+
+  private static final String MAPPER_INDEX_CACHE_MAX_SIZE_KEY =
+      MAIN_PREFIX_KEY + "mapper.index.cache.max.size";
+
   private static final String GENOME_MAPPER_INDEX_STORAGE_KEY =
       MAIN_PREFIX_KEY + "genome.mapper.index.storage.path";
 
   private static final String GENOME_DESC_STORAGE_KEY =
       MAIN_PREFIX_KEY + "genome.desc.storage.path";
 
+  private static final String FEATURE_INDEX_STORAGE_KEY =
+      MAIN_PREFIX_KEY + "feature.index.storage.path";
+
   private static final String GENOME_STORAGE_KEY =
       MAIN_PREFIX_KEY + "genome.storage.path";
 
@@ -223,6 +263,26 @@ public final class Settings implements Serializable {
     return this.properties.getProperty(AWS_SECRET_KEY);
   }
 
+  /**
+   * Get the number of concurrent connections used to transfer a file with S3.
+   * @return the number of concurrent connections of the S3 transfers
+   */
+  public int getS3TransferThreadsNumber() {
+
+    return Integer.parseInt(
+        this.properties.getProperty(AWS_S3_TRANSFER_THREADS_KEY, "4"));
+  }
+
+  /**
+   * Get the size in MiB of the parts of the S3 transfers.
+   * @return the size in MiB of the parts of the S3 transfers
+   */
+  public int getS3TransferPartSize() {
+
+    return Integer.parseInt(
+        this.properties.getProperty(AWS_S3_TRANSFER_PART_SIZE_KEY, "16"));
+  }
+
   /**
    * Get the Hadoop log level.
    * @return the Hadoop log level
@@ -379,6 +439,38 @@ public final class Settings implements Serializable {
         "" + Runtime.getRuntime().availableProcessors()));
   }
 
+  /**
+   * Test if the number of threads to use in local mode has been set.
+   * @return true if the number of threads to use has been set
+   */
+  public boolean isLocalThreadsNumberSet() {
+
+    return isSetting(LOCAL_THREADS_NUMBER);
+  }
+
+  /**
+   * Test if the local scheduler must take in account the memory and the
+   * processors required by the steps.
+   * @return true if the resource aware local scheduler must be used
+   */
+  public boolean isLocalSchedulerResourceAware() {
+
+    return Boolean.parseBoolean(
+        this.properties.getProperty(LOCAL_SCHEDULER_RESOURCE_AWARE_KEY));
+  }
+
+  /**
+   * Get the memory in MiB that can be used by the tasks of the resource aware
+   * local scheduler. If this value is lower or equals to 0, the memory is
+   * computed from the total memory of the system.
+   * @return the memory in MiB that can be used by the local tasks
+   */
+  public int getLocalSchedulerMemory() {
+
+    return Integer.parseInt(
+        this.properties.getProperty(LOCAL_SCHEDULER_MEMORY_KEY, "0"));
+  }
+
   /**
    * Get the default fastq format.
    * @return the default fastq format
@@ -389,6 +481,101 @@ public final class Settings implements Serializable {
         DEFAULT_FASTQ_FORMAT_KEY, Globals.FASTQ_FORMAT_DEFAULT.getName()));
   }
 
+  /**
+   * Test if the FASTQ files must be read using the byte buffer reader.
+   * @return true if the FASTQ files must be read using the byte buffer reader
+   */
+  public boolean isFastqBufferReader() {
+
+    return Boolean
+        .parseBoolean(this.properties.getProperty(FASTQ_BUFFER_READER_KEY));
+  }
+
+  /**
+   * Get the number of threads to use to compress gzip files. If this value is
+   * 0, gzip files are compressed and decompressed in the current thread.
+   * @return the number of threads to use to compress gzip files
+   */
+  public int getCompressionThreadsNumber() {
+
+    return Integer.parseInt(
+        this.properties.getProperty(COMPRESSION_THREADS_NUMBER_KEY, "0"));
+  }
+
+  /**
+   * Get the number of files of a task that are copied at the same time when
+   * staging data.
+   * @return the number of staging threads
+   */
+  public int getStagingThreadsNumber() {
+
+    return Integer.parseInt(
+        this.properties.getProperty(STAGING_THREADS_NUMBER_KEY, "4"));
+  }
+
+  /**
+   * Get the maximal number of concurrent staging transfers for a remote
+   * protocol.
+   * @return the maximal number of concurrent transfers for a protocol
+   */
+  public int getStagingProtocolConnections() {
+
+    return Integer.parseInt(
+        this.properties.getProperty(STAGING_PROTOCOL_CONNECTIONS_KEY, "4"));
+  }
+
+  /**
+   * Test if the results of the tasks must be saved in a cache and reused when
+   * a task is executed again with the same inputs and parameters.
+   * @return true if the task cache is enabled
+   */
+  public boolean isTaskCacheEnabled() {
+
+    return Boolean
+        .parseBoolean(this.properties.getProperty(TASK_CACHE_ENABLED_KEY));
+  }
+
+  /**
+   * Get the path of the task cache directory.
+   * @return the path of the task cache directory or null if not set
+   */
+  public String getTaskCacheDirectory() {
+
+    return this.properties.getProperty(TASK_CACHE_DIRECTORY_KEY);
+  }
+
+  /**
+   * Test if the content of the input files must be used to compute the cache
+   * keys of the tasks instead of only their size and modification date.
+   * @return true if the content of the input files must be hashed
+   */
+  public boolean isTaskCacheContentHash() {
+
+    return Boolean
+        .parseBoolean(this.properties.getProperty(TASK_CACHE_CONTENT_HASH_KEY));
+  }
+
+  /**
+   * Get the path of the node-local directory where the uncompressed mapper
+   * indexes are shared between the tasks.
+   * @return the path of the mapper index cache directory or null if not set
+   */
+  public String getMapperIndexCacheDirectory() {
+
+    return this.properties.getProperty(MAPPER_INDEX_CACHE_DIRECTORY_KEY);
+  }
+
+  /**
+   * Get the maximal size of the mapper index cache in megabytes.
+   * @return the maximal size of the mapper index cache in megabytes or 0 if
+   *         there is no limit
+   */
+  public long getMapperIndexCacheMaxSize() {
+
+    return Long.parseLong(
+        this.properties.getProperty(MAPPER_INDEX_CACHE_MAX_SIZE_KEY, "0"));
+  }
+
   /**
    * Test if the platform checking must be avoided at Eoulsan startup.
    * @return true if the platform checking must be avoided
@@ -417,6 +604,15 @@ public final class Settings implements Serializable {
     return this.properties.getProperty(GENOME_DESC_STORAGE_KEY);
   }
 
+  /**
+   * Get the feature index storage path.
+   * @return the path to feature index storage path
+   */
+  public String getFeatureIndexStoragePath() {
+
+    return this.properties.getProperty(FEATURE_INDEX_STORAGE_KEY);
+  }
+
   /**
    * Get the genome storage path.
    * @return the path to genome storage path
@@ -753,6 +949,26 @@ public final class Settings implements Serializable {
     this.properties.setProperty(HADOOP_AWS_SECRET_KEY, value);
   }
 
+  /**
+   * Set the number of concurrent connections used to transfer a file with S3.
+   * @param threadsNumber the number of concurrent connections
+   */
+  public void setS3TransferThreadsNumber(final int threadsNumber) {
+
+    this.properties.setProperty(AWS_S3_TRANSFER_THREADS_KEY,
+        Integer.toString(threadsNumber));
+  }
+
+  /**
+   * Set the size in MiB of the parts of the S3 transfers.
+   * @param partSize the size in MiB of the parts
+   */
+  public void setS3TransferPartSize(final int partSize) {
+
+    this.properties.setProperty(AWS_S3_TRANSFER_PART_SIZE_KEY,
+        Integer.toString(partSize));
+  }
+
   /**
    * Set the Hadoop log level.
    * @param value the HAdoop log level
@@ -876,6 +1092,28 @@ public final class Settings implements Serializable {
         Integer.toString(threadsNumber));
   }
 
+  /**
+   * Set if the local scheduler must take in account the memory and the
+   * processors required by the steps.
+   * @param enable true to enable the resource aware local scheduler
+   */
+  public void setLocalSchedulerResourceAware(final boolean enable) {
+
+    this.properties.setProperty(LOCAL_SCHEDULER_RESOURCE_AWARE_KEY,
+        Boolean.toString(enable));
+  }
+
+  /**
+   * Set the memory in MiB that can be used by the tasks of the resource aware
+   * local scheduler.
+   * @param memory the memory in MiB
+   */
+  public void setLocalSchedulerMemory(final int memory) {
+
+    this.properties.setProperty(LOCAL_SCHEDULER_MEMORY_KEY,
+        Integer.toString(memory));
+  }
+
   /**
    * Set the Fastq format default value.
    * @param format the value to set
@@ -889,6 +1127,103 @@ public final class Settings implements Serializable {
     this.properties.setProperty(DEFAULT_FASTQ_FORMAT_KEY, format.getName());
   }
 
+  /**
+   * Set if the FASTQ files must be read using the byte buffer reader.
+   * @param enable true to use the byte buffer reader
+   */
+  public void setFastqBufferReader(final boolean enable) {
+
+    this.properties.setProperty(FASTQ_BUFFER_READER_KEY,
+        Boolean.toString(enable));
+  }
+
+  /**
+   * Set the number of threads to use to compress gzip files.
+   * @param threadsNumber the number of threads to use
+   */
+  public void setCompressionThreadsNumber(final int threadsNumber) {
+
+    if (threadsNumber < 0) {
+      return;
+    }
+
+    this.properties.setProperty(COMPRESSION_THREADS_NUMBER_KEY,
+        Integer.toString(threadsNumber));
+  }
+
+  /**
+   * Set the number of files of a task that are copied at the same time when
+   * staging data.
+   * @param threadsNumber the number of staging threads
+   */
+  public void setStagingThreadsNumber(final int threadsNumber) {
+
+    this.properties.setProperty(STAGING_THREADS_NUMBER_KEY,
+        Integer.toString(threadsNumber));
+  }
+
+  /**
+   * Set the maximal number of concurrent staging transfers for a remote
+   * protocol.
+   * @param connections the maximal number of concurrent transfers
+   */
+  public void setStagingProtocolConnections(final int connections) {
+
+    this.properties.setProperty(STAGING_PROTOCOL_CONNECTIONS_KEY,
+        Integer.toString(connections));
+  }
+
+  /**
+   * Set if the results of the tasks must be saved in a cache and reused when
+   * a task is executed again with the same inputs and parameters.
+   * @param enabled true to enable the task cache
+   */
+  public void setTaskCacheEnabled(final boolean enabled) {
+
+    this.properties.setProperty(TASK_CACHE_ENABLED_KEY,
+        Boolean.toString(enabled));
+  }
+
+  /**
+   * Set the path of the task cache directory.
+   * @param directory the path of the task cache directory
+   */
+  public void setTaskCacheDirectory(final String directory) {
+
+    this.properties.setProperty(TASK_CACHE_DIRECTORY_KEY, directory);
+  }
+
+  /**
+   * Set if the content of the input files must be used to compute the cache
+   * keys of the tasks.
+   * @param contentHash true to hash the content of the input files
+   */
+  public void setTaskCacheContentHash(final boolean contentHash) {
+
+    this.properties.setProperty(TASK_CACHE_CONTENT_HASH_KEY,
+        Boolean.toString(contentHash));
+  }
+
+  /**
+   * Set the path of the node-local directory where the uncompressed mapper
+   * indexes are shared between the tasks.
+   * @param directory the path of the mapper index cache directory
+   */
+  public void setMapperIndexCacheDirectory(final String directory) {
+
+    this.properties.setProperty(MAPPER_INDEX_CACHE_DIRECTORY_KEY, directory);
+  }
+
+  /**
+   * Set the maximal size of the mapper index cache in megabytes.
+   * @param maxSize the maximal size in megabytes, 0 for no limit
+   */
+  public void setMapperIndexCacheMaxSize(final long maxSize) {
+
+    this.properties.setProperty(MAPPER_INDEX_CACHE_MAX_SIZE_KEY,
+        Long.toString(maxSize));
+  }
+
   /**
    * Set if the platform checking must be avoided.
    * @param bypass true to bypass the platform checking
@@ -919,6 +1254,16 @@ public final class Settings implements Serializable {
     this.properties.setProperty(GENOME_DESC_STORAGE_KEY, genomeDescStoragePath);
   }
 
+  /**
+   * Set the feature index storage path.
+   * @param featureIndexStoragePath the path to feature index storage path
+   */
+  public void setFeatureIndexStoragePath(final String featureIndexStoragePath) {
+
+    this.properties.setProperty(FEATURE_INDEX_STORAGE_KEY,
+        featureIndexStoragePath);
+  }
+
   /**
    * Set the genome storage path.
    * @param genomeStoragePath the path to genome index storage path
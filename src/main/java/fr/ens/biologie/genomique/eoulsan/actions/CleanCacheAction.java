@@ -0,0 +1,206 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.actions;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.CommandLineParser;
+import org.apache.commons.cli.GnuParser;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.OptionBuilder;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+
+import fr.ens.biologie.genomique.eoulsan.Common;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
+import fr.ens.biologie.genomique.eoulsan.Globals;
+import fr.ens.biologie.genomique.eoulsan.Main;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.TaskResultCache;
+import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
+
+/**
+ * This class define an action to remove the old entries of the task cache.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class CleanCacheAction extends AbstractAction {
+
+  /** Name of this action. */
+  public static final String ACTION_NAME = "cleancache";
+
+  @Override
+  public String getName() {
+    return ACTION_NAME;
+  }
+
+  @Override
+  public String getDescription() {
+    return "remove the old entries of the task cache.";
+  }
+
+  @Override
+  public boolean isCurrentArchCompatible() {
+
+    return true;
+  }
+
+  @Override
+  public void action(final List<String> arguments) {
+
+    final Options options = makeOptions();
+    final CommandLineParser parser = new GnuParser();
+    int argsOptions = 0;
+    long maxAge = -1;
+    long maxSize = -1;
+
+    try {
+
+      // parse the command line arguments
+      final CommandLine line = parser.parse(options,
+          arguments.toArray(new String[arguments.size()]), true);
+
+      // Help option
+      if (line.hasOption("help")) {
+        help(options);
+      }
+
+      // Maximal age option
+      if (line.hasOption("a")) {
+
+        try {
+          maxAge = Long.parseLong(line.getOptionValue("a").trim())
+              * 24 * 60 * 60 * 1000;
+        } catch (NumberFormatException e) {
+          Common.errorExit(e, "Invalid maximal age: " + e.getMessage());
+        }
+        argsOptions += 2;
+      }
+
+      // Maximal size option
+      if (line.hasOption("s")) {
+
+        try {
+          maxSize = Long.parseLong(line.getOptionValue("s").trim())
+              * 1024 * 1024;
+        } catch (NumberFormatException e) {
+          Common.errorExit(e, "Invalid maximal size: " + e.getMessage());
+        }
+        argsOptions += 2;
+      }
+
+    } catch (ParseException e) {
+      Common.errorExit(e,
+          "Error while parsing command line arguments: " + e.getMessage());
+    }
+
+    if (arguments.size() > argsOptions + 1) {
+      help(options);
+    }
+
+    // Get the cache directory
+    final File directory;
+    if (arguments.size() == argsOptions + 1) {
+      directory = new File(arguments.get(argsOptions));
+    } else if (EoulsanRuntime.getSettings().getTaskCacheDirectory() != null) {
+      directory =
+          new File(EoulsanRuntime.getSettings().getTaskCacheDirectory());
+    } else {
+      directory = new File(TaskResultCache.DEFAULT_CACHE_DIRECTORY_NAME);
+    }
+
+    // Write log entries
+    Main.getInstance().flushLog();
+
+    try {
+
+      if (!directory.isDirectory()) {
+        throw new FileNotFoundException(directory.toString());
+      }
+
+      final TaskResultCache cache = new TaskResultCache(directory, false);
+      final int removed = cache.collectGarbage(maxAge, maxSize);
+
+      System.out.println("Removed entries: " + removed);
+      System.out.println("Remaining entries: " + cache.getEntryCount());
+      System.out.println(
+          "Cache size: " + StringUtils.sizeToHumanReadable(cache.getSize()));
+
+    } catch (FileNotFoundException e) {
+      Common.errorExit(e, "Cache directory not found: " + e.getMessage());
+    } catch (IOException e) {
+      Common.errorExit(e, "Error while cleaning the task cache: "
+          + e.getMessage());
+    }
+  }
+
+  //
+  // Command line parsing
+  //
+
+  /**
+   * Create options for command line
+   * @return an Options object
+   */
+  @SuppressWarnings("static-access")
+  private static Options makeOptions() {
+
+    // create Options object
+    final Options options = new Options();
+
+    // Help option
+    options.addOption("h", "help", false, "Display this help");
+
+    // Maximal age option
+    options.addOption(OptionBuilder.withArgName("days").hasArg()
+        .withDescription("Maximal number of days since the last use")
+        .withLongOpt("max-age").create('a'));
+
+    // Maximal size option
+    options.addOption(OptionBuilder.withArgName("megabytes").hasArg()
+        .withDescription("Maximal size of the cache in megabytes")
+        .withLongOpt("max-size").create('s'));
+
+    return options;
+  }
+
+  /**
+   * Show command line help.
+   * @param options Options of the software
+   */
+  private static void help(final Options options) {
+
+    // Show help message
+    final HelpFormatter formatter = new HelpFormatter();
+    formatter.printHelp(Globals.APP_NAME_LOWER_CASE
+        + ".sh " + ACTION_NAME + " [options] [cache_directory]", options);
+
+    Common.exit(0);
+  }
+
+}
@@ -0,0 +1,473 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio;
+
+import static fr.ens.biologie.genomique.eoulsan.bio.io.BioCharsets.FASTQ_CHARSET;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class define a mutable read sequence backed by arrays of bytes. Unlike
+ * {@link ReadSequence}, the arrays are reused when a new read is set in the
+ * object and the trimming of the read is done in place by only changing the
+ * bounds of the sequence and the quality. This class is intended to be reused
+ * for all the reads of a file to avoid allocations.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public final class ByteReadSequence {
+
+  private static final int DEFAULT_CAPACITY = 256;
+
+  /** Valid letters of the read DNA alphabet. */
+  private static final boolean[] VALID_LETTERS =
+      createLetterTable(Alphabets.READ_DNA_ALPHABET);
+
+  private int id;
+  private FastqFormat fastqFormat = FastqFormat.FASTQ_SANGER;
+
+  private byte[] name = new byte[DEFAULT_CAPACITY];
+  private int nameLength;
+
+  private byte[] sequence = new byte[DEFAULT_CAPACITY];
+  private byte[] quality = new byte[DEFAULT_CAPACITY];
+  private int offset;
+  private int sequenceLength;
+  private int qualityLength;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the identifier of the read.
+   * @return the identifier of the read
+   */
+  public int getId() {
+
+    return this.id;
+  }
+
+  /**
+   * Get the fastq format value.
+   * @return the fastq format
+   */
+  public FastqFormat getFastqFormat() {
+
+    return this.fastqFormat;
+  }
+
+  /**
+   * Get the length of the name of the read.
+   * @return the length of the name of the read
+   */
+  public int getNameLength() {
+
+    return this.nameLength;
+  }
+
+  /**
+   * Get a byte of the name of the read.
+   * @param index index of the byte
+   * @return the byte of the name at the index
+   */
+  public byte getNameByte(final int index) {
+
+    if (index < 0 || index >= this.nameLength) {
+      throw new IndexOutOfBoundsException("Invalid index: " + index);
+    }
+
+    return this.name[index];
+  }
+
+  /**
+   * Get the length of the sequence.
+   * @return the length of the sequence
+   */
+  public int length() {
+
+    return this.sequenceLength;
+  }
+
+  /**
+   * Get the length of the quality.
+   * @return the length of the quality
+   */
+  public int getQualityLength() {
+
+    return this.qualityLength;
+  }
+
+  /**
+   * Get a base of the sequence.
+   * @param index index of the base
+   * @return the byte of the base at the index
+   */
+  public byte getSequenceByte(final int index) {
+
+    if (index < 0 || index >= this.sequenceLength) {
+      throw new IndexOutOfBoundsException("Invalid index: " + index);
+    }
+
+    return this.sequence[this.offset + index];
+  }
+
+  /**
+   * Get a character of the quality.
+   * @param index index of the character
+   * @return the byte of the quality at the index
+   */
+  public byte getQualityByte(final int index) {
+
+    if (index < 0 || index >= this.qualityLength) {
+      throw new IndexOutOfBoundsException("Invalid index: " + index);
+    }
+
+    return this.quality[this.offset + index];
+  }
+
+  /**
+   * Get the quality score of a base.
+   * @param index index of the base
+   * @return the quality score of the base at the index
+   */
+  public int getQualityScore(final int index) {
+
+    return getQualityByte(index) - this.fastqFormat.getAsciiOffset();
+  }
+
+  /**
+   * Get the name of the read. This method allocates a new String.
+   * @return the name of the read
+   */
+  public String getName() {
+
+    return new String(this.name, 0, this.nameLength, FASTQ_CHARSET);
+  }
+
+  /**
+   * Get the sequence of the read. This method allocates a new String.
+   * @return the sequence of the read
+   */
+  public String getSequence() {
+
+    return new String(this.sequence, this.offset, this.sequenceLength,
+        FASTQ_CHARSET);
+  }
+
+  /**
+   * Get the quality of the read. This method allocates a new String.
+   * @return the quality of the read
+   */
+  public String getQuality() {
+
+    return new String(this.quality, this.offset, this.qualityLength,
+        FASTQ_CHARSET);
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Set the identifier of the read.
+   * @param id the identifier of the read
+   */
+  public void setId(final int id) {
+
+    this.id = id;
+  }
+
+  /**
+   * Set the fastq format value.
+   * @param fastqFormat the fastq format to set
+   */
+  public void setFastqFormat(final FastqFormat fastqFormat) {
+
+    if (fastqFormat == null) {
+      throw new NullPointerException("fastqFormat argument cannot be null");
+    }
+
+    this.fastqFormat = fastqFormat;
+  }
+
+  /**
+   * Set the values of the read from a buffer.
+   * @param id identifier of the read
+   * @param buffer the buffer
+   * @param nameStart position of the name in the buffer
+   * @param nameLength length of the name
+   * @param sequenceStart position of the sequence in the buffer
+   * @param sequenceLength length of the sequence
+   * @param qualityStart position of the quality in the buffer
+   * @param qualityLength length of the quality
+   */
+  public void set(final int id, final ByteBuffer buffer, final int nameStart,
+      final int nameLength, final int sequenceStart, final int sequenceLength,
+      final int qualityStart, final int qualityLength) {
+
+    if (buffer == null) {
+      throw new NullPointerException("buffer argument cannot be null");
+    }
+
+    this.id = id;
+    this.offset = 0;
+    this.nameLength = nameLength;
+    this.sequenceLength = sequenceLength;
+    this.qualityLength = qualityLength;
+
+    this.name = ensureCapacity(this.name, nameLength);
+    this.sequence = ensureCapacity(this.sequence, sequenceLength);
+    this.quality = ensureCapacity(this.quality, qualityLength);
+
+    copy(buffer, nameStart, this.name, nameLength);
+    copy(buffer, sequenceStart, this.sequence, sequenceLength);
+    copy(buffer, qualityStart, this.quality, qualityLength);
+  }
+
+  /**
+   * Set the values of the read from a ReadSequence object.
+   * @param read the read
+   */
+  public void set(final ReadSequence read) {
+
+    if (read == null) {
+      throw new NullPointerException("read argument cannot be null");
+    }
+
+    this.id = read.getId();
+    this.fastqFormat = read.getFastqFormat();
+    this.offset = 0;
+
+    this.nameLength = length(read.getName());
+    this.sequenceLength = length(read.getSequence());
+    this.qualityLength = length(read.getQuality());
+
+    this.name = ensureCapacity(this.name, this.nameLength);
+    this.sequence = ensureCapacity(this.sequence, this.sequenceLength);
+    this.quality = ensureCapacity(this.quality, this.qualityLength);
+
+    copy(read.getName(), this.name);
+    copy(read.getSequence(), this.sequence);
+    copy(read.getQuality(), this.quality);
+  }
+
+  //
+  // Trimming methods
+  //
+
+  /**
+   * Trim the sequence and the quality of the read. The bytes of the read are
+   * not copied. Note that index start at 0.
+   * @param beginIndex begin index of the sub-sequence
+   * @param endIndex end index of the sub-sequence
+   */
+  public void trim(final int beginIndex, final int endIndex) {
+
+    if (this.sequenceLength != this.qualityLength) {
+      throw new IllegalStateException(
+          "The length of the sequence and the quality are not the same");
+    }
+
+    if (beginIndex < 0) {
+      throw new StringIndexOutOfBoundsException(beginIndex);
+    }
+
+    if (endIndex > this.sequenceLength) {
+      throw new StringIndexOutOfBoundsException(endIndex);
+    }
+
+    if (beginIndex > endIndex) {
+      throw new StringIndexOutOfBoundsException(endIndex - beginIndex);
+    }
+
+    this.offset += beginIndex;
+    this.sequenceLength = endIndex - beginIndex;
+    this.qualityLength = this.sequenceLength;
+  }
+
+  //
+  // Quality methods
+  //
+
+  /**
+   * Get the mean of the quality scores of the read.
+   * @return the mean of the quality scores or NaN if the quality is empty
+   */
+  public double meanQuality() {
+
+    final byte[] quality = this.quality;
+    final int start = this.offset;
+    final int end = start + this.qualityLength;
+
+    int sum = 0;
+    for (int i = start; i < end; i++) {
+      sum += quality[i];
+    }
+
+    return (double) (sum - this.qualityLength * this.fastqFormat
+        .getAsciiOffset()) / this.qualityLength;
+  }
+
+  //
+  // Validation methods
+  //
+
+  /**
+   * Check if the read is valid. The rules are the same as
+   * {@link ReadSequence#validate()}.
+   * @return true if the read is validated
+   */
+  public boolean validate() {
+
+    final int len = this.sequenceLength;
+
+    if (this.nameLength == 0 || len == 0 || this.qualityLength != len) {
+      return false;
+    }
+
+    final FastqFormat format = this.fastqFormat;
+    final int end = this.offset + len;
+
+    for (int i = this.offset; i < end; i++) {
+
+      if (!VALID_LETTERS[this.sequence[i] & 0xff]
+          || !format.isCharValid((char) (this.quality[i] & 0xff))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  //
+  // Conversion methods
+  //
+
+  /**
+   * Convert the read to a ReadSequence object.
+   * @return a new ReadSequence object
+   */
+  public ReadSequence toReadSequence() {
+
+    return new ReadSequence(this.id, getName(), getSequence(), getQuality(),
+        this.fastqFormat);
+  }
+
+  /**
+   * Write the read in FASTQ format. The output is the same as the
+   * {@link fr.ens.biologie.genomique.eoulsan.bio.io.FastqWriter} output.
+   * @param os output stream
+   * @throws IOException if an error occurs while writing the read
+   */
+  public void writeFastq(final OutputStream os) throws IOException {
+
+    os.write('@');
+    os.write(this.name, 0, this.nameLength);
+    os.write('\n');
+    os.write(this.sequence, this.offset, this.sequenceLength);
+    os.write('\n');
+    os.write('+');
+    os.write('\n');
+    os.write(this.quality, this.offset, this.qualityLength);
+    os.write('\n');
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] ensureCapacity(final byte[] array, final int length) {
+
+    if (array.length >= length) {
+      return array;
+    }
+
+    return new byte[Math.max(length, array.length * 2)];
+  }
+
+  private static void copy(final ByteBuffer buffer, final int start,
+      final byte[] dest, final int length) {
+
+    if (buffer.hasArray()) {
+      System.arraycopy(buffer.array(), buffer.arrayOffset() + start, dest, 0,
+          length);
+    } else {
+      for (int i = 0; i < length; i++) {
+        dest[i] = buffer.get(start + i);
+      }
+    }
+  }
+
+  private static int length(final String s) {
+
+    return s == null ? 0 : s.length();
+  }
+
+  private static void copy(final String s, final byte[] dest) {
+
+    if (s == null) {
+      return;
+    }
+
+    final int len = s.length();
+    for (int i = 0; i < len; i++) {
+      dest[i] = (byte) s.charAt(i);
+    }
+  }
+
+  private static boolean[] createLetterTable(final Alphabet alphabet) {
+
+    final boolean[] result = new boolean[256];
+
+    for (int i = 0; i < result.length; i++) {
+      result[i] = alphabet.isLetterValid((char) i);
+    }
+
+    return result;
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{id=" + this.id + ", name=" + getName() + ", sequence="
+        + getSequence() + ", fastqFormat=" + this.fastqFormat + ", quality="
+        + getQuality() + "}";
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Public constructor.
+   */
+  public ByteReadSequence() {
+  }
+
+}
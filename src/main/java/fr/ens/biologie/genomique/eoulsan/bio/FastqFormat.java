@@ -77,6 +77,9 @@ public enum FastqFormat {
   private final int asciiOffset;
   private final boolean phredScore;
 
+  // Lookup table indexed by the quality characters
+  private final double[] probabilityTable = new double[256];
+
   //
   // Getters
   //
@@ -236,7 +239,21 @@ public enum FastqFormat {
    */
   public double getProbability(final char character) {
 
-    return convertScoreToProbability(character - this.asciiOffset);
+    if (character < this.probabilityTable.length) {
+      return this.probabilityTable[character];
+    }
+
+    return computeProbability(character - this.asciiOffset);
+  }
+
+  /**
+   * Get the table of the error probabilities. The index of the table is the
+   * character that represents the quality.
+   * @return a copy of the table of 256 error probabilities
+   */
+  public double[] getProbabilityTable() {
+
+    return this.probabilityTable.clone();
   }
 
   /**
@@ -246,6 +263,22 @@ public enum FastqFormat {
    */
   public double convertScoreToProbability(final int score) {
 
+    final int index = score + this.asciiOffset;
+
+    if (index >= 0 && index < this.probabilityTable.length) {
+      return this.probabilityTable[index];
+    }
+
+    return computeProbability(score);
+  }
+
+  /**
+   * Compute the probability of a quality score.
+   * @param score the quality score
+   * @return the probability that correspond to the quality score
+   */
+  private double computeProbability(final int score) {
+
     if (this.phredScore) {
       return pow(10.0, (double) score / -10.0);
     }
@@ -569,6 +602,10 @@ public enum FastqFormat {
     this.scoreMaxExpected = scoreMaxExpected;
     this.asciiOffset = asciiOffset;
     this.phredScore = phredQualityScore;
+
+    for (int i = 0; i < this.probabilityTable.length; i++) {
+      this.probabilityTable[i] = computeProbability(i - asciiOffset);
+    }
   }
 
 }
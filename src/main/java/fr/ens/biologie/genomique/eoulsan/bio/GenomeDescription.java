@@ -38,14 +38,11 @@ import java.io.OutputStream;
 import java.io.Writer;
 import java.math.BigInteger;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
-import fr.ens.biologie.genomique.eoulsan.Globals;
-import fr.ens.biologie.genomique.eoulsan.bio.io.FastaLineParser;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
 
@@ -62,6 +59,7 @@ public class GenomeDescription {
   private static final String MD5_PREFIX = PREFIX + "md5";
   private static final String SEQUENCE_PREFIX = PREFIX + "sequence.";
   private static final String SEQUENCES_COUNT_PREFIX = PREFIX + "sequences";
+  private static final int MAX_DEFAULT_THREADS = 8;
 
   private String genomeName;
   private final Map<String, Long> sequences = new LinkedHashMap<>();
@@ -75,7 +73,7 @@ public class GenomeDescription {
    * Set the genome name.
    * @param genomeName name of the genome
    */
-  private void setGenomeName(final String genomeName) {
+  void setGenomeName(final String genomeName) {
 
     this.genomeName = genomeName;
   }
@@ -293,17 +291,38 @@ public class GenomeDescription {
   //
 
   /**
-   * Create a GenomeDescription object from a Fasta file.
+   * Create a GenomeDescription object from a Fasta file. The file will be
+   * memory-mapped, so it must not be compressed.
    * @param genomeFastaFile genome fasta file
    */
   public static GenomeDescription createGenomeDescFromFasta(
       final File genomeFastaFile) throws BadBioEntryException, IOException {
 
+    return createGenomeDescFromFasta(genomeFastaFile, getDefaultThreads());
+  }
+
+  /**
+   * Create a GenomeDescription object from a Fasta file. The file will be
+   * memory-mapped, so it must not be compressed.
+   * @param genomeFastaFile genome fasta file
+   * @param threads number of threads to use
+   */
+  public static GenomeDescription createGenomeDescFromFasta(
+      final File genomeFastaFile, final int threads)
+      throws BadBioEntryException, IOException {
+
     checkNotNull(genomeFastaFile, "The genome file is null");
 
-    return createGenomeDescFromFasta(
-        FileUtils.createInputStream(genomeFastaFile),
-        genomeFastaFile.getName());
+    if (genomeFastaFile.isDirectory()) {
+      throw new FileNotFoundException(
+          "The file is a directory: " + genomeFastaFile);
+    }
+
+    getLogger().fine("Compute genome description from genome fasta file.");
+
+    return new GenomeFastaScanner(
+        StringUtils.basename(genomeFastaFile.getName()), threads,
+        GenomeFastaScanner.DEFAULT_CHUNK_SIZE).scan(genomeFastaFile);
   }
 
   /**
@@ -318,6 +337,19 @@ public class GenomeDescription {
     return createGenomeDesc(genomeFastaIs, filename, false);
   }
 
+  /**
+   * Create a GenomeDescription object from a Fasta file.
+   * @param genomeFastaIs genome fasta input stream
+   * @param filename name of the file of the input stream
+   * @param threads number of threads to use
+   */
+  public static GenomeDescription createGenomeDescFromFasta(
+      final InputStream genomeFastaIs, final String filename,
+      final int threads) throws BadBioEntryException, IOException {
+
+    return createGenomeDesc(genomeFastaIs, filename, false, threads);
+  }
+
   /**
    * Create a GenomeDescription object from a GFF file.
    * @param gffFile genome in GFF file
@@ -353,88 +385,47 @@ public class GenomeDescription {
       final InputStream genomeFastaIs, final String filename,
       final boolean gffFormat) throws BadBioEntryException, IOException {
 
+    return createGenomeDesc(genomeFastaIs, filename, gffFormat,
+        getDefaultThreads());
+  }
+
+  /**
+   * Create a GenomeDescription object from a Fasta file of GFF file. The file
+   * is read by chunks that are parsed by several threads.
+   * @param genomeFastaIs genome fasta input stream
+   * @param filename name of the file of the input stream
+   * @param gffFormat the input file is in GFF format
+   * @param threads number of threads to use
+   */
+  public static GenomeDescription createGenomeDesc(
+      final InputStream genomeFastaIs, final String filename,
+      final boolean gffFormat, final int threads)
+      throws BadBioEntryException, IOException {
+
     checkNotNull(genomeFastaIs, "The input stream of the genome is null");
 
     getLogger().fine("Compute genome description from genome fasta file.");
 
-    final GenomeDescription result = new GenomeDescription();
-    result.setGenomeName(StringUtils.basename(filename));
-
-    MessageDigest md5Digest;
     try {
-      md5Digest = MessageDigest.getInstance("MD5");
-    } catch (NoSuchAlgorithmException e) {
-      md5Digest = null;
-    }
-
-    final FastaLineParser parser =
-        new FastaLineParser(genomeFastaIs, gffFormat);
-
-    final Alphabet alphabet = Alphabets.AMBIGUOUS_DNA_ALPHABET;
-    String seqName = null;
-    String lastSeqName = null;
-    String parsedSeqName = null;
-    long chrSize = 0;
-
-    while ((seqName = parser.parseNextLineAndGetSequenceName()) != null) {
-
-      if (!seqName.equals(lastSeqName)) {
-
-        // Check if sequence has been found more than one time
-        if (result.getSequenceLength(lastSeqName) != -1) {
-          throw new BadBioEntryException(
-              "Sequence name found twice: " + lastSeqName, lastSeqName);
-        }
-
-        // Add sequence
-        if (lastSeqName != null) {
-          result.addSequence(parsedSeqName, chrSize);
-        }
-
-        // Parse chromosome name
-        parsedSeqName = parseChromosomeName(seqName);
-
-        if (parsedSeqName == null) {
-          throw new IOException("No fasta header found.");
-        }
-
-        // Update digest with chromosome name
-        if (md5Digest != null) {
-          md5Digest.update(parsedSeqName.getBytes(Globals.DEFAULT_CHARSET));
-        }
-
-        lastSeqName = seqName;
-        chrSize = 0;
-      }
-
-      final String sequence = parser.getSequence();
-      if (sequence == null) {
-        throw new IOException("No fasta sequence found.");
-      }
-
-      // Check the sequence and increment the length of the sequence
-      chrSize += checkBases(sequence, lastSeqName, alphabet);
-
-      // Update digest with chromosome sequence
-      md5Digest.update(sequence.getBytes(Globals.DEFAULT_CHARSET));
-    }
-
-    // Add the last sequence
-    if (lastSeqName != null) {
-      result.addSequence(parsedSeqName, chrSize);
-    }
-
-    // Compute final MD5 sum
-    if (md5Digest != null) {
-      result.setMD5Sum(digestToString(md5Digest));
+      return new GenomeFastaScanner(StringUtils.basename(filename), threads,
+          GenomeFastaScanner.DEFAULT_CHUNK_SIZE).scan(genomeFastaIs,
+              gffFormat);
+    } finally {
+      genomeFastaIs.close();
     }
+  }
 
-    genomeFastaIs.close();
+  /**
+   * Get the default number of threads to use to create a genome description.
+   * @return the default number of threads
+   */
+  private static int getDefaultThreads() {
 
-    return result;
+    return Math.min(MAX_DEFAULT_THREADS,
+        Runtime.getRuntime().availableProcessors());
   }
 
-  private static String parseChromosomeName(final String fastaHeader)
+  static String parseChromosomeName(final String fastaHeader)
       throws BadBioEntryException {
 
     if (fastaHeader == null) {
@@ -463,23 +454,7 @@ public class GenomeDescription {
     return fields[0];
   }
 
-  private static long checkBases(final String sequence,
-      final String sequenceName, final Alphabet alphabet)
-      throws BadBioEntryException {
-
-    final char[] array = sequence.toCharArray();
-
-    for (final char c : array) {
-      if (!alphabet.isLetterValid(c)) {
-        throw new BadBioEntryException("Invalid base in genome: " + c,
-            sequenceName);
-      }
-    }
-
-    return sequence.length();
-  }
-
-  private static String digestToString(final MessageDigest md) {
+  static String digestToString(final MessageDigest md) {
 
     if (md == null) {
       return null;
@@ -0,0 +1,717 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio;
+
+import static fr.ens.biologie.genomique.eoulsan.bio.io.BioCharsets.FASTA_CHARSET;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.eoulsan.Globals;
+
+/**
+ * This class compute the description of a genome from the bytes of a FASTA
+ * file. The file is memory-mapped or read by chunks that end at line
+ * boundaries. The chunks are parsed and their bases are checked with a lookup
+ * table by several threads, then the sequence lengths and the MD5 digest are
+ * computed in the order of the file. The result is the same as the result of
+ * the parsing of the file line by line.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+final class GenomeFastaScanner {
+
+  /** Default size of the chunks. */
+  static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * Maximal size of the chunks that are parsed or waiting to be processed. The
+   * number of pending chunks is also limited by this size to keep the memory
+   * used constant whatever the number of threads.
+   */
+  static final long MAX_PENDING_BYTES = 256L * 1024 * 1024;
+
+  private static final byte[] FASTA_SECTION_TAG =
+      "##FASTA".getBytes(FASTA_CHARSET);
+
+  private static final boolean[] VALID_BASES =
+      createValidBases(Alphabets.AMBIGUOUS_DNA_ALPHABET);
+
+  private final int threads;
+  private final int chunkSize;
+
+  private final GenomeDescription result;
+  private final MessageDigest md5Digest;
+
+  // State of the sequence parsing
+  private String header;
+  private String lastSeqName;
+  private String parsedSeqName;
+  private long chrSize;
+
+  /**
+   * This class define a chunk of the FASTA file. A chunk is a range of an array
+   * or a memory-mapped buffer.
+   */
+  private static final class Chunk {
+
+    private final byte[] array;
+    private int start;
+    private final int end;
+    private final ByteBuffer mapped;
+
+    Chunk(final byte[] array, final int start, final int end) {
+
+      this.array = array;
+      this.start = start;
+      this.end = end;
+      this.mapped = null;
+    }
+
+    Chunk(final ByteBuffer mapped) {
+
+      this.array = null;
+      this.start = 0;
+      this.end = mapped.remaining();
+      this.mapped = mapped;
+    }
+  }
+
+  /**
+   * This class define the result of the parsing of a chunk. The items are the
+   * headers (String objects) and the lengths of the runs of bases between the
+   * headers (Long objects). The bases of the chunk are compacted at the
+   * beginning of the bases array.
+   */
+  private static final class ChunkResult {
+
+    private final List<Object> items = new ArrayList<>();
+    private byte[] bases;
+    private int basesStart;
+    private String firstSequenceLine;
+    private int errorItem = -1;
+    private char errorChar;
+  }
+
+  /**
+   * This interface define a source of chunks.
+   */
+  private interface ChunkSource {
+
+    /**
+     * Get the next chunk.
+     * @return the next chunk or null if there is no more chunk
+     * @throws IOException if an error occurs while reading the file
+     */
+    Chunk next() throws IOException;
+  }
+
+  /**
+   * This class define a source of chunks from a memory-mapped file.
+   */
+  private final class MappedChunkSource implements ChunkSource {
+
+    private final FileChannel channel;
+    private final long size;
+    private long position;
+
+    @Override
+    public Chunk next() throws IOException {
+
+      if (this.position >= this.size) {
+        return null;
+      }
+
+      long length = GenomeFastaScanner.this.chunkSize;
+
+      while (true) {
+
+        final long end = Math.min(this.size, this.position + length);
+        final ByteBuffer buffer = this.channel
+            .map(FileChannel.MapMode.READ_ONLY, this.position,
+                end - this.position);
+
+        int limit = buffer.limit();
+
+        // Cut the chunk at the end of the last line
+        if (end < this.size) {
+
+          limit = lastLineEnd(buffer);
+
+          // No line end found, use a larger chunk
+          if (limit == 0) {
+            length *= 2;
+            continue;
+          }
+        }
+
+        buffer.limit(limit);
+        this.position += limit;
+
+        return new Chunk(buffer);
+      }
+    }
+
+    /**
+     * Get the position after the last end of line in a buffer.
+     * @param buffer the buffer
+     * @return the position after the last end of line or 0 if not found
+     */
+    private int lastLineEnd(final ByteBuffer buffer) {
+
+      for (int i = buffer.limit() - 1; i >= 0; i--) {
+
+        final byte b = buffer.get(i);
+        if (b == '\n' || b == '\r') {
+          return i + 1;
+        }
+      }
+
+      return 0;
+    }
+
+    MappedChunkSource(final FileChannel channel) throws IOException {
+
+      this.channel = channel;
+      this.size = channel.size();
+    }
+  }
+
+  /**
+   * This class define a source of chunks from an input stream.
+   */
+  private final class StreamChunkSource implements ChunkSource {
+
+    private final InputStream is;
+    private boolean fastaSectionFound;
+    private byte[] carry = new byte[0];
+    private boolean eof;
+
+    @Override
+    public Chunk next() throws IOException {
+
+      Chunk chunk;
+
+      do {
+        chunk = readChunk();
+
+        // In GFF files, skip the lines before the FASTA section
+        if (chunk != null && !this.fastaSectionFound) {
+          chunk.start = skipToFastaSection(chunk);
+        }
+
+      } while (chunk != null && !this.fastaSectionFound);
+
+      return chunk;
+    }
+
+    /**
+     * Read a chunk from the stream.
+     * @return a new chunk or null if the end of the stream has been reached
+     * @throws IOException if an error occurs while reading the stream
+     */
+    private Chunk readChunk() throws IOException {
+
+      if (this.eof && this.carry.length == 0) {
+        return null;
+      }
+
+      byte[] array = new byte[Math.max(GenomeFastaScanner.this.chunkSize,
+          2 * this.carry.length)];
+      System.arraycopy(this.carry, 0, array, 0, this.carry.length);
+      int length = this.carry.length;
+
+      while (true) {
+
+        // Fill the array
+        while (!this.eof && length < array.length) {
+
+          final int n = this.is.read(array, length, array.length - length);
+          if (n == -1) {
+            this.eof = true;
+          } else {
+            length += n;
+          }
+        }
+
+        if (this.eof) {
+          this.carry = new byte[0];
+          return length == 0 ? null : new Chunk(array, 0, length);
+        }
+
+        // Cut the chunk at the end of the last line
+        for (int i = length - 1; i >= 0; i--) {
+
+          if (array[i] == '\n' || array[i] == '\r') {
+
+            this.carry = new byte[length - i - 1];
+            System.arraycopy(array, i + 1, this.carry, 0, this.carry.length);
+
+            return new Chunk(array, 0, i + 1);
+          }
+        }
+
+        // No line end found, use a larger array
+        final byte[] newArray = new byte[array.length * 2];
+        System.arraycopy(array, 0, newArray, 0, length);
+        array = newArray;
+      }
+    }
+
+    /**
+     * Find the beginning of the FASTA section of a GFF file in a chunk.
+     * @param chunk the chunk
+     * @return the position of the first line of the FASTA section or the end
+     *         of the chunk if the FASTA section has not been found
+     */
+    private int skipToFastaSection(final Chunk chunk) {
+
+      final byte[] a = chunk.array;
+      int i = chunk.start;
+
+      while (i < chunk.end) {
+
+        final int lineStart = i;
+        while (i < chunk.end && a[i] != '\n' && a[i] != '\r') {
+          i++;
+        }
+        final int lineEnd = i++;
+
+        if (startsWith(a, lineStart, lineEnd, FASTA_SECTION_TAG)) {
+          this.fastaSectionFound = true;
+          return Math.min(i, chunk.end);
+        }
+      }
+
+      return chunk.end;
+    }
+
+    StreamChunkSource(final InputStream is, final boolean gffFormat) {
+
+      this.is = is;
+      this.fastaSectionFound = !gffFormat;
+    }
+  }
+
+  //
+  // Scan methods
+  //
+
+  /**
+   * Scan a FASTA file. The file will be memory-mapped, so it must not be
+   * compressed.
+   * @param file the file to scan
+   * @return the genome description
+   * @throws BadBioEntryException if the FASTA file is invalid
+   * @throws IOException if an error occurs while reading the file
+   */
+  GenomeDescription scan(final File file)
+      throws BadBioEntryException, IOException {
+
+    try (FileInputStream is = new FileInputStream(file)) {
+      return scan(new MappedChunkSource(is.getChannel()));
+    }
+  }
+
+  /**
+   * Scan a FASTA or a GFF file.
+   * @param is the input stream to scan
+   * @param gffFormat the input file is in GFF format
+   * @return the genome description
+   * @throws BadBioEntryException if the FASTA file is invalid
+   * @throws IOException if an error occurs while reading the file
+   */
+  GenomeDescription scan(final InputStream is, final boolean gffFormat)
+      throws BadBioEntryException, IOException {
+
+    return scan(new StreamChunkSource(is, gffFormat));
+  }
+
+  /**
+   * Scan the chunks of a file.
+   * @param source the source of chunks
+   * @return the genome description
+   * @throws BadBioEntryException if the FASTA file is invalid
+   * @throws IOException if an error occurs while reading the file
+   */
+  private GenomeDescription scan(final ChunkSource source)
+      throws BadBioEntryException, IOException {
+
+    if (this.threads < 2) {
+
+      Chunk chunk;
+      while ((chunk = source.next()) != null) {
+        processResult(parseChunk(chunk));
+      }
+
+    } else {
+
+      final ExecutorService executor = Executors.newFixedThreadPool(
+          this.threads, new ThreadFactoryBuilder().setDaemon(true)
+              .setNameFormat("genome-scanner-%d").build());
+
+      // Keep a limited number of chunks and bytes in memory
+      final Deque<Future<ChunkResult>> pending = new ArrayDeque<>();
+      final Deque<Integer> pendingLengths = new ArrayDeque<>();
+      final int maxPending = 2 * this.threads;
+      long pendingBytes = 0;
+
+      try {
+
+        Chunk chunk;
+        while ((chunk = source.next()) != null) {
+
+          final Chunk c = chunk;
+          pending.add(executor.submit(new Callable<ChunkResult>() {
+
+            @Override
+            public ChunkResult call() {
+
+              return parseChunk(c);
+            }
+          }));
+          pendingLengths.add(c.end - c.start);
+          pendingBytes += c.end - c.start;
+
+          while (pending.size() >= maxPending
+              || pendingBytes >= MAX_PENDING_BYTES) {
+            processResult(getResult(pending.poll()));
+            pendingBytes -= pendingLengths.poll();
+          }
+        }
+
+        while (!pending.isEmpty()) {
+          processResult(getResult(pending.poll()));
+        }
+
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    // Add the last sequence
+    if (this.lastSeqName != null) {
+      this.result.addSequence(this.parsedSeqName, this.chrSize);
+    }
+
+    // Compute final MD5 sum
+    if (this.md5Digest != null) {
+      this.result.setMD5Sum(GenomeDescription.digestToString(this.md5Digest));
+    }
+
+    return this.result;
+  }
+
+  /**
+   * Get the result of the parsing of a chunk.
+   * @param future the future of the parsing
+   * @return the result of the parsing
+   * @throws IOException if the parsing has been interrupted
+   */
+  private static ChunkResult getResult(final Future<ChunkResult> future)
+      throws IOException {
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Parse a chunk. The lines are trimmed and the empty lines are discarded as
+   * in FastaLineParser.
+   * @param chunk the chunk to parse
+   * @return the result of the parsing
+   */
+  private static ChunkResult parseChunk(final Chunk chunk) {
+
+    final ChunkResult result = new ChunkResult();
+    final List<Object> items = result.items;
+
+    final byte[] a;
+    final int start;
+    final int end;
+
+    if (chunk.mapped != null) {
+      a = new byte[chunk.end];
+      chunk.mapped.get(a);
+      start = 0;
+      end = a.length;
+    } else {
+      a = chunk.array;
+      start = chunk.start;
+      end = chunk.end;
+    }
+
+    result.bases = a;
+    result.basesStart = start;
+
+    // The bases are compacted in place, the write position is always lower
+    // or equals to the read position
+    int w = start;
+    long run = 0;
+    int i = start;
+
+    while (i < end) {
+
+      // Find the end of the line
+      final int lineStart = i;
+      while (i < end && a[i] != '\n' && a[i] != '\r') {
+        i++;
+      }
+      final int lineEnd = i++;
+
+      // Trim the line
+      int s = lineStart;
+      int e = lineEnd;
+      while (s < e && (a[s] & 0xff) <= ' ') {
+        s++;
+      }
+      while (e > s && (a[e - 1] & 0xff) <= ' ') {
+        e--;
+      }
+
+      // Discard empty lines
+      if (s == e) {
+        continue;
+      }
+
+      // Header
+      if (a[s] == '>') {
+
+        if (run > 0) {
+          items.add(run);
+          run = 0;
+        }
+        items.add(new String(a, s + 1, e - s - 1, FASTA_CHARSET));
+        continue;
+      }
+
+      // Keep the first line of the sequence for the error message if there is
+      // no header before
+      if (items.isEmpty() && run == 0) {
+        result.firstSequenceLine =
+            new String(a, lineStart, lineEnd - lineStart, FASTA_CHARSET);
+      }
+
+      // Check and copy the bases
+      for (int k = s; k < e; k++) {
+
+        final byte b = a[k];
+
+        if (!VALID_BASES[b & 0xff]) {
+          items.add(run + k - s);
+          result.errorItem = items.size() - 1;
+          result.errorChar = (char) (b & 0xff);
+          return result;
+        }
+
+        a[w++] = b;
+      }
+
+      run += e - s;
+    }
+
+    if (run > 0) {
+      items.add(run);
+    }
+
+    return result;
+  }
+
+  /**
+   * Process the result of the parsing of a chunk.
+   * @param chunkResult the result to process
+   * @throws BadBioEntryException if the FASTA file is invalid
+   * @throws IOException if no header has been found
+   */
+  private void processResult(final ChunkResult chunkResult)
+      throws BadBioEntryException, IOException {
+
+    final List<Object> items = chunkResult.items;
+    int offset = chunkResult.basesStart;
+
+    for (int i = 0; i < items.size(); i++) {
+
+      final Object item = items.get(i);
+
+      if (item instanceof String) {
+        this.header = (String) item;
+        continue;
+      }
+
+      if (this.header == null) {
+        throw new IOException(
+            "No fasta header found at the beginning of the fasta file: "
+                + chunkResult.firstSequenceLine);
+      }
+
+      if (!this.header.equals(this.lastSeqName)) {
+
+        // Check if sequence has been found more than one time
+        if (this.result.getSequenceLength(this.lastSeqName) != -1) {
+          throw new BadBioEntryException(
+              "Sequence name found twice: " + this.lastSeqName,
+              this.lastSeqName);
+        }
+
+        // Add sequence
+        if (this.lastSeqName != null) {
+          this.result.addSequence(this.parsedSeqName, this.chrSize);
+        }
+
+        // Parse chromosome name
+        this.parsedSeqName = GenomeDescription.parseChromosomeName(this.header);
+
+        // Update digest with chromosome name
+        if (this.md5Digest != null) {
+          this.md5Digest
+              .update(this.parsedSeqName.getBytes(Globals.DEFAULT_CHARSET));
+        }
+
+        this.lastSeqName = this.header;
+        this.chrSize = 0;
+      }
+
+      if (i == chunkResult.errorItem) {
+        throw new BadBioEntryException(
+            "Invalid base in genome: " + chunkResult.errorChar,
+            this.lastSeqName);
+      }
+
+      // Increment the length of the sequence and update the digest
+      final int length = (int) (long) (Long) item;
+      this.chrSize += length;
+      if (this.md5Digest != null) {
+        this.md5Digest.update(chunkResult.bases, offset, length);
+      }
+      offset += length;
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Create the lookup table of the valid bases.
+   * @param alphabet the alphabet
+   * @return an array of 256 booleans
+   */
+  private static boolean[] createValidBases(final Alphabet alphabet) {
+
+    final boolean[] result = new boolean[256];
+
+    for (int i = 0; i < result.length; i++) {
+      result[i] = alphabet.isLetterValid((char) i);
+    }
+
+    return result;
+  }
+
+  /**
+   * Test if a line starts with a prefix.
+   * @param a the array that contains the line
+   * @param start the start of the line
+   * @param end the end of the line
+   * @param prefix the prefix
+   * @return true if the line starts with the prefix
+   */
+  private static boolean startsWith(final byte[] a, final int start,
+      final int end, final byte[] prefix) {
+
+    if (end - start < prefix.length) {
+      return false;
+    }
+
+    for (int i = 0; i < prefix.length; i++) {
+      if (a[start + i] != prefix[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param genomeName the name of the genome
+   * @param threads the number of threads to use
+   * @param chunkSize the size of the chunks
+   */
+  GenomeFastaScanner(final String genomeName, final int threads,
+      final int chunkSize) {
+
+    if (chunkSize < 1) {
+      throw new IllegalArgumentException(
+          "chunkSize argument must be greater than 0: " + chunkSize);
+    }
+
+    this.threads = threads;
+    this.chunkSize = chunkSize;
+
+    this.result = new GenomeDescription();
+    this.result.setGenomeName(genomeName);
+
+    MessageDigest md5Digest;
+    try {
+      md5Digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      md5Digest = null;
+    }
+    this.md5Digest = md5Digest;
+  }
+
+}
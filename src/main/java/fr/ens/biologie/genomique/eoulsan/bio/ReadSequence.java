@@ -107,42 +107,101 @@ public final class ReadSequence extends Sequence {
   // Quality methods
   //
 
+  /**
+   * Get the quality scores of the read.
+   * @return a new array with the quality scores
+   */
   public int[] qualityScores() {
 
-    if (this.quality == null) {
+    return qualityScores(null);
+  }
+
+  /**
+   * Get the quality scores of the read. The result is stored in the array
+   * argument if its length is equals to the length of the quality.
+   * @param array array to fill. Can be null
+   * @return an array with the quality scores or null if the quality is null
+   */
+  public int[] qualityScores(final int[] array) {
+
+    final String q = this.quality;
+
+    if (q == null) {
       return null;
     }
 
-    final char[] qualities = this.quality.toCharArray();
-    final int len = qualities.length;
-    final FastqFormat format = this.fastqFormat;
-    final int[] result = new int[len];
+    final int len = q.length();
+    final int offset = this.fastqFormat.getAsciiOffset();
+    final int[] result =
+        array != null && array.length == len ? array : new int[len];
 
     for (int i = 0; i < len; i++) {
-      result[i] = format.getScore(qualities[i]);
+      result[i] = q.charAt(i) - offset;
     }
 
     return result;
   }
 
+  /**
+   * Get the error probabilities of the bases of the read.
+   * @return a new array with the error probabilities
+   */
   public double[] errorProbabilities() {
 
-    if (this.quality == null) {
+    return errorProbabilities(null);
+  }
+
+  /**
+   * Get the error probabilities of the bases of the read. The result is
+   * stored in the array argument if its length is equals to the length of the
+   * quality.
+   * @param array array to fill. Can be null
+   * @return an array with the error probabilities or null if the quality is
+   *         null
+   */
+  public double[] errorProbabilities(final double[] array) {
+
+    final String q = this.quality;
+
+    if (q == null) {
       return null;
     }
 
-    final char[] qualities = this.quality.toCharArray();
-    final int len = qualities.length;
+    final int len = q.length();
     final FastqFormat format = this.fastqFormat;
-    final double[] result = new double[len];
+    final double[] result =
+        array != null && array.length == len ? array : new double[len];
 
     for (int i = 0; i < len; i++) {
-      result[i] = format.getProbability(qualities[i]);
+      result[i] = format.getProbability(q.charAt(i));
     }
 
     return result;
   }
 
+  /**
+   * Get the mean of the quality scores of the read. No array is allocated by
+   * this method.
+   * @return the mean of the quality scores or NaN if the quality is empty
+   */
+  public double meanQuality() {
+
+    final String q = this.quality;
+
+    if (q == null) {
+      throw new NullPointerException("The quality of the read is null");
+    }
+
+    final int len = q.length();
+    int sum = 0;
+
+    for (int i = 0; i < len; i++) {
+      sum += q.charAt(i);
+    }
+
+    return (double) (sum - len * this.fastqFormat.getAsciiOffset()) / len;
+  }
+
   //
   // Sequence methods
   //
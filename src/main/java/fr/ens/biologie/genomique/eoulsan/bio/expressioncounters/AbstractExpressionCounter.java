@@ -52,6 +52,7 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
   private Reporter reporter;
   private String counterGroup;
   private String tempDir = EoulsanRuntime.getSettings().getTempDirectory();
+  private int threadsNumber = 1;
 
   //
   // Getters
@@ -72,6 +73,11 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
     return this.tempDir;
   }
 
+  @Override
+  public int getThreadsNumber() {
+    return this.threadsNumber;
+  }
+
   @Override
   public String getGenomicType() {
     return this.genomicType;
@@ -128,6 +134,12 @@ public abstract class AbstractExpressionCounter implements ExpressionCounter {
     this.tempDir = tempDirectory;
   }
 
+  @Override
+  public void setThreadsNumber(final int threadsNumber) {
+
+    this.threadsNumber = threadsNumber < 1 ? 1 : threadsNumber;
+  }
+
   @Override
   public void setGenomicType(final String genomicType) {
 
@@ -0,0 +1,517 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.expressioncounters;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import fr.ens.biologie.genomique.eoulsan.Globals;
+
+/**
+ * This class define a columnar table of expression counts. The identifiers of
+ * the features are stored in a dictionary that associate an ordinal to each
+ * feature and the counts of each sample are stored in an array of primitive
+ * values indexed by the ordinals of the features. This avoid to create an
+ * object for each count and allow to merge count files or to write a count
+ * matrix of several samples without parsing the count files again.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class CountTable {
+
+  /** Header of the count files. */
+  public static final String COUNT_FILE_HEADER = "Id\tCount\n";
+
+  private static final Charset CHARSET =
+      Charset.forName(Globals.DEFAULT_FILE_ENCODING);
+
+  private static final int DEFAULT_CAPACITY = 1024;
+
+  private final Map<String, Integer> featureOrdinals = new HashMap<>();
+  private final List<String> featureIds = new ArrayList<>();
+  private final List<String> sampleNames = new ArrayList<>();
+  private final List<long[]> columns = new ArrayList<>();
+  private final List<BitSet> definedCounts = new ArrayList<>();
+  private int capacity = DEFAULT_CAPACITY;
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of features in the table.
+   * @return the number of features in the table
+   */
+  public int getFeatureCount() {
+
+    return this.featureIds.size();
+  }
+
+  /**
+   * Get the number of samples in the table.
+   * @return the number of samples in the table
+   */
+  public int getSampleCount() {
+
+    return this.sampleNames.size();
+  }
+
+  /**
+   * Get the identifiers of the features in the order of their ordinals.
+   * @return an unmodifiable list with the identifiers of the features
+   */
+  public List<String> getFeatureIds() {
+
+    return Collections.unmodifiableList(this.featureIds);
+  }
+
+  /**
+   * Get the names of the samples in the order of their indexes.
+   * @return an unmodifiable list with the names of the samples
+   */
+  public List<String> getSampleNames() {
+
+    return Collections.unmodifiableList(this.sampleNames);
+  }
+
+  /**
+   * Get the ordinal of a feature.
+   * @param featureId the identifier of the feature
+   * @return the ordinal of the feature or -1 if the feature is not in the
+   *         table
+   */
+  public int getFeatureOrdinal(final String featureId) {
+
+    final Integer ordinal = this.featureOrdinals.get(featureId);
+
+    return ordinal == null ? -1 : ordinal;
+  }
+
+  /**
+   * Get a count.
+   * @param sampleIndex the index of the sample
+   * @param featureOrdinal the ordinal of the feature
+   * @return the count of the feature for the sample
+   */
+  public long getCount(final int sampleIndex, final int featureOrdinal) {
+
+    checkFeatureOrdinal(featureOrdinal);
+
+    return this.columns.get(sampleIndex)[featureOrdinal];
+  }
+
+  //
+  // Table modification methods
+  //
+
+  /**
+   * Add a feature to the table. The counts of a new feature are set to 0 for
+   * all the samples.
+   * @param featureId the identifier of the feature
+   * @return the ordinal of the feature
+   */
+  public int addFeature(final String featureId) {
+
+    if (featureId == null) {
+      throw new NullPointerException("featureId argument cannot be null");
+    }
+
+    final Integer ordinal = this.featureOrdinals.get(featureId);
+
+    if (ordinal != null) {
+      return ordinal;
+    }
+
+    final int result = this.featureIds.size();
+
+    // Enlarge the columns if needed
+    if (result == this.capacity) {
+
+      this.capacity *= 2;
+      for (int i = 0; i < this.columns.size(); i++) {
+        this.columns.set(i, Arrays.copyOf(this.columns.get(i), this.capacity));
+      }
+    }
+
+    this.featureOrdinals.put(featureId, result);
+    this.featureIds.add(featureId);
+
+    return result;
+  }
+
+  /**
+   * Add a sample to the table. The counts of the new sample are set to 0.
+   * @param sampleName the name of the sample
+   * @return the index of the sample
+   */
+  public int addSample(final String sampleName) {
+
+    if (sampleName == null) {
+      throw new NullPointerException("sampleName argument cannot be null");
+    }
+
+    if (this.sampleNames.contains(sampleName)) {
+      throw new IllegalArgumentException(
+          "The sample already exists in the table: " + sampleName);
+    }
+
+    this.sampleNames.add(sampleName);
+    this.columns.add(new long[this.capacity]);
+    this.definedCounts.add(new BitSet());
+
+    return this.sampleNames.size() - 1;
+  }
+
+  /**
+   * Add a count to the count of a feature.
+   * @param sampleIndex the index of the sample
+   * @param featureOrdinal the ordinal of the feature
+   * @param count the count to add
+   */
+  public void addCount(final int sampleIndex, final int featureOrdinal,
+      final long count) {
+
+    checkFeatureOrdinal(featureOrdinal);
+
+    this.columns.get(sampleIndex)[featureOrdinal] += count;
+    this.definedCounts.get(sampleIndex).set(featureOrdinal);
+  }
+
+  /**
+   * Set the count of a feature.
+   * @param sampleIndex the index of the sample
+   * @param featureOrdinal the ordinal of the feature
+   * @param count the count to set
+   */
+  public void setCount(final int sampleIndex, final int featureOrdinal,
+      final long count) {
+
+    checkFeatureOrdinal(featureOrdinal);
+
+    this.columns.get(sampleIndex)[featureOrdinal] = count;
+    this.definedCounts.get(sampleIndex).set(featureOrdinal);
+  }
+
+  /**
+   * Load a count file in the table. Each line of the file contains the
+   * identifier of a feature and its count separated by a tabulation. The
+   * loaded counts are added to the counts of the sample in the table. Like the
+   * merge of the count files of the chunks of a sample, the empty or invalid
+   * lines are ignored.
+   * @param sampleIndex the index of the sample
+   * @param is the input stream of the count file
+   * @param header true if the first line of the file is a header
+   * @param addFeatures true if the features that are not in the table must be
+   *          added, otherwise their counts are ignored
+   * @throws IOException if an error occurs while reading the file
+   */
+  public void loadCounts(final int sampleIndex, final InputStream is,
+      final boolean header, final boolean addFeatures) throws IOException {
+
+    if (is == null) {
+      throw new NullPointerException("is argument cannot be null");
+    }
+
+    // Check the sample index
+    this.columns.get(sampleIndex);
+
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(is, CHARSET))) {
+
+      String line = null;
+      int lineNumber = 0;
+
+      while ((line = reader.readLine()) != null) {
+
+        lineNumber++;
+
+        // Do no handle header
+        if (header && lineNumber == 1) {
+          continue;
+        }
+
+        final int tabPos = line.indexOf('\t');
+
+        // Do not handle empty or invalid lines
+        if (tabPos == -1) {
+          continue;
+        }
+
+        final String id = line.substring(0, tabPos).trim();
+        final long count;
+
+        try {
+          count = Long.parseLong(line.substring(tabPos + 1).trim());
+        } catch (NumberFormatException e) {
+          // Do not handle parsing errors
+          continue;
+        }
+
+        final int ordinal =
+            addFeatures ? addFeature(id) : getFeatureOrdinal(id);
+
+        if (ordinal != -1) {
+          addCount(sampleIndex, ordinal, count);
+        }
+      }
+    }
+  }
+
+  /**
+   * Load the expression file of a sample in the table. Unlike
+   * loadCounts(), the features are always added to the table and the file
+   * must be valid: the identifier and the count are read from the "Id" and
+   * "Count" columns of the header or from the two first columns if the file
+   * has no header, and an exception is thrown if a line cannot be parsed. Only
+   * the empty lines are ignored.
+   * @param sampleIndex the index of the sample
+   * @param is the input stream of the expression file
+   * @param header true if the first line of the file is a header
+   * @throws IOException if an error occurs while reading the file or if the
+   *           file is invalid
+   */
+  public void loadExpressionFile(final int sampleIndex, final InputStream is,
+      final boolean header) throws IOException {
+
+    if (is == null) {
+      throw new NullPointerException("is argument cannot be null");
+    }
+
+    // Check the sample index
+    this.columns.get(sampleIndex);
+
+    try (BufferedReader reader =
+        new BufferedReader(new InputStreamReader(is, CHARSET))) {
+
+      String line = null;
+      int lineNumber = 0;
+      int idColumn = 0;
+      int countColumn = 1;
+
+      // Get the columns of the identifiers and of the counts
+      if (header) {
+
+        line = reader.readLine();
+        lineNumber++;
+
+        if (line == null) {
+          throw new IOException("Invalid expression file, no header found");
+        }
+
+        final List<String> columnNames = Arrays.asList(line.split("\t"));
+        idColumn = columnNames.indexOf("Id");
+        countColumn = columnNames.indexOf("Count");
+
+        if (idColumn == -1 || countColumn == -1) {
+          throw new IOException("Invalid expression file, no \"Id\" or "
+              + "\"Count\" column found in header: " + line);
+        }
+      }
+
+      final int minFields = Math.max(idColumn, countColumn) + 1;
+
+      while ((line = reader.readLine()) != null) {
+
+        lineNumber++;
+
+        // Do not handle empty lines
+        if (line.trim().isEmpty()) {
+          continue;
+        }
+
+        final String[] fields = line.split("\t");
+
+        if (fields.length < minFields) {
+          throw new IOException("Invalid expression file, "
+              + minFields + " columns expected at line " + lineNumber + ": "
+              + line);
+        }
+
+        final long count;
+        try {
+          count = Long.parseLong(fields[countColumn].trim());
+        } catch (NumberFormatException e) {
+          throw new IOException(
+              "Invalid count at line " + lineNumber + ": " + line, e);
+        }
+
+        addCount(sampleIndex, addFeature(fields[idColumn].trim()), count);
+      }
+    }
+  }
+
+  //
+  // Output methods
+  //
+
+  /**
+   * Write the counts of a sample in a count file. The features are sorted by
+   * identifier.
+   * @param sampleIndex the index of the sample
+   * @param os the output stream of the count file
+   * @throws IOException if an error occurs while writing the file
+   */
+  public void writeCounts(final int sampleIndex, final OutputStream os)
+      throws IOException {
+
+    if (os == null) {
+      throw new NullPointerException("os argument cannot be null");
+    }
+
+    final long[] column = this.columns.get(sampleIndex);
+
+    try (Writer writer =
+        new BufferedWriter(new OutputStreamWriter(os, CHARSET))) {
+
+      writer.write(COUNT_FILE_HEADER);
+
+      for (int ordinal : getSortedOrdinals()) {
+        writer.write(this.featureIds.get(ordinal));
+        writer.write('\t');
+        writer.write(Long.toString(column[ordinal]));
+        writer.write('\n');
+      }
+    }
+  }
+
+  /**
+   * Write the counts of all the samples in a count matrix. The first line
+   * contains the names of the samples and each other line contains the counts
+   * of a feature. The features are sorted by identifier. Like the merge of the
+   * count files in R, only the features with a count in all the samples are
+   * written.
+   * @param os the output stream of the matrix
+   * @throws IOException if an error occurs while writing the file
+   */
+  public void writeMatrix(final OutputStream os) throws IOException {
+
+    if (os == null) {
+      throw new NullPointerException("os argument cannot be null");
+    }
+
+    try (Writer writer =
+        new BufferedWriter(new OutputStreamWriter(os, CHARSET))) {
+
+      writer.write("Id");
+      for (String sampleName : this.sampleNames) {
+        writer.write('\t');
+        writer.write(sampleName);
+      }
+      writer.write('\n');
+
+      for (int ordinal : getSortedOrdinals()) {
+
+        if (!isDefinedInAllSamples(ordinal)) {
+          continue;
+        }
+
+        writer.write(this.featureIds.get(ordinal));
+        for (long[] column : this.columns) {
+          writer.write('\t');
+          writer.write(Long.toString(column[ordinal]));
+        }
+        writer.write('\n');
+      }
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Get the ordinals of the features sorted by the identifiers of the
+   * features.
+   * @return an array with the sorted ordinals
+   */
+  private int[] getSortedOrdinals() {
+
+    final Integer[] ordinals = new Integer[this.featureIds.size()];
+    for (int i = 0; i < ordinals.length; i++) {
+      ordinals[i] = i;
+    }
+
+    Arrays.sort(ordinals, new Comparator<Integer>() {
+
+      @Override
+      public int compare(final Integer o1, final Integer o2) {
+
+        return CountTable.this.featureIds.get(o1)
+            .compareTo(CountTable.this.featureIds.get(o2));
+      }
+    });
+
+    final int[] result = new int[ordinals.length];
+    for (int i = 0; i < result.length; i++) {
+      result[i] = ordinals[i];
+    }
+
+    return result;
+  }
+
+  /**
+   * Test if a feature has a count in all the samples.
+   * @param featureOrdinal the ordinal of the feature
+   * @return true if the feature has a count in all the samples
+   */
+  private boolean isDefinedInAllSamples(final int featureOrdinal) {
+
+    for (BitSet defined : this.definedCounts) {
+      if (!defined.get(featureOrdinal)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Check a feature ordinal.
+   * @param featureOrdinal the ordinal to check
+   */
+  private void checkFeatureOrdinal(final int featureOrdinal) {
+
+    if (featureOrdinal < 0 || featureOrdinal >= this.featureIds.size()) {
+      throw new IndexOutOfBoundsException(
+          "Invalid feature ordinal: " + featureOrdinal);
+    }
+  }
+
+}
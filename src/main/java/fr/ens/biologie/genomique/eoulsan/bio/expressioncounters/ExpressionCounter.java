@@ -90,6 +90,12 @@ public interface ExpressionCounter {
    */
   String getTempDirectory();
 
+  /**
+   * Get the number of threads to use for counting.
+   * @return the number of threads to use for counting
+   */
+  int getThreadsNumber();
+
   //
   // Setters
   //
@@ -137,6 +143,12 @@ public interface ExpressionCounter {
    */
   void setTempDirectory(String tempDirectory);
 
+  /**
+   * Set the number of threads to use for counting.
+   * @param threadsNumber the number of threads
+   */
+  void setThreadsNumber(int threadsNumber);
+
   //
   // Counting methods
   //
@@ -0,0 +1,1068 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.expressioncounters;
+
+import static fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.OverlapMode.INTERSECTION_STRICT;
+import static fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.OverlapMode.UNION;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import fr.ens.biologie.genomique.eoulsan.Globals;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomicInterval;
+
+/**
+ * This class define an immutable index of the features of an annotation. It
+ * is an alternative to GenomicArray for expression counting: the zones of each
+ * strand of a chromosome are stored in sorted arrays of integers and each zone
+ * references an interned set of feature ordinals. The ordinal of a feature is
+ * its index in the sorted list of the feature identifiers. Instances of this
+ * class are created with the {@link FeatureIndex.Builder} class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public final class FeatureIndex {
+
+  /** Magic number of the feature index files ("EFIX"). */
+  private static final int MAGIC_NUMBER = 0x45464958;
+
+  /** Version of the format of the feature index files. */
+  private static final int FORMAT_VERSION = 1;
+
+  private static final int[] EMPTY_SET = new int[0];
+
+  private final String[] featureIds;
+  private final int[] setOffsets;
+  private final int[] setValues;
+  private final Map<String, ChromosomeIndex> chromosomes;
+
+  /**
+   * This class define the zones of a strand of a chromosome. The zones are
+   * contiguous and cover the positions from 1 to the length of the strand.
+   */
+  static final class StrandIndex {
+
+    private final char strand;
+    private final int length;
+    private final int[] starts;
+    private final int[] ends;
+    private final int[] sets;
+
+    /**
+     * Get the number of zones.
+     * @return the number of zones
+     */
+    int getZoneCount() {
+
+      return this.starts.length;
+    }
+
+    /**
+     * Find the zone index for a position.
+     * @param pos the position on the chromosome
+     * @return the index of the zone or -1 if the position if lower than 1 or
+     *         greater than the length of the chromosome
+     */
+    int findZone(final int pos) {
+
+      if (pos < 1 || pos > this.length) {
+        return -1;
+      }
+
+      int low = 0;
+      int high = this.starts.length - 1;
+
+      while (low < high) {
+
+        final int mid = (low + high + 1) >>> 1;
+
+        if (this.starts[mid] <= pos) {
+          low = mid;
+        } else {
+          high = mid - 1;
+        }
+      }
+
+      return low;
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param strand strand of the zones
+     * @param length length of the strand
+     * @param starts start positions of the zones
+     * @param ends end positions of the zones
+     * @param sets indexes of the feature sets of the zones
+     */
+    StrandIndex(final char strand, final int length, final int[] starts,
+        final int[] ends, final int[] sets) {
+
+      this.strand = strand;
+      this.length = length;
+      this.starts = starts;
+      this.ends = ends;
+      this.sets = sets;
+    }
+  }
+
+  /**
+   * This class define the two stranded indexes of a chromosome.
+   */
+  private static final class ChromosomeIndex {
+
+    private final StrandIndex plus;
+    private final StrandIndex minus;
+
+    ChromosomeIndex(final StrandIndex plus, final StrandIndex minus) {
+
+      this.plus = plus;
+      this.minus = minus;
+    }
+  }
+
+  /**
+   * This class define a mutable set of feature ordinals that is filled by the
+   * overlap queries. The ordinals are kept sorted and the internal buffers are
+   * allocated once, so an instance can be reused for all the alignments of a
+   * file without any allocation.
+   */
+  public static final class FeatureSet {
+
+    private int[] values;
+    private int[] buffer;
+    private int size;
+    private boolean initialized;
+
+    /**
+     * Get the number of features in the set.
+     * @return the number of features in the set
+     */
+    public int size() {
+
+      return this.size;
+    }
+
+    /**
+     * Test if the set is empty.
+     * @return true if the set is empty
+     */
+    public boolean isEmpty() {
+
+      return this.size == 0;
+    }
+
+    /**
+     * Get the ordinal of a feature of the set.
+     * @param index index of the feature in the set
+     * @return the ordinal of the feature
+     */
+    public int get(final int index) {
+
+      if (index < 0 || index >= this.size) {
+        throw new IndexOutOfBoundsException(
+            "Index: " + index + ", size: " + this.size);
+      }
+
+      return this.values[index];
+    }
+
+    /**
+     * Clear the set.
+     */
+    public void clear() {
+
+      this.size = 0;
+      this.initialized = false;
+    }
+
+    /**
+     * Merge a set of features with the content of this set.
+     * @param set values of the set to merge
+     * @param from index of the first value of the set
+     * @param to index after the last value of the set
+     * @param mode overlap mode
+     */
+    private void merge(final int[] set, final int from, final int to,
+        final OverlapMode mode) {
+
+      final int len = to - from;
+
+      if (mode == UNION) {
+        union(set, from, to);
+        return;
+      }
+
+      // Intersection modes, empty sets are ignored in non strict mode
+      if (len > 0 || mode == INTERSECTION_STRICT) {
+
+        if (this.initialized) {
+          retain(set, from, to);
+        } else {
+          System.arraycopy(set, from, this.values, 0, len);
+          this.size = len;
+          this.initialized = true;
+        }
+      }
+    }
+
+    /**
+     * Add the values of a sorted set to this set.
+     * @param set values of the set to merge
+     * @param from index of the first value of the set
+     * @param to index after the last value of the set
+     */
+    private void union(final int[] set, final int from, final int to) {
+
+      if (from == to) {
+        return;
+      }
+
+      final int[] a = this.values;
+      final int[] r = this.buffer;
+      int i = 0;
+      int j = from;
+      int k = 0;
+
+      while (i < this.size && j < to) {
+
+        if (a[i] < set[j]) {
+          r[k++] = a[i++];
+        } else if (a[i] > set[j]) {
+          r[k++] = set[j++];
+        } else {
+          r[k++] = a[i++];
+          j++;
+        }
+      }
+
+      while (i < this.size) {
+        r[k++] = a[i++];
+      }
+
+      while (j < to) {
+        r[k++] = set[j++];
+      }
+
+      this.buffer = a;
+      this.values = r;
+      this.size = k;
+    }
+
+    /**
+     * Retain only the values of this set that are in a sorted set.
+     * @param set values of the set to merge
+     * @param from index of the first value of the set
+     * @param to index after the last value of the set
+     */
+    private void retain(final int[] set, final int from, final int to) {
+
+      final int[] a = this.values;
+      int i = 0;
+      int j = from;
+      int k = 0;
+
+      while (i < this.size && j < to) {
+
+        if (a[i] < set[j]) {
+          i++;
+        } else if (a[i] > set[j]) {
+          j++;
+        } else {
+          a[k++] = a[i++];
+          j++;
+        }
+      }
+
+      this.size = k;
+    }
+
+    @Override
+    public String toString() {
+
+      return this.getClass().getSimpleName()
+          + "{" + Arrays.toString(Arrays.copyOf(this.values, this.size)) + "}";
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param featureCount number of features of the index
+     */
+    private FeatureSet(final int featureCount) {
+
+      this.values = new int[featureCount];
+      this.buffer = new int[featureCount];
+    }
+  }
+
+  /**
+   * This class allow to build a FeatureIndex. Intervals are only collected
+   * when added and the zones are computed once by the build() method.
+   */
+  public static final class Builder {
+
+    private final Map<String, Integer> featureIds = new HashMap<>();
+    private final Map<String, StrandBuilder[]> chromosomes = new HashMap<>();
+
+    /**
+     * This class store the intervals of a strand of a chromosome.
+     */
+    private static final class StrandBuilder {
+
+      private char strand;
+      private int[] starts = new int[16];
+      private int[] ends = new int[16];
+      private int[] features = new int[16];
+      private int count;
+
+      private void add(final int start, final int end, final char strand,
+          final int feature) {
+
+        if (this.count == 0) {
+          this.strand = strand;
+        }
+
+        if (this.count == this.starts.length) {
+          final int newLength = this.count * 2;
+          this.starts = Arrays.copyOf(this.starts, newLength);
+          this.ends = Arrays.copyOf(this.ends, newLength);
+          this.features = Arrays.copyOf(this.features, newLength);
+        }
+
+        this.starts[this.count] = start;
+        this.ends[this.count] = end;
+        this.features[this.count] = feature;
+        this.count++;
+      }
+    }
+
+    /**
+     * Add an entry.
+     * @param interval genomic interval
+     * @param featureId identifier of the feature
+     * @return the instance of the builder
+     */
+    public Builder addEntry(final GenomicInterval interval,
+        final String featureId) {
+
+      if (interval == null) {
+        throw new NullPointerException("interval argument cannot be null");
+      }
+
+      if (featureId == null) {
+        throw new NullPointerException("featureId argument cannot be null");
+      }
+
+      final char strand = interval.getStrand();
+
+      Integer feature = this.featureIds.get(featureId);
+      if (feature == null) {
+        feature = this.featureIds.size();
+        this.featureIds.put(featureId, feature);
+      }
+
+      addChromosome(interval.getChromosome());
+
+      final StrandBuilder[] strands =
+          this.chromosomes.get(interval.getChromosome());
+      strands[strand == '-' ? 1 : 0].add(interval.getStart(),
+          interval.getEnd(), strand, feature);
+
+      return this;
+    }
+
+    /**
+     * Add a chromosome.
+     * @param chromosomeName name of the chromosome to add
+     * @return the instance of the builder
+     */
+    public Builder addChromosome(final String chromosomeName) {
+
+      if (chromosomeName == null) {
+        throw new NullPointerException(
+            "chromosomeName argument cannot be null");
+      }
+
+      if (!this.chromosomes.containsKey(chromosomeName)) {
+        this.chromosomes.put(chromosomeName,
+            new StrandBuilder[] {new StrandBuilder(), new StrandBuilder()});
+      }
+
+      return this;
+    }
+
+    /**
+     * Add chromosomes from the list of sequence in a GenomeDescription object.
+     * @param gd genome description
+     * @return the instance of the builder
+     */
+    public Builder addChromosomes(final GenomeDescription gd) {
+
+      if (gd == null) {
+        throw new NullPointerException("gd argument cannot be null");
+      }
+
+      for (String chromosomeName : gd.getSequencesNames()) {
+        addChromosome(chromosomeName);
+      }
+
+      return this;
+    }
+
+    /**
+     * Get the number of features already added to the builder.
+     * @return the number of features
+     */
+    public int getFeatureCount() {
+
+      return this.featureIds.size();
+    }
+
+    /**
+     * Create the FeatureIndex object.
+     * @return a new FeatureIndex object
+     */
+    public FeatureIndex build() {
+
+      // Sort the feature identifiers to define the ordinals
+      final String[] ids = new String[this.featureIds.size()];
+      for (Map.Entry<String, Integer> e : this.featureIds.entrySet()) {
+        ids[e.getValue()] = e.getKey();
+      }
+
+      final String[] sortedIds = ids.clone();
+      Arrays.sort(sortedIds);
+
+      final Map<String, Integer> ordinals = new HashMap<>();
+      for (int i = 0; i < sortedIds.length; i++) {
+        ordinals.put(sortedIds[i], i);
+      }
+
+      final int[] remap = new int[ids.length];
+      for (int i = 0; i < ids.length; i++) {
+        remap[i] = ordinals.get(ids[i]);
+      }
+
+      final SetInterner interner = new SetInterner();
+      final Map<String, ChromosomeIndex> result = new HashMap<>();
+
+      for (Map.Entry<String, StrandBuilder[]> e : this.chromosomes
+          .entrySet()) {
+
+        final StrandBuilder[] strands = e.getValue();
+        result.put(e.getKey(),
+            new ChromosomeIndex(buildStrand(strands[0], remap, interner),
+                buildStrand(strands[1], remap, interner)));
+      }
+
+      return new FeatureIndex(sortedIds, interner.getOffsets(),
+          interner.getValues(), result);
+    }
+
+    /**
+     * Compute the zones of a strand of a chromosome.
+     * @param sb the strand builder
+     * @param remap array to convert feature indexes to feature ordinals
+     * @param interner set interner
+     * @return a new StrandIndex object
+     */
+    private static StrandIndex buildStrand(final StrandBuilder sb,
+        final int[] remap, final SetInterner interner) {
+
+      final int n = sb.count;
+
+      if (n == 0) {
+        return new StrandIndex('.', 0, EMPTY_SET, EMPTY_SET, EMPTY_SET);
+      }
+
+      // Sort the intervals by start and by end positions
+      final long[] byStart = new long[n];
+      final long[] byEnd = new long[n];
+      int length = 0;
+
+      for (int i = 0; i < n; i++) {
+        byStart[i] = ((long) sb.starts[i]) << 32 | i;
+        byEnd[i] = ((long) sb.ends[i] + 1) << 32 | i;
+        length = Math.max(length, sb.ends[i]);
+      }
+
+      Arrays.sort(byStart);
+      Arrays.sort(byEnd);
+
+      final int[] activeCounts = new int[remap.length];
+      int[] active = new int[16];
+      int activeSize = 0;
+
+      int[] starts = new int[n + 1];
+      int[] ends = new int[n + 1];
+      int[] sets = new int[n + 1];
+      int zoneCount = 0;
+
+      int si = 0;
+      int ei = 0;
+      int pos = 1;
+
+      while (pos > 0) {
+
+        // Features that start at the beginning of the zone
+        while (si < n && (int) (byStart[si] >>> 32) == pos) {
+
+          final int f = remap[sb.features[(int) byStart[si]]];
+          if (activeCounts[f]++ == 0) {
+            if (activeSize == active.length) {
+              active = Arrays.copyOf(active, activeSize * 2);
+            }
+            active[activeSize++] = f;
+          }
+          si++;
+        }
+
+        // Features that end just before the beginning of the zone
+        while (ei < n && (int) (byEnd[ei] >>> 32) == pos) {
+
+          final int f = remap[sb.features[(int) byEnd[ei]]];
+          if (--activeCounts[f] == 0) {
+            for (int i = 0; i < activeSize; i++) {
+              if (active[i] == f) {
+                active[i] = active[--activeSize];
+                break;
+              }
+            }
+          }
+          ei++;
+        }
+
+        // Position of the next zone
+        int next = -1;
+        if (si < n) {
+          next = (int) (byStart[si] >>> 32);
+        }
+        if (ei < n) {
+          final int endNext = (int) (byEnd[ei] >>> 32);
+          if (endNext <= length && (next == -1 || endNext < next)) {
+            next = endNext;
+          }
+        }
+
+        if (zoneCount == starts.length) {
+          starts = Arrays.copyOf(starts, zoneCount * 2);
+          ends = Arrays.copyOf(ends, zoneCount * 2);
+          sets = Arrays.copyOf(sets, zoneCount * 2);
+        }
+
+        starts[zoneCount] = pos;
+        ends[zoneCount] = next == -1 ? length : next - 1;
+        sets[zoneCount] = interner.intern(active, activeSize);
+        zoneCount++;
+
+        pos = next;
+      }
+
+      return new StrandIndex(sb.strand, length,
+          Arrays.copyOf(starts, zoneCount), Arrays.copyOf(ends, zoneCount),
+          Arrays.copyOf(sets, zoneCount));
+    }
+  }
+
+  /**
+   * This class intern the sets of features of the zones, a set shared by
+   * several zones is only stored once.
+   */
+  private static final class SetInterner {
+
+    private final Map<SetKey, Integer> sets = new HashMap<>();
+    private int[] offsets = new int[16];
+    private int[] values = new int[16];
+    private int setCount;
+    private int valueCount;
+
+    /**
+     * Key of the map of the sets.
+     */
+    private static final class SetKey {
+
+      private final int[] values;
+      private final int hashCode;
+
+      @Override
+      public boolean equals(final Object o) {
+
+        return o instanceof SetKey
+            && Arrays.equals(this.values, ((SetKey) o).values);
+      }
+
+      @Override
+      public int hashCode() {
+
+        return this.hashCode;
+      }
+
+      SetKey(final int[] values) {
+
+        this.values = values;
+        this.hashCode = Arrays.hashCode(values);
+      }
+    }
+
+    /**
+     * Intern a set.
+     * @param set the values of the set
+     * @param len the number of values in the set
+     * @return the index of the set
+     */
+    int intern(final int[] set, final int len) {
+
+      if (len == 0) {
+        return 0;
+      }
+
+      final int[] sorted = Arrays.copyOf(set, len);
+      Arrays.sort(sorted);
+
+      final SetKey key = new SetKey(sorted);
+      final Integer index = this.sets.get(key);
+
+      if (index != null) {
+        return index;
+      }
+
+      if (this.setCount + 3 > this.offsets.length) {
+        this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+      }
+
+      while (this.valueCount + len > this.values.length) {
+        this.values = Arrays.copyOf(this.values, this.values.length * 2);
+      }
+
+      System.arraycopy(sorted, 0, this.values, this.valueCount, len);
+      this.valueCount += len;
+
+      final int result = ++this.setCount;
+      this.offsets[result + 1] = this.valueCount;
+      this.sets.put(key, result);
+
+      return result;
+    }
+
+    int[] getOffsets() {
+
+      return Arrays.copyOf(this.offsets, this.setCount + 2);
+    }
+
+    int[] getValues() {
+
+      return Arrays.copyOf(this.values, this.valueCount);
+    }
+
+    SetInterner() {
+
+      // The set 0 is the empty set
+      this.offsets[0] = 0;
+      this.offsets[1] = 0;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of features.
+   * @return the number of features
+   */
+  public int getFeatureCount() {
+
+    return this.featureIds.length;
+  }
+
+  /**
+   * Get the identifier of a feature.
+   * @param ordinal ordinal of the feature
+   * @return the identifier of the feature
+   */
+  public String getFeatureId(final int ordinal) {
+
+    return this.featureIds[ordinal];
+  }
+
+  /**
+   * Get the sorted list of the identifiers of the features.
+   * @return an unmodifiable list with the identifiers of the features
+   */
+  public List<String> getFeatureIds() {
+
+    return Collections.unmodifiableList(Arrays.asList(this.featureIds));
+  }
+
+  /**
+   * Get the ordinal of a feature.
+   * @param featureId identifier of the feature
+   * @return the ordinal of the feature or -1 if the feature does not exist
+   */
+  public int getFeatureOrdinal(final String featureId) {
+
+    if (featureId == null) {
+      return -1;
+    }
+
+    final int index = Arrays.binarySearch(this.featureIds, featureId);
+
+    return index < 0 ? -1 : index;
+  }
+
+  /**
+   * Test if the index contains a chromosome.
+   * @param chromosomeName name of the chromosome to test
+   * @return true if the index contains the chromosome
+   */
+  public boolean containsChromosome(final String chromosomeName) {
+
+    if (chromosomeName == null) {
+      return false;
+    }
+
+    return this.chromosomes.containsKey(chromosomeName);
+  }
+
+  /**
+   * Get the names of the chromosomes of the index.
+   * @return a set with the name of the chromosomes
+   */
+  public Set<String> getChromosomesNames() {
+
+    return Collections.unmodifiableSet(this.chromosomes.keySet());
+  }
+
+  /**
+   * Create a new FeatureSet object to use with the overlap queries of this
+   * index.
+   * @return a new FeatureSet object
+   */
+  public FeatureSet newFeatureSet() {
+
+    return new FeatureSet(this.featureIds.length);
+  }
+
+  //
+  // Query
+  //
+
+  /**
+   * Merge the features that overlap an interval with the content of a
+   * FeatureSet according to an overlap mode. This method does not allocate
+   * any object.
+   * @param chromosome chromosome of the interval
+   * @param start start of the interval
+   * @param end end of the interval
+   * @param strand the strand of the zones to keep or 0 to keep all the zones
+   * @param mode overlap mode
+   * @param result the FeatureSet object to update
+   * @return false if the chromosome is unknown
+   */
+  boolean overlap(final String chromosome, final int start, final int end,
+      final char strand, final OverlapMode mode, final FeatureSet result) {
+
+    final ChromosomeIndex chr = this.chromosomes.get(chromosome);
+
+    if (chr == null) {
+      return false;
+    }
+
+    final boolean plusFound = overlap(chr.plus, start, end, strand, mode,
+        result);
+    final boolean minusFound = overlap(chr.minus, start, end, strand, mode,
+        result);
+
+    // If no zone is found, add an empty set (HTSeq compatibility)
+    if (!plusFound && !minusFound) {
+      result.merge(EMPTY_SET, 0, 0, mode);
+    }
+
+    return true;
+  }
+
+  /**
+   * Merge the features of a strand that overlap an interval with the content
+   * of a FeatureSet.
+   * @param si the strand index
+   * @param start start of the interval
+   * @param end end of the interval
+   * @param strand the strand of the zones to keep or 0 to keep all the zones
+   * @param mode overlap mode
+   * @param result the FeatureSet object to update
+   * @return true if at least one zone has been found
+   */
+  private boolean overlap(final StrandIndex si, final int start,
+      final int end, final char strand, final OverlapMode mode,
+      final FeatureSet result) {
+
+    if (strand != 0 && si.strand != strand) {
+      return false;
+    }
+
+    final int from = si.findZone(start);
+
+    if (from == -1) {
+      return false;
+    }
+
+    final int indexEnd = si.findZone(end);
+    final int to = indexEnd == -1 ? si.getZoneCount() - 1 : indexEnd;
+
+    for (int i = from; i <= to; i++) {
+
+      final int set = si.sets[i];
+      result.merge(this.setValues, this.setOffsets[set],
+          this.setOffsets[set + 1], mode);
+    }
+
+    // The end of the interval is after the last zone
+    if (end > si.ends[to]) {
+      result.merge(EMPTY_SET, 0, 0, mode);
+    }
+
+    return true;
+  }
+
+  //
+  // Save and load
+  //
+
+  /**
+   * Save the index in a binary file. The file can be loaded with the load()
+   * method.
+   * @param outputFile output file
+   * @throws IOException if an error occurs while writing the file
+   */
+  public void save(final File outputFile) throws IOException {
+
+    if (outputFile == null) {
+      throw new NullPointerException("outputFile argument cannot be null");
+    }
+
+    try (final DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+
+      out.writeInt(MAGIC_NUMBER);
+      out.writeInt(FORMAT_VERSION);
+
+      // Features
+      out.writeInt(this.featureIds.length);
+      for (String featureId : this.featureIds) {
+        writeString(out, featureId);
+      }
+
+      // Interned sets
+      writeInts(out, this.setOffsets);
+      writeInts(out, this.setValues);
+
+      // Chromosomes
+      final List<String> names = new ArrayList<>(this.chromosomes.keySet());
+      Collections.sort(names);
+
+      out.writeInt(names.size());
+      for (String name : names) {
+
+        final ChromosomeIndex chr = this.chromosomes.get(name);
+        writeString(out, name);
+        writeStrand(out, chr.plus);
+        writeStrand(out, chr.minus);
+      }
+    }
+  }
+
+  /**
+   * Load an index saved with the save() method. The file is memory mapped in
+   * read only mode and the arrays of the index are bulk copied from the
+   * mapping.
+   * @param inputFile input file
+   * @return a new FeatureIndex object
+   * @throws IOException if an error occurs while reading the file or if the
+   *           file is not a valid feature index file
+   */
+  public static FeatureIndex load(final File inputFile) throws IOException {
+
+    if (inputFile == null) {
+      throw new NullPointerException("inputFile argument cannot be null");
+    }
+
+    try (final FileChannel channel =
+        new RandomAccessFile(inputFile, "r").getChannel()) {
+
+      final ByteBuffer buffer =
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+      try {
+
+        if (buffer.getInt() != MAGIC_NUMBER) {
+          throw new IOException(
+              "Invalid feature index file: " + inputFile.getAbsolutePath());
+        }
+
+        final int version = buffer.getInt();
+        if (version != FORMAT_VERSION) {
+          throw new IOException("Unsupported feature index file version ("
+              + version + "): " + inputFile.getAbsolutePath());
+        }
+
+        // Features
+        final String[] featureIds = new String[buffer.getInt()];
+        for (int i = 0; i < featureIds.length; i++) {
+          featureIds[i] = readString(buffer);
+        }
+
+        // Interned sets
+        final int[] setOffsets = readInts(buffer);
+        final int[] setValues = readInts(buffer);
+
+        // Chromosomes
+        final int chromosomeCount = buffer.getInt();
+        final Map<String, ChromosomeIndex> chromosomes = new HashMap<>();
+
+        for (int i = 0; i < chromosomeCount; i++) {
+
+          final String name = readString(buffer);
+          final StrandIndex plus = readStrand(buffer);
+          final StrandIndex minus = readStrand(buffer);
+          chromosomes.put(name, new ChromosomeIndex(plus, minus));
+        }
+
+        return new FeatureIndex(featureIds, setOffsets, setValues,
+            chromosomes);
+
+      } catch (BufferUnderflowException | NegativeArraySizeException e) {
+        throw new IOException(
+            "Truncated feature index file: " + inputFile.getAbsolutePath());
+      }
+    }
+  }
+
+  private static void writeString(final DataOutputStream out,
+      final String s) throws IOException {
+
+    final byte[] bytes = s.getBytes(Globals.DEFAULT_CHARSET);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(final ByteBuffer buffer) {
+
+    final byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+
+    return new String(bytes, Globals.DEFAULT_CHARSET);
+  }
+
+  private static void writeInts(final DataOutputStream out, final int[] array)
+      throws IOException {
+
+    out.writeInt(array.length);
+    for (int value : array) {
+      out.writeInt(value);
+    }
+  }
+
+  private static int[] readInts(final ByteBuffer buffer) {
+
+    final int[] result = new int[buffer.getInt()];
+    buffer.asIntBuffer().get(result);
+    buffer.position(buffer.position() + result.length * 4);
+
+    return result;
+  }
+
+  private static void writeStrand(final DataOutputStream out,
+      final StrandIndex si) throws IOException {
+
+    out.writeChar(si.strand);
+    out.writeInt(si.length);
+    writeInts(out, si.starts);
+    writeInts(out, si.ends);
+    writeInts(out, si.sets);
+  }
+
+  private static StrandIndex readStrand(final ByteBuffer buffer) {
+
+    final char strand = buffer.getChar();
+    final int length = buffer.getInt();
+    final int[] starts = readInts(buffer);
+    final int[] ends = readInts(buffer);
+    final int[] sets = readInts(buffer);
+
+    return new StrandIndex(strand, length, starts, ends, sets);
+  }
+
+  @Override
+  public String toString() {
+
+    return this.getClass().getSimpleName()
+        + "{features=" + this.featureIds.length + ", chromosomes="
+        + this.chromosomes.size() + ", sets=" + (this.setOffsets.length - 1)
+        + "}";
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param featureIds sorted identifiers of the features
+   * @param setOffsets offsets of the interned sets
+   * @param setValues values of the interned sets
+   * @param chromosomes indexes of the chromosomes
+   */
+  private FeatureIndex(final String[] featureIds, final int[] setOffsets,
+      final int[] setValues, final Map<String, ChromosomeIndex> chromosomes) {
+
+    this.featureIds = featureIds;
+    this.setOffsets = setOffsets;
+    this.setValues = setValues;
+    this.chromosomes = chromosomes;
+  }
+
+}
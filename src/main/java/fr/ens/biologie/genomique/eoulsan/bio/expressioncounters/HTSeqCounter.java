@@ -24,6 +24,9 @@
 
 package fr.ens.biologie.genomique.eoulsan.bio.expressioncounters;
 
+import static com.google.common.base.Strings.nullToEmpty;
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
 import htsjdk.samtools.SAMRecord;
 import htsjdk.samtools.SAMRecordIterator;
 import htsjdk.samtools.SamInputResource;
@@ -35,17 +38,26 @@ import java.io.InputStream;
 import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
+import fr.ens.biologie.genomique.eoulsan.Settings;
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
-import fr.ens.biologie.genomique.eoulsan.bio.GenomicArray;
 import fr.ens.biologie.genomique.eoulsan.bio.GenomicInterval;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.data.storages.FeatureIndexStorage;
+import fr.ens.biologie.genomique.eoulsan.data.storages.SimpleFeatureIndexStorage;
 import fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 import fr.ens.biologie.genomique.eoulsan.util.Reporter;
@@ -60,6 +72,10 @@ public class HTSeqCounter extends AbstractExpressionCounter {
   /** Counter name. */
   public static final String COUNTER_NAME = "htseq-count";
 
+  /** Empty batch used to signal the end of the alignments to the workers. */
+  private static final List<SAMRecord> END_OF_ALIGNMENTS =
+      Collections.emptyList();
+
   @Override
   public String getCounterName() {
 
@@ -77,8 +93,124 @@ public class HTSeqCounter extends AbstractExpressionCounter {
         expressionFile, getStranded(), getOverlapMode(),
         isRemoveAmbiguousCases(), getGenomicType(), getAttributeId(),
         isSplitAttributeValues(), false, 0, null, genomeDescFile, reporter,
-        counterGroup);
+        counterGroup, getFeatureIndexStorage(), getThreadsNumber());
+
+  }
+
+  /**
+   * Get the storage of the feature indexes. If no storage path has been set in
+   * the settings, the indexes are stored with the genome descriptions. The
+   * temporary directory is not used as the indexes would never be removed.
+   * @return a FeatureIndexStorage object or null if no storage can be used
+   */
+  private FeatureIndexStorage getFeatureIndexStorage() {
+
+    final Settings settings = EoulsanRuntime.getSettings();
+    String path = settings.getFeatureIndexStoragePath();
+
+    if (path == null) {
+      path = settings.getGenomeDescStoragePath();
+    }
+
+    if (path == null) {
+      return null;
+    }
 
+    return SimpleFeatureIndexStorage.getInstance(new DataFile(path));
+  }
+
+  /**
+   * Create the feature index or load it from the feature index storage if it
+   * has been already built.
+   * @param annotationFile annotation file
+   * @param gtfFormat true if the the annotation file is in GTF format
+   * @param featureType annotation feature type to consider
+   * @param stranded strand to consider
+   * @param attributeId annotation attribute id to consider
+   * @param splitAttributeValues split attribute values
+   * @param genomeDescFile genome description file
+   * @param storage feature index storage, can be null
+   * @return a FeatureIndex object
+   * @throws EoulsanException if no feature has been found
+   * @throws IOException if an error occurs while reading the annotation
+   * @throws BadBioEntryException if an entry of the annotation is invalid
+   */
+  static FeatureIndex createFeatureIndex(final DataFile annotationFile,
+      final boolean gtfFormat, final String featureType,
+      final StrandUsage stranded, final String attributeId,
+      final boolean splitAttributeValues, final DataFile genomeDescFile,
+      final FeatureIndexStorage storage)
+      throws EoulsanException, IOException, BadBioEntryException {
+
+    final GenomeDescription genomeDescription =
+        GenomeDescription.load(genomeDescFile.open());
+
+    final Map<String, String> description = new LinkedHashMap<>();
+    description.put("annotation.gtf", Boolean.toString(gtfFormat));
+    description.put("feature.type", nullToEmpty(featureType));
+    description.put("attribute.id", nullToEmpty(attributeId));
+    description.put("stranded", stranded.getName());
+    description.put("split.attribute.values",
+        Boolean.toString(splitAttributeValues));
+    description.put("genome.md5sum",
+        nullToEmpty(genomeDescription.getMD5Sum()));
+    description.put("genome.sequences",
+        Integer.toString(genomeDescription.getSequenceCount()));
+
+    // The MD5 sum of the annotation is computed once for the lookup and the
+    // storage of the index
+    final boolean useStorage =
+        storage != null && addAnnotationMD5Sum(description, annotationFile);
+
+    // Get the index from the storage
+    if (useStorage) {
+      final FeatureIndex result = storage.get(annotationFile, description);
+      if (result != null) {
+        return result;
+      }
+    }
+
+    final FeatureIndex.Builder builder = new FeatureIndex.Builder();
+    builder.addChromosomes(genomeDescription);
+
+    // read and store in 'features' the annotation file
+    HTSeqUtils.storeAnnotation(builder, annotationFile.open(), gtfFormat,
+        featureType, stranded, attributeId, splitAttributeValues);
+
+    if (builder.getFeatureCount() == 0) {
+      throw new EoulsanException(
+          "Warning: No features of type '" + featureType + "' found.\n");
+    }
+
+    final FeatureIndex result = builder.build();
+
+    // Save the index in the storage
+    if (useStorage) {
+      storage.put(annotationFile, description, result);
+    }
+
+    return result;
+  }
+
+  /**
+   * Add the MD5 sum of an annotation file to the description of a feature
+   * index.
+   * @param description description of the feature index
+   * @param annotationFile annotation file
+   * @return true if the MD5 sum has been computed
+   */
+  private static boolean addAnnotationMD5Sum(
+      final Map<String, String> description, final DataFile annotationFile) {
+
+    try {
+      description.put("annotation.md5sum",
+          FileUtils.computeMD5Sum(annotationFile.rawOpen()));
+      return true;
+    } catch (IOException e) {
+      getLogger().warning(
+          "Failed to create checksum for annotation: " + e.getMessage());
+      return false;
+    }
   }
 
   private static boolean isPairedData(final InputStream is) {
@@ -119,6 +251,8 @@ public class HTSeqCounter extends AbstractExpressionCounter {
    *          'XF').
    * @param reporter Reporter object.
    * @param counterGroup counter group for the Reporter object.
+   * @param storage feature index storage, can be null
+   * @param threads number of threads to use for counting
    * @throws EoulsanException
    * @throws IOException
    * @throws BadBioEntryException
@@ -131,197 +265,511 @@ public class HTSeqCounter extends AbstractExpressionCounter {
       final boolean splitAttributeValues, final boolean quiet,
       final int minAverageQual, final DataFile samOutFile,
       final DataFile genomeDescFile, final Reporter reporter,
-      final String counterGroup)
+      final String counterGroup, final FeatureIndexStorage storage,
+      final int threads)
       throws EoulsanException, IOException, BadBioEntryException {
 
-    final GenomicArray<String> features =
-        new GenomicArray<>(GenomeDescription.load(genomeDescFile.open()));
+    // read and store in 'features' the annotation file
+    final FeatureIndex features = createFeatureIndex(annotationFile, gtfFormat,
+        featureType, stranded, attributeId, splitAttributeValues,
+        genomeDescFile, storage);
 
-    final Map<String, Integer> counts = new HashMap<>();
+    // paired-end mode ?
+    final boolean pairedEnd = isPairedData(samFile.open());
 
-    final Writer writer = FileUtils.createBufferedWriter(outFile.create());
+    final AlignmentCounter result;
 
-    boolean pairedEnd = false;
+    final SamReader inputSam = SamReaderFactory.makeDefault()
+        .open(SamInputResource.of(samFile.open()));
 
-    // read and store in 'features' the annotation file
-    HTSeqUtils.storeAnnotation(features, annotationFile.open(), gtfFormat,
-        featureType, stranded, attributeId, splitAttributeValues, counts);
+    try {
+      result = countAlignments(inputSam, pairedEnd, features, stranded,
+          overlapMode, removeAmbiguousCases, minAverageQual, threads);
+    } finally {
+      inputSam.close();
+    }
 
-    if (counts.size() == 0) {
-      writer.close();
-      throw new EoulsanException(
-          "Warning: No features of type '" + featureType + "' found.\n");
+    // Write results, the features of the index are already sorted
+    final Writer writer = FileUtils.createBufferedWriter(outFile.create());
+    writer.write("Id\tCount\n");
+    for (int i = 0; i < result.counts.length; i++) {
+      writer.write(features.getFeatureId(i) + "\t" + result.counts[i] + "\n");
     }
+    writer.close();
 
-    List<GenomicInterval> ivSeq = new ArrayList<>();
+    reporter.incrCounter(counterGroup,
+        ExpressionCounters.TOTAL_ALIGNMENTS_COUNTER.counterName(),
+        result.alignments);
+    reporter.incrCounter(counterGroup,
+        ExpressionCounters.EMPTY_ALIGNMENTS_COUNTER.counterName(),
+        result.empty);
+    reporter.incrCounter(counterGroup,
+        ExpressionCounters.AMBIGUOUS_ALIGNMENTS_COUNTER.counterName(),
+        result.ambiguous);
+    reporter.incrCounter(counterGroup,
+        ExpressionCounters.LOW_QUAL_ALIGNMENTS_COUNTER.counterName(),
+        result.lowqual);
+    reporter.incrCounter(counterGroup,
+        ExpressionCounters.NOT_ALIGNED_ALIGNMENTS_COUNTER.counterName(),
+        result.notaligned);
+    reporter.incrCounter(counterGroup,
+        ExpressionCounters.NOT_UNIQUE_ALIGNMENTS_COUNTER.counterName(),
+        result.nonunique);
 
-    final SamReader inputSam = SamReaderFactory.makeDefault()
-        .open(SamInputResource.of(samFile.open()));
+    reporter.incrCounter(counterGroup,
+        ExpressionCounters.ELIMINATED_READS_COUNTER.counterName(),
+        result.empty
+            + result.ambiguous + result.lowqual + result.notaligned
+            + result.nonunique);
+  }
 
-    // paired-end mode ?
-    pairedEnd = isPairedData(samFile.open());
+  /**
+   * Count the alignments of a SAM file. When more than one thread is used, the
+   * SAM file is decoded by the current thread and the batches of alignments
+   * are processed by the worker threads. The counts of all the workers are
+   * merged at the end.
+   * @param inputSam SAM reader
+   * @param pairedEnd true if the data are paired-end
+   * @param features feature index
+   * @param stranded strand to consider
+   * @param overlapMode overlap mode to consider
+   * @param removeAmbiguousCases if true : ambiguous cases will be removed
+   * @param minAverageQual minimum value for alignment quality
+   * @param threads number of threads to use for counting
+   * @return an AlignmentCounter object with the counts
+   * @throws EoulsanException if an error occurs while counting
+   */
+  private static AlignmentCounter countAlignments(final SamReader inputSam,
+      final boolean pairedEnd, final FeatureIndex features,
+      final StrandUsage stranded, final OverlapMode overlapMode,
+      final boolean removeAmbiguousCases, final int minAverageQual,
+      final int threads) throws EoulsanException {
 
-    int empty = 0;
-    int ambiguous = 0;
-    int notaligned = 0;
-    int lowqual = 0;
-    int nonunique = 0;
-    SAMRecord sam1 = null, sam2 = null;
+    final AlignmentCounter result = new AlignmentCounter(features, stranded,
+        overlapMode, removeAmbiguousCases, minAverageQual);
 
-    // Read the SAM file
-    for (final SAMRecord samRecord : inputSam) {
+    // Single thread mode
+    if (threads <= 1) {
 
-      reporter.incrCounter(counterGroup,
-          ExpressionCounters.TOTAL_ALIGNMENTS_COUNTER.counterName(), 1);
+      final AlignmentBatcher batcher = new AlignmentBatcher(pairedEnd) {
 
-      // single-end mode
-      if (!pairedEnd) {
+        @Override
+        protected void process(final List<SAMRecord> batch)
+            throws EoulsanException {
+          result.count(batch, pairedEnd);
+        }
+      };
 
-        ivSeq.clear();
+      try {
+        batcher.readAll(inputSam);
+      } catch (InterruptedException e) {
+        throw new EoulsanException(e);
+      }
+      result.alignments = batcher.alignments;
 
-        // unmapped read
-        if (samRecord.getReadUnmappedFlag()) {
-          notaligned++;
-          continue;
-        }
+      return result;
+    }
 
-        // multiple alignment
-        if (samRecord.getAttribute("NH") != null
-            && samRecord.getIntegerAttribute("NH") > 1) {
-          nonunique++;
-          continue;
-        }
+    getLogger().fine("Count alignments with " + threads + " threads");
 
-        // too low quality
-        if (samRecord.getMappingQuality() < minAverageQual) {
-          lowqual++;
-          continue;
-        }
+    final BlockingQueue<List<SAMRecord>> queue =
+        new ArrayBlockingQueue<>(2 * threads);
+    final ExecutorService executor = Executors.newFixedThreadPool(threads);
+    final List<Future<AlignmentCounter>> futures = new ArrayList<>();
 
-        ivSeq.addAll(HTSeqUtils.addIntervals(samRecord, stranded));
+    final AlignmentBatcher batcher = new AlignmentBatcher(pairedEnd) {
 
+      @Override
+      protected void process(final List<SAMRecord> batch)
+          throws InterruptedException {
+        queue.put(batch);
       }
+    };
 
-      // paired-end mode
-      else {
+    try {
 
-        if (sam1 != null && sam2 != null) {
-          sam1 = null;
-          sam2 = null;
-          ivSeq.clear();
-        }
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(new CountingWorker(queue,
+            new AlignmentCounter(features, stranded, overlapMode,
+                removeAmbiguousCases, minAverageQual),
+            pairedEnd)));
+      }
 
-        if (samRecord.getFirstOfPairFlag()) {
-          sam1 = samRecord;
-        } else {
-          sam2 = samRecord;
-        }
+      try {
+        batcher.readAll(inputSam);
+      } finally {
 
-        if (sam1 == null || sam2 == null) {
-          continue;
+        // Signal the end of the alignments to all the workers
+        for (int i = 0; i < threads; i++) {
+          queue.put(END_OF_ALIGNMENTS);
         }
+      }
 
-        if (!sam1.getReadName().equals(sam2.getReadName())) {
-          sam1 = sam2;
-          sam2 = null;
-          continue;
-        }
+      // Merge the results of the workers
+      result.alignments = batcher.alignments;
+      for (Future<AlignmentCounter> future : futures) {
+        result.add(future.get());
+      }
 
-        if (!sam1.getReadUnmappedFlag()) {
-          ivSeq.addAll(HTSeqUtils.addIntervals(sam1, stranded));
-        }
+      return result;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new EoulsanException(e);
+    } catch (ExecutionException e) {
+
+      final Throwable cause = e.getCause();
+
+      if (cause instanceof EoulsanException) {
+        throw (EoulsanException) cause;
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new EoulsanException(cause);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  //
+  // Inner classes
+  //
+
+  /**
+   * This class read the alignments and group them in batches. In paired-end
+   * mode, the mates are matched here so a batch only contains complete pairs,
+   * stored as two consecutive records.
+   */
+  private abstract static class AlignmentBatcher {
+
+    private static final int BATCH_SIZE = 10000;
+
+    private final boolean pairedEnd;
+    private int alignments;
+
+    /**
+     * Process a batch of alignments.
+     * @param batch the batch to process
+     * @throws EoulsanException if an error occurs while processing the batch
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    protected abstract void process(List<SAMRecord> batch)
+        throws EoulsanException, InterruptedException;
+
+    /**
+     * Read all the alignments of a SAM file.
+     * @param inputSam SAM reader
+     * @throws EoulsanException if an error occurs while processing a batch
+     * @throws InterruptedException if the thread has been interrupted
+     */
+    void readAll(final SamReader inputSam)
+        throws EoulsanException, InterruptedException {
 
-        if (!sam2.getReadUnmappedFlag()) {
-          ivSeq.addAll(HTSeqUtils.addIntervals(sam2, stranded));
+      List<SAMRecord> batch = new ArrayList<>(BATCH_SIZE);
+      SAMRecord sam1 = null, sam2 = null;
+
+      for (final SAMRecord samRecord : inputSam) {
+
+        this.alignments++;
+
+        // single-end mode
+        if (!this.pairedEnd) {
+          batch.add(samRecord);
         }
 
-        // unmapped read
-        if (sam1.getReadUnmappedFlag() && sam2.getReadUnmappedFlag()) {
-          notaligned++;
-          continue;
+        // paired-end mode
+        else {
+
+          if (sam1 != null && sam2 != null) {
+            sam1 = null;
+            sam2 = null;
+          }
+
+          if (samRecord.getFirstOfPairFlag()) {
+            sam1 = samRecord;
+          } else {
+            sam2 = samRecord;
+          }
+
+          if (sam1 == null || sam2 == null) {
+            continue;
+          }
+
+          if (!sam1.getReadName().equals(sam2.getReadName())) {
+            sam1 = sam2;
+            sam2 = null;
+            continue;
+          }
+
+          batch.add(sam1);
+          batch.add(sam2);
         }
 
-        // multiple alignment
-        if ((sam1.getAttribute("NH") != null
-            && sam1.getIntegerAttribute("NH") > 1)
-            || (sam2.getAttribute("NH") != null
-                && sam2.getIntegerAttribute("NH") > 1)) {
-          nonunique++;
-          continue;
+        if (batch.size() >= BATCH_SIZE) {
+          process(batch);
+          batch = new ArrayList<>(BATCH_SIZE);
         }
+      }
+
+      if (!batch.isEmpty()) {
+        process(batch);
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param pairedEnd true if the data are paired-end
+     */
+    AlignmentBatcher(final boolean pairedEnd) {
 
-        // too low quality
-        if (sam1.getMappingQuality() < minAverageQual
-            || sam2.getMappingQuality() < minAverageQual) {
-          lowqual++;
-          continue;
+      this.pairedEnd = pairedEnd;
+    }
+  }
+
+  /**
+   * This class counts the alignments of batches. Each counting thread has its
+   * own instance.
+   */
+  private static final class AlignmentCounter {
+
+    private final FeatureIndex features;
+    private final StrandUsage stranded;
+    private final OverlapMode overlapMode;
+    private final boolean removeAmbiguousCases;
+    private final int minAverageQual;
+
+    private final int[] counts;
+    private final FeatureIndex.FeatureSet fs;
+    private final List<GenomicInterval> ivSeq = new ArrayList<>();
+
+    private int alignments;
+    private int empty;
+    private int ambiguous;
+    private int notaligned;
+    private int lowqual;
+    private int nonunique;
+
+    /**
+     * Count a batch of alignments.
+     * @param batch the batch to count
+     * @param pairedEnd true if the batch contains pairs of alignments
+     * @throws EoulsanException if an alignment is on an unknown chromosome
+     */
+    void count(final List<SAMRecord> batch, final boolean pairedEnd)
+        throws EoulsanException {
+
+      if (pairedEnd) {
+        for (int i = 0; i < batch.size(); i += 2) {
+          countPair(batch.get(i), batch.get(i + 1));
+        }
+      } else {
+        for (SAMRecord samRecord : batch) {
+          count(samRecord);
         }
+      }
+    }
+
+    private void count(final SAMRecord samRecord) throws EoulsanException {
+
+      this.ivSeq.clear();
+
+      // unmapped read
+      if (samRecord.getReadUnmappedFlag()) {
+        this.notaligned++;
+        return;
+      }
+
+      // multiple alignment
+      if (samRecord.getAttribute("NH") != null
+          && samRecord.getIntegerAttribute("NH") > 1) {
+        this.nonunique++;
+        return;
+      }
+
+      // too low quality
+      if (samRecord.getMappingQuality() < this.minAverageQual) {
+        this.lowqual++;
+        return;
+      }
+
+      this.ivSeq.addAll(HTSeqUtils.addIntervals(samRecord, this.stranded));
 
+      countFeatures();
+    }
+
+    private void countPair(final SAMRecord sam1, final SAMRecord sam2)
+        throws EoulsanException {
+
+      this.ivSeq.clear();
+
+      if (!sam1.getReadUnmappedFlag()) {
+        this.ivSeq.addAll(HTSeqUtils.addIntervals(sam1, this.stranded));
+      }
+
+      if (!sam2.getReadUnmappedFlag()) {
+        this.ivSeq.addAll(HTSeqUtils.addIntervals(sam2, this.stranded));
       }
 
-      Set<String> fs = null;
+      // unmapped read
+      if (sam1.getReadUnmappedFlag() && sam2.getReadUnmappedFlag()) {
+        this.notaligned++;
+        return;
+      }
 
-      fs = HTSeqUtils.featuresOverlapped(ivSeq, features, overlapMode,
-          stranded);
+      // multiple alignment
+      if ((sam1.getAttribute("NH") != null
+          && sam1.getIntegerAttribute("NH") > 1)
+          || (sam2.getAttribute("NH") != null
+              && sam2.getIntegerAttribute("NH") > 1)) {
+        this.nonunique++;
+        return;
+      }
 
-      if (fs == null) {
-        fs = Collections.emptySet();
+      // too low quality
+      if (sam1.getMappingQuality() < this.minAverageQual
+          || sam2.getMappingQuality() < this.minAverageQual) {
+        this.lowqual++;
+        return;
       }
 
+      countFeatures();
+    }
+
+    private void countFeatures() throws EoulsanException {
+
+      final FeatureIndex.FeatureSet fs = this.fs;
+
+      HTSeqUtils.featuresOverlapped(this.ivSeq, this.features,
+          this.overlapMode, this.stranded, fs);
+
       switch (fs.size()) {
       case 0:
-        empty++;
+        this.empty++;
         break;
 
       case 1:
-        final String id1 = fs.iterator().next();
-        counts.put(id1, counts.get(id1) + 1);
+        this.counts[fs.get(0)]++;
         break;
 
       default:
 
-        if (removeAmbiguousCases) {
-          ambiguous++;
+        if (this.removeAmbiguousCases) {
+          this.ambiguous++;
         } else {
-          for (String id2 : fs) {
-            counts.put(id2, counts.get(id2) + 1);
+          for (int i = 0; i < fs.size(); i++) {
+            this.counts[fs.get(i)]++;
           }
         }
         break;
       }
-
     }
 
-    inputSam.close();
+    /**
+     * Add the counts of another counter to this counter.
+     * @param counter the counter to add
+     */
+    void add(final AlignmentCounter counter) {
 
-    // Write results
-    final List<String> keysSorted = new ArrayList<>(counts.keySet());
-    Collections.sort(keysSorted);
+      for (int i = 0; i < this.counts.length; i++) {
+        this.counts[i] += counter.counts[i];
+      }
 
-    writer.write("Id\tCount\n");
-    for (String key : keysSorted) {
-      writer.write(key + "\t" + counts.get(key) + "\n");
+      this.empty += counter.empty;
+      this.ambiguous += counter.ambiguous;
+      this.notaligned += counter.notaligned;
+      this.lowqual += counter.lowqual;
+      this.nonunique += counter.nonunique;
     }
 
-    reporter.incrCounter(counterGroup,
-        ExpressionCounters.EMPTY_ALIGNMENTS_COUNTER.counterName(), empty);
-    reporter.incrCounter(counterGroup,
-        ExpressionCounters.AMBIGUOUS_ALIGNMENTS_COUNTER.counterName(),
-        ambiguous);
-    reporter.incrCounter(counterGroup,
-        ExpressionCounters.LOW_QUAL_ALIGNMENTS_COUNTER.counterName(), lowqual);
-    reporter.incrCounter(counterGroup,
-        ExpressionCounters.NOT_ALIGNED_ALIGNMENTS_COUNTER.counterName(),
-        notaligned);
-    reporter.incrCounter(counterGroup,
-        ExpressionCounters.NOT_UNIQUE_ALIGNMENTS_COUNTER.counterName(),
-        nonunique);
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param features feature index
+     * @param stranded strand to consider
+     * @param overlapMode overlap mode to consider
+     * @param removeAmbiguousCases if true : ambiguous cases will be removed
+     * @param minAverageQual minimum value for alignment quality
+     */
+    AlignmentCounter(final FeatureIndex features, final StrandUsage stranded,
+        final OverlapMode overlapMode, final boolean removeAmbiguousCases,
+        final int minAverageQual) {
+
+      this.features = features;
+      this.stranded = stranded;
+      this.overlapMode = overlapMode;
+      this.removeAmbiguousCases = removeAmbiguousCases;
+      this.minAverageQual = minAverageQual;
+      this.counts = new int[features.getFeatureCount()];
+      this.fs = features.newFeatureSet();
+    }
+  }
 
-    reporter.incrCounter(counterGroup,
-        ExpressionCounters.ELIMINATED_READS_COUNTER.counterName(),
-        empty + ambiguous + lowqual + notaligned + nonunique);
+  /**
+   * This class define a counting worker that take the batches of alignments
+   * from a queue until the end of the alignments.
+   */
+  private static final class CountingWorker
+      implements Callable<AlignmentCounter> {
 
-    writer.close();
+    private final BlockingQueue<List<SAMRecord>> queue;
+    private final AlignmentCounter counter;
+    private final boolean pairedEnd;
+
+    @Override
+    public AlignmentCounter call() throws Exception {
+
+      Exception exception = null;
+
+      while (true) {
+
+        final List<SAMRecord> batch = this.queue.take();
+
+        if (batch == END_OF_ALIGNMENTS) {
+          break;
+        }
+
+        // After an error, the queue is still consumed to not block the reader
+        if (exception == null) {
+          try {
+            this.counter.count(batch, this.pairedEnd);
+          } catch (EoulsanException | RuntimeException e) {
+            exception = e;
+          }
+        }
+      }
+
+      if (exception != null) {
+        throw exception;
+      }
+
+      return this.counter;
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param queue queue of the batches
+     * @param counter counter to use
+     * @param pairedEnd true if the data are paired-end
+     */
+    CountingWorker(final BlockingQueue<List<SAMRecord>> queue,
+        final AlignmentCounter counter, final boolean pairedEnd) {
+
+      this.queue = queue;
+      this.counter = counter;
+      this.pairedEnd = pairedEnd;
+    }
   }
 
 }
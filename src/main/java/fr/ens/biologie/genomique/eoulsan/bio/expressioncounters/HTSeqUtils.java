@@ -62,6 +62,34 @@ import htsjdk.samtools.SAMRecord;
  */
 public class HTSeqUtils {
 
+  /**
+   * This interface define the destination of the features read by the
+   * storeAnnotation() methods.
+   */
+  private interface FeatureStore {
+
+    /**
+     * Add an entry.
+     * @param interval genomic interval of the feature
+     * @param featureId identifier of the feature
+     */
+    void addEntry(GenomicInterval interval, String featureId);
+  }
+
+  /**
+   * Store the features of an annotation in a GenomicArray.
+   * @param features the genomic array to fill
+   * @param annotationIs annotation input stream
+   * @param gtfFormat true if the annotation is in GTF format
+   * @param featureType feature type to use
+   * @param stranded strand mode
+   * @param attributeId attribute id
+   * @param splitAttributeValues split attribute values
+   * @param counts a map that will contains the identifiers of the features
+   * @throws IOException if an error occurs while reading the annotation
+   * @throws EoulsanException if an error occurs with the features
+   * @throws BadBioEntryException if an entry of the annotation is invalid
+   */
   public static void storeAnnotation(final GenomicArray<String> features,
       final InputStream annotationIs, final boolean gtfFormat,
       final String featureType, final StrandUsage stranded,
@@ -69,6 +97,56 @@ public class HTSeqUtils {
       final Map<String, Integer> counts)
       throws IOException, EoulsanException, BadBioEntryException {
 
+    storeAnnotation(new FeatureStore() {
+
+      @Override
+      public void addEntry(final GenomicInterval interval,
+          final String featureId) {
+
+        features.addEntry(interval, featureId);
+        counts.put(featureId, 0);
+      }
+    }, annotationIs, gtfFormat, featureType, stranded, attributeId,
+        splitAttributeValues);
+  }
+
+  /**
+   * Store the features of an annotation in a FeatureIndex builder.
+   * @param builder the feature index builder to fill
+   * @param annotationIs annotation input stream
+   * @param gtfFormat true if the annotation is in GTF format
+   * @param featureType feature type to use
+   * @param stranded strand mode
+   * @param attributeId attribute id
+   * @param splitAttributeValues split attribute values
+   * @throws IOException if an error occurs while reading the annotation
+   * @throws EoulsanException if an error occurs with the features
+   * @throws BadBioEntryException if an entry of the annotation is invalid
+   */
+  public static void storeAnnotation(final FeatureIndex.Builder builder,
+      final InputStream annotationIs, final boolean gtfFormat,
+      final String featureType, final StrandUsage stranded,
+      final String attributeId, final boolean splitAttributeValues)
+      throws IOException, EoulsanException, BadBioEntryException {
+
+    storeAnnotation(new FeatureStore() {
+
+      @Override
+      public void addEntry(final GenomicInterval interval,
+          final String featureId) {
+
+        builder.addEntry(interval, featureId);
+      }
+    }, annotationIs, gtfFormat, featureType, stranded, attributeId,
+        splitAttributeValues);
+  }
+
+  private static void storeAnnotation(final FeatureStore features,
+      final InputStream annotationIs, final boolean gtfFormat,
+      final String featureType, final StrandUsage stranded,
+      final String attributeId, final boolean splitAttributeValues)
+      throws IOException, EoulsanException, BadBioEntryException {
+
     final Splitter splitter = Splitter.on(',').omitEmptyStrings().trimResults();
 
     // Splitter for parents string
@@ -112,7 +190,6 @@ public class HTSeqUtils {
           for (String f : featureIds) {
             features.addEntry(
                 new GenomicInterval(gff, stranded.isSaveStrandInfo()), f);
-            counts.put(f, 0);
           }
         }
       }
@@ -327,6 +404,44 @@ public class HTSeqUtils {
     return fs;
   }
 
+  /**
+   * Determine features that overlap genomic intervals using a FeatureIndex.
+   * Unlike the GenomicArray version of this method, no object is allocated
+   * during the query.
+   * @param ivList the list of genomic intervals.
+   * @param features the feature index.
+   * @param mode the overlap mode.
+   * @param stranded strand to consider.
+   * @param result the set of feature ordinals to fill
+   * @throws EoulsanException if a chromosome is unknown or the overlap mode
+   *           is invalid
+   */
+  public static void featuresOverlapped(final List<GenomicInterval> ivList,
+      final FeatureIndex features, final OverlapMode mode,
+      final StrandUsage stranded, final FeatureIndex.FeatureSet result)
+      throws EoulsanException {
+
+    if (mode != UNION
+        && mode != INTERSECTION_NONEMPTY && mode != INTERSECTION_STRICT) {
+      throw new EoulsanException("Error : illegal overlap mode.");
+    }
+
+    result.clear();
+
+    final boolean filterStrand = stranded == YES || stranded == REVERSE;
+
+    for (int i = 0; i < ivList.size(); i++) {
+
+      final GenomicInterval iv = ivList.get(i);
+
+      if (!features.overlap(iv.getChromosome(), iv.getStart(), iv.getEnd(),
+          filterStrand ? iv.getStrand() : 0, mode, result)) {
+        throw new EoulsanException(
+            "Unknown chromosome: " + iv.getChromosome());
+      }
+    }
+  }
+
   /**
    * Filter the output of GenomicArray.getEntries() by keeping only features on
    * a strand
@@ -0,0 +1,675 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.io;
+
+import static fr.ens.biologie.genomique.eoulsan.bio.io.BioCharsets.FASTQ_CHARSET;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.FastqFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+
+/**
+ * This class implements a Fastq reader that parses the entries directly from
+ * the bytes of a buffer. Files are memory-mapped by windows and streams (e.g.
+ * compressed files) are read by large chunks. The current entry is available
+ * as a reusable {@link Entry} object, the conversion to {@link ReadSequence}
+ * is only done by the {@link #next()} method.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FastqBufferReader implements ReadSequenceReader {
+
+  private static final int DEFAULT_BUFFER_SIZE = 4 * 1024 * 1024;
+  private static final long DEFAULT_MAP_SIZE = 64 * 1024 * 1024;
+
+  // Result of the parsing of an entry
+  private static final int ENTRY_FOUND = 0;
+  private static final int NO_ENTRY = 1;
+  private static final int NEED_MORE_DATA = 2;
+
+  // Source of the data, a stream or a file channel
+  private final InputStream is;
+  private final FileChannel channel;
+  private final long fileSize;
+  private long mapPosition;
+  private long mapSize;
+  private byte[] array;
+
+  private ByteBuffer buffer;
+  private int pos;
+  private int limit;
+  private boolean eof;
+
+  private final Entry entry = new Entry();
+  private int count = 0;
+  private int lineCount = 0;
+
+  private boolean end = false;
+  private boolean nextCallDone = true;
+  protected IOException ioException;
+  protected BadBioEntryException bbeException;
+
+  /**
+   * This class define a reusable view on the current entry of the reader. The
+   * content of the entry is only valid until the next call to the
+   * {@link FastqBufferReader#hasNext()} method.
+   */
+  public final class Entry {
+
+    private int nameStart;
+    private int nameEnd;
+    private int sequenceStart;
+    private int sequenceEnd;
+    private int qualityStart;
+    private int qualityEnd;
+    private int id;
+    private byte[] tmp = new byte[1024];
+
+    /**
+     * Get the identifier of the entry.
+     * @return the identifier of the entry
+     */
+    public int getId() {
+
+      return this.id;
+    }
+
+    /**
+     * Get the buffer that contains the entry.
+     * @return a ByteBuffer
+     */
+    public ByteBuffer getBuffer() {
+
+      return FastqBufferReader.this.buffer;
+    }
+
+    /**
+     * Get the position of the name in the buffer.
+     * @return the position of the name in the buffer
+     */
+    public int getNameStart() {
+
+      return this.nameStart;
+    }
+
+    /**
+     * Get the length of the name.
+     * @return the length of the name
+     */
+    public int getNameLength() {
+
+      return this.nameEnd - this.nameStart;
+    }
+
+    /**
+     * Get the position of the sequence in the buffer.
+     * @return the position of the sequence in the buffer
+     */
+    public int getSequenceStart() {
+
+      return this.sequenceStart;
+    }
+
+    /**
+     * Get the length of the sequence.
+     * @return the length of the sequence
+     */
+    public int getSequenceLength() {
+
+      return this.sequenceEnd - this.sequenceStart;
+    }
+
+    /**
+     * Get the position of the quality in the buffer.
+     * @return the position of the quality in the buffer
+     */
+    public int getQualityStart() {
+
+      return this.qualityStart;
+    }
+
+    /**
+     * Get the length of the quality.
+     * @return the length of the quality
+     */
+    public int getQualityLength() {
+
+      return this.qualityEnd - this.qualityStart;
+    }
+
+    /**
+     * Get a byte of the sequence.
+     * @param index index of the byte in the sequence
+     * @return a byte
+     */
+    public byte getSequenceByte(final int index) {
+
+      return FastqBufferReader.this.buffer.get(this.sequenceStart + index);
+    }
+
+    /**
+     * Get a byte of the quality.
+     * @param index index of the byte in the quality
+     * @return a byte
+     */
+    public byte getQualityByte(final int index) {
+
+      return FastqBufferReader.this.buffer.get(this.qualityStart + index);
+    }
+
+    /**
+     * Get the name of the entry.
+     * @return a String with the name
+     */
+    public String getName() {
+
+      return toString(this.nameStart, this.nameEnd);
+    }
+
+    /**
+     * Get the sequence of the entry.
+     * @return a String with the sequence
+     */
+    public String getSequence() {
+
+      return toString(this.sequenceStart, this.sequenceEnd);
+    }
+
+    /**
+     * Get the quality of the entry.
+     * @return a String with the quality
+     */
+    public String getQuality() {
+
+      return toString(this.qualityStart, this.qualityEnd);
+    }
+
+    /**
+     * Test if all the characters of the quality are valid for a format.
+     * @param format the FASTQ format
+     * @return -1 if all the characters are valid or the value of the first
+     *         invalid character
+     */
+    public int findInvalidQualityChar(final FastqFormat format) {
+
+      if (format == null) {
+        throw new NullPointerException("format argument cannot be null");
+      }
+
+      final ByteBuffer buffer = FastqBufferReader.this.buffer;
+      final char min = format.getCharMin();
+      final char max = format.getCharMax();
+
+      for (int i = this.qualityStart; i < this.qualityEnd; i++) {
+
+        final char c = (char) (buffer.get(i) & 0xff);
+        if (c < min || c > max) {
+          return c;
+        }
+      }
+
+      return -1;
+    }
+
+    /**
+     * Convert the entry to a ReadSequence object.
+     * @return a new ReadSequence object
+     */
+    public ReadSequence toReadSequence() {
+
+      return new ReadSequence(this.id, getName(), getSequence(), getQuality());
+    }
+
+    /**
+     * Copy the entry in a reusable ByteReadSequence object.
+     * @param read the object to fill
+     */
+    public void copyTo(final ByteReadSequence read) {
+
+      if (read == null) {
+        throw new NullPointerException("read argument cannot be null");
+      }
+
+      read.set(this.id, FastqBufferReader.this.buffer, this.nameStart,
+          this.nameEnd - this.nameStart, this.sequenceStart,
+          this.sequenceEnd - this.sequenceStart, this.qualityStart,
+          this.qualityEnd - this.qualityStart);
+    }
+
+    /**
+     * Write the entry in FASTQ format. The output is the same as the
+     * {@link FastqWriter} output.
+     * @param os output stream
+     * @throws IOException if an error occurs while writing the entry
+     */
+    public void writeFastq(final OutputStream os) throws IOException {
+
+      os.write('@');
+      write(os, this.nameStart, this.nameEnd);
+      os.write('\n');
+      write(os, this.sequenceStart, this.sequenceEnd);
+      os.write('\n');
+      os.write('+');
+      os.write('\n');
+      write(os, this.qualityStart, this.qualityEnd);
+      os.write('\n');
+    }
+
+    private void write(final OutputStream os, final int start, final int end)
+        throws IOException {
+
+      final ByteBuffer buffer = FastqBufferReader.this.buffer;
+
+      if (buffer.hasArray()) {
+        os.write(buffer.array(), buffer.arrayOffset() + start, end - start);
+      } else {
+        os.write(copy(start, end), 0, end - start);
+      }
+    }
+
+    private String toString(final int start, final int end) {
+
+      final ByteBuffer buffer = FastqBufferReader.this.buffer;
+
+      if (buffer.hasArray()) {
+        return new String(buffer.array(), buffer.arrayOffset() + start,
+            end - start, FASTQ_CHARSET);
+      }
+
+      return new String(copy(start, end), 0, end - start, FASTQ_CHARSET);
+    }
+
+    private byte[] copy(final int start, final int end) {
+
+      final int len = end - start;
+
+      if (len > this.tmp.length) {
+        this.tmp = new byte[len];
+      }
+
+      final ByteBuffer buffer = FastqBufferReader.this.buffer.duplicate();
+      buffer.position(start);
+      buffer.get(this.tmp, 0, len);
+
+      return this.tmp;
+    }
+  }
+
+  //
+  // Iterator methods
+  //
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.channel != null) {
+      this.channel.close();
+    } else {
+      this.is.close();
+    }
+  }
+
+  @Override
+  public Iterator<ReadSequence> iterator() {
+
+    return this;
+  }
+
+  @Override
+  public boolean hasNext() {
+
+    if (this.end) {
+      return false;
+    }
+
+    this.nextCallDone = false;
+
+    try {
+
+      while (true) {
+
+        switch (parseEntry()) {
+
+        case ENTRY_FOUND:
+          this.entry.id = this.count++;
+          return true;
+
+        case NEED_MORE_DATA:
+          fillBuffer();
+          break;
+
+        default:
+          this.end = true;
+          return false;
+        }
+      }
+
+    } catch (IOException e) {
+
+      this.ioException = e;
+      this.end = true;
+      return false;
+    } catch (BadBioEntryException e) {
+
+      this.bbeException = e;
+      this.end = true;
+      return false;
+    }
+  }
+
+  @Override
+  public ReadSequence next() {
+
+    return nextEntry().toReadSequence();
+  }
+
+  /**
+   * Get the next entry without conversion to a ReadSequence object. The
+   * returned object is reused by the reader.
+   * @return the next entry
+   */
+  public Entry nextEntry() {
+
+    if (this.nextCallDone) {
+      throw new NoSuchElementException();
+    }
+
+    this.nextCallDone = true;
+
+    return this.entry;
+  }
+
+  @Override
+  public void remove() {
+
+    throw new UnsupportedOperationException("Unsupported operation");
+  }
+
+  @Override
+  public void throwException() throws IOException, BadBioEntryException {
+
+    if (this.ioException != null) {
+      throw this.ioException;
+    }
+
+    if (this.bbeException != null) {
+      throw this.bbeException;
+    }
+  }
+
+  //
+  // Parsing
+  //
+
+  /**
+   * Parse the next entry in the buffer.
+   * @return ENTRY_FOUND if an entry has been parsed, NEED_MORE_DATA if the
+   *         buffer does not contains a whole entry and NO_ENTRY at the end of
+   *         the data
+   * @throws BadBioEntryException if the entry is invalid
+   */
+  private int parseEntry() throws BadBioEntryException {
+
+    final ByteBuffer buffer = this.buffer;
+    final int limit = this.limit;
+    int p = this.pos;
+    int lines = 0;
+    int entryLine = 0;
+
+    while (entryLine < 4) {
+
+      if (p == limit) {
+        return this.eof ? NO_ENTRY : NEED_MORE_DATA;
+      }
+
+      // Find the end of the line
+      final int lineStart = p;
+      int eol = p;
+      while (eol < limit && buffer.get(eol) != '\n') {
+        eol++;
+      }
+
+      if (eol == limit && !this.eof) {
+        return NEED_MORE_DATA;
+      }
+
+      // Trim the line
+      int start = p;
+      int end = eol;
+      while (start < end && (buffer.get(start) & 0xff) <= ' ') {
+        start++;
+      }
+      while (end > start && (buffer.get(end - 1) & 0xff) <= ' ') {
+        end--;
+      }
+
+      p = eol == limit ? limit : eol + 1;
+      lines++;
+
+      switch (entryLine) {
+
+      case 0:
+
+        // Skip empty lines between entries
+        if (start == end) {
+          continue;
+        }
+
+        if (buffer.get(start) != '@') {
+          throw new BadBioEntryException(
+              "Invalid Fastq file. First line of the entry don't start with '@' at line "
+                  + (this.lineCount + lines),
+              lineToString(lineStart, eol));
+        }
+        this.entry.nameStart = start + 1;
+        this.entry.nameEnd = end;
+        break;
+
+      case 1:
+        this.entry.sequenceStart = start;
+        this.entry.sequenceEnd = end;
+        break;
+
+      case 2:
+        if (start == end || buffer.get(start) != '+') {
+          throw new BadBioEntryException(
+              "Invalid Fastq file. Third line of the entry don't start with '+' at line "
+                  + (this.lineCount + lines),
+              lineToString(lineStart, eol));
+        }
+        break;
+
+      default:
+        this.entry.qualityStart = start;
+        this.entry.qualityEnd = end;
+        break;
+      }
+
+      entryLine++;
+    }
+
+    this.pos = p;
+    this.lineCount += lines;
+
+    return ENTRY_FOUND;
+  }
+
+  /**
+   * Get a line of the buffer as a String.
+   * @param start position of the start of the line
+   * @param end position of the end of the line
+   * @return a String
+   */
+  private String lineToString(final int start, final int end) {
+
+    final byte[] bytes = new byte[end - start];
+    final ByteBuffer buffer = this.buffer.duplicate();
+    buffer.position(start);
+    buffer.get(bytes);
+
+    return new String(bytes, FASTQ_CHARSET);
+  }
+
+  /**
+   * Fill the buffer with new data. The data of the current entry that has not
+   * been parsed are kept at the start of the buffer.
+   * @throws IOException if an error occurs while reading data
+   */
+  private void fillBuffer() throws IOException {
+
+    final int remaining = this.limit - this.pos;
+
+    // Memory-mapped file
+    if (this.channel != null) {
+
+      // The current entry does not fit in a window
+      if (this.pos == 0) {
+        this.mapSize *= 2;
+      }
+
+      mapWindow(this.mapPosition + this.pos);
+      return;
+    }
+
+    // The current entry does not fit in the buffer
+    if (this.pos == 0 && remaining == this.array.length) {
+
+      final byte[] newArray = new byte[this.array.length * 2];
+      System.arraycopy(this.array, 0, newArray, 0, remaining);
+      this.array = newArray;
+    } else {
+      System.arraycopy(this.array, this.pos, this.array, 0, remaining);
+    }
+
+    int len = remaining;
+    int n = 0;
+
+    while (len < this.array.length
+        && (n = this.is.read(this.array, len, this.array.length - len)) != -1) {
+      len += n;
+    }
+
+    this.buffer = ByteBuffer.wrap(this.array);
+    this.pos = 0;
+    this.limit = len;
+    this.eof = n == -1;
+  }
+
+  /**
+   * Map a window of the file.
+   * @param position position of the window in the file
+   * @throws IOException if an error occurs while mapping the file
+   */
+  private void mapWindow(final long position) throws IOException {
+
+    final long size = Math.min(this.mapSize, this.fileSize - position);
+
+    this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position,
+        size);
+    this.mapPosition = position;
+    this.pos = 0;
+    this.limit = (int) size;
+    this.eof = position + size >= this.fileSize;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Public constructor
+   * @param is InputStream to use
+   */
+  public FastqBufferReader(final InputStream is) {
+
+    this(is, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param is InputStream to use
+   * @param bufferSize initial size of the buffer
+   */
+  FastqBufferReader(final InputStream is, final int bufferSize) {
+
+    if (is == null) {
+      throw new NullPointerException("InputStream is null");
+    }
+
+    this.is = is;
+    this.channel = null;
+    this.fileSize = -1;
+    this.array = new byte[bufferSize];
+    this.buffer = ByteBuffer.wrap(this.array);
+  }
+
+  /**
+   * Public constructor. The file will be memory-mapped, so it must not be
+   * compressed.
+   * @param file File to use
+   * @throws IOException if an error occurs while opening the file
+   */
+  public FastqBufferReader(final File file) throws IOException {
+
+    this(file, DEFAULT_MAP_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param file File to use
+   * @param mapSize initial size of the memory-mapped windows
+   * @throws IOException if an error occurs while opening the file
+   */
+  FastqBufferReader(final File file, final long mapSize) throws IOException {
+
+    if (file == null) {
+      throw new NullPointerException("File is null");
+    }
+
+    this.is = null;
+    this.mapSize = mapSize;
+    this.channel = new FileInputStream(file).getChannel();
+    this.fileSize = this.channel.size();
+
+    try {
+      mapWindow(0);
+    } catch (IOException e) {
+      this.channel.close();
+      throw e;
+    }
+  }
+
+}
@@ -0,0 +1,1045 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.io;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.lang.reflect.Constructor;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+import com.google.common.io.Files;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.eoulsan.io.ParallelGZipOutputStream;
+import htsjdk.samtools.BAMIndexer;
+import htsjdk.samtools.BAMRecord;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.Chunk;
+import htsjdk.samtools.DefaultSAMRecordFactory;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMFileSource;
+import htsjdk.samtools.SAMFileSpan;
+import htsjdk.samtools.SAMLineParser;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMSequenceRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.ValidationStringency;
+import htsjdk.samtools.util.BinaryCodec;
+import htsjdk.samtools.util.StringLineReader;
+
+/**
+ * This class define a converter of SAM files into BAM files sorted by
+ * coordinates that use several threads. The SAM lines are parsed and encoded
+ * by worker threads and the records are stored in memory in runs of a limited
+ * size. Each run is sorted by slices in parallel using a primitive
+ * (reference index, position) key and spilled in a temporary file when all
+ * the records do not fit in a single run. The sorted runs are then merged,
+ * the BGZF blocks of the BAM file are compressed by worker threads and the BAI
+ * index is built while writing the records. Building the index while writing
+ * requires the package-private htsjdk BAMFileSpan class, that is instantiated
+ * by reflection. If this class cannot be reached, the BAM file is written in a
+ * temporary file and indexed once written.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ParallelSAM2BAMConverter {
+
+  /** Default fraction of the maximal heap size used by a run. */
+  public static final double DEFAULT_RUN_MEMORY_FRACTION = 0.25;
+
+  /** Estimated memory used by a record in addition of its variable data. */
+  private static final int RECORD_MEMORY_OVERHEAD = 256;
+
+  private static final int BATCH_SIZE = 10000;
+  private static final int MIN_SLICE_SIZE = 10000;
+  private static final int BUFFER_SIZE = 1024 * 1024;
+  private static final byte[] BAM_MAGIC = {'B', 'A', 'M', 1};
+
+  private static final Constructor<?> BAM_FILE_SPAN_CONSTRUCTOR =
+      getBAMFileSpanConstructor();
+
+  private final int threads;
+  private final int compressionLevel;
+  private final File tmpDir;
+  private long maxRunMemory = getDefaultMaxRunMemory();
+  private boolean indexWhileWriting = BAM_FILE_SPAN_CONSTRUCTOR != null;
+
+  private SAMFileHeader header;
+  private ExecutorService executor;
+  private ExecutorService spillExecutor;
+  private final List<File> runFiles = new ArrayList<>();
+  private Future<File> pendingSpill;
+  private final ThreadLocal<LineParser> lineParsers =
+      new ThreadLocal<LineParser>() {
+
+        @Override
+        protected LineParser initialValue() {
+          return new LineParser();
+        }
+      };
+
+  /**
+   * This class define a BAM record which file source can be set to build the
+   * index of the BAM file.
+   */
+  private static final class IndexableBAMRecord extends BAMRecord {
+
+    private static final long serialVersionUID = -2311052395645880458L;
+
+    /**
+     * Set the file source of the record.
+     * @param source the file source
+     */
+    void setSource(final SAMFileSource source) {
+
+      setFileSource(source);
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     */
+    IndexableBAMRecord(final SAMFileHeader header, final int referenceID,
+        final int coordinate, final short readNameLength,
+        final short mappingQuality, final int indexingBin, final int cigarLen,
+        final int flags, final int readLen, final int mateReferenceID,
+        final int mateCoordinate, final int insertSize,
+        final byte[] restOfData) {
+
+      super(header, referenceID, coordinate, readNameLength, mappingQuality,
+          indexingBin, cigarLen, flags, readLen, mateReferenceID,
+          mateCoordinate, insertSize, restOfData);
+    }
+  }
+
+  /**
+   * This class define the factory of the decoded BAM records.
+   */
+  private static final class IndexableBAMRecordFactory
+      extends DefaultSAMRecordFactory {
+
+    @Override
+    public BAMRecord createBAMRecord(final SAMFileHeader header,
+        final int referenceSequenceIndex, final int alignmentStart,
+        final short readNameLength, final short mappingQuality,
+        final int indexingBin, final int cigarLen, final int flags,
+        final int readLen, final int mateReferenceSequenceIndex,
+        final int mateAlignmentStart, final int insertSize,
+        final byte[] variableLengthBlock) {
+
+      return new IndexableBAMRecord(header, referenceSequenceIndex,
+          alignmentStart, readNameLength, mappingQuality, indexingBin,
+          cigarLen, flags, readLen, mateReferenceSequenceIndex,
+          mateAlignmentStart, insertSize, variableLengthBlock);
+    }
+  }
+
+  /**
+   * This class define a record to sort with its sort key.
+   */
+  private static final class Entry {
+
+    private final long key;
+    private final SAMRecord record;
+    private final int memory;
+
+    /**
+     * Constructor.
+     * @param record the record
+     */
+    Entry(final SAMRecord record) {
+
+      this.record = record;
+
+      // Unmapped records without reference are at the end of the file
+      final int referenceIndex = record.getReferenceIndex();
+      this.key = referenceIndex == -1
+          ? (long) Integer.MAX_VALUE << 32
+          : (long) referenceIndex << 32
+              | record.getAlignmentStart() & 0xffffffffL;
+
+      // The records are decoded BAM records
+      final byte[] data =
+          ((BAMRecord) record).getVariableBinaryRepresentation();
+      this.memory =
+          RECORD_MEMORY_OVERHEAD + (data == null ? 0 : data.length);
+    }
+  }
+
+  /**
+   * This class define the comparator of the entries. The entries are compared
+   * using their keys and the full coordinate comparison of htsjdk is only
+   * used for entries with the same key.
+   */
+  private static final class EntryComparator implements Comparator<Entry> {
+
+    private final SAMRecordCoordinateComparator comparator =
+        new SAMRecordCoordinateComparator();
+
+    @Override
+    public int compare(final Entry e1, final Entry e2) {
+
+      if (e1.key != e2.key) {
+        return e1.key < e2.key ? -1 : 1;
+      }
+
+      return this.comparator.compare(e1.record, e2.record);
+    }
+  }
+
+  /**
+   * This class define the objects used by a thread to parse and encode the
+   * SAM lines.
+   */
+  private final class LineParser {
+
+    private final SAMLineParser parser = new SAMLineParser(header);
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final BAMRecordCodec encoder = new BAMRecordCodec(header);
+    private final BAMRecordCodec decoder =
+        new BAMRecordCodec(header, new IndexableBAMRecordFactory());
+
+    /**
+     * Parse a SAM line. The parsed record is encoded in BAM and decoded to
+     * keep only the compact binary representation of the record in memory.
+     * @param line the line to parse
+     * @param lineNumber the number of the line
+     * @return an entry
+     */
+    Entry parse(final String line, final int lineNumber) {
+
+      this.buffer.reset();
+      this.encoder.encode(this.parser.parseLine(line, lineNumber));
+      this.decoder
+          .setInputStream(new ByteArrayInputStream(this.buffer.toByteArray()));
+
+      return new Entry(this.decoder.decode());
+    }
+
+    /**
+     * Constructor.
+     */
+    LineParser() {
+
+      this.encoder.setOutputStream(this.buffer);
+    }
+  }
+
+  /**
+   * This class define the task that parse a batch of SAM lines.
+   */
+  private final class ParseTask implements Callable<List<Entry>> {
+
+    private final String[] lines;
+    private final int count;
+    private final int firstLineNumber;
+
+    @Override
+    public List<Entry> call() {
+
+      final LineParser parser = lineParsers.get();
+      final List<Entry> result = new ArrayList<>(this.count);
+
+      for (int i = 0; i < this.count; i++) {
+        result.add(parser.parse(this.lines[i], this.firstLineNumber + i));
+      }
+
+      return result;
+    }
+
+    /**
+     * Constructor.
+     * @param lines the lines to parse
+     * @param count the number of lines to parse
+     * @param firstLineNumber the number of the first line
+     */
+    ParseTask(final String[] lines, final int count,
+        final int firstLineNumber) {
+
+      this.lines = lines;
+      this.count = count;
+      this.firstLineNumber = firstLineNumber;
+    }
+  }
+
+  /**
+   * This class define an iterator on the records of a run stored in a
+   * temporary file.
+   */
+  private final class RunFileIterator extends AbstractIterator<Entry> {
+
+    private final InputStream in;
+    private final BAMRecordCodec codec =
+        new BAMRecordCodec(header, new IndexableBAMRecordFactory());
+
+    @Override
+    protected Entry computeNext() {
+
+      final SAMRecord record = this.codec.decode();
+
+      if (record == null) {
+        return endOfData();
+      }
+
+      return new Entry(record);
+    }
+
+    /**
+     * Constructor.
+     * @param file the run file
+     * @throws IOException if an error occurs while opening the file
+     */
+    RunFileIterator(final File file) throws IOException {
+
+      this.in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+      this.codec.setInputStream(this.in);
+    }
+  }
+
+  /**
+   * This class define a sorted source of entries to merge.
+   */
+  private static final class Source {
+
+    private final int index;
+    private final PeekingIterator<Entry> iterator;
+
+    /**
+     * Constructor.
+     * @param index index of the source
+     * @param iterator iterator on the entries of the source
+     */
+    Source(final int index, final PeekingIterator<Entry> iterator) {
+
+      this.index = index;
+      this.iterator = iterator;
+    }
+  }
+
+  /**
+   * This class define a merger of sorted sources. The entries of sources with
+   * equal entries are returned in the order of the sources.
+   */
+  private static final class Merger extends AbstractIterator<Entry> {
+
+    private final EntryComparator comparator = new EntryComparator();
+    private final PriorityQueue<Source> queue;
+
+    @Override
+    protected Entry computeNext() {
+
+      final Source source = this.queue.poll();
+
+      if (source == null) {
+        return endOfData();
+      }
+
+      final Entry result = source.iterator.next();
+
+      if (source.iterator.hasNext()) {
+        this.queue.add(source);
+      }
+
+      return result;
+    }
+
+    /**
+     * Constructor.
+     * @param iterators the sorted iterators to merge
+     */
+    Merger(final List<? extends Iterator<Entry>> iterators) {
+
+      this.queue = new PriorityQueue<>(Math.max(1, iterators.size()),
+          new Comparator<Source>() {
+
+            @Override
+            public int compare(final Source s1, final Source s2) {
+
+              final int result = Merger.this.comparator
+                  .compare(s1.iterator.peek(), s2.iterator.peek());
+
+              return result != 0
+                  ? result : Integer.compare(s1.index, s2.index);
+            }
+          });
+
+      for (int i = 0; i < iterators.size(); i++) {
+
+        final PeekingIterator<Entry> it =
+            Iterators.peekingIterator(iterators.get(i));
+
+        if (it.hasNext()) {
+          this.queue.add(new Source(i, it));
+        }
+      }
+    }
+  }
+
+  /**
+   * This class define a writer of BAM records that build the BAI index of the
+   * BAM file while writing the records. The virtual file offsets of a record
+   * are only known when the BGZF blocks that contain the record have been
+   * compressed, so the records are indexed when the addresses of their blocks
+   * are known. The index is not built if no BAI output stream is provided.
+   */
+  private final class IndexingBAMWriter
+      implements ParallelGZipOutputStream.BlockListener {
+
+    private final ParallelGZipOutputStream out;
+    private final BAMRecordCodec codec = new BAMRecordCodec(header);
+    private final BAMIndexer indexer;
+    private final Map<Long, Long> blockAddresses = new HashMap<>();
+    private final Deque<SAMRecord> pendingRecords = new ArrayDeque<>();
+    private final Deque<long[]> pendingPositions = new ArrayDeque<>();
+    private long firstKnownBlock;
+
+    @Override
+    public void blockWritten(final long blockIndex, final long address,
+        final int length) {
+
+      if (this.indexer == null) {
+        return;
+      }
+
+      this.blockAddresses.put(blockIndex, address);
+      this.blockAddresses.put(blockIndex + 1, address + length);
+
+      // Index the records which blocks addresses are known
+      while (!this.pendingPositions.isEmpty()) {
+
+        final long[] positions = this.pendingPositions.peek();
+        final Long end = this.blockAddresses.get(positions[2]);
+
+        if (end == null) {
+          break;
+        }
+
+        final long start = this.blockAddresses.get(positions[0]);
+        this.pendingPositions.poll();
+
+        final IndexableBAMRecord record =
+            (IndexableBAMRecord) this.pendingRecords.poll();
+        record.setSource(createFileSource(start << 16 | positions[1],
+            end << 16 | positions[3]));
+        this.indexer.processAlignment(record);
+
+        // Remove the addresses of the blocks that are no more needed
+        while (this.firstKnownBlock < positions[2]) {
+          this.blockAddresses.remove(this.firstKnownBlock++);
+        }
+      }
+    }
+
+    /**
+     * Write the header of the BAM file.
+     * @throws IOException if an error occurs while writing the header
+     */
+    private void writeHeader() throws IOException {
+
+      writeBAMHeader(header, this.out);
+
+      // The first record starts in a new block
+      this.out.flush();
+    }
+
+    /**
+     * Write a record.
+     * @param record the record to write
+     */
+    void write(final SAMRecord record) {
+
+      final long startBlock = this.out.getBlockIndex();
+      final long startOffset = this.out.getBlockOffset();
+
+      this.codec.encode(record);
+
+      if (this.indexer == null) {
+        return;
+      }
+
+      this.pendingRecords.add(record);
+      this.pendingPositions.add(new long[] {startBlock, startOffset,
+          this.out.getBlockIndex(), this.out.getBlockOffset()});
+    }
+
+    /**
+     * Close the writer.
+     * @throws IOException if an error occurs while closing the writer
+     */
+    void close() throws IOException {
+
+      try {
+
+        // Write all the blocks to index the last records
+        this.out.flush();
+
+        if (this.indexer != null) {
+          this.indexer.finish();
+        }
+
+      } finally {
+        this.out.close();
+      }
+    }
+
+    /**
+     * Constructor.
+     * @param bamOut BAM output stream
+     * @param baiOut BAI output stream, can be null
+     * @throws IOException if an error occurs while writing the header
+     */
+    IndexingBAMWriter(final OutputStream bamOut, final OutputStream baiOut)
+        throws IOException {
+
+      this.out =
+          new ParallelGZipOutputStream(bamOut, threads, compressionLevel);
+      this.out.setBlockListener(this);
+      this.codec.setOutputStream(this.out);
+      this.indexer = baiOut == null ? null : new BAMIndexer(baiOut, header);
+      this.blockAddresses.put(0L, 0L);
+
+      writeHeader();
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the maximal memory used by the records of a run.
+   * @return the maximal memory used by the records of a run in bytes
+   */
+  public long getMaxRunMemory() {
+
+    return this.maxRunMemory;
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Set the maximal memory used by the records of a run.
+   * @param maxRunMemory the maximal memory used by the records of a run in
+   *          bytes
+   */
+  public void setMaxRunMemory(final long maxRunMemory) {
+
+    if (maxRunMemory < 1) {
+      throw new IllegalArgumentException(
+          "The maximal memory of a run must be greater than 0: "
+              + maxRunMemory);
+    }
+
+    this.maxRunMemory = maxRunMemory;
+  }
+
+  /**
+   * Set if the index must be built while writing the BAM file. Otherwise, the
+   * BAM file is written in a temporary file and indexed once written.
+   * @param enable true to build the index while writing the BAM file
+   */
+  void setIndexWhileWriting(final boolean enable) {
+
+    this.indexWhileWriting = enable && BAM_FILE_SPAN_CONSTRUCTOR != null;
+  }
+
+  //
+  // Conversion methods
+  //
+
+  /**
+   * Convert a SAM file into a BAM file sorted by coordinates and create the
+   * index of the BAM file. The output streams are closed at the end of the
+   * conversion.
+   * @param samIn input stream of the SAM file
+   * @param bamOut output stream of the BAM file
+   * @param baiOut output stream of the BAI file
+   * @return the number of converted records
+   * @throws IOException if an error occurs while converting the file
+   */
+  public long convert(final InputStream samIn, final OutputStream bamOut,
+      final OutputStream baiOut) throws IOException {
+
+    if (samIn == null) {
+      throw new NullPointerException("samIn argument cannot be null");
+    }
+
+    if (bamOut == null) {
+      throw new NullPointerException("bamOut argument cannot be null");
+    }
+
+    if (baiOut == null) {
+      throw new NullPointerException("baiOut argument cannot be null");
+    }
+
+    this.executor = Executors.newFixedThreadPool(this.threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("sam2bam-sort-%d").build());
+    this.spillExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("sam2bam-spill-%d").build());
+
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(samIn, StandardCharsets.ISO_8859_1),
+        BUFFER_SIZE)) {
+
+      // Read the header
+      final StringBuilder sb = new StringBuilder();
+      String line;
+      int lineNumber = 0;
+
+      while ((line = reader.readLine()) != null && line.startsWith("@")) {
+        sb.append(line);
+        sb.append('\n');
+        lineNumber++;
+      }
+
+      this.header = new SAMTextHeaderCodec()
+          .decode(new StringLineReader(sb.toString()), null);
+      this.header.setSortOrder(SortOrder.coordinate);
+
+      // Parse and sort the records
+      final Deque<Future<List<Entry>>> parseTasks = new ArrayDeque<>();
+      List<Entry> run = new ArrayList<>();
+      String[] batch = new String[BATCH_SIZE];
+      int batchCount = 0;
+      long recordCount = 0;
+      long runMemory = 0;
+
+      while (line != null) {
+
+        batch[batchCount++] = line;
+        lineNumber++;
+        line = reader.readLine();
+
+        if (batchCount == BATCH_SIZE || line == null) {
+
+          parseTasks.add(this.executor.submit(
+              new ParseTask(batch, batchCount, lineNumber - batchCount + 1)));
+          batch = new String[BATCH_SIZE];
+          batchCount = 0;
+        }
+
+        // Limit the number of batches in memory
+        while (parseTasks.size() > this.threads * 2
+            || (line == null && !parseTasks.isEmpty())) {
+
+          final List<Entry> entries = getResult(parseTasks.poll());
+          run.addAll(entries);
+          recordCount += entries.size();
+
+          for (Entry e : entries) {
+            runMemory += e.memory;
+          }
+
+          if (runMemory >= this.maxRunMemory) {
+            spill(sortRun(run));
+            run = new ArrayList<>();
+            runMemory = 0;
+          }
+        }
+      }
+
+      // Get the sorted sources of entries
+      final List<PeekingIterator<Entry>> lastRun = sortRun(run);
+      run = null;
+      waitPendingSpill();
+
+      getLogger().fine("Merge "
+          + (this.runFiles.size() + (lastRun.isEmpty() ? 0 : 1))
+          + " sorted runs of SAM records");
+
+      final List<Iterator<Entry>> sources = new ArrayList<>();
+      final List<InputStream> runStreams = new ArrayList<>();
+
+      try {
+        for (File f : this.runFiles) {
+          final RunFileIterator it = new RunFileIterator(f);
+          runStreams.add(it.in);
+          sources.add(it);
+        }
+        sources.add(new Merger(lastRun));
+
+        // Write the BAM file and its index
+        if (this.indexWhileWriting) {
+          writeBAM(new Merger(sources), bamOut, baiOut);
+        } else {
+
+          // Index the BAM file once written
+          final File bamFile =
+              File.createTempFile("sam2bam-", ".bam", this.tmpDir);
+          try {
+            writeBAM(new Merger(sources), new FileOutputStream(bamFile),
+                null);
+            indexBAM(bamFile, baiOut);
+            Files.copy(bamFile, bamOut);
+          } finally {
+            if (!bamFile.delete()) {
+              getLogger()
+                  .warning("Unable to delete temporary file: " + bamFile);
+            }
+          }
+        }
+
+      } finally {
+        for (InputStream is : runStreams) {
+          is.close();
+        }
+      }
+
+      return recordCount;
+
+    } finally {
+
+      this.executor.shutdownNow();
+      this.spillExecutor.shutdownNow();
+
+      for (File f : this.runFiles) {
+        if (!f.delete()) {
+          getLogger().warning("Unable to delete temporary file: " + f);
+        }
+      }
+      this.runFiles.clear();
+      this.pendingSpill = null;
+      this.header = null;
+      bamOut.close();
+      baiOut.close();
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Write the records in a BAM file.
+   * @param records the sorted records to write
+   * @param bamOut BAM output stream
+   * @param baiOut BAI output stream, can be null
+   * @throws IOException if an error occurs while writing the BAM file
+   */
+  private void writeBAM(final Iterator<Entry> records,
+      final OutputStream bamOut, final OutputStream baiOut)
+          throws IOException {
+
+    final IndexingBAMWriter writer = new IndexingBAMWriter(bamOut, baiOut);
+    try {
+
+      while (records.hasNext()) {
+        writer.write(records.next().record);
+      }
+      writer.close();
+
+    } finally {
+      writer.out.close();
+    }
+  }
+
+  /**
+   * Create the index of a BAM file.
+   * @param bamFile the BAM file
+   * @param baiOut BAI output stream
+   * @throws IOException if an error occurs while indexing the BAM file
+   */
+  private static void indexBAM(final File bamFile, final OutputStream baiOut)
+      throws IOException {
+
+    try (SamReader reader = SamReaderFactory.makeDefault()
+        .enable(SamReaderFactory.Option.INCLUDE_SOURCE_IN_RECORDS)
+        .validationStringency(ValidationStringency.SILENT).open(bamFile)) {
+
+      final BAMIndexer indexer =
+          new BAMIndexer(baiOut, reader.getFileHeader());
+
+      for (SAMRecord record : reader) {
+        indexer.processAlignment(record);
+      }
+      indexer.finish();
+    }
+  }
+
+  /**
+   * Sort a run by slices in parallel.
+   * @param run the run to sort
+   * @return a list with the iterators on the sorted slices of the run
+   * @throws IOException if an error occurs while sorting the run
+   */
+  private List<PeekingIterator<Entry>> sortRun(final List<Entry> run)
+      throws IOException {
+
+    final int sliceCount =
+        Math.max(1, Math.min(this.threads, run.size() / MIN_SLICE_SIZE));
+    final int sliceSize = (run.size() + sliceCount - 1) / sliceCount;
+
+    final List<Future<Entry[]>> futures = new ArrayList<>();
+
+    for (int i = 0; i < run.size(); i += sliceSize) {
+
+      final Entry[] slice = run.subList(i, Math.min(run.size(), i + sliceSize))
+          .toArray(new Entry[0]);
+
+      futures.add(this.executor.submit(new Callable<Entry[]>() {
+
+        @Override
+        public Entry[] call() {
+
+          Arrays.sort(slice, new EntryComparator());
+          return slice;
+        }
+      }));
+    }
+
+    final List<PeekingIterator<Entry>> result = new ArrayList<>();
+    for (Future<Entry[]> future : futures) {
+      result.add(Iterators.peekingIterator(
+          Arrays.asList(getResult(future)).iterator()));
+    }
+
+    return result;
+  }
+
+  /**
+   * Spill a sorted run in a temporary file. The run is written by a
+   * background thread.
+   * @param slices the sorted slices of the run
+   * @throws IOException if an error occurs while writing the previous run
+   */
+  private void spill(final List<PeekingIterator<Entry>> slices)
+      throws IOException {
+
+    // Only one run can be written at the same time
+    waitPendingSpill();
+
+    this.pendingSpill = this.spillExecutor.submit(new Callable<File>() {
+
+      @Override
+      public File call() throws IOException {
+
+        final File file = File.createTempFile("sam2bam-", ".run", tmpDir);
+        final BAMRecordCodec codec = new BAMRecordCodec(header);
+
+        try (OutputStream os =
+            new BufferedOutputStream(new FileOutputStream(file), 1 << 16)) {
+
+          codec.setOutputStream(os);
+
+          final Merger merger = new Merger(slices);
+          while (merger.hasNext()) {
+            codec.encode(merger.next().record);
+          }
+
+        } catch (IOException | RuntimeException e) {
+
+          if (!file.delete()) {
+            getLogger().warning("Unable to delete temporary file: " + file);
+          }
+          throw e;
+        }
+
+        return file;
+      }
+    });
+  }
+
+  /**
+   * Wait the end of the writing of the last spilled run.
+   * @throws IOException if an error occurs while writing the run
+   */
+  private void waitPendingSpill() throws IOException {
+
+    if (this.pendingSpill != null) {
+      this.runFiles.add(getResult(this.pendingSpill));
+      this.pendingSpill = null;
+    }
+  }
+
+  /**
+   * Get the result of a task.
+   * @param future the future of the task
+   * @return the result of the task
+   * @throws IOException if an error occurs while executing the task
+   */
+  private static <T> T getResult(final Future<T> future) throws IOException {
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Get the default maximal memory used by the records of a run.
+   * @return the default maximal memory used by the records of a run in bytes
+   */
+  public static long getDefaultMaxRunMemory() {
+
+    return (long) (Runtime.getRuntime().maxMemory()
+        * DEFAULT_RUN_MEMORY_FRACTION);
+  }
+
+  /**
+   * Create the file source of a record.
+   * @param start virtual file offset of the start of the record
+   * @param end virtual file offset of the end of the record
+   * @return a new SAMFileSource object
+   */
+  private static SAMFileSource createFileSource(final long start,
+      final long end) {
+
+    try {
+      return new SAMFileSource(null,
+          (SAMFileSpan) BAM_FILE_SPAN_CONSTRUCTOR
+              .newInstance(new Chunk(start, end)));
+    } catch (ReflectiveOperationException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Write the header of a BAM file: the magic number, the text of the SAM
+   * header and the sequence dictionary.
+   * @param header the SAM header
+   * @param out the BGZF output stream
+   * @throws IOException if an error occurs while writing the header
+   */
+  static void writeBAMHeader(final SAMFileHeader header,
+      final OutputStream out) throws IOException {
+
+    final StringWriter headerText = new StringWriter();
+    new SAMTextHeaderCodec().encode(headerText, header);
+
+    final BinaryCodec binaryCodec = new BinaryCodec(out);
+    binaryCodec.writeBytes(BAM_MAGIC);
+    binaryCodec.writeString(headerText.toString(), true, false);
+    binaryCodec.writeInt(header.getSequenceDictionary().size());
+
+    for (SAMSequenceRecord sequence : header.getSequenceDictionary()
+        .getSequences()) {
+      binaryCodec.writeString(sequence.getSequenceName(), true, true);
+      binaryCodec.writeInt(sequence.getSequenceLength());
+    }
+  }
+
+  /**
+   * Get the constructor of the BAMFileSpan class. BAMIndexer requires the
+   * file sources of the records to be BAMFileSpan objects but this class is
+   * not public in htsjdk, so its constructor is made accessible by
+   * reflection. This is the only use of reflection in this class.
+   * @return the constructor of the BAMFileSpan class or null if the
+   *         constructor is not available
+   */
+  private static Constructor<?> getBAMFileSpanConstructor() {
+
+    try {
+      final Constructor<?> result = Class.forName("htsjdk.samtools.BAMFileSpan")
+          .getDeclaredConstructor(Chunk.class);
+      result.setAccessible(true);
+
+      return result;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      getLogger().warning("The BAM files will be indexed once written as "
+          + "the htsjdk BAMFileSpan class is not available: " + e);
+      return null;
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param threads number of threads to use
+   * @param compressionLevel compression level of the BAM file
+   * @param tmpDir temporary directory for the sorted runs
+   */
+  public ParallelSAM2BAMConverter(final int threads,
+      final int compressionLevel, final File tmpDir) {
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads must be greater than 0: " + threads);
+    }
+
+    if (compressionLevel < 0 || compressionLevel > 9) {
+      throw new IllegalArgumentException(
+          "Invalid compression level [0-9]: " + compressionLevel);
+    }
+
+    this.threads = threads;
+    this.compressionLevel = compressionLevel;
+    this.tmpDir = tmpDir;
+  }
+
+}
@@ -0,0 +1,1111 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+
+package fr.ens.biologie.genomique.eoulsan.bio.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.Globals;
+import fr.ens.biologie.genomique.eoulsan.bio.alignmentsfilters.MultiReadAlignmentsFilter;
+import fr.ens.biologie.genomique.eoulsan.bio.alignmentsfilters.MultiReadAlignmentsFilterBuilder;
+import fr.ens.biologie.genomique.eoulsan.io.ParallelGZipOutputStream;
+import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
+import fr.ens.biologie.genomique.eoulsan.util.ReporterIncrementer;
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMException;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMLineParser;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.util.StringLineReader;
+
+/**
+ * This class define a pipeline that process the SAM output of a mapper. The
+ * calling thread reads the SAM data by large blocks that are split on line
+ * boundaries. When alignments filters are set, the blocks are also split on
+ * read name boundaries, so all the alignments of a read are in the same block.
+ * A pool of threads parses the alignments of the blocks, applies the
+ * alignments filters and encodes the kept alignments in SAM or in BAM. A
+ * writer thread writes the blocks in the order of the input. The BAM output
+ * is compressed in BGZF by a ParallelGZipOutputStream and its alignments are
+ * not sorted. The SAM lines can also be sent to a LineHandler instead of an
+ * output stream. Without alignments filter, the SAM output is the same as the
+ * output of a line by line copy of the input.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SAMOutputPipeline {
+
+  /** Default number of threads used to process the blocks. */
+  public static final int DEFAULT_THREAD_NUMBER = 4;
+
+  /** Default compression level of the BAM output. */
+  public static final int DEFAULT_COMPRESSION_LEVEL = 5;
+
+  private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+  private static final long QUEUE_TIMEOUT = 100;
+
+  /** Marker of the end of the blocks in the writer queue. */
+  private static final Future<Block> END_OF_BLOCKS =
+      Futures.immediateFuture(new Block());
+
+  private final int threadNumber;
+  private final int blockSize;
+  private OutputFormat outputFormat = OutputFormat.SAM;
+  private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+  private Map<String, String> filterParameters = Collections.emptyMap();
+  private ReporterIncrementer incrementer;
+  private String counterGroup;
+
+  private long inputAlignmentCount;
+  private long outputAlignmentCount;
+  private long invalidAlignmentCount;
+
+  /**
+   * This enum define the output formats of the pipeline.
+   */
+  public enum OutputFormat {
+    SAM, BAM
+  }
+
+  /**
+   * This interface define a handler of the SAM lines produced by the
+   * pipeline. The lines are handled by the writer thread in the order of the
+   * input.
+   */
+  public interface LineHandler {
+
+    /**
+     * Handle a SAM line.
+     * @param line the line without end of line
+     * @throws IOException if an error occurs while handling the line
+     */
+    void handle(String line) throws IOException;
+  }
+
+  /**
+   * This class define a processed block of data.
+   */
+  private static final class Block {
+
+    private byte[] data = new byte[0];
+    private List<String> lines;
+    private long inputAlignments;
+    private long outputAlignments;
+    private long invalidAlignments;
+    private LocalReporter counters;
+  }
+
+  /**
+   * This class define an incrementer that increment the counters of the
+   * block currently processed by a thread.
+   */
+  private static final class BlockIncrementer implements ReporterIncrementer {
+
+    private LocalReporter counters;
+
+    @Override
+    public void incrCounter(final String counterGroup,
+        final String counterName, final long amount) {
+
+      this.counters.incrCounter(counterGroup, counterName, amount);
+    }
+  }
+
+  /**
+   * This class define the objects used by a thread to process the blocks.
+   */
+  private final class Worker {
+
+    private final boolean handlerMode;
+    private final SAMLineParser parser;
+    private final BAMRecordCodec encoder;
+    private final MultiReadAlignmentsFilter filter;
+    private final BlockIncrementer blockIncrementer = new BlockIncrementer();
+
+    private final List<SAMRecord> group = new ArrayList<>();
+    private final List<SAMRecord> filteredGroup = new ArrayList<>();
+    private final List<int[]> groupLines = new ArrayList<>();
+    private final Set<SAMRecord> keptRecords =
+        Collections.newSetFromMap(new IdentityHashMap<SAMRecord, Boolean>());
+    private String groupName;
+
+    private Block block;
+    private ByteArrayOutputStream out;
+
+    /**
+     * Process a block of lines.
+     * @param data data
+     * @param start start of the lines
+     * @param end end of the lines (excluded)
+     * @return a processed block
+     * @throws IOException if an alignment cannot be encoded in BAM
+     */
+    Block process(final byte[] data, final int start, final int end)
+        throws IOException {
+
+      this.block = new Block();
+
+      if (this.handlerMode) {
+        this.block.lines = new ArrayList<>();
+      } else {
+        this.out = new ByteArrayOutputStream(end - start);
+        if (this.encoder != null) {
+          this.encoder.setOutputStream(this.out);
+        }
+      }
+
+      if (this.filter != null) {
+        this.block.counters = new LocalReporter();
+        this.blockIncrementer.counters = this.block.counters;
+      }
+
+      int lineStart = start;
+
+      while (lineStart < end) {
+
+        final int lineEnd = indexOf(data, lineStart, end, (byte) '\n');
+
+        // Remove the carriage return of the end of the line
+        final int contentEnd = lineEnd > lineStart && data[lineEnd - 1] == '\r'
+            ? lineEnd - 1 : lineEnd;
+
+        if (isAlignmentLine(data, lineStart, contentEnd)) {
+
+          this.block.inputAlignments++;
+
+          if (this.parser == null) {
+            writeLine(data, lineStart, contentEnd);
+            this.block.outputAlignments++;
+          } else {
+            processAlignment(data, lineStart, contentEnd);
+          }
+
+        } else {
+
+          // The other lines are only kept in SAM
+          flushGroup(data);
+          if (this.encoder == null) {
+            writeLine(data, lineStart, contentEnd);
+          }
+        }
+
+        lineStart = lineEnd + 1;
+      }
+
+      flushGroup(data);
+
+      final Block result = this.block;
+      if (!this.handlerMode) {
+        result.data = this.out.toByteArray();
+      }
+
+      this.block = null;
+      this.out = null;
+
+      return result;
+    }
+
+    /**
+     * Parse an alignment and add it to the current group of alignments.
+     * @param data data
+     * @param start start of the line
+     * @param end end of the line (excluded)
+     * @throws IOException if the alignment cannot be encoded in BAM
+     */
+    private void processAlignment(final byte[] data, final int start,
+        final int end) throws IOException {
+
+      final String line =
+          new String(data, start, end - start, StandardCharsets.ISO_8859_1);
+      final SAMRecord record;
+
+      try {
+        record = this.parser.parseLine(line);
+      } catch (SAMException e) {
+
+        if (this.encoder != null) {
+          throw new IOException("Invalid SAM alignment: " + line, e);
+        }
+
+        // Invalid alignments are kept unfiltered in SAM
+        flushGroup(data);
+        writeLine(data, start, end);
+        this.block.outputAlignments++;
+        this.block.invalidAlignments++;
+        return;
+      }
+
+      if (this.filter == null) {
+        writeRecord(record, data, start, end);
+        this.block.outputAlignments++;
+        return;
+      }
+
+      final String name = getAlignmentName(record);
+
+      if (!name.equals(this.groupName)) {
+        flushGroup(data);
+        this.groupName = name;
+      }
+
+      this.group.add(record);
+      this.groupLines.add(new int[] {start, end});
+    }
+
+    /**
+     * Filter the current group of alignments and write the kept alignments in
+     * the order of the input.
+     * @param data data
+     */
+    private void flushGroup(final byte[] data) {
+
+      if (this.group.isEmpty()) {
+        return;
+      }
+
+      this.filteredGroup.addAll(this.group);
+      this.filter.filterReadAlignments(this.filteredGroup);
+      this.keptRecords.addAll(this.filteredGroup);
+
+      for (int i = 0; i < this.group.size(); i++) {
+
+        final SAMRecord record = this.group.get(i);
+
+        if (this.keptRecords.contains(record)) {
+          final int[] line = this.groupLines.get(i);
+          writeRecord(record, data, line[0], line[1]);
+          this.block.outputAlignments++;
+        }
+      }
+
+      this.group.clear();
+      this.filteredGroup.clear();
+      this.groupLines.clear();
+      this.keptRecords.clear();
+      this.groupName = null;
+    }
+
+    /**
+     * Write an alignment. In SAM, the line of the alignment is written as is.
+     * @param record the alignment
+     * @param data data
+     * @param start start of the line of the alignment
+     * @param end end of the line of the alignment (excluded)
+     */
+    private void writeRecord(final SAMRecord record, final byte[] data,
+        final int start, final int end) {
+
+      if (this.encoder != null) {
+        this.encoder.encode(record);
+      } else {
+        writeLine(data, start, end);
+      }
+    }
+
+    /**
+     * Write a SAM line.
+     * @param data data
+     * @param start start of the line
+     * @param end end of the line (excluded)
+     */
+    private void writeLine(final byte[] data, final int start, final int end) {
+
+      if (this.handlerMode) {
+        this.block.lines
+            .add(new String(data, start, end - start, Globals.DEFAULT_CHARSET));
+      } else {
+        this.out.write(data, start, end - start);
+        this.out.write('\n');
+      }
+    }
+
+    /**
+     * Constructor.
+     * @param header SAM header
+     * @param handlerMode true if the lines are sent to a line handler
+     * @throws EoulsanException if an error occurs while creating the
+     *           alignments filter
+     */
+    Worker(final SAMFileHeader header, final boolean handlerMode)
+        throws EoulsanException {
+
+      final boolean bam = outputFormat == OutputFormat.BAM && !handlerMode;
+
+      this.handlerMode = handlerMode;
+      this.parser =
+          bam || isFiltering() ? new SAMLineParser(header) : null;
+      this.encoder = bam ? new BAMRecordCodec(header) : null;
+      this.filter = isFiltering() ? createFilter(this.blockIncrementer) : null;
+    }
+  }
+
+  /**
+   * This class define the processing of a block of lines.
+   */
+  private static final class BlockProcessor implements Callable<Block> {
+
+    private final ThreadLocal<Worker> workers;
+    private final WorkerFactory factory;
+    private final byte[] data;
+    private final int start;
+    private final int end;
+
+    @Override
+    public Block call() throws EoulsanException, IOException {
+
+      Worker worker = this.workers.get();
+
+      if (worker == null) {
+        worker = this.factory.newWorker();
+        this.workers.set(worker);
+      }
+
+      return worker.process(this.data, this.start, this.end);
+    }
+
+    BlockProcessor(final ThreadLocal<Worker> workers,
+        final WorkerFactory factory, final byte[] data, final int start,
+        final int end) {
+
+      this.workers = workers;
+      this.factory = factory;
+      this.data = data;
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * This class define the factory of the workers of a processing.
+   */
+  private final class WorkerFactory {
+
+    private final boolean handlerMode;
+    private SAMFileHeader header;
+
+    Worker newWorker() throws EoulsanException {
+
+      return new Worker(this.header, this.handlerMode);
+    }
+
+    WorkerFactory(final boolean handlerMode) {
+
+      this.handlerMode = handlerMode;
+    }
+  }
+
+  /**
+   * This class define the thread that write the blocks.
+   */
+  private final class WriterThread extends Thread {
+
+    private final BlockingQueue<Future<Block>> queue;
+    private final OutputStream out;
+    private final LineHandler handler;
+    private volatile Throwable exception;
+
+    @Override
+    public void run() {
+
+      try {
+
+        Future<Block> future;
+        while ((future = this.queue.take()) != END_OF_BLOCKS) {
+
+          // After an error, the blocks are only removed from the queue to
+          // avoid to block the reader
+          if (this.exception != null) {
+            future.cancel(true);
+            continue;
+          }
+
+          try {
+            write(future.get());
+          } catch (ExecutionException e) {
+            this.exception = e.getCause();
+          } catch (Throwable t) {
+            this.exception = t;
+          }
+        }
+
+      } catch (InterruptedException e) {
+        this.exception = e;
+      }
+    }
+
+    /**
+     * Write a block and update the counters.
+     * @param block the block to write
+     * @throws IOException if an error occurs while writing the block
+     */
+    private void write(final Block block) throws IOException {
+
+      if (this.handler != null) {
+        for (String line : block.lines) {
+          this.handler.handle(line);
+        }
+      } else {
+        this.out.write(block.data);
+      }
+
+      inputAlignmentCount += block.inputAlignments;
+      outputAlignmentCount += block.outputAlignments;
+      invalidAlignmentCount += block.invalidAlignments;
+
+      // Add the counters of the alignments filters
+      if (block.counters != null && incrementer != null) {
+        for (String group : block.counters.getCounterGroups()) {
+          for (String name : block.counters.getCounterNames(group)) {
+            incrementer.incrCounter(group, name,
+                block.counters.getCounterValue(group, name));
+          }
+        }
+      }
+    }
+
+    WriterThread(final BlockingQueue<Future<Block>> queue,
+        final OutputStream out, final LineHandler handler) {
+
+      super("SAMOutputPipeline writer");
+      this.queue = queue;
+      this.out = out;
+      this.handler = handler;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of alignments read by the last processing.
+   * @return the number of alignments read
+   */
+  public long getInputAlignmentCount() {
+
+    return this.inputAlignmentCount;
+  }
+
+  /**
+   * Get the number of alignments written by the last processing.
+   * @return the number of alignments written
+   */
+  public long getOutputAlignmentCount() {
+
+    return this.outputAlignmentCount;
+  }
+
+  /**
+   * Get the number of alignments that cannot be parsed by the last
+   * processing. These alignments are written unfiltered in SAM.
+   * @return the number of invalid alignments
+   */
+  public long getInvalidAlignmentCount() {
+
+    return this.invalidAlignmentCount;
+  }
+
+  /**
+   * Test if alignments filters are set.
+   * @return true if alignments filters are set
+   */
+  public boolean isFiltering() {
+
+    return !this.filterParameters.isEmpty();
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Set the output format of the output streams.
+   * @param outputFormat the output format
+   */
+  public void setOutputFormat(final OutputFormat outputFormat) {
+
+    if (outputFormat == null) {
+      throw new NullPointerException("outputFormat argument cannot be null");
+    }
+
+    this.outputFormat = outputFormat;
+  }
+
+  /**
+   * Set the compression level of the BAM output.
+   * @param compressionLevel the compression level
+   */
+  public void setCompressionLevel(final int compressionLevel) {
+
+    if (compressionLevel < 0 || compressionLevel > 9) {
+      throw new IllegalArgumentException(
+          "Invalid compression level: " + compressionLevel);
+    }
+
+    this.compressionLevel = compressionLevel;
+  }
+
+  /**
+   * Set the alignments filters. Each thread uses its own instances of the
+   * filters and the counters of the filters are added to the incrementer by
+   * the writer thread.
+   * @param parameters the parameters of the alignments filters, in the format
+   *          of MultiReadAlignmentsFilterBuilder
+   * @param incrementer incrementer of the counters of the filters
+   * @param counterGroup group of the counters of the filters
+   * @throws EoulsanException if the parameters of the filters are invalid
+   */
+  public void setAlignmentsFilter(final Map<String, String> parameters,
+      final ReporterIncrementer incrementer, final String counterGroup)
+      throws EoulsanException {
+
+    if (parameters == null) {
+      throw new NullPointerException("parameters argument cannot be null");
+    }
+
+    final MultiReadAlignmentsFilterBuilder builder =
+        new MultiReadAlignmentsFilterBuilder(parameters);
+
+    // Check the initialization of the filters
+    builder.getAlignmentsFilter();
+
+    this.filterParameters = new LinkedHashMap<>(builder.getParameters());
+    this.incrementer = incrementer;
+    this.counterGroup = counterGroup;
+  }
+
+  //
+  // Process methods
+  //
+
+  /**
+   * Process SAM data. In BAM, the output stream is closed at the end of the
+   * processing to write the end of the BGZF data. Otherwise, the streams are
+   * not closed by this method.
+   * @param in SAM input stream
+   * @param out output stream
+   * @return the number of alignments written
+   * @throws IOException if an error occurs while reading or writing data
+   */
+  public long process(final InputStream in, final OutputStream out)
+      throws IOException {
+
+    if (in == null) {
+      throw new NullPointerException("in argument cannot be null");
+    }
+
+    if (out == null) {
+      throw new NullPointerException("out argument cannot be null");
+    }
+
+    if (this.outputFormat == OutputFormat.SAM) {
+
+      process(in, out, null);
+      out.flush();
+
+      return this.outputAlignmentCount;
+    }
+
+    try (final ParallelGZipOutputStream bamOut =
+        new ParallelGZipOutputStream(out, this.threadNumber,
+            this.compressionLevel)) {
+      process(in, bamOut, null);
+    }
+
+    return this.outputAlignmentCount;
+  }
+
+  /**
+   * Process SAM data and send the SAM lines to a handler. The input stream is
+   * not closed by this method.
+   * @param in SAM input stream
+   * @param handler the handler of the lines
+   * @return the number of alignments handled
+   * @throws IOException if an error occurs while reading or handling data
+   */
+  public long process(final InputStream in, final LineHandler handler)
+      throws IOException {
+
+    if (in == null) {
+      throw new NullPointerException("in argument cannot be null");
+    }
+
+    if (handler == null) {
+      throw new NullPointerException("handler argument cannot be null");
+    }
+
+    process(in, null, handler);
+
+    return this.outputAlignmentCount;
+  }
+
+  /**
+   * Process SAM data.
+   * @param in SAM input stream
+   * @param out output stream, null if a line handler is used
+   * @param handler line handler, null if an output stream is used
+   * @throws IOException if an error occurs while reading or writing data
+   */
+  private void process(final InputStream in, final OutputStream out,
+      final LineHandler handler) throws IOException {
+
+    this.inputAlignmentCount = 0;
+    this.outputAlignmentCount = 0;
+    this.invalidAlignmentCount = 0;
+
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        this.threadNumber, new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("SAMOutputPipeline worker-%d").build());
+
+    final BlockingQueue<Future<Block>> queue =
+        new ArrayBlockingQueue<>(2 * this.threadNumber);
+    final WriterThread writer = new WriterThread(queue, out, handler);
+    writer.start();
+
+    try {
+
+      readBlocks(in, queue, writer, executor,
+          new WorkerFactory(handler != null));
+
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } finally {
+
+      try {
+        put(queue, END_OF_BLOCKS, writer);
+        writer.join();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      } finally {
+        executor.shutdownNow();
+      }
+    }
+
+    final Throwable exception = writer.exception;
+
+    if (exception != null) {
+      Throwables.propagateIfPossible(exception, IOException.class);
+      throw new IOException(exception);
+    }
+  }
+
+  /**
+   * Put a block in the queue of the writer. If the writer thread has stopped,
+   * the block is not added to avoid to wait for ever.
+   * @param queue queue of the writer
+   * @param future the block to add
+   * @param writer writer thread
+   * @throws IOException if the writer thread has stopped
+   * @throws InterruptedException if the thread is interrupted
+   */
+  private static void put(final BlockingQueue<Future<Block>> queue,
+      final Future<Block> future, final WriterThread writer)
+      throws IOException, InterruptedException {
+
+    while (!queue.offer(future, QUEUE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+
+      if (!writer.isAlive()) {
+        future.cancel(true);
+        throw new IOException("The SAM output writer thread has stopped");
+      }
+    }
+  }
+
+  /**
+   * Read the blocks of the input and submit them.
+   * @param in input stream
+   * @param queue queue of the writer
+   * @param writer writer thread
+   * @param executor executor of the block processors
+   * @param factory factory of the workers
+   * @throws IOException if an error occurs while reading data
+   * @throws InterruptedException if the thread is interrupted
+   */
+  private void readBlocks(final InputStream in,
+      final BlockingQueue<Future<Block>> queue, final WriterThread writer,
+      final ExecutorService executor, final WorkerFactory factory)
+      throws IOException, InterruptedException {
+
+    final ThreadLocal<Worker> workers = new ThreadLocal<>();
+    final ByteArrayOutputStream headerText = new ByteArrayOutputStream();
+    boolean inHeader = true;
+
+    byte[] carry = new byte[0];
+    int carryLength = 0;
+    boolean eof = false;
+
+    while (!eof && writer.exception == null) {
+
+      // Create a new block that starts with the end of the previous block
+      byte[] block =
+          new byte[Math.max(this.blockSize, carryLength + this.blockSize / 2)];
+      System.arraycopy(carry, 0, block, 0, carryLength);
+      int length = carryLength;
+
+      // Fill the block
+      int n = 0;
+      while (length < block.length
+          && (n = in.read(block, length, block.length - length)) != -1) {
+        length += n;
+      }
+      eof = n == -1;
+
+      // Find the end of the last complete line
+      int end = lastIndexOf(block, length, (byte) '\n') + 1;
+
+      if (eof && end < length) {
+
+        // Add a missing end of line at the end of the data
+        if (length == block.length) {
+          block = copyOf(block, length + 1);
+        }
+        block[length++] = '\n';
+        end = length;
+      }
+
+      int start = 0;
+
+      // Extract the header lines
+      if (inHeader) {
+
+        while (start < end && block[start] == '@') {
+
+          final int lineEnd = indexOf(block, start, end, (byte) '\n') + 1;
+          headerText.write(block, start, lineEnd - start);
+          start = lineEnd;
+        }
+
+        if (start == end && !eof) {
+          carryLength = length - end;
+          carry = copyOfRange(block, end, length);
+          continue;
+        }
+
+        inHeader = false;
+        factory.header = parseHeader(headerText.toByteArray());
+        put(queue, Futures.immediateFuture(
+            createHeaderBlock(headerText.toByteArray(), factory)), writer);
+      }
+
+      // Keep the incomplete line and, when filtering, the alignments of the
+      // last read for the next block
+      final int split =
+          isFiltering() && !eof ? lastReadStart(block, start, end) : end;
+      carryLength = length - split;
+      carry = copyOfRange(block, split, length);
+
+      if (start < split) {
+        put(queue, executor.submit(
+            new BlockProcessor(workers, factory, block, start, split)),
+            writer);
+      }
+    }
+  }
+
+  /**
+   * Parse the SAM header.
+   * @param text text of the header
+   * @return a SAMFileHeader object
+   */
+  private static SAMFileHeader parseHeader(final byte[] text) {
+
+    return new SAMTextHeaderCodec().decode(
+        new StringLineReader(new String(text, StandardCharsets.ISO_8859_1)),
+        null);
+  }
+
+  /**
+   * Create the block of the header.
+   * @param text text of the header
+   * @param factory factory of the workers
+   * @return a block with the header in the output format
+   * @throws IOException if an error occurs while creating the block
+   */
+  private Block createHeaderBlock(final byte[] text,
+      final WorkerFactory factory) throws IOException {
+
+    if (this.outputFormat == OutputFormat.BAM && !factory.handlerMode) {
+
+      final ByteArrayOutputStream out = new ByteArrayOutputStream();
+      ParallelSAM2BAMConverter.writeBAMHeader(factory.header, out);
+
+      final Block result = new Block();
+      result.data = out.toByteArray();
+
+      return result;
+    }
+
+    // The header lines contain no alignment, they are only copied
+    try {
+      return factory.newWorker().process(text, 0, text.length);
+    } catch (EoulsanException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Create the alignments filter of a thread.
+   * @param incrementer incrementer of the thread
+   * @return a new MultiReadAlignmentsFilter object
+   * @throws EoulsanException if an error occurs while creating the filter
+   */
+  private MultiReadAlignmentsFilter createFilter(
+      final ReporterIncrementer incrementer) throws EoulsanException {
+
+    // As filters are not thread safe, each thread uses a new instance of
+    // each filter
+    return new MultiReadAlignmentsFilterBuilder(this.filterParameters)
+        .getAlignmentsFilter(incrementer, this.counterGroup);
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Test if a line is an alignment line. The rules are the same as the rules
+   * of the previous line by line parser: the line must not be empty, must not
+   * start with '@' and must contain a tabulation.
+   * @param data data
+   * @param start start of the line
+   * @param end end of the line (excluded)
+   * @return true if the line is an alignment
+   */
+  private static boolean isAlignmentLine(final byte[] data, final int start,
+      final int end) {
+
+    int i = start;
+    while (i < end && data[i] <= ' ') {
+      i++;
+    }
+
+    if (i == end || data[i] == '@') {
+      return false;
+    }
+
+    return indexOf(data, i, end, (byte) '\t') != -1;
+  }
+
+  /**
+   * Get the start of the alignments of the last read of a block. The read
+   * name is the part of the first field before the first space, like in
+   * ReadAlignmentsFilterBuffer.
+   * @param data data
+   * @param start start of the lines
+   * @param end end of the lines (excluded), must be the end of a line
+   * @return the start of the alignments of the last read or end if the last
+   *         line is not an alignment
+   */
+  private static int lastReadStart(final byte[] data, final int start,
+      final int end) {
+
+    final int lastLine = lineStart(data, start, end - 1);
+
+    if (!isAlignmentLine(data, lastLine, end - 1)) {
+      return end;
+    }
+
+    final int nameLength = readNameLength(data, lastLine, end - 1);
+    int result = lastLine;
+
+    while (result > start) {
+
+      final int previousLine = lineStart(data, start, result - 1);
+
+      if (!isAlignmentLine(data, previousLine, result - 1)
+          || readNameLength(data, previousLine, result - 1) != nameLength
+          || !regionMatches(data, previousLine, lastLine, nameLength)) {
+        break;
+      }
+
+      result = previousLine;
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the start of the line that ends at a position.
+   * @param data data
+   * @param start start of the lines
+   * @param lineEnd position of the end of line
+   * @return the start of the line
+   */
+  private static int lineStart(final byte[] data, final int start,
+      final int lineEnd) {
+
+    int i = lineEnd;
+    while (i > start && data[i - 1] != '\n') {
+      i--;
+    }
+
+    return i;
+  }
+
+  /**
+   * Get the length of the read name of an alignment line.
+   * @param data data
+   * @param start start of the line
+   * @param end end of the line (excluded)
+   * @return the length of the read name
+   */
+  private static int readNameLength(final byte[] data, final int start,
+      final int end) {
+
+    int i = start;
+    while (i < end && data[i] != '\t' && data[i] != ' ') {
+      i++;
+    }
+
+    return i - start;
+  }
+
+  /**
+   * Get the name of the read of an alignment, like in
+   * ReadAlignmentsFilterBuffer.
+   * @param record the alignment
+   * @return the name of the read
+   */
+  private static String getAlignmentName(final SAMRecord record) {
+
+    final String name = record.getReadName();
+    final int spaceIndex = name.indexOf(' ');
+
+    return spaceIndex == -1 ? name : name.substring(0, spaceIndex);
+  }
+
+  private static boolean regionMatches(final byte[] data, final int start1,
+      final int start2, final int length) {
+
+    for (int i = 0; i < length; i++) {
+      if (data[start1 + i] != data[start2 + i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static int indexOf(final byte[] data, final int start, final int end,
+      final byte b) {
+
+    for (int i = start; i < end; i++) {
+      if (data[i] == b) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static int lastIndexOf(final byte[] data, final int length,
+      final byte b) {
+
+    for (int i = length - 1; i >= 0; i--) {
+      if (data[i] == b) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  private static byte[] copyOf(final byte[] data, final int length) {
+
+    final byte[] result = new byte[length];
+    System.arraycopy(data, 0, result, 0, Math.min(length, data.length));
+
+    return result;
+  }
+
+  private static byte[] copyOfRange(final byte[] data, final int from,
+      final int to) {
+
+    final byte[] result = new byte[to - from];
+    System.arraycopy(data, from, result, 0, to - from);
+
+    return result;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param threadNumber number of threads used to process the blocks
+   */
+  public SAMOutputPipeline(final int threadNumber) {
+
+    this(threadNumber, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * Constructor.
+   * @param threadNumber number of threads used to process the blocks
+   * @param blockSize size of the blocks
+   */
+  SAMOutputPipeline(final int threadNumber, final int blockSize) {
+
+    if (threadNumber < 1) {
+      throw new IllegalArgumentException(
+          "threadNumber must be greater than 0: " + threadNumber);
+    }
+
+    if (blockSize < 2) {
+      throw new IllegalArgumentException(
+          "blockSize must be greater than 1: " + blockSize);
+    }
+
+    this.threadNumber = threadNumber;
+    this.blockSize = blockSize;
+  }
+
+}
@@ -0,0 +1,40 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.io.hadoop;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.lib.output.SequenceFileOutputFormat;
+
+/**
+ * This class define an OutputFormat that store the alignments of the reads in
+ * sequence files of {@link SAMRecordWritable}. This format is intended for the
+ * intermediate files of the jobs that can be read with
+ * {@link SAMRecordInputFormat}.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SAMRecordOutputFormat
+    extends SequenceFileOutputFormat<Text, SAMRecordWritable> {
+}
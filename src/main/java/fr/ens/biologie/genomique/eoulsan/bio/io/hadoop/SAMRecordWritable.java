@@ -0,0 +1,188 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.io.hadoop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
+import org.seqdoop.hadoop_bam.LazyBAMRecordFactory;
+
+import htsjdk.samtools.BAMRecordCodec;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMRecord;
+
+/**
+ * This class define a Writable for the alignments of a read (e.g. an alignment
+ * or the two alignments of a pair). The alignments are serialized with the BAM
+ * binary encoding and the fields of the deserialized records (CIGAR, bases,
+ * qualities, attributes...) are only decoded when they are accessed. Like in
+ * BAM files, the references are serialized as indexes in a sequence
+ * dictionary, so the writer and the reader of the records must use SAM headers
+ * with the same sequence dictionary.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SAMRecordWritable implements Writable {
+
+  private final List<SAMRecord> records = new ArrayList<>();
+
+  private final BAMRecordCodec encoder = new BAMRecordCodec(null);
+  private final BAMRecordCodec decoder =
+      new BAMRecordCodec(null, new LazyBAMRecordFactory());
+  private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+  private byte[] inputBuffer = new byte[1024];
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the records. The SAM header is set in the records to resolve the
+   * names of the references.
+   * @param header the SAM header
+   * @return an unmodifiable list with the records
+   */
+  public List<SAMRecord> get(final SAMFileHeader header) {
+
+    if (header == null) {
+      throw new NullPointerException("header argument cannot be null");
+    }
+
+    for (SAMRecord record : this.records) {
+      record.setHeader(header);
+    }
+
+    return Collections.unmodifiableList(this.records);
+  }
+
+  /**
+   * Get the number of records.
+   * @return the number of records
+   */
+  public int size() {
+
+    return this.records.size();
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Set the record.
+   * @param record the record
+   */
+  public void set(final SAMRecord record) {
+
+    if (record == null) {
+      throw new NullPointerException("record argument cannot be null");
+    }
+
+    this.records.clear();
+    this.records.add(record);
+  }
+
+  /**
+   * Set the records.
+   * @param records the records
+   */
+  public void set(final List<SAMRecord> records) {
+
+    if (records == null) {
+      throw new NullPointerException("records argument cannot be null");
+    }
+
+    this.records.clear();
+    this.records.addAll(records);
+  }
+
+  //
+  // Writable methods
+  //
+
+  @Override
+  public void write(final DataOutput out) throws IOException {
+
+    WritableUtils.writeVInt(out, this.records.size());
+
+    for (SAMRecord record : this.records) {
+
+      this.buffer.reset();
+      this.encoder.setOutputStream(this.buffer);
+      this.encoder.encode(record);
+
+      WritableUtils.writeVInt(out, this.buffer.size());
+      out.write(this.buffer.toByteArray());
+    }
+  }
+
+  @Override
+  public void readFields(final DataInput in) throws IOException {
+
+    this.records.clear();
+
+    final int count = WritableUtils.readVInt(in);
+
+    for (int i = 0; i < count; i++) {
+
+      final int length = WritableUtils.readVInt(in);
+
+      if (length > this.inputBuffer.length) {
+        this.inputBuffer =
+            new byte[Math.max(length, 2 * this.inputBuffer.length)];
+      }
+      in.readFully(this.inputBuffer, 0, length);
+
+      // The decoded record keep its own copy of the variable length fields
+      this.decoder.setInputStream(
+          new ByteArrayInputStream(this.inputBuffer, 0, length));
+      this.records.add(this.decoder.decode());
+    }
+  }
+
+  @Override
+  public String toString() {
+
+    final StringBuilder sb = new StringBuilder();
+
+    for (SAMRecord record : this.records) {
+      if (sb.length() > 0) {
+        sb.append('\n');
+      }
+      sb.append(record.getSAMString().trim());
+    }
+
+    return sb.toString();
+  }
+
+}
@@ -25,15 +25,18 @@
 package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
  * This class define an abstract ReadFilter that allow simple Pair-end and
- * Mate-pair filter handling.
+ * Mate-pair filter handling. The default implementation of the
+ * {@link ByteReadSequence} methods converts the reads to {@link ReadSequence}
+ * objects, so filters must override these methods to avoid allocations.
  * @since 1.0
  * @author Laurent Jourdren
  */
-public abstract class AbstractReadFilter implements ReadFilter {
+public abstract class AbstractReadFilter implements ByteReadFilter {
 
   @Override
   public boolean accept(final ReadSequence read1, final ReadSequence read2) {
@@ -41,6 +44,19 @@ public abstract class AbstractReadFilter implements ReadFilter {
     return accept(read1) && accept(read2);
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    return acceptConverted(this, read);
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    return acceptConverted(this, read1, read2);
+  }
+
   @Override
   public void setParameter(final String key, final String value)
       throws EoulsanException {
@@ -53,4 +69,54 @@ public abstract class AbstractReadFilter implements ReadFilter {
   public void init() {
   }
 
+  //
+  // Static methods
+  //
+
+  /**
+   * Tests a read with a filter after its conversion to a {@link ReadSequence}
+   * object.
+   * @param filter the filter
+   * @param read read to test
+   * @return true if the read is accepted by the filter
+   */
+  static boolean acceptConverted(final ReadFilter filter,
+      final ByteReadSequence read) {
+
+    if (read == null) {
+      return false;
+    }
+
+    final ReadSequence r = read.toReadSequence();
+    final boolean result = filter.accept(r);
+    read.set(r);
+
+    return result;
+  }
+
+  /**
+   * Tests reads with a filter after their conversion to {@link ReadSequence}
+   * objects.
+   * @param filter the filter
+   * @param read1 first read to test
+   * @param read2 second read to test
+   * @return true if the reads are accepted by the filter
+   */
+  static boolean acceptConverted(final ReadFilter filter,
+      final ByteReadSequence read1, final ByteReadSequence read2) {
+
+    if (read1 == null || read2 == null) {
+      return filter.accept(read1 == null ? null : read1.toReadSequence(),
+          read2 == null ? null : read2.toReadSequence());
+    }
+
+    final ReadSequence r1 = read1.toReadSequence();
+    final ReadSequence r2 = read2.toReadSequence();
+    final boolean result = filter.accept(r1, r2);
+    read1.set(r1);
+    read2.set(r2);
+
+    return result;
+  }
+
 }
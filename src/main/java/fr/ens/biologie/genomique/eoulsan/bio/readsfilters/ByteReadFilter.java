@@ -0,0 +1,54 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
+
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
+
+/**
+ * This interface define a read filter that can test {@link ByteReadSequence}
+ * objects without creating a ReadSequence object for each read. The filters
+ * that only implement the {@link ReadFilter} interface are still supported by
+ * the callers of this interface.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public interface ByteReadFilter extends ReadFilter {
+
+  /**
+   * Tests if a specified read should be keep. The read object may be modified
+   * in place (e.g. trimmed) by the filter.
+   * @param read read to test
+   */
+  boolean acceptByteRead(ByteReadSequence read);
+
+  /**
+   * Tests if the specified reads should be keep. The read objects may be
+   * modified in place (e.g. trimmed) by the filter.
+   * @param read1 first read to test
+   * @param read2 second read to test
+   */
+  boolean acceptByteRead(ByteReadSequence read1, ByteReadSequence read2);
+
+}
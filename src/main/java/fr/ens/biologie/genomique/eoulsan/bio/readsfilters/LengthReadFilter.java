@@ -25,6 +25,7 @@
 package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
@@ -48,6 +49,23 @@ public class LengthReadFilter extends AbstractReadFilter {
     return read.length() > this.minimalLengthThreshold;
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    if (read == null) {
+      return false;
+    }
+
+    return read.length() > this.minimalLengthThreshold;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    return acceptByteRead(read1) && acceptByteRead(read2);
+  }
+
   @Override
   public String getName() {
 
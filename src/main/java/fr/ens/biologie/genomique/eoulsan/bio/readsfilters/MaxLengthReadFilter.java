@@ -1,6 +1,7 @@
 package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
@@ -23,6 +24,23 @@ public class MaxLengthReadFilter extends AbstractReadFilter {
     return read.length() < this.maximumLengthThreshold;
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    if (read == null) {
+      return false;
+    }
+
+    return read.length() < this.maximumLengthThreshold;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    return acceptByteRead(read1) && acceptByteRead(read2);
+  }
+
   @Override
   public String getName() {
 
@@ -27,6 +27,7 @@ package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 import java.util.ArrayList;
 import java.util.List;
 
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 import fr.ens.biologie.genomique.eoulsan.util.ReporterIncrementer;
 
@@ -36,7 +37,7 @@ import fr.ens.biologie.genomique.eoulsan.util.ReporterIncrementer;
  * @since 1.0
  * @author Laurent Jourdren
  */
-public class MultiReadFilter implements ReadFilter {
+public class MultiReadFilter implements ByteReadFilter {
 
   private final List<ReadFilter> list = new ArrayList<>();
   private final ReporterIncrementer incrementer;
@@ -84,6 +85,84 @@ public class MultiReadFilter implements ReadFilter {
     return true;
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    if (read == null) {
+      return false;
+    }
+
+    for (ReadFilter rf : this.list) {
+
+      if (!acceptByteRead(rf, read)) {
+
+        if (this.incrementer != null) {
+          this.incrementer.incrCounter(this.counterGroup,
+              "reads rejected by " + rf.getName() + " filter", 1);
+        }
+        return false;
+      }
+
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    for (ReadFilter rf : this.list) {
+
+      if (!acceptByteRead(rf, read1, read2)) {
+
+        if (this.incrementer != null) {
+          this.incrementer.incrCounter(this.counterGroup,
+              "reads rejected by " + rf.getName() + " filter", 1);
+        }
+        return false;
+      }
+
+    }
+
+    return true;
+  }
+
+  /**
+   * Tests a read with a filter. The read is converted to a ReadSequence object
+   * if the filter does not handle ByteReadSequence objects.
+   * @param filter the filter
+   * @param read read to test
+   * @return true if the read is accepted by the filter
+   */
+  private static boolean acceptByteRead(final ReadFilter filter,
+      final ByteReadSequence read) {
+
+    if (filter instanceof ByteReadFilter) {
+      return ((ByteReadFilter) filter).acceptByteRead(read);
+    }
+
+    return AbstractReadFilter.acceptConverted(filter, read);
+  }
+
+  /**
+   * Tests reads with a filter. The reads are converted to ReadSequence objects
+   * if the filter does not handle ByteReadSequence objects.
+   * @param filter the filter
+   * @param read1 first read to test
+   * @param read2 second read to test
+   * @return true if the reads are accepted by the filter
+   */
+  private static boolean acceptByteRead(final ReadFilter filter,
+      final ByteReadSequence read1, final ByteReadSequence read2) {
+
+    if (filter instanceof ByteReadFilter) {
+      return ((ByteReadFilter) filter).acceptByteRead(read1, read2);
+    }
+
+    return AbstractReadFilter.acceptConverted(filter, read1, read2);
+  }
+
   /**
    * Add a filter to the multi filter.
    * @param filter filter to add
@@ -24,6 +24,7 @@
 
 package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
@@ -83,6 +84,45 @@ public class PairCheckReadFilter extends AbstractReadFilter {
     return prefix1.equals(prefix2);
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    if (read1 == null || read2 == null) {
+      return false;
+    }
+
+    final int len1 = read1.getNameLength();
+    final int len2 = read2.getNameLength();
+
+    if (len1 != len2 || len1 < 2) {
+      return false;
+    }
+
+    final int len = len1 - 2;
+
+    if (read1.getNameByte(len) != '/'
+        || read1.getNameByte(len + 1) != '1'
+        || read2.getNameByte(len) != '/'
+        || read2.getNameByte(len + 1) != '2') {
+      return false;
+    }
+
+    for (int i = 0; i < len; i++) {
+      if (read1.getNameByte(i) != read2.getNameByte(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    return read != null;
+  }
+
   @Override
   public boolean accept(final ReadSequence read) {
 
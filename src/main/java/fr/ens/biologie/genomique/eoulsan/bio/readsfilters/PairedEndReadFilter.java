@@ -25,6 +25,7 @@
 package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
@@ -33,7 +34,7 @@ import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
  * @since 1.0
  * @author Laurent Jourdren
  */
-public class PairedEndReadFilter implements ReadFilter {
+public class PairedEndReadFilter implements ByteReadFilter {
 
   private boolean acceptPairedEnd = true;
   private final boolean acceptSingleEnd = true;
@@ -54,6 +55,23 @@ public class PairedEndReadFilter implements ReadFilter {
     return this.acceptPairedEnd;
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    return this.acceptSingleEnd;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    if (read1 == null || read2 == null) {
+      return false;
+    }
+
+    return this.acceptPairedEnd;
+  }
+
   @Override
   public String getName() {
 
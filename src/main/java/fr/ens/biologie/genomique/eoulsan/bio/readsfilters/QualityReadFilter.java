@@ -24,9 +24,8 @@
 
 package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 
-import static fr.ens.biologie.genomique.eoulsan.util.StatUtils.mean;
-
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
@@ -47,7 +46,24 @@ public class QualityReadFilter extends AbstractReadFilter {
       return false;
     }
 
-    return mean(read.qualityScores()) > this.qualityThreshold;
+    return read.meanQuality() > this.qualityThreshold;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    if (read == null) {
+      return false;
+    }
+
+    return read.meanQuality() > this.qualityThreshold;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    return acceptByteRead(read1) && acceptByteRead(read2);
   }
 
   @Override
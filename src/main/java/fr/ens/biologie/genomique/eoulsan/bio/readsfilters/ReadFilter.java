@@ -43,7 +43,7 @@ public interface ReadFilter {
   /**
    * Tests if the specified reads should be keep.
    * @param read1 first read to test
-   * @param read2 first read to test
+   * @param read2 second read to test
    */
   boolean accept(ReadSequence read1, ReadSequence read2);
 
@@ -26,6 +26,7 @@ package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 
 import java.util.regex.Pattern;
 
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
@@ -55,6 +56,26 @@ public class TrimPolyNEndReadFilter extends AbstractReadFilter {
     return true;
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    if (read == null) {
+      return false;
+    }
+
+    trim(read);
+
+    // Do no accept 0 length reads
+    return read.length() > 0;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    return acceptByteRead(read1) && acceptByteRead(read2);
+  }
+
   /**
    * Trim the read sequence and quality if ends with polyN.
    * @param read Read to trim
@@ -84,6 +105,30 @@ public class TrimPolyNEndReadFilter extends AbstractReadFilter {
     read.setQuality(tmp.getQuality());
   }
 
+  /**
+   * Trim in place the read sequence and quality if ends with polyN.
+   * @param read Read to trim
+   */
+  public static final void trim(final ByteReadSequence read) {
+
+    if (read == null
+        || read.length() != read.getQualityLength() || read.length() == 0) {
+      return;
+    }
+
+    final int len = read.length();
+    int end = len;
+
+    while (end > 0 && read.getSequenceByte(end - 1) == 'N') {
+      end--;
+    }
+
+    // Only remove polyN with at least 2 N
+    if (len - end > 1) {
+      read.trim(0, end);
+    }
+  }
+
   @Override
   public String getName() {
 
@@ -27,6 +27,7 @@ package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 import java.util.regex.Pattern;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
@@ -84,6 +85,25 @@ public class TrimReadFilter extends AbstractReadFilter {
     return read.length() > this.lengthThreshold;
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    if (read == null) {
+      return false;
+    }
+
+    TrimPolyNEndReadFilter.trim(read);
+
+    return read.length() > this.lengthThreshold;
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    return acceptByteRead(read1) && acceptByteRead(read2);
+  }
+
   @Override
   public String getName() {
 
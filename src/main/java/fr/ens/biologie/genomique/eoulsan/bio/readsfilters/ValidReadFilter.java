@@ -24,6 +24,7 @@
 
 package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
 
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 
 /**
@@ -43,6 +44,23 @@ public class ValidReadFilter extends AbstractReadFilter {
     return read.validate();
   }
 
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read) {
+
+    if (read == null) {
+      return false;
+    }
+
+    return read.validate();
+  }
+
+  @Override
+  public boolean acceptByteRead(final ByteReadSequence read1,
+      final ByteReadSequence read2) {
+
+    return acceptByteRead(read1) && acceptByteRead(read2);
+  }
+
   @Override
   public String getName() {
 
@@ -65,6 +65,11 @@ public abstract class AbstractBowtieReadsMapper
     return true;
   }
 
+  @Override
+  public boolean isSharedIndexMemoryAllowed() {
+    return true;
+  }
+
   @Override
   protected boolean checkIfFlavorExists() {
 
@@ -219,8 +224,9 @@ public abstract class AbstractBowtieReadsMapper
         // Add common arguments
         cmd.addAll(createCommonArgs(bowtiePath, index));
 
-        // Enable Index memory mapped in streaming mode
-        if (isMultipleInstancesEnabled()) {
+        // Enable Index memory mapped in streaming mode or to share the index
+        // between the mapper processes
+        if (isMultipleInstancesEnabled() || isSharedIndexMemoryEnabled()) {
           cmd.add("--mm");
         }
 
@@ -265,8 +271,9 @@ public abstract class AbstractBowtieReadsMapper
         // Add common arguments
         cmd.addAll(createCommonArgs(bowtiePath, index));
 
-        // Enable Index memory mapped in streaming mode
-        if (isMultipleInstancesEnabled()) {
+        // Enable Index memory mapped in streaming mode or to share the index
+        // between the mapper processes
+        if (isMultipleInstancesEnabled() || isSharedIndexMemoryEnabled()) {
           cmd.add("--mm");
         }
 
@@ -42,7 +42,10 @@ import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import com.google.common.base.Strings;
 import com.spotify.docker.client.DockerClient;
@@ -76,8 +79,14 @@ public abstract class AbstractSequenceReadsMapper
   static final String LARGE_INDEX_FLAVOR = "large-index";
   static final String DEFAULT_FLAVOR = SHORT_INDEX_FLAVOR;
 
+  // Number of mapper instances that use each index loaded in shared memory
+  private static final Map<File, Integer> SHARED_INDEX_USERS = new HashMap<>();
+
   private InputStream archiveIndexFileInputStream;
   private File archiveIndexDir;
+  private File localArchiveIndexFile;
+  private MapperIndexCache indexCache;
+  private String indexCacheKey;
 
   private FastqFormat fastqFormat = FastqFormat.FASTQ_SANGER;
 
@@ -93,6 +102,9 @@ public abstract class AbstractSequenceReadsMapper
   private File executablesTempDir =
       EoulsanRuntime.getSettings().getExecutablesTempDirectoryFile();
   private boolean multipleInstancesEnabled;
+  private boolean sharedIndexMemoryEnabled;
+  private final Map<File, MapperIndexCache.Lease> sharedIndexes =
+      new LinkedHashMap<>();
   private DockerClient dockerClient;
 
   private ReporterIncrementer incrementer;
@@ -242,6 +254,12 @@ public abstract class AbstractSequenceReadsMapper
     return this.executablesTempDir;
   }
 
+  @Override
+  public MapperIndexCache getIndexCache() {
+
+    return this.indexCache;
+  }
+
   @Override
   public boolean isMultipleInstancesAllowed() {
 
@@ -254,6 +272,18 @@ public abstract class AbstractSequenceReadsMapper
     return this.multipleInstancesEnabled;
   }
 
+  @Override
+  public boolean isSharedIndexMemoryAllowed() {
+
+    return false;
+  }
+
+  @Override
+  public boolean isSharedIndexMemoryEnabled() {
+
+    return this.sharedIndexMemoryEnabled;
+  }
+
   /**
    * Convenient method to directly get the absolute path for the temporary
    * directory.
@@ -368,6 +398,14 @@ public abstract class AbstractSequenceReadsMapper
     this.tempDir = executablesTempDirectory;
   }
 
+  @Override
+  public void setIndexCache(final MapperIndexCache indexCache) {
+
+    checkState(!this.initialized, "Mapper has been initialized");
+
+    this.indexCache = indexCache;
+  }
+
   @Override
   public void setFastqFormat(final FastqFormat format) {
 
@@ -393,6 +431,14 @@ public abstract class AbstractSequenceReadsMapper
     }
   }
 
+  @Override
+  public void setSharedIndexMemoryEnabled(final boolean enable) {
+
+    checkState(!this.initialized, "Mapper has been initialized");
+
+    this.sharedIndexMemoryEnabled = isSharedIndexMemoryAllowed() && enable;
+  }
+
   @Override
   public void setMultipleInstancesEnabled(final boolean enable) {
 
@@ -697,10 +743,6 @@ public abstract class AbstractSequenceReadsMapper
 
     getLogger().fine("Mapping with " + getMapperName() + " in single-end mode");
 
-    // Unzip archive index if necessary
-    unzipArchiveIndexFile(this.archiveIndexFileInputStream,
-        this.archiveIndexDir);
-
     // Process to mapping
     final MapperProcess mapperProcess = mapSE();
 
@@ -771,10 +813,6 @@ public abstract class AbstractSequenceReadsMapper
     checkNotNull(in1, "readsFile1 is null");
     checkNotNull(in2, "readsFile2 is null");
 
-    // Unzip archive index if necessary
-    unzipArchiveIndexFile(this.archiveIndexFileInputStream,
-        this.archiveIndexDir);
-
     // Process to mapping
     final MapperProcess mapperProcess = mapPE();
 
@@ -878,17 +916,7 @@ public abstract class AbstractSequenceReadsMapper
 
     getLogger().fine("Mapping with " + getMapperName() + " in single-end mode");
 
-    // Unzip archive index if necessary
-    unzipArchiveIndexFile(this.archiveIndexFileInputStream,
-        this.archiveIndexDir);
-
-    // Process to mapping
-    final MapperProcess result = internalMapPE(this.archiveIndexDir);
-
-    // Set counter
-    result.setIncrementer(this.incrementer, this.counterGroup);
-
-    return result;
+    return startMapping(true);
   }
 
   @Override
@@ -899,17 +927,219 @@ public abstract class AbstractSequenceReadsMapper
 
     getLogger().fine("Mapping with " + getMapperName() + " in single-end mode");
 
-    // Unzip archive index if necessary
-    unzipArchiveIndexFile(this.archiveIndexFileInputStream,
-        this.archiveIndexDir);
+    return startMapping(false);
+  }
 
-    // Process to mapping
-    final MapperProcess result = internalMapSE(this.archiveIndexDir);
+  /**
+   * Start the mapper process.
+   * @param pairedEnd true for paired-end mode
+   * @return the mapper process
+   * @throws IOException if an error occurs while starting the mapper
+   */
+  private MapperProcess startMapping(final boolean pairedEnd)
+      throws IOException {
 
-    // Set counter
-    result.setIncrementer(this.incrementer, this.counterGroup);
+    // Get the index from the cache or unzip archive index if necessary
+    final MapperIndexCache.Lease lease = acquireIndexFromCache();
+    if (lease == null) {
 
-    return result;
+      if (this.archiveIndexFileInputStream != null) {
+        unzipArchiveIndexFile(this.archiveIndexFileInputStream,
+            this.archiveIndexDir);
+      } else {
+
+        // The archive stream has been closed by a previous use of the cache
+        try (InputStream is = new FileInputStream(this.localArchiveIndexFile)) {
+          unzipArchiveIndexFile(is, this.archiveIndexDir);
+        }
+      }
+    } else {
+
+      // The archive stream is not read when the index comes from the cache
+      closeArchiveIndexFileInputStream();
+    }
+
+    final File indexDir =
+        lease == null ? this.archiveIndexDir : lease.getDirectory();
+
+    try {
+
+      // Process to mapping
+      final MapperProcess result =
+          pairedEnd ? internalMapPE(indexDir) : internalMapSE(indexDir);
+
+      // Set counter
+      result.setIncrementer(this.incrementer, this.counterGroup);
+
+      if (this.sharedIndexMemoryEnabled) {
+
+        // The index is kept until the release of the shared memory
+        addSharedIndex(indexDir, lease);
+      } else {
+
+        // The index can be removed from the cache at the end of the mapping
+        result.addResourceToRelease(lease);
+      }
+
+      return result;
+
+    } catch (IOException | RuntimeException e) {
+
+      if (lease != null) {
+        lease.close();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * Register an index loaded in shared memory.
+   * @param indexDir the index directory
+   * @param lease the lease on the index in the index cache, can be null
+   * @throws IOException if an error occurs while releasing the lease
+   */
+  void addSharedIndex(final File indexDir, final MapperIndexCache.Lease lease)
+      throws IOException {
+
+    synchronized (this.sharedIndexes) {
+
+      if (!this.sharedIndexes.containsKey(indexDir)) {
+        this.sharedIndexes.put(indexDir, lease);
+
+        synchronized (SHARED_INDEX_USERS) {
+          final Integer users = SHARED_INDEX_USERS.get(indexDir);
+          SHARED_INDEX_USERS.put(indexDir, users == null ? 1 : users + 1);
+        }
+
+        return;
+      }
+    }
+
+    // The index directory is already kept by a previous lease
+    if (lease != null) {
+      lease.close();
+    }
+  }
+
+  @Override
+  public void releaseSharedIndexMemory() throws IOException {
+
+    final Map<File, MapperIndexCache.Lease> indexes;
+
+    synchronized (this.sharedIndexes) {
+      indexes = new LinkedHashMap<>(this.sharedIndexes);
+      this.sharedIndexes.clear();
+    }
+
+    IOException exception = null;
+
+    for (Map.Entry<File, MapperIndexCache.Lease> e : indexes.entrySet()) {
+
+      // Only the last mapper instance that use the index release its memory
+      if (removeSharedIndexUser(e.getKey())) {
+
+        getLogger().info("Release the shared memory of the "
+            + getMapperName() + " index: " + e.getKey());
+
+        try {
+          internalReleaseSharedIndexMemory(e.getKey());
+        } catch (IOException ioe) {
+          exception = ioe;
+        }
+      }
+
+      try {
+        if (e.getValue() != null) {
+          e.getValue().close();
+        }
+      } catch (IOException ioe) {
+        exception = ioe;
+      }
+    }
+
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Remove a mapper instance from the users of an index loaded in shared
+   * memory.
+   * @param indexDir the index directory
+   * @return true if there is no more mapper instance that use the index
+   */
+  private static boolean removeSharedIndexUser(final File indexDir) {
+
+    synchronized (SHARED_INDEX_USERS) {
+
+      final Integer users = SHARED_INDEX_USERS.get(indexDir);
+
+      if (users == null || users <= 1) {
+        SHARED_INDEX_USERS.remove(indexDir);
+        return true;
+      }
+
+      SHARED_INDEX_USERS.put(indexDir, users - 1);
+
+      return false;
+    }
+  }
+
+  /**
+   * Release the memory of an index loaded in shared memory. By default, this
+   * method does nothing as the memory used by memory-mapped indexes is
+   * released by the operating system.
+   * @param indexDir the index directory
+   * @throws IOException if an error occurs while releasing the memory
+   */
+  protected void internalReleaseSharedIndexMemory(final File indexDir)
+      throws IOException {
+  }
+
+  /**
+   * Close the input stream of the archive of the index.
+   */
+  private void closeArchiveIndexFileInputStream() {
+
+    if (this.archiveIndexFileInputStream == null) {
+      return;
+    }
+
+    try {
+      this.archiveIndexFileInputStream.close();
+    } catch (IOException e) {
+      getLogger().warning(
+          "Cannot close the archive index file: " + e.getMessage());
+    }
+    this.archiveIndexFileInputStream = null;
+  }
+
+  /**
+   * Get the uncompressed index from the index cache.
+   * @return a lease on the index or null if the index cache cannot be used
+   */
+  private MapperIndexCache.Lease acquireIndexFromCache() {
+
+    if (this.indexCache == null || this.localArchiveIndexFile == null) {
+      return null;
+    }
+
+    try {
+
+      if (this.indexCacheKey == null) {
+        this.indexCacheKey = MapperIndexCache.createKey(getMapperName(),
+            this.localArchiveIndexFile);
+      }
+
+      return this.indexCache.acquire(this.indexCacheKey,
+          this.localArchiveIndexFile);
+
+    } catch (IOException e) {
+      getLogger().warning("Unable to use the mapper index cache, the index "
+          + "will be uncompressed in " + this.archiveIndexDir + ": "
+          + e.getMessage());
+      return null;
+    }
   }
 
   protected abstract MapperProcess internalMapPE(final File archiveIndex)
@@ -983,6 +1213,8 @@ public abstract class AbstractSequenceReadsMapper
 
     getLogger().fine("Mapper index archive file: " + archiveIndexFile);
 
+    this.localArchiveIndexFile = archiveIndexFile.toFile();
+
     init(archiveIndexFile.open(), archiveIndexDir, incrementer, counterGroup);
   }
 
@@ -998,6 +1230,8 @@ public abstract class AbstractSequenceReadsMapper
 
     getLogger().fine("Mapper index archive file: " + archiveIndexFile);
 
+    this.localArchiveIndexFile = archiveIndexFile;
+
     init(new FileInputStream(archiveIndexFile), archiveIndexDir, incrementer,
         counterGroup);
   }
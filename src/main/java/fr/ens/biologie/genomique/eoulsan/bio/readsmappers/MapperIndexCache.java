@@ -0,0 +1,702 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.readsmappers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import fr.ens.biologie.genomique.eoulsan.Settings;
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
+
+/**
+ * This class define a node-local cache of uncompressed mapper indexes. Each
+ * entry of the cache is a directory named after the mapper and the checksum of
+ * the index archive. An entry is uncompressed in a temporary directory and then
+ * published with an atomic rename, so the tasks never see a partially
+ * uncompressed index. While a task uses an entry, it holds a lock on a
+ * reference file of the entry; the locks are released by the operating system
+ * if the task crashes. When the size of the cache exceeds its quota, the least
+ * recently used entries without reference are removed.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class MapperIndexCache {
+
+  private static final String LOCK_FILENAME = ".lock";
+  private static final String KEY_LOCK_SUFFIX = ".lock";
+  private static final String REFS_SUFFIX = ".refs";
+  private static final String TMP_PREFIX = "tmp-";
+
+  /** Monitors used to serialize the file locks of the threads of the JVM. */
+  private static final ConcurrentMap<File, Object> MONITORS =
+      new ConcurrentHashMap<>();
+
+  /** Reference files locked by this JVM. */
+  private static final Set<File> HELD_REFERENCES =
+      Collections.newSetFromMap(new ConcurrentHashMap<File, Boolean>());
+
+  private final File directory;
+  private final long maxSize;
+
+  /**
+   * This class define a reference on an entry of the cache. The entry cannot
+   * be removed from the cache until the reference is closed.
+   */
+  public final class Lease implements Closeable {
+
+    private final File entryDirectory;
+    private final File refFile;
+    private final FileLock lock;
+    private boolean closed;
+
+    /**
+     * Get the directory of the uncompressed index.
+     * @return the directory of the uncompressed index
+     */
+    public File getDirectory() {
+
+      return this.entryDirectory;
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      synchronized (this) {
+        if (this.closed) {
+          return;
+        }
+        this.closed = true;
+      }
+
+      try {
+        unlock(this.lock);
+        Files.deleteIfExists(this.refFile.toPath());
+      } finally {
+        HELD_REFERENCES.remove(this.refFile);
+      }
+
+      // Update the last use of the entry
+      touch(refsDirectory(this.entryDirectory.getName()));
+    }
+
+    @Override
+    public String toString() {
+
+      return this.getClass().getSimpleName()
+          + "{entryDirectory=" + this.entryDirectory + ", refFile="
+          + this.refFile + ", closed=" + this.closed + "}";
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param entryDirectory the directory of the entry
+     * @param refFile the reference file
+     * @param lock the lock on the reference file
+     */
+    private Lease(final File entryDirectory, final File refFile,
+        final FileLock lock) {
+
+      this.entryDirectory = entryDirectory;
+      this.refFile = refFile;
+      this.lock = lock;
+    }
+  }
+
+  //
+  // Cache methods
+  //
+
+  /**
+   * Get an entry of the cache. If the entry does not exist, the archive is
+   * uncompressed in the cache. When several tasks request the same entry at
+   * the same time, the archive is only uncompressed once.
+   * @param key the key of the entry
+   * @param archiveFile the archive of the index
+   * @return a lease on the entry that must be closed at the end of its use
+   * @throws IOException if an error occurs while uncompressing the archive
+   */
+  public Lease acquire(final String key, final File archiveFile)
+      throws IOException {
+
+    checkNotNull(key, "key argument cannot be null");
+    checkNotNull(archiveFile, "archiveFile argument cannot be null");
+    checkArgument(
+        !key.isEmpty() && !key.startsWith(".") && !key.startsWith(TMP_PREFIX)
+            && key.indexOf('/') == -1 && key.indexOf(File.separatorChar) == -1,
+        "Invalid key: " + key);
+
+    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+      throw new IOException(
+          "Unable to create the mapper index cache directory: "
+              + this.directory);
+    }
+
+    final File entryDir = new File(this.directory, key);
+    final Lease result;
+
+    // Only one task uncompress an entry, the others wait the end of the
+    // uncompression
+    final File keyLockFile = new File(this.directory, key + KEY_LOCK_SUFFIX);
+    synchronized (monitor(keyLockFile)) {
+
+      final FileLock keyLock = lock(keyLockFile);
+
+      try {
+
+        Lease lease = addReferenceIfExists(entryDir);
+
+        if (lease == null) {
+
+          // Remove the incomplete entries of a previous crashed task
+          for (File f : listDirectory(this.directory)) {
+            if (f.getName().startsWith(TMP_PREFIX + key + '-')) {
+              deleteDirectory(f);
+            }
+          }
+
+          final File tmpDir = new File(this.directory,
+              TMP_PREFIX + key + '-' + UUID.randomUUID());
+
+          getLogger().info("Uncompress mapper index "
+              + archiveFile + " in the mapper index cache: " + entryDir);
+
+          if (!tmpDir.mkdir()) {
+            throw new IOException(
+                "Unable to create a directory in the mapper index cache: "
+                    + tmpDir);
+          }
+
+          try {
+            FileUtils.unzip(archiveFile, tmpDir);
+          } catch (IOException e) {
+            deleteDirectory(tmpDir);
+            throw e;
+          }
+
+          // Publish the entry
+          synchronized (monitor(lockFile())) {
+
+            final FileLock lock = lock(lockFile());
+            try {
+              Files.move(tmpDir.toPath(), entryDir.toPath(),
+                  StandardCopyOption.ATOMIC_MOVE);
+              lease = addReference(entryDir);
+            } finally {
+              unlock(lock);
+            }
+          }
+        } else {
+          getLogger().info("Use mapper index from cache: " + entryDir);
+        }
+
+        result = lease;
+
+      } finally {
+        unlock(keyLock);
+      }
+    }
+
+    // Remove old entries if the cache exceeds its quota
+    if (this.maxSize > 0) {
+      collectGarbage(this.maxSize);
+    }
+
+    return result;
+  }
+
+  /**
+   * Remove the least recently used entries of the cache that are not used by
+   * a task until the size of the cache is lower than a limit.
+   * @param maxSize the maximal size of the cache in bytes
+   * @return the number of removed entries
+   * @throws IOException if an error occurs while removing the entries
+   */
+  public int collectGarbage(final long maxSize) throws IOException {
+
+    if (!this.directory.isDirectory()) {
+      return 0;
+    }
+
+    int result = 0;
+
+    synchronized (monitor(lockFile())) {
+
+      final FileLock lock = lock(lockFile());
+
+      try {
+
+        final List<File> entries = new ArrayList<>();
+        final Map<File, Long> lastUse = new HashMap<>();
+        final Map<File, Long> sizes = new HashMap<>();
+        long size = 0;
+
+        for (File f : listDirectory(this.directory)) {
+
+          if (!isEntry(f)) {
+            continue;
+          }
+
+          final File refsDir = refsDirectory(f.getName());
+          final long entrySize = directorySize(f);
+
+          entries.add(f);
+          lastUse.put(f,
+              refsDir.exists() ? refsDir.lastModified() : f.lastModified());
+          sizes.put(f, entrySize);
+          size += entrySize;
+        }
+
+        // Remove the least recently used entries first
+        Collections.sort(entries, new Comparator<File>() {
+
+          @Override
+          public int compare(final File f1, final File f2) {
+
+            return Long.compare(lastUse.get(f1), lastUse.get(f2));
+          }
+        });
+
+        for (File f : entries) {
+
+          if (size <= maxSize) {
+            break;
+          }
+
+          if (isReferenced(f)) {
+            continue;
+          }
+
+          getLogger().info("Remove mapper index from cache: "
+              + f + " (" + StringUtils.sizeToHumanReadable(sizes.get(f))
+              + ")");
+
+          // Rename the entry before removing it to never expose a partially
+          // removed entry
+          final File tmpDir = new File(this.directory,
+              TMP_PREFIX + f.getName() + '-' + UUID.randomUUID());
+          Files.move(f.toPath(), tmpDir.toPath(),
+              StandardCopyOption.ATOMIC_MOVE);
+          deleteDirectory(refsDirectory(f.getName()));
+          deleteDirectory(tmpDir);
+
+          size -= sizes.get(f);
+          result++;
+        }
+
+        if (size > maxSize) {
+          getLogger().warning("The mapper index cache ("
+              + StringUtils.sizeToHumanReadable(size)
+              + ") exceeds its quota as its entries are in use: "
+              + this.directory);
+        }
+
+      } finally {
+        unlock(lock);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the number of entries in the cache.
+   * @return the number of entries in the cache
+   */
+  public int getEntryCount() {
+
+    int result = 0;
+
+    for (File f : listDirectory(this.directory)) {
+      if (isEntry(f)) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Entries references
+  //
+
+  /**
+   * Add a reference to an entry if the entry exists.
+   * @param entryDir the entry directory
+   * @return a lease or null if the entry does not exist
+   * @throws IOException if an error occurs while creating the reference
+   */
+  private Lease addReferenceIfExists(final File entryDir) throws IOException {
+
+    synchronized (monitor(lockFile())) {
+
+      final FileLock lock = lock(lockFile());
+      try {
+        return entryDir.isDirectory() ? addReference(entryDir) : null;
+      } finally {
+        unlock(lock);
+      }
+    }
+  }
+
+  /**
+   * Add a reference to an entry. The global lock of the cache must be held.
+   * @param entryDir the entry directory
+   * @return a lease
+   * @throws IOException if an error occurs while creating the reference
+   */
+  private Lease addReference(final File entryDir) throws IOException {
+
+    final File refsDir = refsDirectory(entryDir.getName());
+
+    if (!refsDir.isDirectory() && !refsDir.mkdir()) {
+      throw new IOException(
+          "Unable to create the references directory of the mapper index: "
+              + refsDir);
+    }
+
+    final File refFile =
+        new File(refsDir, UUID.randomUUID().toString()).getAbsoluteFile();
+    final FileLock lock = lock(refFile);
+    HELD_REFERENCES.add(refFile);
+
+    touch(refsDir);
+
+    return new Lease(entryDir, refFile, lock);
+  }
+
+  /**
+   * Test if an entry is used by a task. The references of the tasks that have
+   * crashed are removed. The global lock of the cache must be held.
+   * @param entryDir the entry directory
+   * @return true if the entry is used by a task
+   * @throws IOException if an error occurs while checking the references
+   */
+  private boolean isReferenced(final File entryDir) throws IOException {
+
+    boolean result = false;
+
+    for (File f : listDirectory(refsDirectory(entryDir.getName()))) {
+
+      final File refFile = f.getAbsoluteFile();
+
+      // Never open the reference files locked by this JVM as closing a channel
+      // may release all the locks of the JVM on the file
+      if (HELD_REFERENCES.contains(refFile)) {
+        result = true;
+        continue;
+      }
+
+      try (FileChannel channel = FileChannel.open(refFile.toPath(),
+          StandardOpenOption.WRITE)) {
+
+        final FileLock lock = channel.tryLock();
+
+        if (lock == null) {
+          // Locked by another process
+          result = true;
+        } else {
+
+          // Stale reference of a crashed task
+          lock.release();
+          Files.deleteIfExists(refFile.toPath());
+        }
+
+      } catch (NoSuchFileException e) {
+        // The reference has been released
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Get the global lock file of the cache.
+   * @return the global lock file of the cache
+   */
+  private File lockFile() {
+
+    return new File(this.directory, LOCK_FILENAME);
+  }
+
+  /**
+   * Get the references directory of an entry.
+   * @param key the key of the entry
+   * @return the references directory of the entry
+   */
+  private File refsDirectory(final String key) {
+
+    return new File(this.directory, key + REFS_SUFFIX);
+  }
+
+  /**
+   * Test if a file of the cache directory is an entry.
+   * @param file the file to test
+   * @return true if the file is an entry
+   */
+  private static boolean isEntry(final File file) {
+
+    final String name = file.getName();
+
+    return file.isDirectory()
+        && !name.startsWith(".") && !name.startsWith(TMP_PREFIX)
+        && !name.endsWith(REFS_SUFFIX);
+  }
+
+  /**
+   * Get the monitor of a lock file. File locks are held by the JVM, so the
+   * threads of the JVM must be synchronized before locking a file.
+   * @param file the lock file
+   * @return the monitor of the lock file
+   */
+  private static Object monitor(final File file) {
+
+    final File key = file.getAbsoluteFile();
+    final Object monitor = new Object();
+    final Object previous = MONITORS.putIfAbsent(key, monitor);
+
+    return previous == null ? monitor : previous;
+  }
+
+  /**
+   * Lock a file. The lock files are never removed to avoid a race condition
+   * between the processes.
+   * @param file the file to lock
+   * @return the lock
+   * @throws IOException if an error occurs while locking the file
+   */
+  private static FileLock lock(final File file) throws IOException {
+
+    final FileChannel channel = FileChannel.open(file.toPath(),
+        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+
+    try {
+      return channel.lock();
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Release a lock and close its channel.
+   * @param lock the lock to release
+   * @throws IOException if an error occurs while releasing the lock
+   */
+  private static void unlock(final FileLock lock) throws IOException {
+
+    try {
+      lock.release();
+    } finally {
+      lock.channel().close();
+    }
+  }
+
+  /**
+   * Update the modification time of a file.
+   * @param file the file
+   */
+  private static void touch(final File file) {
+
+    if (file.exists() && !file.setLastModified(System.currentTimeMillis())) {
+      getLogger().warning("Unable to set the modification time of the file: "
+          + file);
+    }
+  }
+
+  /**
+   * List the files of a directory.
+   * @param directory the directory
+   * @return a list with the files of the directory
+   */
+  private static List<File> listDirectory(final File directory) {
+
+    final File[] files = directory.listFiles();
+
+    if (files == null) {
+      return Collections.emptyList();
+    }
+
+    final List<File> result = new ArrayList<>();
+    Collections.addAll(result, files);
+
+    return result;
+  }
+
+  /**
+   * Get the size of the files of a directory.
+   * @param directory the directory
+   * @return the size of the files in bytes
+   */
+  private static long directorySize(final File directory) {
+
+    long result = 0;
+
+    for (File f : listDirectory(directory)) {
+      result += f.isDirectory() ? directorySize(f) : f.length();
+    }
+
+    return result;
+  }
+
+  /**
+   * Delete a directory and its content.
+   * @param directory the directory to delete
+   * @throws IOException if an error occurs while removing the directory
+   */
+  private static void deleteDirectory(final File directory)
+      throws IOException {
+
+    for (File f : listDirectory(directory)) {
+
+      if (f.isDirectory()) {
+        deleteDirectory(f);
+      } else {
+        Files.deleteIfExists(f.toPath());
+      }
+    }
+
+    Files.deleteIfExists(directory.toPath());
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Create the key of an index archive from the name of the mapper and a
+   * checksum of the names, the sizes and the CRCs of the entries of the
+   * archive. Only the central directory of the archive is read.
+   * @param mapperName the name of the mapper
+   * @param archiveFile the archive file
+   * @return the key of the archive
+   * @throws IOException if an error occurs while reading the archive
+   */
+  public static String createKey(final String mapperName,
+      final File archiveFile) throws IOException {
+
+    checkNotNull(mapperName, "mapperName argument cannot be null");
+    checkNotNull(archiveFile, "archiveFile argument cannot be null");
+
+    final Map<String, long[]> map = new TreeMap<>();
+
+    try (ZipFile zipFile = new ZipFile(archiveFile)) {
+
+      final Enumeration<? extends ZipEntry> entries = zipFile.entries();
+      while (entries.hasMoreElements()) {
+
+        final ZipEntry e = entries.nextElement();
+        map.put(e.getName(), new long[] {e.getSize(), e.getCrc()});
+      }
+    }
+
+    final Hasher hs = Hashing.md5().newHasher();
+    for (Map.Entry<String, long[]> e : map.entrySet()) {
+
+      hs.putString(e.getKey(), UTF_8);
+      for (long l : e.getValue()) {
+        hs.putLong(l);
+      }
+    }
+
+    return mapperName.toLowerCase().trim() + '-' + hs.hash().toString();
+  }
+
+  /**
+   * Create the mapper index cache defined in the settings.
+   * @param settings the settings
+   * @return a MapperIndexCache object or null if no mapper index cache
+   *         directory has been defined
+   */
+  public static MapperIndexCache newInstance(final Settings settings) {
+
+    checkNotNull(settings, "settings argument cannot be null");
+
+    final String directory = settings.getMapperIndexCacheDirectory();
+
+    if (directory == null || directory.trim().isEmpty()) {
+      return null;
+    }
+
+    return new MapperIndexCache(new File(directory.trim()),
+        settings.getMapperIndexCacheMaxSize() * 1024 * 1024);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param directory the cache directory
+   * @param maxSize the maximal size of the cache in bytes, 0 or a negative
+   *          value for no limit
+   */
+  public MapperIndexCache(final File directory, final long maxSize) {
+
+    checkNotNull(directory, "directory argument cannot be null");
+
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+}
@@ -25,7 +25,13 @@
 package fr.ens.biologie.genomique.eoulsan.bio.readsmappers;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.MAPPER_INPUT_PIPE_BYTES_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.MAPPER_INPUT_PIPE_EMPTY_STALL_TIME_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.MAPPER_INPUT_PIPE_FULL_STALL_TIME_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.MAPPER_INPUT_PIPE_WRITING_TIME_COUNTER;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -34,17 +40,20 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.RandomAccessFile;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
 
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.MapperExecutor.Result;
+import fr.ens.biologie.genomique.eoulsan.util.ByteBatchRingBuffer;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 import fr.ens.biologie.genomique.eoulsan.util.ReporterIncrementer;
 
@@ -74,6 +83,8 @@ public abstract class MapperProcess {
   private String counterGroup;
 
   private List<File> filesToRemove = new ArrayList<>();
+  private final List<Closeable> resourcesToRelease = new ArrayList<>();
+  private final Set<FastqWriter> writersReported = new HashSet<>();
 
   //
   // Inner classes
@@ -290,48 +301,64 @@ public abstract class MapperProcess {
   }
 
   /**
-   * This class allow to do asynchronous writes in a named piped.
+   * This class allow to do asynchronous writes in a named piped. The data are
+   * encoded in byte batches that are transferred to the writing thread through
+   * a ring buffer. The writing thread write the batches in the pipe using a NIO
+   * channel.
    */
   static class FastqWriterThread extends Thread implements FastqWriter {
 
-    // The queue can store a little more than 1,00,000 * 1000 = 100,000,000
-    // characters
-    private static final int MAX_CAPACITY = 100000;
-    private static final int MIN_LINE_SIZE = 1000;
+    // The ring buffer can store 64 * 64 KiB = 4 MiB of data
+    private static final int BATCH_COUNT = 64;
+    private static final int BATCH_SIZE = 64 * 1024;
 
-    private volatile boolean closed;
-    private final BlockingDeque<String> queue =
-        new LinkedBlockingDeque<>(MAX_CAPACITY);
-    private final Writer writer;
-    private Exception exception;
+    private final ByteBatchRingBuffer ring =
+        new ByteBatchRingBuffer(BATCH_COUNT, BATCH_SIZE);
+    private final WritableByteChannel channel;
+    private ByteBuffer batch;
+    private volatile Exception exception;
+    private boolean closed;
 
-    private int lineCount;
-    private final StringBuilder buffer = new StringBuilder();
+    private volatile long bytesWritten;
+    private volatile long writingTime;
 
     @Override
     public void run() {
 
-      try {
-        while (!this.closed || !queue.isEmpty()) {
-
-          if (!this.queue.isEmpty()) {
+      final long start = System.nanoTime();
 
-            while (!this.queue.isEmpty()) {
+      try {
 
-              this.writer.write(queue.take());
-            }
+        ByteBuffer b;
+        while ((b = this.ring.take()) != null) {
 
-          } else {
-            Thread.sleep(1000);
+          while (b.hasRemaining()) {
+            this.bytesWritten += this.channel.write(b);
           }
-        }
 
-        this.writer.close();
+          this.ring.release();
+        }
 
       } catch (IOException e) {
         this.exception = e;
       } catch (InterruptedException e) {
         this.exception = new IOException(e);
+      } finally {
+
+        // Avoid to block the producer if an error has occurred
+        if (this.exception != null) {
+          this.ring.abort();
+        }
+
+        try {
+          this.channel.close();
+        } catch (IOException e) {
+          if (this.exception == null) {
+            this.exception = e;
+          }
+        }
+
+        this.writingTime = System.nanoTime() - start;
       }
     }
 
@@ -347,45 +374,55 @@ public abstract class MapperProcess {
         throw new IllegalStateException("FastqWriterThread is closed");
       }
 
-      this.buffer.append(s);
-      this.lineCount++;
+      final int len = s.length();
+      for (int i = 0; i < len; i++) {
 
-      // We only add lines of about 1000 character in the queue
-      if (this.buffer.length() < MIN_LINE_SIZE || this.lineCount % 4 != 0) {
-        return;
-      }
+        if (!this.batch.hasRemaining()) {
+          nextBatch();
+        }
 
-      if (this.queue.remainingCapacity() == 0) {
+        this.batch.put((byte) s.charAt(i));
+      }
+    }
 
-        this.writer.flush();
+    /**
+     * Publish the current batch and get a new one.
+     * @throws IOException if an error has occurred in writings
+     */
+    private void nextBatch() throws IOException {
 
-        while (this.queue.remainingCapacity() == 0) {
+      this.ring.publish();
 
-          try {
-            Thread.sleep(1000);
-          } catch (InterruptedException e) {
-          }
-        }
+      try {
+        this.batch = this.ring.acquire();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
       }
 
-      this.queue.add(this.buffer.toString());
-      this.buffer.setLength(0);
-      this.lineCount = 0;
-
-      throwExceptionIfExists();
+      if (this.batch == null) {
+        throwExceptionIfExists();
+        throw new IOException("FastqWriterThread has been aborted");
+      }
     }
 
     /**
-     * Asynchronous close. This method is not synchronized. A call to write()
-     * just after close() may to lead to lose data.
+     * Close the writer and wait the end of the writing thread. This method is
+     * not synchronized. A call to write() just after close() may to lead to
+     * lose data.
      */
     @Override
     public void close() throws IOException {
 
-      this.queue.add(buffer.toString());
-      this.buffer.setLength(0);
+      if (this.closed) {
+        return;
+      }
       this.closed = true;
 
+      if (this.batch != null && this.batch.position() > 0) {
+        this.ring.publish();
+      }
+      this.ring.close();
+
       try {
         join();
       } catch (InterruptedException e) {
@@ -406,19 +443,63 @@ public abstract class MapperProcess {
       }
     }
 
+    /**
+     * Get the number of bytes written in the pipe.
+     * @return the number of bytes written in the pipe
+     */
+    long getBytesWritten() {
+
+      return this.bytesWritten;
+    }
+
+    /**
+     * Get the time elapsed in the writing thread.
+     * @return the time elapsed in the writing thread in nanoseconds
+     */
+    long getWritingTime() {
+
+      return this.writingTime;
+    }
+
+    /**
+     * Get the time spent by the producer waiting the pipe reader.
+     * @return the time in nanoseconds
+     */
+    long getPipeFullTime() {
+
+      return this.ring.getProducerWaitingTime();
+    }
+
+    /**
+     * Get the time spent by the writing thread waiting data to write.
+     * @return the time in nanoseconds
+     */
+    long getPipeEmptyTime() {
+
+      return this.ring.getConsumerWaitingTime();
+    }
+
     //
     // Constructor
     //
 
     /**
      * Constructor.
-     * @param writer the writer to use to write data
+     * @param channel the channel to use to write data
      */
-    public FastqWriterThread(final Writer writer, final String threadName) {
+    public FastqWriterThread(final WritableByteChannel channel,
+        final String threadName) {
 
       super(threadName);
 
-      this.writer = writer;
+      this.channel = channel;
+
+      try {
+        this.batch = this.ring.acquire();
+      } catch (InterruptedException e) {
+        // Cannot happen, the ring buffer is empty
+        throw new IllegalStateException(e);
+      }
 
       // Start the thread
       start();
@@ -431,7 +512,7 @@ public abstract class MapperProcess {
     public FastqWriterThread(final File namedPipeFile, final String threadName)
         throws IOException {
 
-      this(createPipeWriter(namedPipeFile), threadName);
+      this(createPipeChannel(namedPipeFile), threadName);
     }
 
   }
@@ -650,9 +731,7 @@ public abstract class MapperProcess {
    */
   public void closeWriter1() throws IOException {
 
-    if (this.writer1 != null) {
-      this.writer1.close();
-    }
+    closeWriter(this.writer1);
   }
 
   /**
@@ -661,9 +740,7 @@ public abstract class MapperProcess {
    */
   public void closeWriter2() throws IOException {
 
-    if (this.writer2 != null) {
-      this.writer2.close();
-    }
+    closeWriter(this.writer2);
   }
 
   /**
@@ -674,13 +751,47 @@ public abstract class MapperProcess {
    */
   public void closeEntriesWriter() throws IOException, InterruptedException {
 
-    if (this.writer1 != null) {
-      this.writer1.close();
+    closeWriter(this.writer1);
+    closeWriter(this.writer2);
+  }
+
+  /**
+   * Close a writer and update the pipe counters.
+   * @param writer the writer to close
+   * @throws IOException if an error occurs while closing the writer
+   */
+  private void closeWriter(final FastqWriter writer) throws IOException {
+
+    if (writer == null) {
+      return;
+    }
+
+    writer.close();
+
+    if (this.incrementer == null || !(writer instanceof FastqWriterThread)) {
+      return;
     }
 
-    if (this.writer2 != null) {
-      this.writer2.close();
+    final FastqWriterThread w = (FastqWriterThread) writer;
+
+    // Report only once the counters of the writer
+    if (!this.writersReported.add(w)) {
+      return;
     }
+
+    // The throughput is not a counter as the counters of several tasks are
+    // summed, it is derived from the bytes written and the writing time
+    this.incrementer.incrCounter(this.counterGroup,
+        MAPPER_INPUT_PIPE_BYTES_COUNTER.counterName(), w.getBytesWritten());
+    this.incrementer.incrCounter(this.counterGroup,
+        MAPPER_INPUT_PIPE_WRITING_TIME_COUNTER.counterName(),
+        NANOSECONDS.toMillis(w.getWritingTime()));
+    this.incrementer.incrCounter(this.counterGroup,
+        MAPPER_INPUT_PIPE_FULL_STALL_TIME_COUNTER.counterName(),
+        NANOSECONDS.toMillis(w.getPipeFullTime()));
+    this.incrementer.incrCounter(this.counterGroup,
+        MAPPER_INPUT_PIPE_EMPTY_STALL_TIME_COUNTER.counterName(),
+        NANOSECONDS.toMillis(w.getPipeEmptyTime()));
   }
 
   //
@@ -743,20 +854,49 @@ public abstract class MapperProcess {
    */
   public void waitFor() throws IOException {
 
-    for (Result result : this.processResults) {
+    try {
 
-      final int exitValue = result.waitFor();
-      getLogger().fine("End of process with " + exitValue + " exit value");
+      for (Result result : this.processResults) {
 
-      if (exitValue != 0) {
-        throw new IOException("Bad error result for "
-            + this.mapperName + " execution: " + exitValue);
+        final int exitValue = result.waitFor();
+        getLogger().fine("End of process with " + exitValue + " exit value");
+
+        if (exitValue != 0) {
+          throw new IOException("Bad error result for "
+              + this.mapperName + " execution: " + exitValue);
+        }
       }
+
+      // Remove temporary files
+      for (File f : this.filesToRemove) {
+        removeFile(f);
+      }
+
+    } finally {
+
+      releaseResources();
     }
+  }
+
+  /**
+   * Release the resources used by the process (e.g. the mapper index). This
+   * method is called at the end of waitFor() and must also be called if the
+   * process is not waited after an error. The resources are only released
+   * once.
+   */
+  public void releaseResources() {
 
-    // Remove temporary files
-    for (File f : this.filesToRemove) {
-      removeFile(f);
+    synchronized (this.resourcesToRelease) {
+
+      for (Closeable c : this.resourcesToRelease) {
+        try {
+          c.close();
+        } catch (IOException e) {
+          getLogger().warning(
+              "Cannot release resource " + c + ": " + e.getMessage());
+        }
+      }
+      this.resourcesToRelease.clear();
     }
   }
 
@@ -783,14 +923,27 @@ public abstract class MapperProcess {
    */
   private static Writer createPipeWriter(final File file) throws IOException {
 
+    final OutputStream os = Channels.newOutputStream(createPipeChannel(file));
+
+    return new OutputStreamWriter(os, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Create pipe channel.
+   * @param file the pipe file to create
+   * @return a channel on the pipe
+   * @throws IOException if an error occurs while creating the pipe or the
+   *           channel
+   */
+  private static WritableByteChannel createPipeChannel(final File file)
+      throws IOException {
+
     FileUtils.createNamedPipe(file);
 
     @SuppressWarnings("resource")
     final RandomAccessFile raf = new RandomAccessFile(file, "rw");
 
-    final OutputStream os = Channels.newOutputStream(raf.getChannel());
-
-    return new OutputStreamWriter(os, StandardCharsets.ISO_8859_1);
+    return raf.getChannel();
   }
 
   /**
@@ -806,6 +959,21 @@ public abstract class MapperProcess {
     Collections.addAll(this.filesToRemove, files);
   }
 
+  /**
+   * Add a resource to release at the end of the mapping.
+   * @param resource resource to release
+   */
+  void addResourceToRelease(final Closeable resource) {
+
+    if (resource == null) {
+      return;
+    }
+
+    synchronized (this.resourcesToRelease) {
+      this.resourcesToRelease.add(resource);
+    }
+  }
+
   protected void additionalInit() throws IOException {
 
   }
@@ -39,6 +39,7 @@ import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.Globals;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 import fr.ens.biologie.genomique.eoulsan.util.ReporterIncrementer;
 
 /**
@@ -145,6 +146,40 @@ public class STARReadsMapper extends AbstractSequenceReadsMapper {
     return true;
   }
 
+  @Override
+  public boolean isSharedIndexMemoryAllowed() {
+
+    // STAR cannot use a genome loaded in shared memory if splice junctions
+    // are inserted on the fly in the genome
+    final List<String> args = getListMapperArguments();
+
+    for (int i = 0; i < args.size(); i++) {
+
+      final String value = i + 1 < args.size() ? args.get(i + 1) : "";
+
+      switch (args.get(i)) {
+
+      case "--sjdbGTFfile":
+      case "--sjdbFileChrStartEnd":
+        if (!"-".equals(value)) {
+          return false;
+        }
+        break;
+
+      case "--twopassMode":
+        if (!"None".equals(value)) {
+          return false;
+        }
+        break;
+
+      default:
+        break;
+      }
+    }
+
+    return true;
+  }
+
   @Override
   public DataFormat getArchiveFormat() {
 
@@ -256,6 +291,49 @@ public class STARReadsMapper extends AbstractSequenceReadsMapper {
     return createMapperProcessPE(starPath, archiveIndex.getAbsolutePath());
   }
 
+  @Override
+  protected void internalReleaseSharedIndexMemory(final File indexDir)
+      throws IOException {
+
+    final String starPath;
+
+    synchronized (SYNC) {
+      starPath = install(flavoredBinary());
+    }
+
+    // Create temporary directory for the STAR log files
+    final File tempDir =
+        File.createTempFile("STAR-remove-genome-", ".tmp", getTempDirectory());
+
+    if (!(tempDir.delete() && tempDir.mkdir())) {
+      throw new IOException(
+          "Cannot create temporary directory for STAR: " + tempDir);
+    }
+
+    try {
+
+      final List<String> cmd = new ArrayList<>();
+      cmd.add(starPath);
+      cmd.add("--genomeLoad");
+      cmd.add("Remove");
+      cmd.add("--genomeDir");
+      cmd.add(indexDir.getAbsolutePath());
+      cmd.add("--outFileNamePrefix");
+      cmd.add(tempDir.getAbsolutePath() + File.separator);
+
+      final int exitValue = getExecutor()
+          .execute(cmd, tempDir, false, false, indexDir, tempDir).waitFor();
+
+      if (exitValue != 0) {
+        throw new IOException("Unable to remove the genome "
+            + indexDir + " from shared memory, STAR exit value: " + exitValue);
+      }
+
+    } finally {
+      FileUtils.recursiveDelete(tempDir);
+    }
+  }
+
   private MapperProcess createMapperProcessSE(final String starPath,
       final String archivePath) throws IOException {
 
@@ -274,6 +352,12 @@ public class STARReadsMapper extends AbstractSequenceReadsMapper {
         cmd.add("--outStd");
         cmd.add("SAM");
 
+        // Keep the genome in shared memory for the next mapper processes
+        if (isSharedIndexMemoryEnabled()) {
+          cmd.add("--genomeLoad");
+          cmd.add("LoadAndKeep");
+        }
+
         cmd.addAll(getListMapperArguments());
 
         cmd.add("--readFilesIn");
@@ -303,6 +387,12 @@ public class STARReadsMapper extends AbstractSequenceReadsMapper {
         cmd.add("--outStd");
         cmd.add("SAM");
 
+        // Keep the genome in shared memory for the next mapper processes
+        if (isSharedIndexMemoryEnabled()) {
+          cmd.add("--genomeLoad");
+          cmd.add("LoadAndKeep");
+        }
+
         cmd.addAll(getListMapperArguments());
 
         cmd.add("--readFilesIn");
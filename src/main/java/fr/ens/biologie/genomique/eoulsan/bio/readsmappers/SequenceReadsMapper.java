@@ -106,6 +106,14 @@ public interface SequenceReadsMapper {
    */
   boolean isMultipleInstancesAllowed();
 
+  /**
+   * Test if the index of the mapper can be loaded once in memory and shared
+   * between several mapper processes running at the same time on the same
+   * computer with the current mapper arguments.
+   * @return true if the index of the mapper can be shared in memory
+   */
+  boolean isSharedIndexMemoryAllowed();
+
   /**
    * Get the Docker connection URI.
    * @return the Docker connection URI
@@ -238,6 +246,20 @@ public interface SequenceReadsMapper {
    */
   void setExecutablesTempDirectory(File executableTempDirectory);
 
+  /**
+   * Get the node-local cache of the uncompressed indexes.
+   * @return the cache of the uncompressed indexes or null if not set
+   */
+  MapperIndexCache getIndexCache();
+
+  /**
+   * Set the node-local cache of the uncompressed indexes. The cache is only
+   * used when the mapper is initialized with a local index archive file.
+   * @param indexCache the cache of the uncompressed indexes, null to not use a
+   *          cache
+   */
+  void setIndexCache(MapperIndexCache indexCache);
+
   /**
    * Set the FASTQ format.
    * @param format the FASTQ format to use
@@ -266,6 +288,28 @@ public interface SequenceReadsMapper {
    */
   void setMultipleInstancesEnabled(boolean enable);
 
+  /**
+   * Test if the index of the mapper must be shared in memory between the
+   * mapper processes.
+   * @return true if the index of the mapper must be shared in memory
+   */
+  boolean isSharedIndexMemoryEnabled();
+
+  /**
+   * Set if the index of the mapper must be shared in memory between the
+   * mapper processes. The index is kept in memory after the end of the
+   * mapper processes until the call of releaseSharedIndexMemory().
+   * @param enable true if the index of the mapper must be shared in memory
+   */
+  void setSharedIndexMemoryEnabled(boolean enable);
+
+  /**
+   * Release the memory used by the indexes that have been shared in memory.
+   * This method must be called once all the mapper processes have ended.
+   * @throws IOException if an error occurs while releasing the memory
+   */
+  void releaseSharedIndexMemory() throws IOException;
+
   /**
    * Set the Docker connection URI.
    * @param uri the URI to set
@@ -32,14 +32,17 @@ import java.util.Collections;
 import java.util.Set;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.eoulsan.bio.FastqFormat;
 import fr.ens.biologie.genomique.eoulsan.bio.IlluminaReadId;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqBufferReader;
 import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
 import fr.ens.biologie.genomique.eoulsan.core.Parameter;
 import fr.ens.biologie.genomique.eoulsan.data.Data;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.data.DataFiles;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
 
 /**
@@ -133,9 +136,14 @@ public class ReadsChecker implements Checker {
 
     try {
 
-      is = file.open();
-      checkReadsFile(is, MAX_READS_TO_CHECK, format, checkPairMember,
-          pairMember);
+      if (EoulsanRuntime.getSettings().isFastqBufferReader()) {
+        checkReadsFile(DataFiles.newFastqBufferReader(file),
+            MAX_READS_TO_CHECK, format, checkPairMember, pairMember);
+      } else {
+        is = file.open();
+        checkReadsFile(is, MAX_READS_TO_CHECK, format, checkPairMember,
+            pairMember);
+      }
 
     } catch (IOException e) {
       throw new EoulsanException("Error while reading reads of sample "
@@ -156,80 +164,141 @@ public class ReadsChecker implements Checker {
 
     int count = 0;
 
-    for (final ReadSequence read : reader) {
+    try {
+      for (final ReadSequence read : reader) {
+
+        if (count > maxReadToCheck) {
+          break;
+        }
+
+        // For the first read check the id
+        if (checkPairMember && count == 0) {
+          checkPairMember(read.getName(), read.getQuality(), format,
+              pairMember);
+        }
+
+        // check the quality string
+        if (format != null) {
+          checkQuality(format.findInvalidChar(read.getQuality()),
+              read.getQuality(), format);
+        }
 
-      if (count > maxReadToCheck) {
-        break;
+        count++;
       }
+      reader.throwException();
 
-      // For the first read check the id
-      if (checkPairMember && count == 0) {
+    } finally {
+      reader.close();
+    }
 
-        final String readId = read.getName();
-        int readPairMember = -1;
-        try {
+    return true;
+  }
 
-          final IlluminaReadId irid = new IlluminaReadId(readId);
+  private boolean checkReadsFile(final FastqBufferReader reader,
+      final int maxReadToCheck, final FastqFormat format,
+      final boolean checkPairMember, final int pairMember)
+      throws IOException, BadBioEntryException {
 
-          readPairMember = irid.getPairMember();
-          if (readPairMember != pairMember) {
-            throw new BadBioEntryException(
-                "Invalid pair member number, " + pairMember + " was excepted",
-                read.getName());
-          }
+    int count = 0;
 
-          // check the quality string
-          if (format != null) {
+    try {
+      while (reader.hasNext()) {
 
-            final int invalidChar = format.findInvalidChar(read.getQuality());
+        final FastqBufferReader.Entry entry = reader.nextEntry();
 
-            if (invalidChar != -1) {
-              throw new BadBioEntryException(
-                  "Invalid quality character found for "
-                      + format.getName() + " format: " + (char) invalidChar,
-                  read.getQuality());
-            }
-          }
+        if (count > maxReadToCheck) {
+          break;
+        }
+
+        // For the first read check the id
+        if (checkPairMember && count == 0) {
+          checkPairMember(entry.getName(), entry.getQuality(), format,
+              pairMember);
+        }
 
-          readPairMember = irid.getPairMember();
+        // check the quality without creating a string
+        if (format != null) {
 
-        } catch (EoulsanException e) {
+          final int invalidChar = entry.findInvalidQualityChar(format);
 
-          // Not an Illumina id
-          if (readId.endsWith("/1")) {
-            readPairMember = 1;
-          } else if (readId.endsWith("/2")) {
-            readPairMember = 2;
+          if (invalidChar != -1) {
+            checkQuality(invalidChar, entry.getQuality(), format);
           }
         }
 
-        if (readPairMember > 0 && readPairMember != pairMember) {
-          reader.close();
-          throw new BadBioEntryException(
-              "Invalid pair member number, " + pairMember + " was excepted",
-              read.getName());
-        }
+        count++;
+      }
+      reader.throwException();
+
+    } finally {
+      reader.close();
+    }
+
+    return true;
+  }
+
+  /**
+   * Check the pair member of a read.
+   * @param readId the id of the read
+   * @param quality the quality of the read
+   * @param format the FASTQ format
+   * @param pairMember the excepted pair member
+   * @throws BadBioEntryException if the pair member of the read is invalid
+   */
+  private static void checkPairMember(final String readId,
+      final String quality, final FastqFormat format, final int pairMember)
+      throws BadBioEntryException {
+
+    int readPairMember = -1;
+    try {
+
+      final IlluminaReadId irid = new IlluminaReadId(readId);
+
+      readPairMember = irid.getPairMember();
+      if (readPairMember != pairMember) {
+        throw new BadBioEntryException(
+            "Invalid pair member number, " + pairMember + " was excepted",
+            readId);
       }
 
       // check the quality string
       if (format != null) {
+        checkQuality(format.findInvalidChar(quality), quality, format);
+      }
 
-        final int invalidChar = format.findInvalidChar(read.getQuality());
+      readPairMember = irid.getPairMember();
 
-        if (invalidChar != -1) {
-          reader.close();
-          throw new BadBioEntryException(
-              "Invalid quality character found for "
-                  + format.getName() + " format: " + (char) invalidChar,
-              read.getQuality());
-        }
+    } catch (EoulsanException e) {
+
+      // Not an Illumina id
+      if (readId.endsWith("/1")) {
+        readPairMember = 1;
+      } else if (readId.endsWith("/2")) {
+        readPairMember = 2;
       }
+    }
 
-      count++;
+    if (readPairMember > 0 && readPairMember != pairMember) {
+      throw new BadBioEntryException(
+          "Invalid pair member number, " + pairMember + " was excepted",
+          readId);
     }
-    reader.throwException();
+  }
 
-    reader.close();
-    return true;
+  /**
+   * Throw an exception if an invalid quality character has been found.
+   * @param invalidChar the invalid character or -1 if no invalid character has
+   *          been found
+   * @param quality the quality string
+   * @param format the FASTQ format
+   * @throws BadBioEntryException if an invalid character has been found
+   */
+  private static void checkQuality(final int invalidChar, final String quality,
+      final FastqFormat format) throws BadBioEntryException {
+
+    if (invalidChar != -1) {
+      throw new BadBioEntryException("Invalid quality character found for "
+          + format.getName() + " format: " + (char) invalidChar, quality);
+    }
   }
 }
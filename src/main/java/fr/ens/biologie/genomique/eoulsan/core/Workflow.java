@@ -24,6 +24,7 @@
 
 package fr.ens.biologie.genomique.eoulsan.core;
 
+import java.io.Closeable;
 import java.io.Serializable;
 import java.util.Set;
 
@@ -73,4 +74,13 @@ public interface Workflow extends Serializable {
    */
   void deleteOnExit(final DataFile file);
 
+  /**
+   * Close a resource when a step reach a final state (done, failed or
+   * aborted). A resource is only closed once even if it has been added several
+   * times.
+   * @param step the step
+   * @param resource resource to close
+   */
+  void closeOnStepEnd(final Step step, final Closeable resource);
+
 }
@@ -52,7 +52,7 @@ import fr.ens.biologie.genomique.eoulsan.core.workflow.StepStatus;
  */
 public abstract class AbstractTaskScheduler implements TaskScheduler {
 
-  private static final int SLEEP_TIME_IN_MS = 500;
+  private static final int MAX_WAIT_TIME_IN_MS = 500;
 
   private final Multimap<Step, Integer> submittedContexts;
   private final Multimap<Step, Integer> runningContexts;
@@ -186,6 +186,9 @@ public abstract class AbstractTaskScheduler implements TaskScheduler {
     synchronized (this) {
       this.runningContexts.remove(step, contextId);
       this.doneContexts.put(step, contextId);
+
+      // Wake up the threads that wait the end of the tasks
+      notifyAll();
     }
 
     // Update the UI
@@ -380,14 +383,18 @@ public abstract class AbstractTaskScheduler implements TaskScheduler {
     // Check execution state
     checkExecutionState();
 
-    while (!isStopped()
-        && (getTaskRunningCount(step) > 0
-            || getTaskSubmittedCount(step) > getTaskDoneCount(step))) {
+    synchronized (this) {
+
+      while (!isStopped()
+          && (getTaskRunningCount(step) > 0
+              || getTaskSubmittedCount(step) > getTaskDoneCount(step))) {
 
-      try {
-        Thread.sleep(SLEEP_TIME_IN_MS);
-      } catch (InterruptedException e) {
-        getLogger().severe(e.getMessage());
+        // Wait the end of a task, the timeout is only a safety net
+        try {
+          wait(MAX_WAIT_TIME_IN_MS);
+        } catch (InterruptedException e) {
+          getLogger().severe(e.getMessage());
+        }
       }
     }
   }
@@ -415,6 +422,7 @@ public abstract class AbstractTaskScheduler implements TaskScheduler {
 
     synchronized (this) {
       this.isStopped = true;
+      notifyAll();
     }
   }
 
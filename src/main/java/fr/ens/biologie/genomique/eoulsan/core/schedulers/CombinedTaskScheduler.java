@@ -54,6 +54,7 @@ public class CombinedTaskScheduler implements TaskScheduler, Runnable {
   private final AbstractTaskScheduler stdTaskScheduler;
   private final AbstractTaskScheduler ownTaskScheduler;
   private final AbstractTaskScheduler hadoopCompatibleTaskScheduler;
+  private final boolean ownTasksInStdTaskScheduler;
 
   private volatile boolean isStarted;
   private volatile boolean isStopped;
@@ -279,13 +280,27 @@ public class CombinedTaskScheduler implements TaskScheduler, Runnable {
           ? this.hadoopCompatibleTaskScheduler : this.stdTaskScheduler;
 
     case OWN_PARALLELIZATION:
-      return this.ownTaskScheduler;
+      return this.ownTasksInStdTaskScheduler
+          ? this.stdTaskScheduler : this.ownTaskScheduler;
 
     default:
       throw new IllegalStateException("Unknown Parallelization mode");
     }
   }
 
+  /**
+   * Create a multi thread task scheduler.
+   * @param threadNumber number of thread to use by the task scheduler
+   * @return a new MultiThreadTaskScheduler object
+   */
+  private static AbstractTaskScheduler createMultiThreadTaskScheduler(
+      final int threadNumber) {
+
+    checkArgument(threadNumber > 0, "threadNumber must be > 0");
+
+    return new MultiThreadTaskScheduler(threadNumber);
+  }
+
   //
   // Runnable method
   //
@@ -348,10 +363,26 @@ public class CombinedTaskScheduler implements TaskScheduler, Runnable {
    */
   public CombinedTaskScheduler(final int threadNumber) {
 
-    checkArgument(threadNumber > 0, "threadNumber must be > 0");
+    this(createMultiThreadTaskScheduler(threadNumber), false);
+  }
+
+  /**
+   * Constructor.
+   * @param stdTaskScheduler the scheduler to use for the steps with a standard
+   *          parallelization mode
+   * @param ownTasksInStdTaskScheduler if true, the tasks of the steps that use
+   *          their own parallelization are also executed by the standard
+   *          scheduler, that must take in account the processors required by
+   *          these tasks
+   */
+  CombinedTaskScheduler(final AbstractTaskScheduler stdTaskScheduler,
+      final boolean ownTasksInStdTaskScheduler) {
+
+    checkNotNull(stdTaskScheduler, "stdTaskScheduler argument cannot be null");
 
     // Create the schedulers instances
-    this.stdTaskScheduler = new MultiThreadTaskScheduler(threadNumber);
+    this.stdTaskScheduler = stdTaskScheduler;
+    this.ownTasksInStdTaskScheduler = ownTasksInStdTaskScheduler;
     this.noTaskScheduler = new MonoThreadTaskScheduler();
     this.ownTaskScheduler = new MonoThreadTaskScheduler();
 
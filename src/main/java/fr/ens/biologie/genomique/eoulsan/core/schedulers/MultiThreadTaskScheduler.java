@@ -27,12 +27,10 @@ package fr.ens.biologie.genomique.eoulsan.core.schedulers;
 import static com.google.common.base.Preconditions.checkArgument;
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 
-import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -42,18 +40,20 @@ import fr.ens.biologie.genomique.eoulsan.core.workflow.TaskContextImpl;
 import fr.ens.biologie.genomique.eoulsan.core.workflow.TaskResultImpl;
 
 /**
- * This class define a muti thread scheduler.
+ * This class define a muti thread scheduler. The tasks are submitted to a
+ * completion service, so the scheduler thread is only woken up when a task
+ * ends.
  * @author Laurent Jourdren
  * @since 2.0
  */
 public class MultiThreadTaskScheduler extends AbstractTaskScheduler
     implements Runnable {
 
-  private static final int SLEEP_TIME_IN_MS = 500;
   private static final int WAIT_SHUTDOWN_MINUTES = 60;
 
   private final PausableThreadPoolExecutor executor;
-  private final Set<Future<TaskThread>> threads = new HashSet<>();
+  private final CompletionService<TaskThread> completionService;
+  private Thread schedulerThread;
 
   /**
    * Wrapper class around a call to executeTask methods.
@@ -144,9 +144,7 @@ public class MultiThreadTaskScheduler extends AbstractTaskScheduler
     final TaskThread st = new TaskThread(context);
 
     // Submit the context thread the thread executor
-    synchronized (this.threads) {
-      this.threads.add(this.executor.submit(st, st));
-    }
+    this.completionService.submit(st, st);
   }
 
   @Override
@@ -155,7 +153,8 @@ public class MultiThreadTaskScheduler extends AbstractTaskScheduler
     // Call to the super method
     super.start();
 
-    new Thread(this, "TaskScheduler_multi_thread").start();
+    this.schedulerThread = new Thread(this, "TaskScheduler_multi_thread");
+    this.schedulerThread.start();
   }
 
   @Override
@@ -164,6 +163,11 @@ public class MultiThreadTaskScheduler extends AbstractTaskScheduler
     // Call to the super method
     super.stop();
 
+    // Wake up the scheduler thread
+    if (this.schedulerThread != null) {
+      this.schedulerThread.interrupt();
+    }
+
     try {
 
       // Shutdown the executor
@@ -202,54 +206,31 @@ public class MultiThreadTaskScheduler extends AbstractTaskScheduler
   @Override
   public void run() {
 
-    // The list of finished tasks
-    final List<Future<TaskThread>> threadsToRemove = new ArrayList<>();
-
     while (!this.isStopped()) {
 
-      for (Future<TaskThread> ftt : this.threads) {
-
-        // For all finished tasks
-        if (ftt.isDone()) {
-
-          try {
-
-            final TaskThread tt = ftt.get();
+      try {
 
-            // Check if the task has been correctly executed
-            if (!tt.done) {
+        // Wait the end of a task
+        final Future<TaskThread> ftt = this.completionService.take();
 
-              tt.fail(ftt.isCancelled());
-            }
+        final TaskThread tt = ftt.get();
 
-            // Add the task to the list of task to remove
-            threadsToRemove.add(ftt);
+        // Check if the task has been correctly executed
+        if (!tt.done) {
 
-          } catch (InterruptedException | ExecutionException e) {
-            getLogger().severe("Unexcepted exception in "
-                + this.getClass().getSimpleName() + ".run(): "
-                + e.getMessage());
-          }
+          tt.fail(ftt.isCancelled());
         }
-      }
 
-      // Remove the finished tasks from the list of tasks
-      if (!this.threads.isEmpty()) {
+      } catch (InterruptedException e) {
 
-        synchronized (threadsToRemove) {
-          for (Future<TaskThread> ftt : threadsToRemove) {
-            this.threads.remove(ftt);
-          }
+        // The scheduler thread is interrupted when the scheduler is stopped
+        if (!isStopped()) {
+          getLogger().severe(e.getMessage());
         }
 
-        threadsToRemove.clear();
-      }
-
-      // Wait
-      try {
-        Thread.sleep(SLEEP_TIME_IN_MS);
-      } catch (InterruptedException e) {
-        getLogger().severe(e.getMessage());
+      } catch (ExecutionException e) {
+        getLogger().severe("Unexcepted exception in "
+            + this.getClass().getSimpleName() + ".run(): " + e.getMessage());
       }
     }
   }
@@ -268,6 +249,7 @@ public class MultiThreadTaskScheduler extends AbstractTaskScheduler
 
     // Create executor service
     this.executor = new PausableThreadPoolExecutor(threadNumber);
+    this.completionService = new ExecutorCompletionService<>(this.executor);
   }
 
 }
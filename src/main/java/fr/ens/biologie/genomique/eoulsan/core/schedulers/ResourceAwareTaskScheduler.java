@@ -0,0 +1,318 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.schedulers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static fr.ens.biologie.genomique.eoulsan.core.ParallelizationMode.OWN_PARALLELIZATION;
+
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeException;
+import fr.ens.biologie.genomique.eoulsan.core.Step;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.AbstractStep;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.TaskContextImpl;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.TaskResultImpl;
+import fr.ens.biologie.genomique.eoulsan.util.LinuxCpuInfo;
+import fr.ens.biologie.genomique.eoulsan.util.LinuxMemInfo;
+
+/**
+ * This class define a multi thread scheduler that take in account the memory
+ * and the processors required by the steps. A task is only started when its
+ * requirements fit in the processors and the memory that are not used by the
+ * running tasks. When the first waiting task does not fit, the following
+ * smaller tasks are started in the remaining resources (backfilling). To avoid
+ * the starvation of the big tasks, the number of tasks started while the first
+ * waiting task is blocked is limited. The tasks of the steps that use their
+ * own parallelization require all the processors unless their steps define
+ * the number of required processors.
+ * @author Laurent Jourdren
+ * @since 2.0
+ */
+public class ResourceAwareTaskScheduler extends AbstractTaskScheduler {
+
+  private static final int WAIT_SHUTDOWN_MINUTES = 60;
+
+  private final int maxProcessors;
+  private final int maxMemory;
+  private final ResourceQueue<TaskThread> queue;
+  private final ExecutorService executor;
+
+  /**
+   * Wrapper class around a call to executeTask methods.
+   * @author Laurent Jourdren
+   */
+  private final class TaskThread implements Runnable, ResourceQueue.Task {
+
+    private final TaskContextImpl context;
+    private final long submissionTime;
+    private final int processors;
+    private final int memory;
+
+    @Override
+    public int getProcessors() {
+
+      return this.processors;
+    }
+
+    @Override
+    public int getMemory() {
+
+      return this.memory;
+    }
+
+    @Override
+    public void run() {
+
+      try {
+
+        // Do nothing if scheduler is stopped
+        if (isStopped()) {
+          return;
+        }
+
+        // Set task in running state
+        beforeExecuteTask(this.context);
+
+        // Execute the context
+        final TaskResultImpl result = executeTask(this.context);
+
+        // Do nothing if scheduler is stopped
+        if (isStopped()) {
+          return;
+        }
+
+        // Set task in done state
+        afterExecuteTask(this.context, result);
+
+      } catch (Throwable e) {
+
+        fail(e);
+      } finally {
+
+        // Release the resources of the task and start the waiting tasks
+        release(this);
+      }
+    }
+
+    private void fail(final Throwable e) {
+
+      final long endTime = System.currentTimeMillis();
+
+      final Throwable exception = e != null
+          ? e : new EoulsanRuntimeException(
+              "Task #" + this.context.getId() + "has failed without exception");
+
+      final TaskResultImpl result = new TaskResultImpl(this.context,
+          new Date(this.submissionTime), new Date(endTime),
+          endTime - this.submissionTime, exception, exception.getMessage());
+
+      afterExecuteTask(this.context, result);
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param context context to execute
+     */
+    TaskThread(final TaskContextImpl context) {
+
+      this.context = context;
+      this.submissionTime = System.currentTimeMillis();
+
+      final Step step = context.getCurrentStep();
+
+      this.processors = ResourceQueue.getTaskProcessors(
+          ((AbstractStep) step).getParallelizationMode() == OWN_PARALLELIZATION,
+          step.getRequiredProcessors(), maxProcessors);
+      this.memory =
+          ResourceQueue.getTaskMemory(step.getRequiredMemory(), maxMemory);
+    }
+  }
+
+  //
+  // Scheduling methods
+  //
+
+  /**
+   * Start the waiting tasks that fit in the available resources.
+   */
+  private void schedule() {
+
+    synchronized (this.queue) {
+
+      if (isStopped() || isPaused()) {
+        return;
+      }
+
+      for (TaskThread task : this.queue.next()) {
+        this.executor.execute(task);
+      }
+    }
+  }
+
+  /**
+   * Release the resources used by a task.
+   * @param task the task
+   */
+  private void release(final TaskThread task) {
+
+    this.queue.release(task);
+
+    schedule();
+  }
+
+  //
+  // Task scheduler methods
+  //
+
+  @Override
+  public void submit(final Step step, final TaskContextImpl context) {
+
+    // Call to the super method
+    super.submit(step, context);
+
+    this.queue.add(new TaskThread(context));
+
+    schedule();
+  }
+
+  @Override
+  public void start() {
+
+    // Call to the super method
+    super.start();
+
+    getLogger().info("Resource aware local scheduler: "
+        + this.maxProcessors + " processor(s) and " + this.maxMemory
+        + " MiB of memory available for the tasks");
+  }
+
+  @Override
+  public void stop() {
+
+    // Call to the super method
+    super.stop();
+
+    try {
+
+      // Shutdown the executor
+      this.executor.shutdownNow();
+
+      // Wait the termination of current running task
+      this.executor.awaitTermination(WAIT_SHUTDOWN_MINUTES, TimeUnit.MINUTES);
+
+    } catch (InterruptedException e) {
+      getLogger().severe(e.getMessage());
+    }
+  }
+
+  @Override
+  public void resume() {
+
+    // Call to the super method
+    super.resume();
+
+    // Start the tasks submitted during the pause
+    schedule();
+  }
+
+  //
+  // Static method
+  //
+
+  /**
+   * Get the number of processors that can be used by the tasks. This is the
+   * number of processors of the system, limited to the processors available
+   * for the current JVM.
+   * @return the number of processors that can be used by the tasks
+   */
+  static int getAvailableSystemProcessors() {
+
+    final int available = Runtime.getRuntime().availableProcessors();
+    final int total = new LinuxCpuInfo().getProcessorCount();
+
+    // The processors of the system are unknown
+    if (total <= 0) {
+      return available;
+    }
+
+    return Math.max(1, Math.min(total, available));
+  }
+
+  /**
+   * Get the memory that can be used by the tasks. This is the total memory of
+   * the system minus the maximal memory of the current JVM.
+   * @return the memory in MiB that can be used by the tasks
+   */
+  static int getAvailableSystemMemory() {
+
+    final int total = new LinuxMemInfo().getMemTotalInMiB();
+
+    // The memory of the system is unknown
+    if (total <= 0) {
+      return Integer.MAX_VALUE;
+    }
+
+    final long jvmMemory = Runtime.getRuntime().maxMemory() / (1024 * 1024);
+
+    return (int) Math.max(1, total - jvmMemory);
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param maxProcessors number of processors that can be used by the tasks
+   * @param maxMemory memory in MiB that can be used by the tasks
+   */
+  public ResourceAwareTaskScheduler(final int maxProcessors,
+      final int maxMemory) {
+
+    checkArgument(maxProcessors > 0, "maxProcessors must be > 0");
+    checkArgument(maxMemory > 0, "maxMemory must be > 0");
+
+    this.maxProcessors = maxProcessors;
+    this.maxMemory = maxMemory;
+    this.queue = new ResourceQueue<>(maxProcessors, maxMemory);
+
+    // A task use at least one processor, so there is never more running tasks
+    // than processors
+    this.executor = Executors.newFixedThreadPool(maxProcessors,
+        new ThreadFactoryBuilder()
+            .setNameFormat("TaskScheduler_resource_aware-%d").build());
+  }
+
+}
@@ -0,0 +1,257 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.schedulers;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * This class define the queue of the waiting tasks of the resource aware
+ * scheduler. It keeps the count of the processors and the memory used by the
+ * started tasks and returns the waiting tasks that fit in the remaining
+ * resources.
+ * @param <E> type of the tasks
+ * @author Laurent Jourdren
+ * @since 2.0
+ */
+final class ResourceQueue<E extends ResourceQueue.Task> {
+
+  private final int maxProcessors;
+  private final int maxMemory;
+  private final int maxBackfilledTasks;
+
+  private final List<E> queue = new LinkedList<>();
+  private int usedProcessors;
+  private int usedMemory;
+  private E blockedTask;
+  private int backfilledTaskCount;
+
+  /**
+   * This interface define the resources required by a task.
+   */
+  interface Task {
+
+    /**
+     * Get the number of processors required by the task.
+     * @return the number of processors required by the task
+     */
+    int getProcessors();
+
+    /**
+     * Get the memory required by the task.
+     * @return the memory in MiB required by the task
+     */
+    int getMemory();
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the number of processors used by the started tasks.
+   * @return the number of processors used by the started tasks
+   */
+  synchronized int getUsedProcessors() {
+
+    return this.usedProcessors;
+  }
+
+  /**
+   * Get the memory used by the started tasks.
+   * @return the memory in MiB used by the started tasks
+   */
+  synchronized int getUsedMemory() {
+
+    return this.usedMemory;
+  }
+
+  /**
+   * Get the number of waiting tasks.
+   * @return the number of waiting tasks
+   */
+  synchronized int getWaitingTaskCount() {
+
+    return this.queue.size();
+  }
+
+  //
+  // Queue methods
+  //
+
+  /**
+   * Add a task to the waiting tasks.
+   * @param task the task to add
+   */
+  synchronized void add(final E task) {
+
+    checkNotNull(task, "task argument cannot be null");
+    checkArgument(task.getProcessors() > 0
+        && task.getProcessors() <= this.maxProcessors,
+        "Invalid number of processors for the task: " + task.getProcessors());
+    checkArgument(task.getMemory() >= 0 && task.getMemory() <= this.maxMemory,
+        "Invalid memory for the task: " + task.getMemory());
+
+    this.queue.add(task);
+  }
+
+  /**
+   * Remove from the waiting tasks the tasks that fit in the available
+   * resources. The resources of the returned tasks are considered as used
+   * until the call to the release() method.
+   * @return a list with the tasks to start
+   */
+  synchronized List<E> next() {
+
+    final List<E> result = new ArrayList<>();
+    E firstBlockedTask = null;
+
+    final Iterator<E> it = this.queue.iterator();
+    while (it.hasNext()) {
+
+      final E task = it.next();
+
+      if (!fit(task)) {
+
+        // Keep the first waiting task that cannot be started
+        if (firstBlockedTask == null) {
+          firstBlockedTask = task;
+
+          if (firstBlockedTask != this.blockedTask) {
+            this.blockedTask = firstBlockedTask;
+            this.backfilledTaskCount = 0;
+          }
+        }
+        continue;
+      }
+
+      // Do not start small tasks before the blocked task forever
+      if (firstBlockedTask != null) {
+
+        if (this.backfilledTaskCount >= this.maxBackfilledTasks) {
+          break;
+        }
+        this.backfilledTaskCount++;
+      }
+
+      it.remove();
+      this.usedProcessors += task.getProcessors();
+      this.usedMemory += task.getMemory();
+      result.add(task);
+    }
+
+    if (firstBlockedTask == null) {
+      this.blockedTask = null;
+      this.backfilledTaskCount = 0;
+    }
+
+    return result;
+  }
+
+  /**
+   * Release the resources used by a started task.
+   * @param task the task
+   */
+  synchronized void release(final E task) {
+
+    checkNotNull(task, "task argument cannot be null");
+
+    this.usedProcessors -= task.getProcessors();
+    this.usedMemory -= task.getMemory();
+  }
+
+  /**
+   * Test if a task fit in the available resources.
+   * @param task the task to test
+   * @return true if the task fit in the available resources
+   */
+  private boolean fit(final E task) {
+
+    return this.usedProcessors + task.getProcessors() <= this.maxProcessors
+        && this.usedMemory + task.getMemory() <= this.maxMemory;
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Get the number of processors of a task.
+   * @param ownParallelization true if the step of the task use its own
+   *          parallelization
+   * @param requiredProcessors the number of processors required by the step
+   * @param maxProcessors number of processors that can be used by the tasks
+   * @return the number of processors of the task
+   */
+  static int getTaskProcessors(final boolean ownParallelization,
+      final int requiredProcessors, final int maxProcessors) {
+
+    // Tasks that requires more processors than available are executed alone
+    if (requiredProcessors > 0) {
+      return Math.min(requiredProcessors, maxProcessors);
+    }
+
+    // Tasks of steps with their own parallelization use all the processors
+    // by default
+    return ownParallelization ? maxProcessors : 1;
+  }
+
+  /**
+   * Get the memory of a task.
+   * @param requiredMemory the memory in MiB required by the step
+   * @param maxMemory memory in MiB that can be used by the tasks
+   * @return the memory of the task in MiB
+   */
+  static int getTaskMemory(final int requiredMemory, final int maxMemory) {
+
+    // Tasks that requires more memory than available are executed alone
+    return requiredMemory > 0 ? Math.min(requiredMemory, maxMemory) : 0;
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param maxProcessors number of processors that can be used by the tasks
+   * @param maxMemory memory in MiB that can be used by the tasks
+   */
+  ResourceQueue(final int maxProcessors, final int maxMemory) {
+
+    checkArgument(maxProcessors > 0, "maxProcessors must be > 0");
+    checkArgument(maxMemory > 0, "maxMemory must be > 0");
+
+    this.maxProcessors = maxProcessors;
+    this.maxMemory = maxMemory;
+    this.maxBackfilledTasks = 2 * maxProcessors;
+  }
+
+}
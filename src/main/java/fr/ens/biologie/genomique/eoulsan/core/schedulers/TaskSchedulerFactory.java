@@ -87,6 +87,20 @@ public class TaskSchedulerFactory {
       // Set Cluster mode
       scheduler =
           new ClusterCombinedTaskScheduler(threadNumber, clusterScheduler);
+    } else if (settings.isLocalSchedulerResourceAware()) {
+
+      // Standard mode with a scheduler that use the step requirements. The
+      // tasks of the steps with their own parallelization are also executed
+      // by this scheduler
+      final int processors = settings.isLocalThreadsNumberSet()
+          ? threadNumber
+          : ResourceAwareTaskScheduler.getAvailableSystemProcessors();
+      final int memory = settings.getLocalSchedulerMemory() > 0
+          ? settings.getLocalSchedulerMemory()
+          : ResourceAwareTaskScheduler.getAvailableSystemMemory();
+
+      scheduler = new CombinedTaskScheduler(
+          new ResourceAwareTaskScheduler(processors, memory), true);
     } else {
 
       // Standard mode
@@ -35,6 +35,7 @@ import static fr.ens.biologie.genomique.eoulsan.core.Step.StepState.WORKING;
 import static fr.ens.biologie.genomique.eoulsan.util.StringUtils.stackTraceToString;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
@@ -107,6 +108,7 @@ public abstract class AbstractWorkflow implements Workflow {
   private AbstractStep firstStep;
 
   private Set<DataFile> deleteOnExitFiles = new HashSet<>();
+  private transient StepResources closeOnStepEndResources;
 
   private volatile boolean shutdownNow;
 
@@ -297,6 +299,9 @@ public abstract class AbstractWorkflow implements Workflow {
       this.states.put(newState, step);
       this.steps.put(step, newState);
     }
+
+    // Close the resources of the step if the step has reached a final state
+    getStepResources().updateStepState(step);
   }
 
   @Override
@@ -306,6 +311,25 @@ public abstract class AbstractWorkflow implements Workflow {
     this.deleteOnExitFiles.add(file);
   }
 
+  @Override
+  public void closeOnStepEnd(final Step step, final Closeable resource) {
+
+    getStepResources().add(step, resource);
+  }
+
+  /**
+   * Get the resources to close at the end of the steps.
+   * @return the StepResources object of the workflow
+   */
+  private synchronized StepResources getStepResources() {
+
+    if (this.closeOnStepEndResources == null) {
+      this.closeOnStepEndResources = new StepResources();
+    }
+
+    return this.closeOnStepEndResources;
+  }
+
   //
   // Check methods
   //
@@ -546,6 +570,9 @@ public abstract class AbstractWorkflow implements Workflow {
     // Stop scheduler
     TaskSchedulerFactory.getScheduler().stop();
 
+    // Close the resources of the steps that have not reached a final state
+    getStepResources().closeAll();
+
     // Delete files on exit
     for (DataFile file : this.deleteOnExitFiles) {
       try {
@@ -0,0 +1,65 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.workflow;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class allow a thread to wait events sent by other threads. The events
+ * sent while the thread does not wait are not lost, they are merged into a
+ * single wake-up.
+ * @author Laurent Jourdren
+ * @since 2.0
+ */
+final class EventSignal {
+
+  // The queue can only contain one element to merge the events received while
+  // the thread works
+  private final BlockingQueue<Boolean> events = new ArrayBlockingQueue<>(1);
+
+  /**
+   * Send an event.
+   */
+  void signal() {
+
+    // If the queue is full, the thread has not yet handled the previous event
+    this.events.offer(Boolean.TRUE);
+  }
+
+  /**
+   * Wait an event.
+   * @param timeout the maximal time to wait in milliseconds
+   * @return true if an event has been received, false if the timeout has
+   *         been reached
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  boolean await(final long timeout) throws InterruptedException {
+
+    return this.events.poll(timeout, TimeUnit.MILLISECONDS) != null;
+  }
+
+}
@@ -0,0 +1,115 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.workflow;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
+import fr.ens.biologie.genomique.eoulsan.core.Step;
+
+/**
+ * This class define the resources to close when the steps reach a final
+ * state. A resource is only closed once even if it has been added several
+ * times.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+final class StepResources {
+
+  private final Multimap<Step, Closeable> resources =
+      LinkedHashMultimap.create();
+
+  /**
+   * Add a resource to close at the end of a step.
+   * @param step the step
+   * @param resource resource to close
+   */
+  void add(final Step step, final Closeable resource) {
+
+    Preconditions.checkNotNull(step, "step argument is null");
+    Preconditions.checkNotNull(resource, "resource argument is null");
+
+    synchronized (this) {
+      this.resources.put(step, resource);
+    }
+  }
+
+  /**
+   * Close the resources of a step if the step has reached a final state.
+   * @param step the step
+   */
+  void updateStepState(final Step step) {
+
+    Preconditions.checkNotNull(step, "step argument is null");
+
+    if (step.getState() != null && step.getState().isFinalState()) {
+      close(step);
+    }
+  }
+
+  /**
+   * Close the resources of a step.
+   * @param step the step
+   */
+  void close(final Step step) {
+
+    final List<Closeable> stepResources;
+    synchronized (this) {
+      stepResources = new ArrayList<>(this.resources.removeAll(step));
+    }
+
+    for (Closeable resource : stepResources) {
+      try {
+        resource.close();
+      } catch (IOException e) {
+        EoulsanLogger.logWarning("Cannot close resource of step "
+            + step.getId() + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Close the resources of all the steps.
+   */
+  void closeAll() {
+
+    final List<Step> steps;
+    synchronized (this) {
+      steps = new ArrayList<>(this.resources.keySet());
+    }
+
+    for (Step step : steps) {
+      close(step);
+    }
+  }
+
+}
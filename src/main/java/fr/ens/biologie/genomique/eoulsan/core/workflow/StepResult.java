@@ -98,6 +98,8 @@ public class StepResult {
   private static final String JOB_ID_TAG = "Job id";
   private static final String EXCEPTION_MESSAGE_TAG = "Exception message";
   private static final String EXCEPTION_TAG = "Exception";
+  private static final String CACHE_HITS_TAG = "Cache hits";
+  private static final String CACHE_MISSES_TAG = "Cache misses";
 
   private String jobId;
   private String jobUUID;
@@ -119,6 +121,8 @@ public class StepResult {
   private final Map<Integer, String> taskMessages = new HashMap<>();
   private final Map<String, Long> stepCounters = new HashMap<>();
   private String stepMessage;
+  private int cacheHits;
+  private int cacheMisses;
 
   private boolean success = true;
   private Throwable exception;
@@ -173,6 +177,25 @@ public class StepResult {
     return Collections.unmodifiableMap(result);
   }
 
+  /**
+   * Get the number of tasks whose result has been restored from the task
+   * cache.
+   * @return the number of cache hits
+   */
+  public int getCacheHits() {
+
+    return this.cacheHits;
+  }
+
+  /**
+   * Get the number of tasks whose result has not been found in the task cache.
+   * @return the number of cache misses
+   */
+  public int getCacheMisses() {
+
+    return this.cacheMisses;
+  }
+
   /**
    * Test if the object immutable.
    * @return true if the object is immutable
@@ -274,6 +297,21 @@ public class StepResult {
     this.taskDescriptions.put(contextId, result.getDescription());
     addCounters(taskName, result.getCounters());
 
+    // Set cache statistics
+    switch (result.getCacheStatus()) {
+
+    case HIT:
+      this.cacheHits++;
+      break;
+
+    case MISS:
+      this.cacheMisses++;
+      break;
+
+    default:
+      break;
+    }
+
     // Set success (Keep only the first error)
     if (this.success) {
       if (!result.isSuccess()) {
@@ -367,6 +405,8 @@ public class StepResult {
     jg.write(DURATION_IN_MILLISECONDS_TAG, this.duration);
     jg.write(SUCCESS_TAG, this.success);
     jg.write(STEP_MESSAGE_TAG, nullToEmpty(this.stepMessage));
+    jg.write(CACHE_HITS_TAG, this.cacheHits);
+    jg.write(CACHE_MISSES_TAG, this.cacheMisses);
 
     if (!this.success) {
       jg.write(EXCEPTION_TAG, this.exception == null
@@ -482,6 +522,14 @@ public class StepResult {
     sb.append(StringUtils.toTimeHumanReadable(this.duration));
     sb.append('\n');
 
+    if (this.cacheHits + this.cacheMisses > 0) {
+      sb.append("Cache hits: ");
+      sb.append(this.cacheHits);
+      sb.append("\nCache misses: ");
+      sb.append(this.cacheMisses);
+      sb.append('\n');
+    }
+
     for (int contextId : this.taskNames.keySet()) {
 
       sb.append(this.taskDescriptions.get(contextId));
@@ -543,6 +591,8 @@ public class StepResult {
     this.duration = obj.getInt(DURATION_IN_MILLISECONDS_TAG);
     this.success = obj.getBoolean(SUCCESS_TAG);
     this.stepMessage = obj.getString(STEP_MESSAGE_TAG);
+    this.cacheHits = obj.getInt(CACHE_HITS_TAG, 0);
+    this.cacheMisses = obj.getInt(CACHE_MISSES_TAG, 0);
 
     // Parse parameters
     this.parameters = new LinkedHashSet<>();
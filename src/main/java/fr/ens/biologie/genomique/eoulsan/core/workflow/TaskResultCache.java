@@ -0,0 +1,796 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.workflow;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.stream.JsonGenerator;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+
+import fr.ens.biologie.genomique.eoulsan.Globals;
+import fr.ens.biologie.genomique.eoulsan.Settings;
+import fr.ens.biologie.genomique.eoulsan.core.InputPort;
+import fr.ens.biologie.genomique.eoulsan.core.Module;
+import fr.ens.biologie.genomique.eoulsan.core.OutputPort;
+import fr.ens.biologie.genomique.eoulsan.core.Parameter;
+import fr.ens.biologie.genomique.eoulsan.core.Step;
+import fr.ens.biologie.genomique.eoulsan.data.Data;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.data.DataFileMetadata;
+
+/**
+ * This class define a content-addressed cache for the results of the tasks.
+ * The key of a task is computed from the name and the version of the module,
+ * the parameters of the step and the fingerprints of the input files (name,
+ * size and modification date or a hash of the content). Each entry of
+ * the cache is a directory that contains hard links to the output files of the
+ * task and a JSON file with the name, the part and the metadata of the output
+ * data and the counters of the task. When a task with the same key is executed
+ * again, the output files are linked from the cache instead of executing the
+ * module.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class TaskResultCache {
+
+  /** Default name of the cache directory in the output directory. */
+  public static final String DEFAULT_CACHE_DIRECTORY_NAME = ".eoulsancache";
+
+  private static final String ENTRY_FILENAME = "entry.json";
+  private static final String TMP_PREFIX = "tmp-";
+  private static final long TMP_MAX_AGE = 24 * 60 * 60 * 1000L;
+
+  private static final String MODULE_NAME_TAG = "Module name";
+  private static final String STEP_ID_TAG = "Step id";
+  private static final String CREATION_TIME_TAG = "Creation time";
+  private static final String TASK_MESSAGE_TAG = "Task message";
+  private static final String TASK_DESCRIPTION_TAG = "Task description";
+  private static final String TASK_COUNTERS_TAG = "Task counters";
+  private static final String DATA_TAG = "Data";
+  private static final String DATA_NAME_TAG = "Name";
+  private static final String DATA_DEFAULT_NAME_TAG = "Default name";
+  private static final String DATA_PART_TAG = "Part";
+  private static final String DATA_FILE_COUNT_TAG = "File count";
+  private static final String DATA_METADATA_TAG = "Metadata";
+
+  private final File directory;
+  private final boolean contentHash;
+
+  //
+  // Key creation
+  //
+
+  /**
+   * Create the key of a task.
+   * @param context the context of the task
+   * @param module the module of the task
+   * @return the key of the task or null if the result of the task cannot be
+   *         cached
+   * @throws IOException if an error occurs while reading the input files
+   */
+  public String createKey(final TaskContextImpl context, final Module module)
+      throws IOException {
+
+    checkNotNull(context, "context argument cannot be null");
+    checkNotNull(module, "module argument cannot be null");
+
+    final Step step = context.getCurrentStep();
+
+    // Only the standard steps with output data that are not lists are cached
+    if (step.getType() != Step.StepType.STANDARD_STEP
+        || step.getOutputPorts().size() == 0) {
+      return null;
+    }
+
+    for (OutputPort port : step.getOutputPorts()) {
+      if (port.isList()) {
+        return null;
+      }
+    }
+
+    final Hasher hasher = Hashing.sha256().newHasher();
+
+    // Module
+    put(hasher, Globals.APP_VERSION_STRING);
+    put(hasher, module.getName());
+    put(hasher, module.getVersion().toString());
+
+    // Parameters
+    final Map<String, String> parameters = new TreeMap<>();
+    for (Parameter p : step.getParameters()) {
+      parameters.put(p.getName(), p.getStringValue());
+    }
+    for (Map.Entry<String, String> e : parameters.entrySet()) {
+      put(hasher, e.getKey());
+      put(hasher, e.getValue());
+    }
+
+    // Input data
+    for (String portName : new TreeSet<>(
+        step.getInputPorts().getPortNames())) {
+
+      final InputPort port = step.getInputPorts().getPort(portName);
+      put(hasher, portName);
+      put(hasher, port.getFormat().getName());
+
+      for (Data data : context.getInputData(port).getListElements()) {
+        putData(hasher, data);
+      }
+    }
+
+    // Output ports
+    for (String portName : new TreeSet<>(
+        step.getOutputPorts().getPortNames())) {
+
+      final OutputPort port = step.getOutputPorts().getPort(portName);
+      put(hasher, portName);
+      put(hasher, port.getFormat().getName());
+      put(hasher, port.getCompression().name());
+    }
+
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Add the fingerprint of a data to the key of a task.
+   * @param hasher the hasher
+   * @param data the data
+   * @throws IOException if an error occurs while reading the input files
+   */
+  private void putData(final Hasher hasher, final Data data)
+      throws IOException {
+
+    put(hasher, data.getName());
+    hasher.putInt(data.getPart());
+
+    // Metadata
+    final SimpleDataMetadata metadata =
+        WorkflowDataUtils.getSimpleMetadata(data.getMetadata());
+    if (metadata != null) {
+      for (String key : new TreeSet<>(metadata.keySet())) {
+        put(hasher, key);
+        put(hasher, metadata.getRaw(key));
+      }
+    }
+
+    // Files
+    for (DataFile file : WorkflowDataUtils.getDataFiles(data)) {
+
+      final DataFileMetadata md = file.getMetaData();
+
+      put(hasher, file.getName());
+      hasher.putLong(md.getContentLength());
+
+      // Use the modification date of the file only if its content is not
+      // hashed
+      if (!this.contentHash) {
+        hasher.putLong(md.getLastModified());
+      } else {
+
+        final byte[] buffer = new byte[64 * 1024];
+
+        try (InputStream in = file.rawOpen()) {
+
+          int n;
+          while ((n = in.read(buffer)) != -1) {
+            hasher.putBytes(buffer, 0, n);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Add a string to the key of a task.
+   * @param hasher the hasher
+   * @param s the string to add
+   */
+  private static void put(final Hasher hasher, final String s) {
+
+    hasher.putString(s == null ? "" : s, UTF_8);
+    hasher.putByte((byte) 0);
+  }
+
+  //
+  // Cache access
+  //
+
+  /**
+   * Restore the result of a task from the cache. If the result cannot be
+   * restored, the output files already restored are removed and an invalid
+   * entry is removed from the cache.
+   * @param key the key of the task
+   * @param context the context of the task
+   * @param status the status of the task
+   * @return true if the result of the task has been found in the cache
+   * @throws IOException if an error occurs while restoring the output files
+   *           or if the entry is invalid
+   */
+  public boolean restore(final String key, final TaskContextImpl context,
+      final TaskStatusImpl status) throws IOException {
+
+    checkNotNull(key, "key argument cannot be null");
+    checkNotNull(context, "context argument cannot be null");
+    checkNotNull(status, "status argument cannot be null");
+
+    final File entryDir = new File(this.directory, key);
+    final File entryFile = new File(entryDir, ENTRY_FILENAME);
+
+    if (!entryFile.isFile()) {
+      return false;
+    }
+
+    final List<File> restoredFiles = new ArrayList<>();
+
+    try {
+      return restore(entryDir, entryFile, context, status, restoredFiles);
+    } catch (IOException e) {
+      deleteFiles(restoredFiles);
+      throw e;
+    } catch (RuntimeException e) {
+      deleteFiles(restoredFiles);
+      deleteDirectory(entryDir);
+      throw new IOException(
+          "Invalid task cache entry " + key + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Restore the result of a task from an entry of the cache.
+   * @param entryDir the directory of the entry
+   * @param entryFile the file of the entry
+   * @param context the context of the task
+   * @param status the status of the task
+   * @param restoredFiles the list where the restored output files are added
+   * @return true if the result of the task has been found in the cache
+   * @throws IOException if an error occurs while restoring the output files
+   */
+  private static boolean restore(final File entryDir, final File entryFile,
+      final TaskContextImpl context, final TaskStatusImpl status,
+      final List<File> restoredFiles) throws IOException {
+
+    final JsonObject entry;
+    try (JsonReader reader = Json.createReader(
+        new InputStreamReader(new FileInputStream(entryFile), UTF_8))) {
+      entry = reader.readObject();
+    }
+
+    final Step step = context.getCurrentStep();
+    final JsonObject dataObj = entry.getJsonObject(DATA_TAG);
+
+    // Check that all the output data are in the entry
+    for (String portName : step.getOutputPorts().getPortNames()) {
+
+      final JsonObject portObj = dataObj.getJsonObject(portName);
+      if (portObj == null) {
+        return false;
+      }
+
+      for (int i = 0; i < portObj.getInt(DATA_FILE_COUNT_TAG); i++) {
+        if (!cachedFile(entryDir, portName, i).isFile()) {
+          return false;
+        }
+      }
+    }
+
+    // Restore the output data
+    for (String portName : step.getOutputPorts().getPortNames()) {
+
+      final JsonObject portObj = dataObj.getJsonObject(portName);
+      final StepOutputPort port =
+          context.getStep().getWorkflowOutputPorts().getPort(portName);
+      final AbstractData data = (AbstractData) context.getOutputData(port);
+
+      if (!portObj.getBoolean(DATA_DEFAULT_NAME_TAG)) {
+        data.setName(portObj.getString(DATA_NAME_TAG));
+      }
+      data.setPart(portObj.getInt(DATA_PART_TAG));
+
+      final boolean multiFiles = port.getFormat().getMaxFilesCount() > 1;
+      for (int i = 0; i < portObj.getInt(DATA_FILE_COUNT_TAG); i++) {
+
+        final DataFile file =
+            multiFiles ? data.getDataFile(i) : data.getDataFile();
+        restoredFiles.add(file.toFile());
+        link(cachedFile(entryDir, portName, i), file.toFile());
+      }
+
+      final SimpleDataMetadata metadata =
+          WorkflowDataUtils.getSimpleMetadata(data.getMetadata());
+      final JsonObject metadataObj = portObj.getJsonObject(DATA_METADATA_TAG);
+      for (String k : metadataObj.keySet()) {
+        metadata.setRaw(k, metadataObj.getString(k));
+      }
+    }
+
+    // Restore the task counters and messages
+    final JsonObject countersObj = entry.getJsonObject(TASK_COUNTERS_TAG);
+    final Map<String, Long> counters = new HashMap<>();
+    for (String counterName : countersObj.keySet()) {
+      counters.put(counterName,
+          countersObj.getJsonNumber(counterName).longValue());
+    }
+    status.setCounters(counters);
+    status.setDescription(entry.getString(TASK_DESCRIPTION_TAG));
+    if (entry.containsKey(TASK_MESSAGE_TAG)) {
+      status.setProgressMessage(entry.getString(TASK_MESSAGE_TAG));
+    }
+
+    // Update the last access time of the entry for the garbage collector
+    entryFile.setLastModified(System.currentTimeMillis());
+
+    return true;
+  }
+
+  /**
+   * Store the result of a task in the cache. Nothing is stored if the output
+   * data of the task are not local files.
+   * @param key the key of the task
+   * @param context the context of the task
+   * @param result the result of the task
+   * @return true if the result has been stored in the cache
+   * @throws IOException if an error occurs while storing the output files
+   */
+  public boolean store(final String key, final TaskContextImpl context,
+      final TaskResultImpl result) throws IOException {
+
+    checkNotNull(key, "key argument cannot be null");
+    checkNotNull(context, "context argument cannot be null");
+    checkNotNull(result, "result argument cannot be null");
+    checkArgument(result.isSuccess(), "Only successful tasks can be cached");
+
+    final File entryDir = new File(this.directory, key);
+    if (entryDir.exists()) {
+      return false;
+    }
+
+    final Step step = context.getCurrentStep();
+    final Map<String, Data> outputData = new TreeMap<>();
+
+    // Check that the output files can be linked in the cache
+    for (String portName : step.getOutputPorts().getPortNames()) {
+
+      final StepOutputPort port =
+          context.getStep().getWorkflowOutputPorts().getPort(portName);
+      final Data data = context.getOutputData(port);
+
+      if (data.isList()) {
+        return false;
+      }
+
+      for (DataFile file : WorkflowDataUtils.getDataFiles(data)) {
+        if (!file.isLocalFile() || !file.toFile().isFile()) {
+          return false;
+        }
+      }
+
+      outputData.put(portName, data);
+    }
+
+    if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+      throw new IOException(
+          "Unable to create the task cache directory: " + this.directory);
+    }
+
+    final File tmpDir =
+        Files.createTempDirectory(this.directory.toPath(), TMP_PREFIX)
+            .toFile();
+
+    try {
+
+      for (Map.Entry<String, Data> e : outputData.entrySet()) {
+
+        int i = 0;
+        for (DataFile file : WorkflowDataUtils.getDataFiles(e.getValue())) {
+          link(file.toFile(), cachedFile(tmpDir, e.getKey(), i++));
+        }
+      }
+
+      writeEntry(new File(tmpDir, ENTRY_FILENAME), context, result,
+          outputData);
+
+      // Publish the entry
+      try {
+        Files.move(tmpDir.toPath(), entryDir.toPath(),
+            StandardCopyOption.ATOMIC_MOVE);
+      } catch (FileAlreadyExistsException e) {
+        // The same entry has been created by another task
+        return false;
+      }
+
+    } finally {
+
+      if (tmpDir.exists()) {
+        deleteDirectory(tmpDir);
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Write the entry file.
+   * @param file the file to write
+   * @param context the context of the task
+   * @param result the result of the task
+   * @param outputData the output data of the task
+   * @throws IOException if an error occurs while writing the file
+   */
+  private static void writeEntry(final File file,
+      final TaskContextImpl context, final TaskResultImpl result,
+      final Map<String, Data> outputData) throws IOException {
+
+    try (Writer writer =
+        new OutputStreamWriter(Files.newOutputStream(file.toPath()), UTF_8);
+        JsonGenerator jg = Json.createGenerator(writer)) {
+
+      jg.writeStartObject();
+      jg.write(MODULE_NAME_TAG, context.getStep().getModuleName());
+      jg.write(STEP_ID_TAG, context.getStep().getId());
+      jg.write(CREATION_TIME_TAG, System.currentTimeMillis());
+      jg.write(TASK_DESCRIPTION_TAG,
+          result.getDescription() == null ? "" : result.getDescription());
+      if (result.getMessage() != null) {
+        jg.write(TASK_MESSAGE_TAG, result.getMessage());
+      }
+
+      jg.writeStartObject(TASK_COUNTERS_TAG);
+      for (Map.Entry<String, Long> e : result.getCounters().entrySet()) {
+        jg.write(e.getKey(), e.getValue());
+      }
+      jg.writeEnd();
+
+      jg.writeStartObject(DATA_TAG);
+      for (Map.Entry<String, Data> e : outputData.entrySet()) {
+
+        final AbstractData data = (AbstractData) e.getValue();
+
+        jg.writeStartObject(e.getKey());
+        jg.write(DATA_NAME_TAG, data.getName());
+        jg.write(DATA_DEFAULT_NAME_TAG, data.isDefaultName());
+        jg.write(DATA_PART_TAG, data.getPart());
+        jg.write(DATA_FILE_COUNT_TAG,
+            WorkflowDataUtils.getDataFiles(data).size());
+
+        jg.writeStartObject(DATA_METADATA_TAG);
+        final SimpleDataMetadata metadata =
+            WorkflowDataUtils.getSimpleMetadata(data.getMetadata());
+        if (metadata != null) {
+          for (String k : metadata.keySet()) {
+            jg.write(k, metadata.getRaw(k));
+          }
+        }
+        jg.writeEnd(); // Metadata
+
+        jg.writeEnd(); // Port
+      }
+      jg.writeEnd(); // Data
+
+      jg.writeEnd();
+    }
+  }
+
+  //
+  // Garbage collection
+  //
+
+  /**
+   * Remove the entries of the cache that have not been used since a given
+   * time and the least recently used entries while the size of the cache is
+   * greater than a maximal size. The temporary directories of the entries
+   * that have not been completed are also removed.
+   * @param maxAge maximal age in milliseconds since the last use of an entry,
+   *          a negative value to keep the entries whatever their age
+   * @param maxSize the maximal size of the cache in bytes, a negative value
+   *          for no size limit
+   * @return the number of removed entries
+   * @throws IOException if an error occurs while removing the entries
+   */
+  public int collectGarbage(final long maxAge, final long maxSize)
+      throws IOException {
+
+    final long now = System.currentTimeMillis();
+    final List<File> entries = new ArrayList<>();
+    final Map<File, Long> lastAccess = new HashMap<>();
+    final Map<File, Long> sizes = new HashMap<>();
+    int result = 0;
+
+    for (File f : listDirectory(this.directory)) {
+
+      if (!f.isDirectory()) {
+        continue;
+      }
+
+      // Incomplete entries
+      if (f.getName().startsWith(TMP_PREFIX)) {
+
+        if (now - f.lastModified() > TMP_MAX_AGE) {
+          deleteDirectory(f);
+        }
+        continue;
+      }
+
+      final File entryFile = new File(f, ENTRY_FILENAME);
+      final long lastModified =
+          entryFile.exists() ? entryFile.lastModified() : f.lastModified();
+
+      if (maxAge >= 0 && now - lastModified > maxAge) {
+        deleteDirectory(f);
+        result++;
+      } else {
+        entries.add(f);
+        lastAccess.put(f, lastModified);
+        sizes.put(f, directorySize(f));
+      }
+    }
+
+    if (maxSize >= 0) {
+
+      long size = 0;
+      for (long s : sizes.values()) {
+        size += s;
+      }
+
+      // Remove the least recently used entries first
+      Collections.sort(entries, new Comparator<File>() {
+
+        @Override
+        public int compare(final File f1, final File f2) {
+
+          return Long.compare(lastAccess.get(f1), lastAccess.get(f2));
+        }
+      });
+
+      for (File f : entries) {
+
+        if (size <= maxSize) {
+          break;
+        }
+
+        deleteDirectory(f);
+        size -= sizes.get(f);
+        result++;
+      }
+    }
+
+    getLogger().info("Removed "
+        + result + " entries from the task cache " + this.directory);
+
+    return result;
+  }
+
+  /**
+   * Get the number of entries in the cache.
+   * @return the number of entries in the cache
+   */
+  public int getEntryCount() {
+
+    int result = 0;
+
+    for (File f : listDirectory(this.directory)) {
+      if (f.isDirectory() && !f.getName().startsWith(TMP_PREFIX)) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the size of the cache. The files linked in the cache are counted even
+   * if they are shared with the output directory of a workflow.
+   * @return the size of the cache in bytes
+   */
+  public long getSize() {
+
+    return directorySize(this.directory);
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Get the file of an output data file in a cache entry.
+   * @param entryDir the entry directory
+   * @param portName the name of the port
+   * @param fileIndex the index of the file
+   * @return a File object
+   */
+  private static File cachedFile(final File entryDir, final String portName,
+      final int fileIndex) {
+
+    return new File(entryDir, portName + '.' + fileIndex);
+  }
+
+  /**
+   * Create a hard link to a file. If the hard link cannot be created (e.g. the
+   * two files are not on the same file system), the file is copied with its
+   * attributes to keep the modification date.
+   * @param source the source file
+   * @param link the link to create
+   * @throws IOException if the link cannot be created
+   */
+  private static void link(final File source, final File link)
+      throws IOException {
+
+    Files.deleteIfExists(link.toPath());
+
+    try {
+      Files.createLink(link.toPath(), source.toPath());
+    } catch (IOException | UnsupportedOperationException e) {
+      Files.copy(source.toPath(), link.toPath(),
+          StandardCopyOption.COPY_ATTRIBUTES);
+    }
+  }
+
+  /**
+   * Delete files.
+   * @param files the files to delete
+   * @throws IOException if an error occurs while removing the files
+   */
+  private static void deleteFiles(final List<File> files) throws IOException {
+
+    for (File f : files) {
+      Files.deleteIfExists(f.toPath());
+    }
+  }
+
+  /**
+   * List the files of a directory.
+   * @param directory the directory
+   * @return a list with the files of the directory
+   */
+  private static List<File> listDirectory(final File directory) {
+
+    final File[] files = directory.listFiles();
+
+    if (files == null) {
+      return Collections.emptyList();
+    }
+
+    final List<File> result = new ArrayList<>();
+    Collections.addAll(result, files);
+
+    return result;
+  }
+
+  /**
+   * Get the size of the files of a directory.
+   * @param directory the directory
+   * @return the size of the files in bytes
+   */
+  private static long directorySize(final File directory) {
+
+    long result = 0;
+
+    for (File f : listDirectory(directory)) {
+      result += f.isDirectory() ? directorySize(f) : f.length();
+    }
+
+    return result;
+  }
+
+  /**
+   * Delete a directory and its content.
+   * @param directory the directory to delete
+   * @throws IOException if an error occurs while removing the directory
+   */
+  private static void deleteDirectory(final File directory)
+      throws IOException {
+
+    for (File f : listDirectory(directory)) {
+
+      if (f.isDirectory()) {
+        deleteDirectory(f);
+      } else {
+        Files.deleteIfExists(f.toPath());
+      }
+    }
+
+    Files.deleteIfExists(directory.toPath());
+  }
+
+  //
+  // Static method
+  //
+
+  /**
+   * Create the task cache defined in the settings.
+   * @param settings the settings
+   * @param outputDirectory the output directory of the workflow
+   * @return a TaskResultCache object or null if the cache is disabled or if
+   *         the cache directory is not a local directory
+   */
+  public static TaskResultCache newInstance(final Settings settings,
+      final DataFile outputDirectory) {
+
+    checkNotNull(settings, "settings argument cannot be null");
+    checkNotNull(outputDirectory, "outputDirectory argument cannot be null");
+
+    if (!settings.isTaskCacheEnabled()) {
+      return null;
+    }
+
+    final DataFile directory = settings.getTaskCacheDirectory() == null
+        ? new DataFile(outputDirectory, DEFAULT_CACHE_DIRECTORY_NAME)
+        : new DataFile(settings.getTaskCacheDirectory());
+
+    if (!directory.isLocalFile()) {
+      getLogger().warning("The task cache is disabled as the task cache "
+          + "directory is not a local directory: " + directory);
+      return null;
+    }
+
+    return new TaskResultCache(directory.toFile(),
+        settings.isTaskCacheContentHash());
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param directory the cache directory
+   * @param contentHash true if the content of the input files must be used to
+   *          compute the keys of the tasks
+   */
+  public TaskResultCache(final File directory, final boolean contentHash) {
+
+    checkNotNull(directory, "directory argument cannot be null");
+
+    this.directory = directory;
+    this.contentHash = contentHash;
+  }
+
+}
@@ -56,6 +56,13 @@ public class TaskResultImpl implements TaskResult, Serializable {
 
   private static final long serialVersionUID = -1698693204391020077L;
 
+  /**
+   * This enum define the status of a task result in the task cache.
+   */
+  enum CacheStatus {
+    DISABLED, MISS, HIT
+  }
+
   private final TaskContextImpl context;
 
   private final Date startTime;
@@ -67,6 +74,7 @@ public class TaskResultImpl implements TaskResult, Serializable {
   private final Map<String, Long> counters = new HashMap<>();
   private final String taskMessage;
   private final String taskDescription;
+  private CacheStatus cacheStatus = CacheStatus.DISABLED;
 
   TaskContextImpl getContext() {
     return this.context;
@@ -92,6 +100,17 @@ public class TaskResultImpl implements TaskResult, Serializable {
     return this.taskMessage;
   }
 
+  CacheStatus getCacheStatus() {
+    return this.cacheStatus == null ? CacheStatus.DISABLED : this.cacheStatus;
+  }
+
+  void setCacheStatus(final CacheStatus cacheStatus) {
+
+    checkNotNull(cacheStatus, "cacheStatus argument cannot be null");
+
+    this.cacheStatus = cacheStatus;
+  }
+
   @Override
   public long getDuration() {
     return this.duration;
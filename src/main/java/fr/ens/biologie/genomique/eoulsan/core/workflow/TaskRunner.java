@@ -73,6 +73,8 @@ public class TaskRunner {
   private volatile TaskResult result;
   private boolean isTokensSent;
   private boolean forceStepInstanceReuse;
+  private TaskResultCache cache;
+  private String cacheKey;
 
   //
   // Getter
@@ -156,6 +158,13 @@ public class TaskRunner {
 
         try {
 
+          // Restore the result of the task from the cache if exists
+          if (restoreFromCache(reuseAnnot)) {
+            getLogger().info("End of task #"
+                + TaskRunner.this.context.getId() + " (restored from cache)");
+            return;
+          }
+
           // If step is a standard step and reuse of step instance is not
           // required by step
           // Create a new instance of the step for the task
@@ -196,6 +205,9 @@ public class TaskRunner {
           TaskRunner.this.result =
               module.execute(TaskRunner.this.context, TaskRunner.this.status);
 
+          // Store the result of the task in the cache
+          storeInCache();
+
         } catch (Throwable t) {
 
           getLogger()
@@ -304,6 +316,89 @@ public class TaskRunner {
     return (TaskResultImpl) this.result;
   }
 
+  /**
+   * Restore the result of the task from the task cache.
+   * @param reuseAnnot true if the module requires to reuse the step instance
+   * @return true if the result of the task has been restored from the cache
+   */
+  private boolean restoreFromCache(final boolean reuseAnnot) {
+
+    // Tasks of the modules that keep a state between tasks are not cached
+    if (reuseAnnot || this.forceStepInstanceReuse) {
+      return false;
+    }
+
+    final TaskResultCache cache = TaskResultCache.newInstance(
+        this.context.getSettings(), this.context.getOutputDirectory());
+
+    if (cache == null) {
+      return false;
+    }
+
+    try {
+      this.cacheKey = cache.createKey(this.context, this.module);
+    } catch (IOException e) {
+      getLogger().warning(
+          "Unable to compute the task cache key: " + e.getMessage());
+      return false;
+    }
+
+    if (this.cacheKey == null) {
+      return false;
+    }
+
+    this.cache = cache;
+
+    final boolean restored;
+    try {
+      restored = cache.restore(this.cacheKey, this.context, this.status);
+    } catch (IOException e) {
+      getLogger().warning("Unable to restore the task result from cache "
+          + this.cacheKey + ": " + e.getMessage());
+      return false;
+    }
+
+    if (!restored) {
+      getLogger().info("Task result not found in cache: " + this.cacheKey);
+      return false;
+    }
+
+    getLogger().info("Task result restored from cache: " + this.cacheKey);
+
+    final TaskResultImpl result =
+        (TaskResultImpl) this.status.createTaskResult();
+    result.setCacheStatus(TaskResultImpl.CacheStatus.HIT);
+    this.result = result;
+
+    return true;
+  }
+
+  /**
+   * Store the result of the task in the task cache.
+   */
+  private void storeInCache() {
+
+    if (this.cache == null || !(this.result instanceof TaskResultImpl)) {
+      return;
+    }
+
+    final TaskResultImpl result = (TaskResultImpl) this.result;
+    result.setCacheStatus(TaskResultImpl.CacheStatus.MISS);
+
+    if (!result.isSuccess()) {
+      return;
+    }
+
+    try {
+      if (this.cache.store(this.cacheKey, this.context, result)) {
+        getLogger().info("Task result stored in cache: " + this.cacheKey);
+      }
+    } catch (IOException e) {
+      getLogger().warning(
+          "Unable to store the task result in cache: " + e.getMessage());
+    }
+  }
+
   /**
    * Send token.
    */
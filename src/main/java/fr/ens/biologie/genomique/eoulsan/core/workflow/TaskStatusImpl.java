@@ -126,6 +126,19 @@ public class TaskStatusImpl implements TaskStatus {
     }
   }
 
+  /**
+   * Set the counters of the task.
+   * @param counters the counters to set
+   */
+  void setCounters(final Map<String, Long> counters) {
+
+    checkNotNull(counters, "counters argument cannot be null");
+
+    synchronized (this.counters) {
+      this.counters.putAll(counters);
+    }
+  }
+
   @Override
   public void setProgress(final int min, final int max, final int value) {
 
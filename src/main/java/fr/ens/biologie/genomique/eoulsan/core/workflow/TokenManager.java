@@ -98,6 +98,9 @@ public class TokenManager implements Runnable {
 
   private final Set<Data> failedOutputDataToRemove = new HashSet<>();
 
+  // Used to wake up the token manager thread
+  private final EventSignal events = new EventSignal();
+
   private volatile boolean endOfStep;
   private boolean isStarted;
 
@@ -380,6 +383,9 @@ public class TokenManager implements Runnable {
         }
       }
     }
+
+    // Inform the token manager thread that a new token is available
+    signal();
   }
 
   /**
@@ -802,6 +808,9 @@ public class TokenManager implements Runnable {
     checkState(!this.isStarted, "The token manager thread for step "
         + this.step.getId() + " is already started");
 
+    // The step is ready, the first check of the thread must not wait
+    signal();
+
     // Start the thread
     new Thread(this, "TokenManager_" + this.step.getId()).start();
 
@@ -828,6 +837,31 @@ public class TokenManager implements Runnable {
 
     this.isStarted = false;
     this.endOfStep = true;
+
+    // Wake up the token manager thread
+    signal();
+  }
+
+  /**
+   * Wake up the token manager thread.
+   */
+  private void signal() {
+
+    this.events.signal();
+  }
+
+  /**
+   * Wait a new event (a received token, the start or the stop of the token
+   * manager). The delay is only a safety net, the thread is normally woken up
+   * by the signal() method.
+   */
+  private void waitEvent() {
+
+    try {
+      this.events.await(CHECKING_DELAY_MS);
+    } catch (InterruptedException e) {
+      getLogger().severe(e.getMessage());
+    }
   }
 
   @Override
@@ -839,11 +873,8 @@ public class TokenManager implements Runnable {
 
       do {
 
-        try {
-          Thread.sleep(CHECKING_DELAY_MS);
-        } catch (InterruptedException e) {
-          getLogger().severe(e.getMessage());
-        }
+        // Wait a new token or a change of the state of the token manager
+        waitEvent();
 
         // Do nothing until the step is not ready
         final StepState state = this.step.getState();
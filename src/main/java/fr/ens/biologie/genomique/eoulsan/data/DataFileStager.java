@@ -0,0 +1,520 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.data;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+
+import com.google.common.io.CountingInputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
+import fr.ens.biologie.genomique.eoulsan.data.protocols.DataProtocol;
+import fr.ens.biologie.genomique.eoulsan.io.CompressionType;
+import fr.ens.biologie.genomique.eoulsan.io.ParallelGZipOutputStream;
+import fr.ens.biologie.genomique.eoulsan.io.ReadAheadInputStream;
+import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
+
+/**
+ * This class allow to stage several files concurrently. The number of
+ * concurrent transfers that use a same remote protocol is limited for all the
+ * stagers of the JVM. Local uncompressed copies use
+ * {@link FileChannel#transferTo}, the compression conversions use multithreaded
+ * codecs and the output files that already exist with the same size as their
+ * input file and that are newer than it or have the same checksum are not
+ * copied again.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class DataFileStager implements AutoCloseable {
+
+  /** Default number of files copied at the same time by a stager. */
+  public static final int DEFAULT_THREAD_NUMBER = 4;
+
+  /** Default maximal number of concurrent transfers for a remote protocol. */
+  public static final int DEFAULT_PROTOCOL_CONNECTIONS = 4;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Permits of the remote protocols shared by all the stagers
+  private static final Map<String, Semaphore> protocolPermits =
+      new HashMap<>();
+
+  private final ExecutorService executor;
+  private final int codecThreads;
+  private final List<Future<Void>> copies = new ArrayList<>();
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicInteger skipped = new AtomicInteger();
+  private final long startTime = System.currentTimeMillis();
+
+  /**
+   * This class define the copy task of a file.
+   */
+  private final class FileCopier implements Callable<Void> {
+
+    private final DataFile in;
+    private final DataFile out;
+    private final boolean relativize;
+
+    @Override
+    public Void call() throws IOException, InterruptedException {
+
+      final List<Semaphore> permits = getPermits(this.in, this.out);
+
+      for (Semaphore permit : permits) {
+        permit.acquire();
+      }
+
+      try {
+
+        if (this.out.exists()) {
+
+          if (!isSameContent(this.in, this.out)) {
+            throw new IOException("Output file already exists: " + this.out);
+          }
+
+          getLogger().info("Skip the copy of "
+              + this.in + ", " + this.out
+              + " already exists with the same content");
+          DataFileStager.this.skipped.incrementAndGet();
+          return null;
+        }
+
+        copy(this.in, this.out, this.relativize);
+
+      } finally {
+        for (Semaphore permit : permits) {
+          permit.release();
+        }
+      }
+
+      return null;
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param in input file
+     * @param out output file
+     * @param relativize relativize the link target path
+     */
+    FileCopier(final DataFile in, final DataFile out,
+        final boolean relativize) {
+
+      this.in = in;
+      this.out = out;
+      this.relativize = relativize;
+    }
+  }
+
+  //
+  // Staging methods
+  //
+
+  /**
+   * Stage a file. Like {@link DataFiles#symlinkOrCopy(DataFile, DataFile,
+   * boolean)}, a symbolic link is created if the input and output files use
+   * the same protocol and the same compression and if the protocol supports
+   * symbolic links. The copy is asynchronous.
+   * @param in input file
+   * @param out output file
+   * @param relativize relativize the link target path
+   */
+  public void stage(final DataFile in, final DataFile out,
+      final boolean relativize) {
+
+    if (in == null) {
+      throw new NullPointerException("in argument cannot be null");
+    }
+
+    if (out == null) {
+      throw new NullPointerException("out argument cannot be null");
+    }
+
+    this.copies.add(this.executor.submit(new FileCopier(in, out, relativize)));
+  }
+
+  /**
+   * Wait the end of the copies and log the throughput of the copies.
+   * @throws IOException if an error occurs while copying a file
+   */
+  public void waitEnd() throws IOException {
+
+    try {
+
+      for (Future<Void> copy : this.copies) {
+        copy.get();
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    } finally {
+      this.executor.shutdownNow();
+    }
+
+    final long duration =
+        Math.max(1, System.currentTimeMillis() - this.startTime);
+    final long copied = this.bytes.get();
+
+    getLogger().info("Staging of "
+        + this.copies.size() + " file(s) (" + this.skipped.get()
+        + " skipped, " + copied + " bytes) in "
+        + StringUtils.toTimeHumanReadable(duration) + " ("
+        + (int) (copied / (duration / 1000.0) / 1024.0) + " KiB/s)");
+  }
+
+  @Override
+  public void close() {
+
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Get the number of bytes read from the input files.
+   * @return the number of bytes read from the input files
+   */
+  public long getBytesCopied() {
+
+    return this.bytes.get();
+  }
+
+  /**
+   * Get the number of files that have not been copied because the output file
+   * already exists with the same content.
+   * @return the number of skipped files
+   */
+  public int getSkippedFileCount() {
+
+    return this.skipped.get();
+  }
+
+  //
+  // Copy methods
+  //
+
+  /**
+   * Copy a file.
+   * @param in input file
+   * @param out output file
+   * @param relativize relativize the link target path
+   * @throws IOException if an error occurs while copying the file
+   */
+  private void copy(final DataFile in, final DataFile out,
+      final boolean relativize) throws IOException {
+
+    final CompressionType inCompression = in.getCompressionType();
+    final CompressionType outCompression = out.getCompressionType();
+
+    if (inCompression == outCompression) {
+
+      final DataProtocol inProtocol = in.getProtocol();
+
+      // Create a symbolic link if possible
+      if (inProtocol.equals(out.getProtocol()) && inProtocol.canSymlink()) {
+        in.symlink(out, relativize);
+        return;
+      }
+
+      final File inFile = in.toFile();
+      final File outFile = out.toFile();
+
+      // Copy local files without going through the Java heap
+      if (inFile != null && outFile != null) {
+        this.bytes.addAndGet(transfer(inFile, outFile));
+        return;
+      }
+    }
+
+    final CountingInputStream counting =
+        new CountingInputStream(in.rawOpen());
+
+    // The data is not uncompressed if the compression is the same
+    final boolean raw = inCompression == outCompression;
+
+    try (
+        InputStream is =
+            raw ? counting : createInputStream(counting, inCompression);
+        OutputStream os = raw ? out.rawCreate() : createOutputStream(out)) {
+
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+
+      while ((n = is.read(buffer)) != -1) {
+        os.write(buffer, 0, n);
+      }
+    } finally {
+      this.bytes.addAndGet(counting.getCount());
+    }
+  }
+
+  /**
+   * Create the input stream of a copy.
+   * @param is raw input stream
+   * @param compression compression of the input file
+   * @return an input stream
+   * @throws IOException if an error occurs while creating the stream
+   */
+  private static InputStream createInputStream(final InputStream is,
+      final CompressionType compression) throws IOException {
+
+    // Uncompress data in a background thread
+    if (compression == CompressionType.GZIP) {
+      return new ReadAheadInputStream(new GZIPInputStream(is, BUFFER_SIZE));
+    }
+
+    return compression.createInputStream(is);
+  }
+
+  /**
+   * Create the output stream of a copy.
+   * @param out output file
+   * @return an output stream
+   * @throws IOException if an error occurs while creating the stream
+   */
+  private OutputStream createOutputStream(final DataFile out)
+      throws IOException {
+
+    final CompressionType compression = out.getCompressionType();
+
+    // Compress data with several threads
+    if (compression == CompressionType.GZIP) {
+      return new ParallelGZipOutputStream(out.rawCreate(), this.codecThreads);
+    }
+
+    return out.create();
+  }
+
+  /**
+   * Copy a local file using {@link FileChannel#transferTo}.
+   * @param in input file
+   * @param out output file
+   * @return the number of bytes copied
+   * @throws IOException if an error occurs while copying the file
+   */
+  private static long transfer(final File in, final File out)
+      throws IOException {
+
+    try (FileChannel inChannel = new FileInputStream(in).getChannel();
+        FileChannel outChannel = new FileOutputStream(out).getChannel()) {
+
+      final long size = inChannel.size();
+      long position = 0;
+
+      while (position < size) {
+        position += inChannel.transferTo(position, size - position, outChannel);
+      }
+
+      return size;
+    }
+  }
+
+  /**
+   * Test if an existing output file has the same content as its input file.
+   * The files must have the same compression and the same size. If the output
+   * file has been modified after the input file, it is considered as a
+   * previous copy of the input file. Otherwise, the checksums of the files
+   * are compared to confirm that the files have the same content.
+   * @param in input file
+   * @param out output file
+   * @return true if the output file has the same content as the input file
+   * @throws IOException if an error occurs while reading the files
+   */
+  private static boolean isSameContent(final DataFile in, final DataFile out)
+      throws IOException {
+
+    if (in.getCompressionType() != out.getCompressionType()) {
+      return false;
+    }
+
+    final DataFileMetadata inMetadata = in.getMetaData();
+    final DataFileMetadata outMetadata = out.getMetaData();
+
+    final long inSize = inMetadata.getContentLength();
+    final long outSize = outMetadata.getContentLength();
+
+    if (inSize < 0 || inSize != outSize) {
+      return false;
+    }
+
+    final long inLastModified = inMetadata.getLastModified();
+    final long outLastModified = outMetadata.getLastModified();
+
+    // The input file has not been modified since the copy
+    if (inLastModified > 0 && outLastModified >= inLastModified) {
+      return true;
+    }
+
+    return checksum(in) == checksum(out);
+  }
+
+  /**
+   * Compute the checksum of the raw content of a file.
+   * @param file the file
+   * @return the CRC32 checksum of the file
+   * @throws IOException if an error occurs while reading the file
+   */
+  private static long checksum(final DataFile file) throws IOException {
+
+    final CRC32 crc = new CRC32();
+
+    try (InputStream is = file.rawOpen()) {
+
+      final byte[] buffer = new byte[BUFFER_SIZE];
+      int n;
+
+      while ((n = is.read(buffer)) != -1) {
+        crc.update(buffer, 0, n);
+      }
+    }
+
+    return crc.getValue();
+  }
+
+  //
+  // Protocol permits
+  //
+
+  /**
+   * Get the permits of the remote protocols used by a copy. The permits are
+   * sorted by protocol name to avoid dead locks.
+   * @param in input file
+   * @param out output file
+   * @return a list of semaphores
+   * @throws IOException if the protocol of a file cannot be found
+   */
+  private static List<Semaphore> getPermits(final DataFile in,
+      final DataFile out) throws IOException {
+
+    final TreeSet<String> protocols = new TreeSet<>();
+
+    for (DataFile file : new DataFile[] {in, out}) {
+
+      // Local files do not need connections
+      if (file.toFile() == null) {
+        protocols.add(file.getProtocol().getName());
+      }
+    }
+
+    final List<Semaphore> result = new ArrayList<>();
+
+    synchronized (protocolPermits) {
+
+      for (String protocol : protocols) {
+
+        if (!protocolPermits.containsKey(protocol)) {
+          protocolPermits.put(protocol,
+              new Semaphore(getProtocolConnections(), true));
+        }
+
+        result.add(protocolPermits.get(protocol));
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the maximal number of concurrent transfers for a remote protocol.
+   * @return the maximal number of concurrent transfers
+   */
+  private static int getProtocolConnections() {
+
+    if (!EoulsanRuntime.isRuntime()) {
+      return DEFAULT_PROTOCOL_CONNECTIONS;
+    }
+
+    return Math.max(1,
+        EoulsanRuntime.getSettings().getStagingProtocolConnections());
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor. The number of threads is defined by the settings.
+   * @param fileCount the number of files to stage
+   */
+  public DataFileStager(final int fileCount) {
+
+    this(fileCount, EoulsanRuntime.isRuntime()
+        ? EoulsanRuntime.getSettings().getStagingThreadsNumber()
+        : DEFAULT_THREAD_NUMBER);
+  }
+
+  /**
+   * Constructor.
+   * @param fileCount the number of files to stage
+   * @param threadNumber the maximal number of files copied at the same time
+   */
+  public DataFileStager(final int fileCount, final int threadNumber) {
+
+    if (threadNumber < 1) {
+      throw new IllegalArgumentException(
+          "threadNumber must be greater than 0: " + threadNumber);
+    }
+
+    final int threads = Math.max(1, Math.min(fileCount, threadNumber));
+
+    this.codecThreads = Math.max(1,
+        Runtime.getRuntime().availableProcessors() / threads);
+    this.executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("data-staging-%d").build());
+  }
+
+}
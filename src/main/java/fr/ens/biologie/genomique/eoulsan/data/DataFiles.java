@@ -26,8 +26,10 @@ package fr.ens.biologie.genomique.eoulsan.data;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.File;
 import java.io.IOException;
 
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqBufferReader;
 import fr.ens.biologie.genomique.eoulsan.data.protocols.DataProtocol;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 
@@ -126,4 +128,26 @@ public class DataFiles {
     }
   }
 
+  /**
+   * Create a FastqBufferReader for a file. If the file is a local uncompressed
+   * file, the file will be memory-mapped.
+   * @param file the file to read
+   * @return a new FastqBufferReader object
+   * @throws IOException if an error occurs while opening the file
+   */
+  public static FastqBufferReader newFastqBufferReader(final DataFile file)
+      throws IOException {
+
+    checkNotNull(file, "file cannot be null");
+
+    final File localFile = file.toFile();
+
+    if (localFile != null
+        && !file.getCompressionType().isCompressed() && localFile.isFile()) {
+      return new FastqBufferReader(localFile);
+    }
+
+    return new FastqBufferReader(file.open());
+  }
+
 }
@@ -27,6 +27,7 @@ package fr.ens.biologie.genomique.eoulsan.data.protocols;
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -34,7 +35,6 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.List;
 
-import com.amazonaws.AmazonClientException;
 import com.amazonaws.auth.BasicAWSCredentials;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Client;
@@ -42,8 +42,6 @@ import com.amazonaws.services.s3.model.AmazonS3Exception;
 import com.amazonaws.services.s3.model.GetObjectRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
-import com.amazonaws.services.s3.transfer.Transfer;
-import com.amazonaws.services.s3.transfer.Transfer.TransferState;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.Settings;
@@ -54,8 +52,6 @@ import fr.ens.biologie.genomique.eoulsan.data.DataFormatRegistry;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
 
-import com.amazonaws.services.s3.transfer.TransferManager;
-
 /**
  * This class define the s3 protocol in local mode.
  * @since 1.0
@@ -68,7 +64,7 @@ public class S3DataProtocol implements DataProtocol {
   public static final String PROTOCOL_NAME = "s3";
 
   private AmazonS3 s3;
-  private TransferManager tx;
+  private S3ParallelTransfer transfer;
 
   @Override
   public String getSourceFilename(final String source) {
@@ -214,58 +210,23 @@ public class S3DataProtocol implements DataProtocol {
     public void upload() throws IOException {
 
       getLogger().info("Upload data to " + this.s3url.getSource());
-      final ObjectMetadata md = new ObjectMetadata();
-
-      if (this.metadata.getContentType() != null) {
-        md.setContentType(this.metadata.getContentType());
-      }
-
-      if (this.metadata.getContentEncoding() != null) {
-        md.setContentEncoding(this.metadata.getContentEncoding());
-      }
-
-      if (this.file == null) {
-        md.setContentLength(this.metadata.getContentLength());
-      }
 
       final long fileLength = this.file == null
           ? this.metadata.getContentLength() : this.file.length();
 
       getLogger().info("Try to upload: "
-          + this.s3url + " (" + md.getContentType() + ", "
-          + md.getContentEncoding() + " " + fileLength + " bytes)");
+          + this.s3url + " (" + this.metadata.getContentType() + ", "
+          + this.metadata.getContentEncoding() + " " + fileLength
+          + " bytes)");
 
-      int tryCount = 0;
-      boolean uploadOk = false;
       final long start = System.currentTimeMillis();
-      AmazonClientException ace = null;
-
-      do {
-
-        tryCount++;
-
-        try {
-
-          multipartUpload(md);
-          uploadOk = true;
-        } catch (AmazonClientException e) {
-          ace = e;
-          getLogger().warning("Error while uploading "
-              + this.s3url + " (Attempt " + tryCount + "): " + e.getMessage());
 
-          try {
-            Thread.sleep(10000);
-          } catch (InterruptedException e1) {
-
-            e1.printStackTrace();
-          }
-        }
-
-      } while (!uploadOk && tryCount < 3);
-
-      if (!uploadOk) {
-        throw new IOException(ace.getMessage());
-      }
+      // The failed parts are uploaded again by the transfer
+      getParallelTransfer().upload(this.s3url.getBucket(),
+          this.s3url.getFilePath(),
+          this.file != null ? new FileInputStream(this.file) : this.is,
+          fileLength, this.metadata.getContentType(),
+          this.metadata.getContentEncoding());
 
       final long end = System.currentTimeMillis();
       final long duration = end - start;
@@ -278,48 +239,6 @@ public class S3DataProtocol implements DataProtocol {
 
     }
 
-    private void multipartUpload(final ObjectMetadata md) {
-
-      getLogger().info("Use multipart upload");
-
-      final Transfer myUpload;
-
-      if (this.file != null) {
-        myUpload = getTransferManager().upload(this.s3url.bucket,
-            this.s3url.getFilePath(), this.file);
-      } else {
-        myUpload = getTransferManager().upload(this.s3url.bucket,
-            this.s3url.getFilePath(), this.is, md);
-      }
-
-      try {
-
-        while (!myUpload.isDone()) {
-
-          Thread.sleep(500);
-        }
-        if (myUpload.getState() != TransferState.Completed) {
-          throw new AmazonClientException(
-              "Transfer not completed correctly. Status: "
-                  + myUpload.getState());
-        }
-
-      } catch (InterruptedException e) {
-        getLogger().warning(e.getMessage());
-        throw new AmazonClientException(e.getMessage());
-      } finally {
-
-        try {
-          if (this.is != null) {
-            this.is.close();
-          }
-        } catch (IOException e) {
-          throw new AmazonClientException(e.getMessage());
-        }
-
-      }
-    }
-
     //
     // Constructor
     //
@@ -357,7 +276,10 @@ public class S3DataProtocol implements DataProtocol {
   @Override
   public InputStream getData(final DataFile src) throws IOException {
 
-    return new S3URL(src).getS3Object().getObjectContent();
+    final S3URL s3url = new S3URL(src);
+
+    return getParallelTransfer().download(s3url.getBucket(),
+        s3url.getFilePath());
   }
 
   @Override
@@ -501,24 +423,41 @@ public class S3DataProtocol implements DataProtocol {
               settings.getAWSSecretKey()));
 
       getLogger().info("AWS S3 account owner: " + this.s3.getS3AccountOwner());
-
-      this.tx = new TransferManager(this.s3);
     }
 
     return this.s3;
   }
 
   /**
-   * Get transfer manager.
-   * @return the transfer manager
+   * Get the object that transfer the files.
+   * @return the S3ParallelTransfer object
    */
-  private TransferManager getTransferManager() {
+  private synchronized S3ParallelTransfer getParallelTransfer() {
+
+    if (this.transfer == null) {
 
-    if (this.tx == null) {
-      this.tx = new TransferManager(getS3());
+      final Settings settings = EoulsanRuntime.getSettings();
+
+      this.transfer = new S3ParallelTransfer(getS3(),
+          settings.getS3TransferThreadsNumber(),
+          getPartSize(settings.getS3TransferPartSize()));
     }
 
-    return this.tx;
+    return this.transfer;
+  }
+
+  /**
+   * Get the size in bytes of the parts of the transfers.
+   * @param partSizeMiB the size of the parts in MiB from the settings
+   * @return the size in bytes of the parts, in the range allowed by S3
+   */
+  static int getPartSize(final int partSizeMiB) {
+
+    // Compute the size in long to avoid an overflow
+    final long partSize = partSizeMiB * 1024L * 1024L;
+
+    return (int) Math.max(S3ParallelTransfer.MIN_PART_SIZE,
+        Math.min(S3ParallelTransfer.MAX_PART_SIZE, partSize));
   }
 
   @Override
@@ -0,0 +1,882 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.data.protocols;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.util.BinaryUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class allow to transfer S3 objects using several connections. The
+ * objects are downloaded with concurrent ranged GET requests and uploaded with
+ * concurrent part uploads. Each part is kept in a buffer of a bounded pool
+ * until its transfer succeed, so a failed part is transferred again without
+ * restarting the whole transfer. This retry only works in the current
+ * process: the state of the parts is not persisted, so a transfer interrupted
+ * by the end of the JVM restarts from the beginning and an interrupted
+ * multipart upload is aborted. The uploaded parts are checked by S3 using
+ * their MD5 digest and the downloaded objects are checked using their ETag
+ * when the ETag is the MD5 digest of the object. The size of the uploaded
+ * parts is increased for large objects to not exceed the maximal number of
+ * parts of a multipart upload.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+final class S3ParallelTransfer {
+
+  /** Minimal size of a part of a multipart upload. */
+  static final int MIN_PART_SIZE = 5 * 1024 * 1024;
+
+  /** Maximal number of parts of a multipart upload. */
+  static final int MAX_PARTS = 10000;
+
+  /** Maximal size of a part of a multipart upload. */
+  static final int MAX_PART_SIZE = 1024 * 1024 * 1024;
+
+  /** Number of parts of the same size for the uploads of unknown length. */
+  private static final int PARTS_BY_SIZE = 1000;
+
+  private static final String SSE_KMS_KEY_ID_HEADER =
+      "x-amz-server-side-encryption-aws-kms-key-id";
+  private static final String SSE_CUSTOMER_ALGORITHM_HEADER =
+      "x-amz-server-side-encryption-customer-algorithm";
+
+  private static final int MAX_ATTEMPTS = 5;
+  private static final long RETRY_DELAY = 1000;
+
+  private final AmazonS3 s3;
+  private final ExecutorService executor;
+  private final int partSize;
+  private final int maxPendingParts;
+  private final BlockingQueue<byte[]> bufferPool;
+
+  /**
+   * This class define an input stream on an S3 object that download the
+   * parts of the object concurrently.
+   */
+  private final class RangedInputStream extends InputStream {
+
+    private final String bucket;
+    private final String key;
+    private final long length;
+    private final String eTag;
+    private final String expectedMD5;
+    private final MessageDigest digest;
+    private final Deque<Future<byte[]>> pendingParts = new ArrayDeque<>();
+    private long nextPartStart;
+
+    private byte[] part;
+    private int partPosition;
+    private int partLength;
+    private long position;
+    private boolean endOfStream;
+    private boolean closed;
+
+    @Override
+    public int read() throws IOException {
+
+      if (!nextPart()) {
+        return -1;
+      }
+
+      this.position++;
+
+      return this.part[this.partPosition++] & 0xff;
+    }
+
+    @Override
+    public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+
+      if (len == 0) {
+        return 0;
+      }
+
+      if (!nextPart()) {
+        return -1;
+      }
+
+      final int n = Math.min(len, this.partLength - this.partPosition);
+      System.arraycopy(this.part, this.partPosition, b, off, n);
+      this.partPosition += n;
+      this.position += n;
+
+      return n;
+    }
+
+    @Override
+    public int available() {
+
+      return this.part == null ? 0 : this.partLength - this.partPosition;
+    }
+
+    @Override
+    public void close() {
+
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+
+      for (Future<byte[]> future : this.pendingParts) {
+        future.cancel(true);
+      }
+      this.pendingParts.clear();
+
+      releasePart();
+    }
+
+    /**
+     * Get the next part if the current part has been read.
+     * @return false if there is no more data to read
+     * @throws IOException if an error occurs while downloading the part
+     */
+    private boolean nextPart() throws IOException {
+
+      if (this.closed) {
+        throw new IOException("The stream is closed");
+      }
+
+      if (this.part != null && this.partPosition < this.partLength) {
+        return true;
+      }
+
+      if (this.endOfStream) {
+        return false;
+      }
+
+      releasePart();
+      submitParts();
+
+      final Future<byte[]> future = this.pendingParts.poll();
+
+      if (future == null) {
+        this.endOfStream = true;
+        checkDigest();
+        return false;
+      }
+
+      this.part = waitPart(future);
+      this.partPosition = 0;
+      this.partLength =
+          (int) Math.min(this.part.length, this.length - this.position);
+      this.digest.update(this.part, 0, this.partLength);
+
+      // Start the download of the following part
+      submitParts();
+
+      return true;
+    }
+
+    /**
+     * Submit the download of the next parts.
+     */
+    private void submitParts() {
+
+      final S3ParallelTransfer transfer = S3ParallelTransfer.this;
+      final String bucket = this.bucket;
+      final String key = this.key;
+      final String eTag = this.eTag;
+
+      while (this.pendingParts.size() < transfer.maxPendingParts
+          && this.nextPartStart < this.length) {
+
+        final long start = this.nextPartStart;
+        final long end = Math.min(start + transfer.partSize, this.length);
+
+        final Callable<byte[]> task = new Callable<byte[]>() {
+
+          @Override
+          public byte[] call() throws Exception {
+
+            return transfer.downloadPart(bucket, key, eTag, start, end);
+          }
+        };
+
+        this.pendingParts.add(transfer.executor.submit(task));
+
+        this.nextPartStart = end;
+      }
+    }
+
+    /**
+     * Release the buffer of the current part.
+     */
+    private void releasePart() {
+
+      if (this.part != null) {
+        releaseBuffer(this.part);
+        this.part = null;
+      }
+    }
+
+    /**
+     * Check the MD5 digest of the downloaded object.
+     * @throws IOException if the digest is not the expected digest
+     */
+    private void checkDigest() throws IOException {
+
+      if (this.expectedMD5 == null) {
+        return;
+      }
+
+      final String md5 = BinaryUtils.toHex(this.digest.digest());
+
+      if (!this.expectedMD5.equalsIgnoreCase(md5)) {
+        throw new IOException("Invalid MD5 digest for s3://"
+            + this.bucket + '/' + this.key + ": " + md5 + " instead of "
+            + this.expectedMD5);
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param bucket the bucket of the object
+     * @param key the key of the object
+     * @param metadata the metadata of the object
+     */
+    RangedInputStream(final String bucket, final String key,
+        final ObjectMetadata metadata) {
+
+      this.bucket = bucket;
+      this.key = key;
+      this.length = metadata.getContentLength();
+      this.eTag = metadata.getETag();
+      this.digest = createMD5Digest();
+      this.expectedMD5 = getExpectedMD5(metadata);
+    }
+  }
+
+  //
+  // Download methods
+  //
+
+  /**
+   * Open an S3 object.
+   * @param bucket the bucket of the object
+   * @param key the key of the object
+   * @return an input stream on the object
+   * @throws IOException if an error occurs while getting the metadata of the
+   *           object
+   */
+  public InputStream download(final String bucket, final String key)
+      throws IOException {
+
+    if (bucket == null) {
+      throw new NullPointerException("bucket argument cannot be null");
+    }
+
+    if (key == null) {
+      throw new NullPointerException("key argument cannot be null");
+    }
+
+    final ObjectMetadata metadata;
+    try {
+      metadata = this.s3.getObjectMetadata(bucket, key);
+    } catch (AmazonClientException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+
+    return new RangedInputStream(bucket, key, metadata);
+  }
+
+  /**
+   * Download a part of an object. The part is only downloaded if the ETag of
+   * the object has not changed since the start of the download, so all the
+   * parts come from the same version of the object.
+   * @param bucket the bucket of the object
+   * @param key the key of the object
+   * @param eTag the ETag of the object, can be null
+   * @param start start of the part
+   * @param end end of the part (excluded)
+   * @return a buffer with the content of the part
+   * @throws IOException if the part cannot be downloaded or if the object has
+   *           been modified
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  private byte[] downloadPart(final String bucket, final String key,
+      final String eTag, final long start, final long end)
+      throws IOException, InterruptedException {
+
+    final byte[] buffer = getBuffer(this.partSize);
+    final int length = (int) (end - start);
+
+    final GetObjectRequest request =
+        new GetObjectRequest(bucket, key).withRange(start, end - 1);
+    if (eTag != null) {
+      request.withMatchingETagConstraint(eTag);
+    }
+
+    for (int attempt = 1;; attempt++) {
+
+      try {
+
+        final S3Object object = this.s3.getObject(request);
+
+        // The ETag constraint is not met
+        if (object == null) {
+          break;
+        }
+
+        try (InputStream is = object.getObjectContent()) {
+
+          if (readFully(is, buffer, length) != length) {
+            throw new IOException("Unexpected end of part");
+          }
+        }
+
+        return buffer;
+
+      } catch (AmazonClientException | IOException e) {
+
+        if (attempt == MAX_ATTEMPTS) {
+          releaseBuffer(buffer);
+          throw new IOException("Unable to download s3://"
+              + bucket + '/' + key + " [" + start + '-' + end + "]: "
+              + e.getMessage(), e);
+        }
+
+        retryDelay("download of s3://" + bucket + '/' + key, attempt, e);
+      }
+    }
+
+    releaseBuffer(buffer);
+    throw new IOException("s3://"
+        + bucket + '/' + key + " has been modified during the download: "
+        + "its ETag is no longer " + eTag);
+  }
+
+  //
+  // Upload methods
+  //
+
+  /**
+   * Upload data in an S3 object. The input stream is closed at the end of the
+   * upload.
+   * @param bucket the bucket of the object
+   * @param key the key of the object
+   * @param is the input stream to upload
+   * @param length the length of the data to upload or -1 if unknown
+   * @param contentType the content type of the object, can be null
+   * @param contentEncoding the content encoding of the object, can be null
+   * @throws IOException if an error occurs while uploading the data
+   */
+  public void upload(final String bucket, final String key,
+      final InputStream is, final long length, final String contentType,
+      final String contentEncoding) throws IOException {
+
+    if (bucket == null) {
+      throw new NullPointerException("bucket argument cannot be null");
+    }
+
+    if (key == null) {
+      throw new NullPointerException("key argument cannot be null");
+    }
+
+    if (is == null) {
+      throw new NullPointerException("is argument cannot be null");
+    }
+
+    final ObjectMetadata metadata = new ObjectMetadata();
+    if (contentType != null) {
+      metadata.setContentType(contentType);
+    }
+    if (contentEncoding != null) {
+      metadata.setContentEncoding(contentEncoding);
+    }
+
+    try (InputStream in = is) {
+
+      final int firstPartSize = getUploadPartSize(length, 1);
+      final byte[] first = getBuffer(firstPartSize);
+      final int firstLength = readFully(in, first, firstPartSize);
+
+      // Small objects do not need a multipart upload
+      if (firstLength < firstPartSize) {
+        try {
+          putObject(bucket, key, metadata, first, firstLength);
+        } finally {
+          releaseBuffer(first);
+        }
+        return;
+      }
+
+      multipartUpload(bucket, key, metadata, in, length, first, firstLength);
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
+  /**
+   * Upload a small object in one request.
+   * @param bucket the bucket of the object
+   * @param key the key of the object
+   * @param metadata the metadata of the object
+   * @param data the content of the object
+   * @param length the length of the content
+   * @throws IOException if the object cannot be uploaded
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  private void putObject(final String bucket, final String key,
+      final ObjectMetadata metadata, final byte[] data, final int length)
+      throws IOException, InterruptedException {
+
+    metadata.setContentLength(length);
+    metadata.setContentMD5(md5(data, length));
+
+    for (int attempt = 1;; attempt++) {
+
+      try {
+        this.s3.putObject(bucket, key,
+            new ByteArrayInputStream(data, 0, length), metadata);
+        return;
+      } catch (AmazonClientException e) {
+
+        if (attempt == MAX_ATTEMPTS) {
+          throw new IOException("Unable to upload s3://"
+              + bucket + '/' + key + ": " + e.getMessage(), e);
+        }
+
+        retryDelay("upload of s3://" + bucket + '/' + key, attempt, e);
+      }
+    }
+  }
+
+  /**
+   * Upload an object with a multipart upload.
+   * @param bucket the bucket of the object
+   * @param key the key of the object
+   * @param metadata the metadata of the object
+   * @param is the input stream of the remaining data
+   * @param contentLength the length of the data to upload or -1 if unknown
+   * @param first the buffer of the first part
+   * @param firstLength the length of the first part
+   * @throws IOException if the object cannot be uploaded
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  private void multipartUpload(final String bucket, final String key,
+      final ObjectMetadata metadata, final InputStream is,
+      final long contentLength, final byte[] first, final int firstLength)
+      throws IOException, InterruptedException {
+
+    final String uploadId;
+    try {
+      uploadId = this.s3
+          .initiateMultipartUpload(
+              new InitiateMultipartUploadRequest(bucket, key, metadata))
+          .getUploadId();
+    } catch (AmazonClientException e) {
+      releaseBuffer(first);
+      throw new IOException("Unable to upload s3://"
+          + bucket + '/' + key + ": " + e.getMessage(), e);
+    }
+
+    final Deque<Future<PartETag>> pendingParts = new ArrayDeque<>();
+    final List<PartETag> partETags = new ArrayList<>();
+    boolean completed = false;
+
+    try {
+
+      byte[] buffer = first;
+      int length = firstLength;
+      int partNumber = 1;
+
+      while (length > 0) {
+
+        // Limit the number of parts in memory
+        while (pendingParts.size() >= this.maxPendingParts) {
+          partETags.add(waitPart(pendingParts.poll()));
+        }
+
+        pendingParts.add(this.executor.submit(new PartUploader(bucket, key,
+            uploadId, partNumber++, buffer, length)));
+
+        final int partSize = getUploadPartSize(contentLength, partNumber);
+        buffer = getBuffer(partSize);
+        length = readFully(is, buffer, partSize);
+      }
+      releaseBuffer(buffer);
+
+      while (!pendingParts.isEmpty()) {
+        partETags.add(waitPart(pendingParts.poll()));
+      }
+
+      this.s3.completeMultipartUpload(
+          new CompleteMultipartUploadRequest(bucket, key, uploadId, partETags));
+      completed = true;
+
+    } catch (AmazonClientException e) {
+      throw new IOException("Unable to upload s3://"
+          + bucket + '/' + key + ": " + e.getMessage(), e);
+    } finally {
+
+      if (!completed) {
+
+        for (Future<PartETag> future : pendingParts) {
+          future.cancel(true);
+        }
+
+        try {
+          this.s3.abortMultipartUpload(
+              new AbortMultipartUploadRequest(bucket, key, uploadId));
+        } catch (AmazonClientException e) {
+          getLogger().warning("Unable to abort the upload of s3://"
+              + bucket + '/' + key + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * This class define the upload task of a part.
+   */
+  private final class PartUploader implements Callable<PartETag> {
+
+    private final String bucket;
+    private final String key;
+    private final String uploadId;
+    private final int partNumber;
+    private final byte[] buffer;
+    private final int length;
+
+    @Override
+    public PartETag call() throws IOException, InterruptedException {
+
+      final String md5 = md5(this.buffer, this.length);
+
+      try {
+
+        for (int attempt = 1;; attempt++) {
+
+          try {
+
+            return S3ParallelTransfer.this.s3.uploadPart(new UploadPartRequest()
+                .withBucketName(this.bucket).withKey(this.key)
+                .withUploadId(this.uploadId).withPartNumber(this.partNumber)
+                .withInputStream(
+                    new ByteArrayInputStream(this.buffer, 0, this.length))
+                .withPartSize(this.length).withMD5Digest(md5)).getPartETag();
+
+          } catch (AmazonClientException e) {
+
+            if (attempt == MAX_ATTEMPTS) {
+              throw new IOException("Unable to upload part "
+                  + this.partNumber + " of s3://" + this.bucket + '/'
+                  + this.key + ": " + e.getMessage(), e);
+            }
+
+            retryDelay("upload of part "
+                + this.partNumber + " of s3://" + this.bucket + '/' + this.key,
+                attempt, e);
+          }
+        }
+
+      } finally {
+        releaseBuffer(this.buffer);
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param bucket the bucket of the object
+     * @param key the key of the object
+     * @param uploadId the identifier of the multipart upload
+     * @param partNumber the number of the part
+     * @param buffer the buffer with the content of the part
+     * @param length the length of the part
+     */
+    PartUploader(final String bucket, final String key, final String uploadId,
+        final int partNumber, final byte[] buffer, final int length) {
+
+      this.bucket = bucket;
+      this.key = key;
+      this.uploadId = uploadId;
+      this.partNumber = partNumber;
+      this.buffer = buffer;
+      this.length = length;
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Shutdown the threads of the transfers.
+   */
+  public void shutdown() {
+
+    this.executor.shutdownNow();
+  }
+
+  /**
+   * Get the size of a part of an upload. If the length of the data to upload
+   * is known, all the parts have the same size, otherwise the size of the
+   * parts is doubled every PARTS_BY_SIZE parts.
+   * @param length the length of the data to upload or -1 if unknown
+   * @param partNumber the number of the part
+   * @return the size of the part
+   */
+  int getUploadPartSize(final long length, final int partNumber) {
+
+    final long result;
+
+    if (length >= 0) {
+      result = Math.max(this.partSize,
+          length / MAX_PARTS + (length % MAX_PARTS == 0 ? 0 : 1));
+    } else {
+      result = (long) this.partSize << Math.min(Integer.SIZE,
+          (partNumber - 1) / PARTS_BY_SIZE);
+    }
+
+    return (int) Math.min(MAX_PART_SIZE, result);
+  }
+
+  /**
+   * Get a buffer from the pool of buffers.
+   * @param size the minimal size of the buffer
+   * @return a buffer
+   */
+  private byte[] getBuffer(final int size) {
+
+    final byte[] result = this.bufferPool.poll();
+
+    return result != null && result.length >= size ? result : new byte[size];
+  }
+
+  /**
+   * Return a buffer to the pool of buffers. Only the buffers of the default
+   * part size are kept in the pool.
+   * @param buffer the buffer to release
+   */
+  private void releaseBuffer(final byte[] buffer) {
+
+    if (buffer.length == this.partSize) {
+      this.bufferPool.offer(buffer);
+    }
+  }
+
+  /**
+   * Get the expected MD5 digest of an object from its metadata.
+   * @param metadata the metadata of the object
+   * @return the expected MD5 digest or null if the ETag of the object is not
+   *         its MD5 digest
+   */
+  static String getExpectedMD5(final ObjectMetadata metadata) {
+
+    final String eTag = metadata.getETag();
+
+    // The ETag of the objects uploaded with multipart uploads is not the MD5
+    // digest of the object
+    if (eTag == null || !eTag.matches("[0-9a-fA-F]{32}")) {
+      return null;
+    }
+
+    // The ETag of the objects encrypted with SSE-KMS or SSE-C is not the MD5
+    // digest of the object, unlike the objects encrypted with SSE-S3
+    final String sse = metadata.getServerSideEncryption();
+    if (sse != null
+        && !ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION.equals(sse)) {
+      return null;
+    }
+
+    for (String header : metadata.getRawMetadata().keySet()) {
+
+      if (SSE_KMS_KEY_ID_HEADER.equalsIgnoreCase(header)
+          || SSE_CUSTOMER_ALGORITHM_HEADER.equalsIgnoreCase(header)) {
+        return null;
+      }
+    }
+
+    return eTag;
+  }
+
+  /**
+   * Wait the end of the transfer of a part.
+   * @param future the future of the transfer
+   * @return the result of the transfer
+   * @throws IOException if an error occurs while transferring the part
+   */
+  private static <V> V waitPart(final Future<V> future) throws IOException {
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Wait before a new attempt of a transfer. The delay is doubled at each
+   * attempt.
+   * @param transfer the description of the transfer
+   * @param attempt the number of the failed attempt
+   * @param e the exception of the failed attempt
+   * @throws InterruptedException if the thread has been interrupted
+   */
+  private static void retryDelay(final String transfer, final int attempt,
+      final Exception e) throws InterruptedException {
+
+    getLogger().warning("Error while the "
+        + transfer + " (Attempt " + attempt + "): " + e.getMessage());
+
+    Thread.sleep(RETRY_DELAY << (attempt - 1));
+  }
+
+  /**
+   * Read bytes until the buffer is full or the end of the stream is reached.
+   * @param is input stream
+   * @param buffer the buffer
+   * @param length the number of bytes to read
+   * @return the number of bytes read
+   * @throws IOException if an error occurs while reading the stream
+   */
+  private static int readFully(final InputStream is, final byte[] buffer,
+      final int length) throws IOException {
+
+    int count = 0;
+
+    while (count < length) {
+
+      final int n = is.read(buffer, count, length - count);
+      if (n == -1) {
+        break;
+      }
+      count += n;
+    }
+
+    return count;
+  }
+
+  /**
+   * Create a MD5 digest.
+   * @return a new MessageDigest object
+   */
+  private static MessageDigest createMD5Digest() {
+
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Compute the base 64 MD5 digest of data.
+   * @param data the data
+   * @param length the length of the data
+   * @return the base 64 MD5 digest of the data
+   */
+  private static String md5(final byte[] data, final int length) {
+
+    final MessageDigest digest = createMD5Digest();
+    digest.update(data, 0, length);
+
+    return BinaryUtils.toBase64(digest.digest());
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param s3 the S3 client
+   * @param threadNumber the number of concurrent transfers
+   * @param partSize the size of the parts
+   */
+  S3ParallelTransfer(final AmazonS3 s3, final int threadNumber,
+      final int partSize) {
+
+    if (s3 == null) {
+      throw new NullPointerException("s3 argument cannot be null");
+    }
+
+    if (threadNumber < 1) {
+      throw new IllegalArgumentException(
+          "threadNumber must be greater than 0: " + threadNumber);
+    }
+
+    if (partSize < MIN_PART_SIZE) {
+      throw new IllegalArgumentException(
+          "partSize must be greater or equal to "
+              + MIN_PART_SIZE + ": " + partSize);
+    }
+
+    this.s3 = s3;
+    this.partSize = partSize;
+    this.maxPendingParts = 2 * threadNumber;
+    this.bufferPool = new ArrayBlockingQueue<>(this.maxPendingParts + 1);
+    this.executor = Executors.newFixedThreadPool(threadNumber,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("s3-transfer-%d").build());
+  }
+
+}
@@ -0,0 +1,61 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.data.storages;
+
+import java.util.Map;
+
+import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.FeatureIndex;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+
+/**
+ * This interface define a storage for the feature indexes built from the
+ * annotations by the expression counters.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public interface FeatureIndexStorage {
+
+  /**
+   * Get the feature index that corresponds to an annotation file and to the
+   * parameters used to build the index.
+   * @param annotationFile the annotation file
+   * @param description description of the parameters of the index, including
+   *          the MD5 sum of the annotation file
+   * @return a FeatureIndex object or null if the index has not yet been
+   *         computed
+   */
+  FeatureIndex get(DataFile annotationFile, Map<String, String> description);
+
+  /**
+   * Put a feature index in the storage.
+   * @param annotationFile the annotation file
+   * @param description description of the parameters of the index, including
+   *          the MD5 sum of the annotation file
+   * @param index the index to store
+   */
+  void put(DataFile annotationFile, Map<String, String> description,
+      FeatureIndex index);
+
+}
@@ -0,0 +1,219 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.data.storages;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static fr.ens.biologie.genomique.eoulsan.util.Utils.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import fr.ens.biologie.genomique.eoulsan.Globals;
+import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.FeatureIndex;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+
+/**
+ * This class define a basic FeatureIndexStorage. Each index is saved in a
+ * binary file of the storage directory named with the MD5 sum of the
+ * description of the index, that contains the MD5 sum of the annotation file.
+ * The files are memory mapped when loaded, so the index can be shared by all
+ * the tasks that use the same annotation.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SimpleFeatureIndexStorage implements FeatureIndexStorage {
+
+  private static final String INDEX_FILE_PREFIX = "features-";
+  private static final String INDEX_FILE_EXTENSION = ".fidx";
+
+  private final File dir;
+
+  //
+  // Interface methods
+  //
+
+  @Override
+  public FeatureIndex get(final DataFile annotationFile,
+      final Map<String, String> description) {
+
+    checkNotNull(annotationFile, "annotationFile is null");
+    checkNotNull(description, "description is null");
+
+    final File indexFile = getIndexFile(description);
+
+    if (indexFile == null || !indexFile.isFile()) {
+      return null;
+    }
+
+    try {
+      final FeatureIndex result = FeatureIndex.load(indexFile);
+      getLogger().info("Feature index of "
+          + annotationFile.getName() + " loaded from the feature index storage: "
+          + indexFile.getName());
+
+      return result;
+    } catch (IOException e) {
+      getLogger().warning("Unable to load feature index "
+          + indexFile.getName() + " from the feature index storage: "
+          + e.getMessage());
+      return null;
+    }
+  }
+
+  @Override
+  public void put(final DataFile annotationFile,
+      final Map<String, String> description, final FeatureIndex index) {
+
+    checkNotNull(annotationFile, "annotationFile is null");
+    checkNotNull(description, "description is null");
+    checkNotNull(index, "index is null");
+
+    final File indexFile = getIndexFile(description);
+
+    if (indexFile == null || indexFile.exists()) {
+      return;
+    }
+
+    // Write the index in a temporary file and then rename it to avoid that
+    // another task read an incomplete index
+    File tmpFile = null;
+    try {
+      tmpFile = File.createTempFile(INDEX_FILE_PREFIX, ".tmp", this.dir);
+      index.save(tmpFile);
+
+      if (!tmpFile.renameTo(indexFile)) {
+        throw new IOException(
+            "Unable to rename " + tmpFile + " to " + indexFile);
+      }
+
+      getLogger().info("Successfully added the feature index of "
+          + annotationFile.getName() + " to feature index storage.");
+
+    } catch (IOException e) {
+      getLogger().warning("Failed to add the feature index of "
+          + annotationFile.getName() + " to feature index storage: "
+          + e.getMessage());
+
+      if (tmpFile != null && tmpFile.exists() && !tmpFile.delete()) {
+        getLogger().warning("Unable to delete temporary file: " + tmpFile);
+      }
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Get the file of an index.
+   * @param description description of the parameters of the index
+   * @return the file of the index or null if the MD5 sum cannot be computed
+   */
+  private File getIndexFile(final Map<String, String> description) {
+
+    final String md5Sum = createMD5Sum(description);
+
+    if (md5Sum == null) {
+      return null;
+    }
+
+    return new File(this.dir, INDEX_FILE_PREFIX + md5Sum + INDEX_FILE_EXTENSION);
+  }
+
+  private static String createMD5Sum(final Map<String, String> description) {
+
+    // Sort the description
+    final Map<String, String> map = new TreeMap<>(description);
+
+    MessageDigest md5Digest;
+    try {
+      md5Digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      getLogger().warning(
+          "Failed to create checksum for feature index: " + e.getMessage());
+      return null;
+    }
+
+    for (Map.Entry<String, String> e : map.entrySet()) {
+
+      md5Digest.update(e.getKey().getBytes(Globals.DEFAULT_CHARSET));
+      md5Digest.update(e.getValue().getBytes(Globals.DEFAULT_CHARSET));
+    }
+
+    final BigInteger bigInt = new BigInteger(1, md5Digest.digest());
+
+    return bigInt.toString(16);
+  }
+
+  //
+  // Static methods
+  //
+
+  /**
+   * Create a FeatureIndexStorage
+   * @param dir the path of the index storage
+   * @return a FeatureIndexStorage object if the path is a local directory or
+   *         null if the path cannot be used as a storage
+   */
+  public static final FeatureIndexStorage getInstance(final DataFile dir) {
+
+    try {
+      return new SimpleFeatureIndexStorage(dir);
+    } catch (IOException e) {
+      return null;
+    } catch (NullPointerException e) {
+      return null;
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Private constructor.
+   * @param dir Path to the index storage
+   * @throws IOException if the storage directory is not a local directory
+   */
+  private SimpleFeatureIndexStorage(final DataFile dir) throws IOException {
+
+    checkNotNull(dir, "Index directory is null");
+
+    final File file = dir.toFile();
+
+    if (file == null || !file.isDirectory()) {
+      throw new IOException(
+          "Feature index storage directory not found: " + dir.getSource());
+    }
+
+    this.dir = file;
+  }
+
+}
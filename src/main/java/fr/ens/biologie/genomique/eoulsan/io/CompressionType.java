@@ -30,6 +30,7 @@ import java.io.OutputStream;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
 import fr.ens.biologie.genomique.eoulsan.util.SystemUtils;
 
@@ -213,6 +214,10 @@ public enum CompressionType {
   public static InputStream createGZipInputStream(final InputStream is)
       throws IOException {
 
+    if (getCompressionThreadsNumber() > 0) {
+      return new ReadAheadInputStream(new GZIPInputStream(is));
+    }
+
     return new GZIPInputStream(is);
   }
 
@@ -251,6 +256,12 @@ public enum CompressionType {
   public static OutputStream createGZipOutputStream(final OutputStream os)
       throws IOException {
 
+    final int threads = getCompressionThreadsNumber();
+
+    if (threads > 0) {
+      return new ParallelGZipOutputStream(os, threads);
+    }
+
     return new GZIPOutputStream(os);
   }
 
@@ -307,6 +318,20 @@ public enum CompressionType {
     return s;
   }
 
+  /**
+   * Get the number of threads to use for gzip compression from the settings.
+   * @return the number of threads to use or 0 if multithreaded compression is
+   *         disabled
+   */
+  private static int getCompressionThreadsNumber() {
+
+    if (!EoulsanRuntime.isRuntime()) {
+      return 0;
+    }
+
+    return EoulsanRuntime.getSettings().getCompressionThreadsNumber();
+  }
+
   //
   // Constructor
   //
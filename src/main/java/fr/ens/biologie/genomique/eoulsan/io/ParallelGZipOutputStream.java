@@ -0,0 +1,419 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class define an output stream that compress data in the BGZF format
+ * using several threads. BGZF files are a series of gzip members, so they can
+ * be read by any gzip decompressor (e.g. gunzip or GZIPInputStream). Each
+ * block of data is compressed by a worker thread and the compressed blocks
+ * are written in order. A block is submitted to the compression threads as
+ * soon as it is full, so the position in the stream of a byte can be defined
+ * by the index of its block and its offset in the block like the virtual file
+ * offsets of BGZF files.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ParallelGZipOutputStream extends OutputStream {
+
+  /** Maximal size of the uncompressed data of a BGZF block. */
+  static final int MAX_BLOCK_DATA_SIZE = 0xff00;
+
+  private static final int BLOCK_HEADER_SIZE = 18;
+  private static final int BLOCK_FOOTER_SIZE = 8;
+
+  /** Empty block that marks the end of a BGZF file. */
+  private static final byte[] EOF_BLOCK = {0x1f, (byte) 0x8b, 0x08, 0x04,
+      0x00, 0x00, 0x00, 0x00, 0x00, (byte) 0xff, 0x06, 0x00, 0x42, 0x43, 0x02,
+      0x00, 0x1b, 0x00, 0x03, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00,
+      0x00};
+
+  private final OutputStream out;
+  private final int level;
+  private final ExecutorService executor;
+  private final int maxPendingBlocks;
+  private final Deque<Future<byte[]>> pendingBlocks = new ArrayDeque<>();
+  private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+
+  private byte[] buffer = new byte[MAX_BLOCK_DATA_SIZE];
+  private int count;
+  private long blockIndex;
+  private long writtenBlockCount;
+  private long address;
+  private BlockListener listener;
+  private boolean closed;
+
+  /**
+   * This interface define a listener of the blocks written in the underlying
+   * stream. The listener is called by the thread that write in the stream.
+   */
+  public interface BlockListener {
+
+    /**
+     * Called when a block has been written in the underlying stream.
+     * @param blockIndex index of the block
+     * @param address address of the block in the underlying stream
+     * @param length length of the compressed block
+     */
+    void blockWritten(long blockIndex, long address, int length);
+  }
+
+  /**
+   * This class define the compression task of a block.
+   */
+  private final class BlockCompressor implements Callable<byte[]> {
+
+    private final byte[] data;
+    private final int length;
+
+    @Override
+    public byte[] call() {
+
+      Deflater deflater = deflaters.poll();
+      if (deflater == null) {
+        deflater = new Deflater(level, true);
+      }
+
+      try {
+        return compressBlock(this.data, this.length, deflater);
+      } finally {
+        deflater.reset();
+        deflaters.add(deflater);
+      }
+    }
+
+    /**
+     * Constructor.
+     * @param data data to compress
+     * @param length length of the data
+     */
+    BlockCompressor(final byte[] data, final int length) {
+
+      this.data = data;
+      this.length = length;
+    }
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the index of the current block. This is also the count of blocks
+   * submitted to the compression threads.
+   * @return the index of the current block
+   */
+  public long getBlockIndex() {
+
+    return this.blockIndex;
+  }
+
+  /**
+   * Get the offset of the next byte to write in the current block.
+   * @return the offset of the next byte to write in the current block
+   */
+  public int getBlockOffset() {
+
+    return this.count;
+  }
+
+  //
+  // Setters
+  //
+
+  /**
+   * Set the listener of the written blocks.
+   * @param listener the listener, can be null
+   */
+  public void setBlockListener(final BlockListener listener) {
+
+    this.listener = listener;
+  }
+
+  //
+  // OutputStream methods
+  //
+
+  @Override
+  public void write(final int b) throws IOException {
+
+    checkClosed();
+
+    this.buffer[this.count++] = (byte) b;
+
+    if (this.count == this.buffer.length) {
+      submitBlock();
+    }
+  }
+
+  @Override
+  public void write(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    if (b == null) {
+      throw new NullPointerException("the array of bytes argument is null");
+    }
+
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    checkClosed();
+
+    int offset = off;
+    int remaining = len;
+
+    while (remaining > 0) {
+
+      final int n = Math.min(remaining, this.buffer.length - this.count);
+      System.arraycopy(b, offset, this.buffer, this.count, n);
+      this.count += n;
+      offset += n;
+      remaining -= n;
+
+      if (this.count == this.buffer.length) {
+        submitBlock();
+      }
+    }
+  }
+
+  @Override
+  public void flush() throws IOException {
+
+    checkClosed();
+
+    if (this.count > 0) {
+      submitBlock();
+    }
+
+    while (!this.pendingBlocks.isEmpty()) {
+      writeNextBlock();
+    }
+
+    this.out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    try {
+      flush();
+      this.out.write(EOF_BLOCK);
+    } finally {
+
+      this.closed = true;
+      this.executor.shutdownNow();
+      this.out.close();
+
+      Deflater deflater;
+      while ((deflater = this.deflaters.poll()) != null) {
+        deflater.end();
+      }
+    }
+  }
+
+  //
+  // Other methods
+  //
+
+  private void checkClosed() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+  }
+
+  /**
+   * Submit the current block to the compression threads.
+   * @throws IOException if an error occurs while writing a block
+   */
+  private void submitBlock() throws IOException {
+
+    // Limit the number of blocks in memory
+    while (this.pendingBlocks.size() >= this.maxPendingBlocks) {
+      writeNextBlock();
+    }
+
+    this.pendingBlocks.add(
+        this.executor.submit(new BlockCompressor(this.buffer, this.count)));
+
+    this.buffer = new byte[MAX_BLOCK_DATA_SIZE];
+    this.count = 0;
+    this.blockIndex++;
+  }
+
+  /**
+   * Wait the compression of the oldest block and write it.
+   * @throws IOException if an error occurs while writing the block
+   */
+  private void writeNextBlock() throws IOException {
+
+    try {
+
+      final byte[] block = this.pendingBlocks.poll().get();
+      this.out.write(block);
+
+      if (this.listener != null) {
+        this.listener.blockWritten(this.writtenBlockCount, this.address,
+            block.length);
+      }
+
+      this.writtenBlockCount++;
+      this.address += block.length;
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Compress a block of data in a BGZF block.
+   * @param data data to compress
+   * @param length length of the data
+   * @param deflater deflater to use
+   * @return an array of bytes with the BGZF block
+   */
+  static byte[] compressBlock(final byte[] data, final int length,
+      final Deflater deflater) {
+
+    // The compressed data of an uncompressible block is slightly greater than
+    // the uncompressed data
+    byte[] compressed = new byte[length + length / 1000 + 64];
+
+    deflater.setInput(data, 0, length);
+    deflater.finish();
+
+    int compressedLength = 0;
+    while (!deflater.finished()) {
+
+      if (compressedLength == compressed.length) {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      }
+
+      compressedLength += deflater.deflate(compressed, compressedLength,
+          compressed.length - compressedLength);
+    }
+
+    final CRC32 crc = new CRC32();
+    crc.update(data, 0, length);
+
+    final int blockSize =
+        BLOCK_HEADER_SIZE + compressedLength + BLOCK_FOOTER_SIZE;
+    final byte[] result = Arrays.copyOf(EOF_BLOCK, blockSize);
+
+    // Block size minus 1
+    result[16] = (byte) (blockSize - 1);
+    result[17] = (byte) ((blockSize - 1) >> 8);
+
+    System.arraycopy(compressed, 0, result, BLOCK_HEADER_SIZE,
+        compressedLength);
+
+    writeInt(result, blockSize - 8, (int) crc.getValue());
+    writeInt(result, blockSize - 4, length);
+
+    return result;
+  }
+
+  /**
+   * Write an integer in little endian.
+   * @param array the destination array
+   * @param offset the offset in the array
+   * @param value the value to write
+   */
+  private static void writeInt(final byte[] array, final int offset,
+      final int value) {
+
+    array[offset] = (byte) value;
+    array[offset + 1] = (byte) (value >> 8);
+    array[offset + 2] = (byte) (value >> 16);
+    array[offset + 3] = (byte) (value >> 24);
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param out the output stream
+   * @param threads the number of compression threads
+   */
+  public ParallelGZipOutputStream(final OutputStream out, final int threads) {
+
+    this(out, threads, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Constructor.
+   * @param out the output stream
+   * @param threads the number of compression threads
+   * @param level the compression level
+   */
+  public ParallelGZipOutputStream(final OutputStream out, final int threads,
+      final int level) {
+
+    if (out == null) {
+      throw new NullPointerException("out argument cannot be null");
+    }
+
+    if (threads < 1) {
+      throw new IllegalArgumentException(
+          "The number of threads must be greater than 0: " + threads);
+    }
+
+    this.out = out;
+    this.level = level;
+    this.maxPendingBlocks = threads * 4;
+    this.executor = Executors.newFixedThreadPool(threads,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("gzip-compression-%d").build());
+  }
+
+}
@@ -0,0 +1,299 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.base.Throwables;
+
+/**
+ * This class define an input stream that reads its source in a background
+ * thread. It is useful to decompress data in a thread while the data are
+ * processed by another thread.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ReadAheadInputStream extends InputStream {
+
+  private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+  private static final int DEFAULT_CHUNK_COUNT = 4;
+  private static final long END_CHUNK_TIMEOUT = 100;
+  private static final long CLOSE_TIMEOUT = 1000;
+
+  /** Chunk that marks the end of the source stream. */
+  private static final Chunk END_CHUNK = new Chunk(new byte[0], -1);
+
+  private final InputStream in;
+  private final BlockingQueue<Chunk> queue;
+  private final Thread thread;
+
+  private Chunk current;
+  private int pos;
+  private volatile Throwable exception;
+  private volatile boolean closed;
+
+  /**
+   * This class define a chunk of data read from the source.
+   */
+  private static final class Chunk {
+
+    private final byte[] data;
+    private final int length;
+
+    Chunk(final byte[] data, final int length) {
+
+      this.data = data;
+      this.length = length;
+    }
+  }
+
+  /**
+   * This class define the thread that reads the source stream.
+   */
+  private final class ReaderThread extends Thread {
+
+    private final int chunkSize;
+
+    @Override
+    public void run() {
+
+      try {
+
+        while (!closed) {
+
+          final byte[] data = new byte[this.chunkSize];
+          int length = 0;
+          int n = 0;
+
+          // Fill the chunk
+          while (length < data.length
+              && (n = in.read(data, length, data.length - length)) != -1) {
+            length += n;
+          }
+
+          if (length > 0) {
+            queue.put(new Chunk(data, length));
+          }
+
+          if (n == -1) {
+            break;
+          }
+        }
+
+      } catch (Throwable t) {
+
+        // The errors after the closing of the stream are not reported
+        if (!closed) {
+          exception = t;
+        }
+      } finally {
+
+        // Always mark the end of the data to not block the reader
+        putEndChunk();
+      }
+    }
+
+    /**
+     * Put the end chunk in the queue while the stream is not closed.
+     */
+    private void putEndChunk() {
+
+      while (!closed) {
+        try {
+          if (queue.offer(END_CHUNK, END_CHUNK_TIMEOUT,
+              TimeUnit.MILLISECONDS)) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          // Retry until the stream is closed
+        }
+      }
+    }
+
+    /**
+     * Constructor.
+     * @param chunkSize size of the chunks
+     */
+    ReaderThread(final int chunkSize) {
+
+      super("read-ahead");
+      this.chunkSize = chunkSize;
+      setDaemon(true);
+    }
+  }
+
+  //
+  // InputStream methods
+  //
+
+  @Override
+  public int read() throws IOException {
+
+    if (!nextChunk()) {
+      return -1;
+    }
+
+    return this.current.data[this.pos++] & 0xff;
+  }
+
+  @Override
+  public int read(final byte[] b, final int off, final int len)
+      throws IOException {
+
+    if (b == null) {
+      throw new NullPointerException("the array of bytes argument is null");
+    }
+
+    if (off < 0 || len < 0 || off + len > b.length) {
+      throw new IndexOutOfBoundsException();
+    }
+
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!nextChunk()) {
+      return -1;
+    }
+
+    final int n = Math.min(len, this.current.length - this.pos);
+    System.arraycopy(this.current.data, this.pos, b, off, n);
+    this.pos += n;
+
+    return n;
+  }
+
+  @Override
+  public int available() throws IOException {
+
+    if (this.current == null || this.current == END_CHUNK) {
+      return 0;
+    }
+
+    return this.current.length - this.pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    this.closed = true;
+    this.thread.interrupt();
+
+    // Do not wait for ever a thread blocked in a read of the source, closing
+    // the source will unblock it
+    try {
+      this.thread.join(CLOSE_TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    this.in.close();
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Get the next chunk of data if the current chunk has been fully read.
+   * @return false if the end of the stream has been reached
+   * @throws IOException if an error has occurred while reading the source
+   */
+  private boolean nextChunk() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("Stream closed");
+    }
+
+    while (this.current == null || this.pos == this.current.length) {
+
+      if (this.current == END_CHUNK) {
+        return false;
+      }
+
+      try {
+        this.current = this.queue.take();
+        this.pos = 0;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(e.getMessage());
+      }
+
+      if (this.current == END_CHUNK && this.exception != null) {
+        Throwables.propagateIfPossible(this.exception, IOException.class);
+        throw new IOException(this.exception);
+      }
+    }
+
+    return this.current != END_CHUNK;
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param in the source input stream
+   */
+  public ReadAheadInputStream(final InputStream in) {
+
+    this(in, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_COUNT);
+  }
+
+  /**
+   * Constructor.
+   * @param in the source input stream
+   * @param chunkSize size of the chunks of data
+   * @param chunkCount maximal number of chunks read ahead
+   */
+  public ReadAheadInputStream(final InputStream in, final int chunkSize,
+      final int chunkCount) {
+
+    if (in == null) {
+      throw new NullPointerException("in argument cannot be null");
+    }
+
+    if (chunkSize < 1 || chunkCount < 1) {
+      throw new IllegalArgumentException(
+          "Invalid chunk size or count: " + chunkSize + ", " + chunkCount);
+    }
+
+    this.in = in;
+    this.queue = new ArrayBlockingQueue<>(chunkCount);
+    this.thread = new ReaderThread(chunkSize);
+    this.thread.start();
+  }
+
+}
@@ -59,7 +59,7 @@ import fr.ens.biologie.genomique.eoulsan.core.TaskStatus;
 import fr.ens.biologie.genomique.eoulsan.core.Version;
 import fr.ens.biologie.genomique.eoulsan.data.Data;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
-import fr.ens.biologie.genomique.eoulsan.data.DataFiles;
+import fr.ens.biologie.genomique.eoulsan.data.DataFileStager;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormatRegistry;
 import fr.ens.biologie.genomique.eoulsan.data.protocols.DataProtocol;
@@ -182,7 +182,8 @@ public class CopyInputDataModule extends AbstractModule {
   //
 
   /**
-   * Check input and output files.
+   * Check input and output files. An existing output file is not an error
+   * here, the stager skips it if it has the same content as the input file.
    * @param inFile input file
    * @param outFile output file
    * @throws IOException if copy cannot be started
@@ -197,10 +198,6 @@ public class CopyInputDataModule extends AbstractModule {
     if (!inFile.exists()) {
       throw new FileNotFoundException("Input file not found: " + inFile);
     }
-
-    if (outFile.exists()) {
-      throw new IOException("Output file already exists: " + outFile);
-    }
   }
 
   /**
@@ -237,46 +234,56 @@ public class CopyInputDataModule extends AbstractModule {
   private void copyData(final Data inData, final Data outData,
       final TaskContext context) throws IOException {
 
-    if (inData.getFormat().getMaxFilesCount() == 1) {
+    // The files of the data are copied concurrently
+    try (DataFileStager stager =
+        new DataFileStager(inData.getDataFileCount())) {
 
-      //
-      // Handle standard case
-      //
+      if (inData.getFormat().getMaxFilesCount() == 1) {
 
-      // Copy the file
-      final DataFile outputFile = copyFile(inData.getDataFile(), -1,
-          outData.getName(), outData.getPart(), context);
+        //
+        // Handle standard case
+        //
 
-      // Set the file in the data object
-      DataUtils.setDataFile(outData, outputFile);
-    } else {
+        // Copy the file
+        final DataFile outputFile = copyFile(stager, inData.getDataFile(), -1,
+            outData.getName(), outData.getPart(), context);
 
-      //
-      // Handle multi file format like FASTQ files
-      //
+        stager.waitEnd();
 
-      // Get the count of input files
-      final int count = inData.getDataFileCount();
+        // Set the file in the data object
+        DataUtils.setDataFile(outData, outputFile);
+      } else {
 
-      // The list of output files
-      final List<DataFile> dataFiles = new ArrayList<>();
+        //
+        // Handle multi file format like FASTQ files
+        //
 
-      for (int i = 0; i < count; i++) {
+        // Get the count of input files
+        final int count = inData.getDataFileCount();
 
-        // Copy the file
-        final DataFile outputFile = copyFile(inData.getDataFile(i), i,
-            outData.getName(), outData.getPart(), context);
+        // The list of output files
+        final List<DataFile> dataFiles = new ArrayList<>();
 
-        dataFiles.add(outputFile);
-      }
+        for (int i = 0; i < count; i++) {
+
+          // Copy the file
+          final DataFile outputFile = copyFile(stager, inData.getDataFile(i),
+              i, outData.getName(), outData.getPart(), context);
+
+          dataFiles.add(outputFile);
+        }
 
-      // Set the files in the data object
-      DataUtils.setDataFiles(outData, dataFiles);
+        stager.waitEnd();
+
+        // Set the files in the data object
+        DataUtils.setDataFiles(outData, dataFiles);
+      }
     }
   }
 
   /**
    * Copy an input file to its destination.
+   * @param stager the stager that copy the file
    * @param inputFile the input file
    * @param fileIndex the output file index
    * @param outDataName the output data name
@@ -285,9 +292,9 @@ public class CopyInputDataModule extends AbstractModule {
    * @return the output file
    * @throws IOException if an error occurs while copying the data
    */
-  private DataFile copyFile(final DataFile inputFile, final int fileIndex,
-      final String outDataName, final int outDataPart,
-      final TaskContext context) throws IOException {
+  private DataFile copyFile(final DataFileStager stager,
+      final DataFile inputFile, final int fileIndex, final String outDataName,
+      final int outDataPart, final TaskContext context) throws IOException {
 
     final String stepId = context.getCurrentStep().getId();
     final DataFile outputDir = context.getStepOutputDirectory();
@@ -310,7 +317,7 @@ public class CopyInputDataModule extends AbstractModule {
     checkFiles(in, out);
 
     // Copy file
-    DataFiles.symlinkOrCopy(in, out, true);
+    stager.stage(in, out, true);
 
     return out;
   }
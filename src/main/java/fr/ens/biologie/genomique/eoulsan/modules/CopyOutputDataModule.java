@@ -50,7 +50,7 @@ import fr.ens.biologie.genomique.eoulsan.core.TaskStatus;
 import fr.ens.biologie.genomique.eoulsan.core.Version;
 import fr.ens.biologie.genomique.eoulsan.data.Data;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
-import fr.ens.biologie.genomique.eoulsan.data.DataFiles;
+import fr.ens.biologie.genomique.eoulsan.data.DataFileStager;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormatRegistry;
 
@@ -157,7 +157,8 @@ public class CopyOutputDataModule extends AbstractModule {
   //
 
   /**
-   * Check input and output files.
+   * Check input and output files. An existing output file is not an error
+   * here, the stager skips it if it has the same content as the input file.
    * @param inFile input file
    * @param outFile output file
    * @throws IOException if copy cannot be started
@@ -172,10 +173,6 @@ public class CopyOutputDataModule extends AbstractModule {
     if (!inFile.exists()) {
       throw new FileNotFoundException("Input file not found: " + inFile);
     }
-
-    if (outFile.exists()) {
-      throw new IOException("Output file already exists: " + outFile);
-    }
   }
 
   /**
@@ -190,42 +187,50 @@ public class CopyOutputDataModule extends AbstractModule {
 
     final DataFile outputDir = context.getStepOutputDirectory();
 
-    // Handle standard case
-    if (inData.getFormat().getMaxFilesCount() == 1) {
+    // The files of the data are copied concurrently
+    try (DataFileStager stager =
+        new DataFileStager(inData.getDataFileCount())) {
 
-      final DataFile in = inData.getDataFile();
-      final DataFile out = new DataFile(outputDir, in.getName());
+      // Handle standard case
+      if (inData.getFormat().getMaxFilesCount() == 1) {
 
-      // Check input and output files
-      checkFiles(in, out);
+        final DataFile in = inData.getDataFile();
+        final DataFile out = new DataFile(outputDir, in.getName());
 
-      // Copy file
-      DataFiles.symlinkOrCopy(in, out, true);
+        // Check input and output files
+        checkFiles(in, out);
 
-      // Set the DataFile in the output data object
-      DataUtils.setDataFile(outData, out);
+        // Copy file
+        stager.stage(in, out, true);
+        stager.waitEnd();
 
-    } else {
+        // Set the DataFile in the output data object
+        DataUtils.setDataFile(outData, out);
 
-      final int count = inData.getDataFileCount();
-      final List<DataFile> outFiles = new ArrayList<>();
+      } else {
 
-      // Handle multi file format like FASTQ files
-      for (int i = 0; i < count; i++) {
+        final int count = inData.getDataFileCount();
+        final List<DataFile> outFiles = new ArrayList<>();
 
-        final DataFile in = inData.getDataFile(i);
-        final DataFile out = new DataFile(outputDir, in.getName());
-        outFiles.add(out);
+        // Handle multi file format like FASTQ files
+        for (int i = 0; i < count; i++) {
 
-        // Check input and output files
-        checkFiles(in, out);
+          final DataFile in = inData.getDataFile(i);
+          final DataFile out = new DataFile(outputDir, in.getName());
+          outFiles.add(out);
 
-        // Copy file
-        DataFiles.symlinkOrCopy(in, out, true);
-      }
+          // Check input and output files
+          checkFiles(in, out);
 
-      // Set the DataFile in the output data object
-      DataUtils.setDataFiles(outData, outFiles);
+          // Copy file
+          stager.stage(in, out, true);
+        }
+
+        stager.waitEnd();
+
+        // Set the DataFile in the output data object
+        DataUtils.setDataFiles(outData, outFiles);
+      }
     }
   }
 
@@ -73,6 +73,7 @@ public class DESeq2 {
   private static final String DESEQ_DESIGN_FILE_SUFFIX = "-deseq2Design.txt";
   private static final String COMPARISON_FILE_SUFFIX = "-comparisonFile.txt";
   private static final String CONTRAST_FILE_SUFFIX = "-contrastFile.txt";
+  private static final String COUNT_MATRIX_FILE_SUFFIX = "-countMatrix.tsv";
 
   // Constants
   private static final String SAMPLE_ID_FIELDNAME = "SampleId";
@@ -113,7 +114,7 @@ public class DESeq2 {
 
   private final String stepId;
 
-  // Temporary expression filenames
+  // Expression filenames
   private Map<String, String> sampleFilenames = new HashMap<>();
 
   //
@@ -256,10 +257,15 @@ public class DESeq2 {
   }
 
   /**
-   * Put sample files.
-   * @throws IOException if an error occurs while putting sample files
+   * Write the count matrix of the sample files.
+   * @param countMatrixFilename the filename of the count matrix
+   * @throws IOException if an error occurs while writing the count matrix
    */
-  private void putSampleFiles() throws IOException {
+  private void writeCountMatrix(final String countMatrixFilename)
+      throws IOException {
+
+    final List<String> columnNames = new ArrayList<>();
+    final List<DataFile> files = new ArrayList<>();
 
     for (Sample sample : experiment.getSamples()) {
 
@@ -269,13 +275,16 @@ public class DESeq2 {
       }
 
       final String key = sample.getId();
-      final DataFile inputFile =
-          new DataFile(this.sampleFiles.get(key).getAbsolutePath());
-      final String outputFilename = "expression-" + key + ".tsv";
+      final File inputFile = this.sampleFiles.get(key);
 
-      this.executor.putInputFile(inputFile, outputFilename);
-      this.sampleFilenames.put(key, outputFilename);
+      columnNames.add(key);
+      files.add(new DataFile(inputFile.getAbsolutePath()));
+      this.sampleFilenames.put(key, inputFile.getName());
     }
+
+    this.executor.writerFile(
+        Normalization.createCountMatrix(columnNames, files, this.expHeader),
+        countMatrixFilename);
   }
 
   /**
@@ -441,7 +450,8 @@ public class DESeq2 {
    * @return the command line to run normDiffana.R
    */
   private String[] createNormDiffanaCommandLine(
-      final String deseq2DesignFileName, final String contrastFilename) {
+      final String deseq2DesignFileName, final String contrastFilename,
+      final String countMatrixFilename) {
 
     final List<String> command = new ArrayList<>();
     command.addAll(asList(booleanParameter(normFig), booleanParameter(diffana),
@@ -460,7 +470,7 @@ public class DESeq2 {
         this.experiment.getName(), booleanParameter(this.expHeader),
         this.sizeFactorsType.toDESeq2Value(), this.fitType.toDESeq2Value(),
         this.statisticTest.toDESeq2Value(), contrastFilename,
-        this.stepId + "_"));
+        this.stepId + "_", countMatrixFilename));
 
     return command.toArray(new String[command.size()]);
   }
@@ -523,14 +533,17 @@ public class DESeq2 {
     // Define contrast filename
     final String contrastFilename = prefix + CONTRAST_FILE_SUFFIX;
 
+    // Define count matrix filename
+    final String countMatrixFilename = prefix + COUNT_MATRIX_FILE_SUFFIX;
+
     // Check experiment design
     checkExperimentDesign();
 
     // Open executor connection
     this.executor.openConnection();
 
-    // Put Sample files
-    putSampleFiles();
+    // Write the count matrix of the sample files
+    writeCountMatrix(countMatrixFilename);
 
     // Write the deseq2 design
     this.executor.writerFile(generateDeseq2Design(), deseq2DesignFileName);
@@ -587,7 +600,8 @@ public class DESeq2 {
       // Run normDiffana.R
       this.executor.executeRScript(normDiffanaScript, false, null,
           this.saveRScripts, description,
-          createNormDiffanaCommandLine(deseq2DesignFileName, contrastFilename));
+          createNormDiffanaCommandLine(deseq2DesignFileName, contrastFilename,
+              countMatrixFilename));
     }
 
     // Remove input files
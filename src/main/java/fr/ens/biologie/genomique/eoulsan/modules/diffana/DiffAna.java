@@ -306,8 +306,9 @@ public class DiffAna extends Normalization {
     // Add SampleIds vector
     generateSampleIdsPart(rSampleIds, sb);
 
-    // Add file names vector
-    generateExpressionFileNamesPart(sb);
+    // Add count matrix file name
+    generateCountMatrixFilePart(getCountMatrixFilename(experiment, context),
+        sb);
 
     // Add repTechGroupVector
     generateRepTechGroupPart(rRepTechGroup, sb);
@@ -24,11 +24,13 @@
 
 package fr.ens.biologie.genomique.eoulsan.modules.diffana;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 import static fr.ens.biologie.genomique.eoulsan.util.StringUtils.toCompactTime;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
@@ -39,10 +41,10 @@ import java.util.Map;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.Globals;
+import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.CountTable;
 import fr.ens.biologie.genomique.eoulsan.core.TaskContext;
 import fr.ens.biologie.genomique.eoulsan.data.Data;
-import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
-import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
 import fr.ens.biologie.genomique.eoulsan.design.Design;
 import fr.ens.biologie.genomique.eoulsan.design.DesignUtils;
 import fr.ens.biologie.genomique.eoulsan.design.Experiment;
@@ -75,9 +77,12 @@ public class Normalization {
   private static final String NORMALIZATION_PART2 =
       "/DESeq1/normalizationPart2.Rnw";
 
+  private static final String COUNT_MATRIX_FILE_SUFFIX = "-countmatrix.tsv";
+
+  /** The DESeq1 scripts always read the expression files with a header. */
+  private static final boolean EXPRESSION_FILES_HEADER = true;
+
   protected final Design design;
-  protected final String expressionFilesPrefix;
-  protected final String expressionFilesSuffix;
   protected RSConnection rConnection = null;
   protected final RExecutor executor;
 
@@ -114,6 +119,21 @@ public class Normalization {
 
     try {
 
+      // Get the expression files of the samples
+      final Map<Integer, DataFile> sampleFiles = new HashMap<>();
+      for (Data d : data.getListElements()) {
+
+        final int sampleId = d.getMetadata().getSampleNumber();
+
+        // Check if the sample ID exists
+        if (sampleId == -1) {
+          throw new EoulsanException(
+              "No sample Id found for input file: " + d.getDataFile());
+        }
+
+        sampleFiles.put(sampleId, d.getDataFile());
+      }
+
       // create an iterator on the map values
       for (Experiment experiment : this.design.getExperiments()) {
 
@@ -127,22 +147,9 @@ public class Normalization {
         // Open executor connection
         executor.openConnection();
 
-        // Put input input files
-        for (Data d : data.getListElements()) {
-
-          final int sampleId = d.getMetadata().getSampleNumber();
-
-          // Check if the sample ID exists
-          if (sampleId == -1) {
-            throw new EoulsanException(
-                "No sample Id found for input file: " + d.getDataFile());
-          }
-
-          final String linkFilename = this.expressionFilesPrefix
-              + sampleId + this.expressionFilesSuffix;
-
-          executor.putInputFile(d.getDataFile(), linkFilename);
-        }
+        // Write the count matrix of the samples of the experiment
+        executor.writerFile(createCountMatrix(experiment, sampleFiles),
+            getCountMatrixFilename(experiment, context));
 
         // Generate the R script
         final String rScript = generateScript(experiment, context);
@@ -199,6 +206,19 @@ public class Normalization {
     return false;
   }
 
+  /**
+   * Get the filename of the count matrix of an experiment.
+   * @param experiment the experiment
+   * @param context Step context
+   * @return the filename of the count matrix
+   */
+  protected String getCountMatrixFilename(final Experiment experiment,
+      final TaskContext context) {
+
+    return context.getCurrentStep().getId()
+        + '_' + experiment.getId() + COUNT_MATRIX_FILE_SUFFIX;
+  }
+
   //
   // R code generation methods
   //
@@ -309,8 +329,9 @@ public class Normalization {
     // Add SampleIds vector
     generateSampleIdsPart(rSampleIds, sb);
 
-    // Add file names vector
-    generateExpressionFileNamesPart(sb);
+    // Add count matrix file name
+    generateCountMatrixFilePart(getCountMatrixFilename(experiment, context),
+        sb);
 
     // Add repTechGroupVector
     generateRepTechGroupPart(rRepTechGroup, sb);
@@ -468,18 +489,18 @@ public class Normalization {
   }
 
   /**
-   * Add expression file name vector to R script.
+   * Add count matrix filename to R script.
+   * @param countMatrixFilename the filename of the count matrix
    * @param sb StringBuilder where write the part of the script
    */
-  protected void generateExpressionFileNamesPart(final StringBuilder sb) {
-
-    // Add file names vector
-    sb.append("#create file names vector\n");
-    sb.append("fileNames <- paste(\"");
-    sb.append(this.expressionFilesPrefix);
-    sb.append("\",sampleIds" + ',' + '\"');
-    sb.append(this.expressionFilesSuffix);
-    sb.append("\",sep=\"\")\n\n");
+  protected void generateCountMatrixFilePart(final String countMatrixFilename,
+      final StringBuilder sb) {
+
+    // Add count matrix file name
+    sb.append("# count matrix file name\n");
+    sb.append("countMatrixFile <- \"");
+    sb.append(countMatrixFilename);
+    sb.append("\"\n\n");
   }
 
   /**
@@ -605,6 +626,70 @@ public class Normalization {
     }
   }
 
+  /**
+   * Create the count matrix of the samples of an experiment.
+   * @param experiment the experiment
+   * @param sampleFiles the expression files of the samples
+   * @return a String with the count matrix
+   * @throws EoulsanException if the expression file of a sample is missing
+   * @throws IOException if an error occurs while reading the expression files
+   */
+  protected String createCountMatrix(final Experiment experiment,
+      final Map<Integer, DataFile> sampleFiles)
+      throws EoulsanException, IOException {
+
+    final List<String> columnNames = new ArrayList<>();
+    final List<DataFile> files = new ArrayList<>();
+
+    for (Sample s : experiment.getSamples()) {
+
+      final DataFile file = sampleFiles.get(s.getNumber());
+
+      if (file == null) {
+        throw new EoulsanException("No expression file found for sample: "
+            + s.getName() + " (" + s.getId() + ")");
+      }
+
+      columnNames.add(s.getId());
+      files.add(file);
+    }
+
+    return createCountMatrix(columnNames, files, EXPRESSION_FILES_HEADER);
+  }
+
+  /**
+   * Create a count matrix from expression files. The expression files are
+   * loaded in a CountTable and the matrix is written in a single pass. Like
+   * the merge of the expression files previously done in R, only the features
+   * present in all the files are kept.
+   * @param columnNames the names of the columns of the samples in the matrix
+   * @param files the expression files of the samples
+   * @param header true if the expression files have a header
+   * @return a String with the count matrix
+   * @throws IOException if an error occurs while reading the expression files
+   */
+  static String createCountMatrix(final List<String> columnNames,
+      final List<DataFile> files, final boolean header) throws IOException {
+
+    checkNotNull(columnNames, "columnNames argument cannot be null");
+    checkNotNull(files, "files argument cannot be null");
+    checkArgument(columnNames.size() == files.size(),
+        "columnNames and files must have the same size");
+
+    final CountTable table = new CountTable();
+
+    for (int i = 0; i < files.size(); i++) {
+
+      final int sampleIndex = table.addSample(columnNames.get(i));
+      table.loadExpressionFile(sampleIndex, files.get(i).open(), header);
+    }
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    table.writeMatrix(os);
+
+    return new String(os.toByteArray(), Globals.DEFAULT_CHARSET);
+  }
+
   /*
    * Private methods
    */
@@ -649,10 +734,6 @@ public class Normalization {
 
     this.design = design;
 
-    final DataFormat eDF = DataFormats.EXPRESSION_RESULTS_TSV;
-    this.expressionFilesPrefix = eDF.getPrefix();
-    this.expressionFilesSuffix = eDF.getDefaultExtension();
-
     this.executor = executor;
   }
 
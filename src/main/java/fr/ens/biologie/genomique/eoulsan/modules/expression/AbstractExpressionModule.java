@@ -80,6 +80,7 @@ public abstract class AbstractExpressionModule extends AbstractModule {
   public static final String SPLIT_ATTRIBUTE_VALUES_PARAMETER_NAME =
       "split.attribute.values";
   public static final String FEATURES_FILE_FORMAT = "features.file.format";
+  public static final String THREADS_PARAMETER_NAME = "threads";
 
   public static final String OLD_REMOVE_AMBIGUOUS_CASES_PARAMETER_NAME =
       "removeambiguouscases";
@@ -103,6 +104,7 @@ public abstract class AbstractExpressionModule extends AbstractModule {
   private boolean removeAmbiguousCases = true;
   private boolean splitAttributeValues = false;
   private boolean gtfFormat;
+  private int threads = 1;
 
   //
   // Getters
@@ -183,6 +185,15 @@ public abstract class AbstractExpressionModule extends AbstractModule {
     return this.gtfFormat;
   }
 
+  /**
+   * Get the number of threads to use for counting.
+   * @return the number of threads to use for counting
+   */
+  protected int getThreadsNumber() {
+
+    return this.threads;
+  }
+
   //
   // Module methods
   //
@@ -307,6 +318,10 @@ public abstract class AbstractExpressionModule extends AbstractModule {
 
         break;
 
+      case THREADS_PARAMETER_NAME:
+        this.threads = p.getIntValueGreaterOrEqualsTo(1);
+        break;
+
       default:
         Modules.unknownParameter(context, p);
       }
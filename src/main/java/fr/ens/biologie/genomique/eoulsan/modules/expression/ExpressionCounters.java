@@ -41,6 +41,10 @@ public enum ExpressionCounters {
   LOW_QUAL_ALIGNMENTS_COUNTER("number of alignments with too low quality"),
   EMPTY_ALIGNMENTS_COUNTER("number of alignments with no feature"),
   AMBIGUOUS_ALIGNMENTS_COUNTER("number of ambiguous alignments"),
+  COMBINED_MAP_OUTPUT_RECORDS_COUNTER(
+      "map output records saved by in-mapper combining"),
+  COMBINED_MAP_OUTPUT_BYTES_COUNTER(
+      "map output bytes saved by in-mapper combining"),
 
   PARENTS_COUNTER("parent"), INVALID_CHROMOSOME_COUNTER("invalid chromosome"),
   PARENT_ID_NOT_FOUND_COUNTER("Parent Id not found in exon range");
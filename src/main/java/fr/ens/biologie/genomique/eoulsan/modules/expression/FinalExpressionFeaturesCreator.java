@@ -30,20 +30,13 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
-import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 
 import fr.ens.biologie.genomique.eoulsan.Globals;
 import fr.ens.biologie.genomique.eoulsan.bio.GenomicArray;
+import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.CountTable;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
-import fr.ens.biologie.genomique.eoulsan.util.Utils;
 
 /**
  * This class generates the final expression file after counting the alignments
@@ -58,97 +51,16 @@ public class FinalExpressionFeaturesCreator {
       Charset.forName(Globals.DEFAULT_FILE_ENCODING);
 
   private GenomicArray<String> ga = new GenomicArray<>();
-  private final Map<String, ExpressionFeature> expressionResults =
-      new HashMap<>();
-
-  private static final class ExpressionFeature
-      implements Comparable<ExpressionFeature> {
-
-    private final String id;
-    private int alignmentCount = 0;
-
-    public void setExpressionResult(final int alignmentCount) {
-
-      this.alignmentCount = alignmentCount;
-    }
-
-    @Override
-    public int compareTo(final ExpressionFeature o) {
-
-      if (o == null) {
-        return 1;
-      }
-
-      int diff = this.id.compareTo(o.id);
-
-      if (diff != 0) {
-        return diff;
-      }
-
-      return (o.alignmentCount - this.alignmentCount);
-
-    }
-
-    @Override
-    public boolean equals(final Object o) {
-
-      if (o == this) {
-        return true;
-      }
-
-      if (!(o instanceof ExpressionFeature)) {
-        return false;
-      }
-
-      final ExpressionFeature et = (ExpressionFeature) o;
-
-      if (Utils.equal(this.id, et.id)
-          && this.alignmentCount == et.alignmentCount) {
-        return true;
-      }
-
-      return false;
-    }
-
-    @Override
-    public int hashCode() {
-
-      return Objects.hash(this.id, this.alignmentCount);
-    }
-
-    @Override
-    public String toString() {
-
-      return this.id + "\t" + this.alignmentCount;
-    }
-
-    //
-    // Constructor
-    //
-
-    /**
-     * Constructor for ExpressionTranscript.
-     * @param id identifier to set
-     */
-    public ExpressionFeature(final String id) {
-
-      if (id == null) {
-        throw new NullPointerException("Identifier to add is null");
-      }
-
-      this.id = id;
-    }
-
-  }
+  private CountTable expressionResults = createCountTable();
 
   /**
    * Clear.
    */
   public void initializeExpressionResults() {
 
-    this.expressionResults.clear();
+    this.expressionResults = createCountTable();
     for (String id : this.ga.getFeaturesIds()) {
-      this.expressionResults.put(id, new ExpressionFeature(id));
+      this.expressionResults.addFeature(id);
     }
   }
 
@@ -182,8 +94,10 @@ public class FinalExpressionFeaturesCreator {
       final String id = tab[0];
       final int alignmentCount = Integer.parseInt(tab[1]);
 
-      if (this.expressionResults.containsKey(id)) {
-        this.expressionResults.get(id).setExpressionResult(alignmentCount);
+      // Only keep the counts of the features of the annotation
+      final int ordinal = this.expressionResults.getFeatureOrdinal(id);
+      if (ordinal != -1) {
+        this.expressionResults.setCount(0, ordinal, alignmentCount);
       }
     }
 
@@ -207,20 +121,19 @@ public class FinalExpressionFeaturesCreator {
    */
   public void saveFinalResults(final OutputStream os) throws IOException {
 
-    final List<ExpressionFeature> list =
-        new ArrayList<>(this.expressionResults.values());
-
-    Collections.sort(list);
-
-    final OutputStreamWriter osw = new OutputStreamWriter(os, CHARSET);
+    this.expressionResults.writeCounts(0, os);
+  }
 
-    osw.write("Id\tCount\n");
-    for (ExpressionFeature ef : list) {
-      osw.write(ef.toString() + "\n");
-    }
+  /**
+   * Create an empty count table with a single sample.
+   * @return a new CountTable object
+   */
+  private static CountTable createCountTable() {
 
-    osw.close();
+    final CountTable result = new CountTable();
+    result.addSample("Count");
 
+    return result;
   }
 
   //
@@ -57,12 +57,16 @@ import fr.ens.biologie.genomique.eoulsan.annotations.HadoopOnly;
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
 import fr.ens.biologie.genomique.eoulsan.bio.GenomicArray;
+import fr.ens.biologie.genomique.eoulsan.bio.SAMUtils;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.HTSeqCounter;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.HTSeqUtils;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.OverlapMode;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.StrandUsage;
 import fr.ens.biologie.genomique.eoulsan.bio.io.hadoop.ExpressionOutputFormat;
 import fr.ens.biologie.genomique.eoulsan.bio.io.hadoop.SAMInputFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.io.hadoop.SAMRecordInputFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.io.hadoop.SAMRecordOutputFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.io.hadoop.SAMRecordWritable;
 import fr.ens.biologie.genomique.eoulsan.core.InputPorts;
 import fr.ens.biologie.genomique.eoulsan.core.Parameter;
 import fr.ens.biologie.genomique.eoulsan.core.StepConfigurationContext;
@@ -78,6 +82,7 @@ import fr.ens.biologie.genomique.eoulsan.util.hadoop.MapReduceUtils;
 import fr.ens.biologie.genomique.eoulsan.util.hadoop.PathUtils;
 import fr.ens.biologie.genomique.eoulsan.util.locker.Locker;
 import fr.ens.biologie.genomique.eoulsan.util.locker.ZooKeeperLocker;
+import htsjdk.samtools.SAMSequenceDictionary;
 
 /**
  * This class is the main class for the expression program of the reads in
@@ -90,7 +95,6 @@ public class ExpressionHadoopModule extends AbstractExpressionModule {
 
   private static final String TSAM_EXTENSION = ".tsam";
   private static final String SERIALIZATION_EXTENSION = ".ser";
-  static final char SAM_RECORD_PAIRED_END_SERPARATOR = '£';
   static final String GENOME_DESC_PATH_KEY =
       Globals.PARAMETER_PREFIX + ".expression.genome.desc.file";
 
@@ -216,8 +220,10 @@ public class ExpressionHadoopModule extends AbstractExpressionModule {
     // Set input path
     FileInputFormat.setInputPaths(job, inputPath);
 
-    // Set input format
-    job.setInputFormatClass(SAMInputFormat.class);
+    // Set input format, the paired-end alignments have been already parsed by
+    // the pretreatment job
+    job.setInputFormatClass(
+        tsamFormat ? SAMRecordInputFormat.class : SAMInputFormat.class);
 
     // Set the mapper class
     job.setMapperClass(HTSeqCountMapper.class);
@@ -260,7 +266,8 @@ public class ExpressionHadoopModule extends AbstractExpressionModule {
     jobConf.set(CommonHadoop.COUNTER_GROUP_KEY, COUNTER_GROUP);
 
     // Set Genome description path
-    jobConf.set(GENOME_DESC_PATH_KEY, genomeDescriptionData.getDataFilename());
+    jobConf.set(GENOME_DESC_PATH_KEY,
+        genomeDescriptionData.getDataFile().getSource());
 
     // Create the job and its name
     final Job job = Job.getInstance(jobConf,
@@ -280,11 +287,14 @@ public class ExpressionHadoopModule extends AbstractExpressionModule {
     // Set the Reducer class
     job.setReducerClass(PreTreatmentExpressionReducer.class);
 
+    // Set the output format
+    job.setOutputFormatClass(SAMRecordOutputFormat.class);
+
     // Set the output key class
     job.setOutputKeyClass(Text.class);
 
     // Set the output value class
-    job.setOutputValueClass(Text.class);
+    job.setOutputValueClass(SAMRecordWritable.class);
 
     // Output name
     String outputName =
@@ -387,6 +397,32 @@ public class ExpressionHadoopModule extends AbstractExpressionModule {
     fefc.saveFinalResults(fs.create(resultPath));
   }
 
+  /**
+   * Create the sequence dictionary used by the tasks of the expression jobs to
+   * parse, serialize and deserialize the alignments. The dictionary is created
+   * from the genome description defined in the job configuration.
+   * @param conf the job configuration
+   * @return a new SAMSequenceDictionary object
+   * @throws IOException if an error occurs while reading the genome
+   *           description
+   */
+  static SAMSequenceDictionary createSAMSequenceDictionary(
+      final Configuration conf) throws IOException {
+
+    // Get the genome description filename
+    final String genomeDescFile = conf.get(GENOME_DESC_PATH_KEY);
+
+    if (genomeDescFile == null) {
+      throw new IOException("No genome desc file set");
+    }
+
+    // Load genome description object
+    final GenomeDescription genomeDescription = GenomeDescription
+        .load(PathUtils.createInputStream(new Path(genomeDescFile), conf));
+
+    return SAMUtils.newSAMSequenceDictionary(genomeDescription);
+  }
+
   /**
    * Create the path to the serialized annotation index.
    * @param featureAnnotationFile feature annotation file
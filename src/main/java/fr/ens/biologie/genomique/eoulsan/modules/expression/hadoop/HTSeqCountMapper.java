@@ -26,6 +26,8 @@ package fr.ens.biologie.genomique.eoulsan.modules.expression.hadoop;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.AMBIGUOUS_ALIGNMENTS_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.COMBINED_MAP_OUTPUT_BYTES_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.COMBINED_MAP_OUTPUT_RECORDS_COUNTER;
 import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.ELIMINATED_READS_COUNTER;
 import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.EMPTY_ALIGNMENTS_COUNTER;
 import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.INVALID_SAM_ENTRIES_COUNTER;
@@ -33,33 +35,35 @@ import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCou
 import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.NOT_ALIGNED_ALIGNMENTS_COUNTER;
 import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.NOT_UNIQUE_ALIGNMENTS_COUNTER;
 import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.TOTAL_ALIGNMENTS_COUNTER;
-import static fr.ens.biologie.genomique.eoulsan.modules.expression.hadoop.ExpressionHadoopModule.SAM_RECORD_PAIRED_END_SERPARATOR;
 
 import java.io.IOException;
 import java.net.URI;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.regex.Pattern;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.LongWritable;
 import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.io.WritableUtils;
 import org.apache.hadoop.mapreduce.Mapper;
 
 import fr.ens.biologie.genomique.eoulsan.CommonHadoop;
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
 import fr.ens.biologie.genomique.eoulsan.Globals;
-import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
 import fr.ens.biologie.genomique.eoulsan.bio.GenomicArray;
 import fr.ens.biologie.genomique.eoulsan.bio.GenomicInterval;
-import fr.ens.biologie.genomique.eoulsan.bio.SAMUtils;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.HTSeqUtils;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.OverlapMode;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.StrandUsage;
+import fr.ens.biologie.genomique.eoulsan.bio.io.hadoop.SAMRecordWritable;
 import fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters;
 import fr.ens.biologie.genomique.eoulsan.util.hadoop.PathUtils;
 import htsjdk.samtools.SAMFileHeader;
@@ -68,11 +72,14 @@ import htsjdk.samtools.SAMLineParser;
 import htsjdk.samtools.SAMRecord;
 
 /**
- * Mapper for the expression estimation with htseq-count.
+ * Mapper for the expression estimation with htseq-count. The input values are
+ * SAM lines for single-end data and {@link SAMRecordWritable} objects that
+ * contain the alignments of a pair for paired-end data.
  * @since 1.2
  * @author Claire Wallon
  */
-public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
+public class HTSeqCountMapper
+    extends Mapper<Text, Writable, Text, LongWritable> {
 
   // Parameters keys
   static final String STRANDED_PARAM =
@@ -81,6 +88,13 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
       Globals.PARAMETER_PREFIX + ".expression.overlapmode.parameter";
   static final String REMOVE_AMBIGUOUS_CASES =
       Globals.PARAMETER_PREFIX + ".expression.no.ambiguous.cases";
+  static final String MAX_COMBINED_FEATURES =
+      Globals.PARAMETER_PREFIX + ".expression.max.combined.features";
+
+  /** Default maximal number of features counted before writing the counts. */
+  static final int DEFAULT_MAX_COMBINED_FEATURES = 1000000;
+
+  private static final int INITIAL_COUNTS_CAPACITY = 1024;
 
   private final GenomicArray<String> features = new GenomicArray<>();
 
@@ -90,11 +104,18 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
   private boolean removeAmbiguousCases;
 
   private final SAMLineParser parser = new SAMLineParser(new SAMFileHeader());
-  private final Pattern recordSplitterPattern =
-      Pattern.compile("" + SAM_RECORD_PAIRED_END_SERPARATOR);
 
   private final Text outKey = new Text();
-  private final LongWritable outValue = new LongWritable(1L);
+  private final LongWritable outValue = new LongWritable();
+
+  // In-mapper combining of the counts: each feature found get an ordinal that
+  // is the index of its count in an array
+  private final Map<String, Integer> featureOrdinals = new HashMap<>();
+  private String[] featureIds = new String[INITIAL_COUNTS_CAPACITY];
+  private long[] featureCounts = new long[INITIAL_COUNTS_CAPACITY];
+  private int maxCombinedFeatures;
+  private long combinedRecords;
+  private long combinedBytes;
 
   @Override
   public void setup(final Context context)
@@ -140,21 +161,9 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
         throw new IOException("No counter group defined");
       }
 
-      // Get the genome description filename
-      final String genomeDescFile =
-          conf.get(ExpressionHadoopModule.GENOME_DESC_PATH_KEY);
-
-      if (genomeDescFile == null) {
-        throw new IOException("No genome desc file set");
-      }
-
-      // Load genome description object
-      final GenomeDescription genomeDescription = GenomeDescription
-          .load(PathUtils.createInputStream(new Path(genomeDescFile), conf));
-
       // Set the chromosomes sizes in the parser
       this.parser.getFileHeader().setSequenceDictionary(
-          SAMUtils.newSAMSequenceDictionary(genomeDescription));
+          ExpressionHadoopModule.createSAMSequenceDictionary(conf));
 
       // Get the "stranded" parameter
       this.stranded =
@@ -167,6 +176,10 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
       // Get the "no ambiguous cases" parameter
       this.removeAmbiguousCases = conf.getBoolean(REMOVE_AMBIGUOUS_CASES, true);
 
+      // Get the maximal number of features to count before writing the counts
+      this.maxCombinedFeatures = Math.max(1,
+          conf.getInt(MAX_COMBINED_FEATURES, DEFAULT_MAX_COMBINED_FEATURES));
+
     } catch (IOException e) {
       getLogger().severe(
           "Error while loading annotation data in Mapper: " + e.getMessage());
@@ -176,47 +189,56 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
   }
 
   /**
-   * 'key': offset of the beginning of the line from the beginning of the
-   * alignment file. 'value': the SAM record, if data are in paired-end mode,
-   * 'value' contains the two paired alignments separated by a '£' (TSAM
-   * format).
+   * 'key': identifier of the read. 'value': the SAM line if data are in
+   * single-end mode or the already parsed alignments of the pair if data are
+   * in paired-end mode.
    */
   @Override
-  public void map(final Text key, final Text value, final Context context)
+  public void map(final Text key, final Writable value, final Context context)
       throws IOException, InterruptedException {
 
-    final String line = value.toString();
-
-    // Discard SAM headers
-    if (line.length() > 0 && line.charAt(0) == '@') {
-      return;
-    }
-
-    final String[] fields = recordSplitterPattern.split(line);
     final List<GenomicInterval> ivSeq;
 
     try {
 
+      final List<SAMRecord> records;
+
+      if (value instanceof SAMRecordWritable) {
+
+        // The alignments have been parsed by the pretreatment job
+        records = ((SAMRecordWritable) value).get(this.parser.getFileHeader());
+      } else {
+
+        final String line = value.toString();
+
+        // Discard SAM headers
+        if (line.length() > 0 && line.charAt(0) == '@') {
+          return;
+        }
+
+        records = Collections.singletonList(this.parser.parseLine(line));
+      }
+
       // Add intervals
-      switch (fields.length) {
+      switch (records.size()) {
 
       // Single end data
       case 1:
-        ivSeq = createSingleEndIntervals(context, fields[0]);
+        ivSeq = createSingleEndIntervals(context, records.get(0));
         break;
 
       // paired end data
       case 2:
-        ivSeq = addPairedEndIntervals(context, fields[0], fields[1]);
+        ivSeq = addPairedEndIntervals(context, records.get(0), records.get(1));
         break;
 
       default:
         throw new EoulsanException(
             "Invalid number of SAM record(s) found in the entry: "
-                + fields.length);
+                + records.size());
       }
 
-      incrementCounter(context, TOTAL_ALIGNMENTS_COUNTER, fields.length);
+      incrementCounter(context, TOTAL_ALIGNMENTS_COUNTER, records.size());
 
       final Set<String> fs = null2empty(HTSeqUtils.featuresOverlapped(ivSeq,
           this.features, this.overlapMode, this.stranded));
@@ -228,9 +250,7 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
         break;
 
       case 1:
-        final String id1 = fs.iterator().next();
-        this.outKey.set(id1);
-        context.write(this.outKey, this.outValue);
+        count(context, fs.iterator().next());
         break;
 
       default:
@@ -246,8 +266,7 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
           // Ambiguous case will be used in the count
 
           for (String id2 : fs) {
-            this.outKey.set(id2);
-            context.write(this.outKey, this.outValue);
+            count(context, id2);
           }
         }
         break;
@@ -257,17 +276,113 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
 
       incrementCounter(context, INVALID_SAM_ENTRIES_COUNTER);
       getLogger().info("Invalid SAM output entry: "
-          + e.getMessage() + " line='" + line + "'");
+          + e.getMessage() + " line='" + value + "'");
     }
 
   }
 
   @Override
-  public void cleanup(final Context context) throws IOException {
+  public void cleanup(final Context context)
+      throws IOException, InterruptedException {
+
+    // Write the remaining counts
+    writeCounts(context);
+
+    // Report the map output saved by the in-mapper combining
+    context.getCounter(this.counterGroup,
+        COMBINED_MAP_OUTPUT_RECORDS_COUNTER.counterName())
+        .increment(this.combinedRecords);
+    context.getCounter(this.counterGroup,
+        COMBINED_MAP_OUTPUT_BYTES_COUNTER.counterName())
+        .increment(this.combinedBytes);
 
     this.features.clear();
   }
 
+  //
+  // In-mapper combining methods
+  //
+
+  /**
+   * Count an alignment on a feature. The counts are written when the number of
+   * features counted reach the maximal number of combined features.
+   * @param context Hadoop context
+   * @param featureId the identifier of the feature
+   * @throws IOException if an error occurs while writing the counts
+   * @throws InterruptedException if an error occurs while writing the counts
+   */
+  private void count(final Context context, final String featureId)
+      throws IOException, InterruptedException {
+
+    Integer ordinal = this.featureOrdinals.get(featureId);
+
+    if (ordinal == null) {
+
+      // Limit the memory used by the counts
+      if (this.featureOrdinals.size() >= this.maxCombinedFeatures) {
+        writeCounts(context);
+      }
+
+      ordinal = this.featureOrdinals.size();
+      this.featureOrdinals.put(featureId, ordinal);
+
+      if (ordinal == this.featureIds.length) {
+        final int newLength = 2 * this.featureIds.length;
+        this.featureIds = Arrays.copyOf(this.featureIds, newLength);
+        this.featureCounts = Arrays.copyOf(this.featureCounts, newLength);
+      }
+
+      this.featureIds[ordinal] = featureId;
+    }
+
+    this.featureCounts[ordinal]++;
+  }
+
+  /**
+   * Write the counts of the features and clear the counts.
+   * @param context Hadoop context
+   * @throws IOException if an error occurs while writing the counts
+   * @throws InterruptedException if an error occurs while writing the counts
+   */
+  private void writeCounts(final Context context)
+      throws IOException, InterruptedException {
+
+    final int count = this.featureOrdinals.size();
+
+    for (int i = 0; i < count; i++) {
+
+      this.outKey.set(this.featureIds[i]);
+      this.outValue.set(this.featureCounts[i]);
+      context.write(this.outKey, this.outValue);
+
+      // Without combining, a record would have been written for each count
+      final long saved = this.featureCounts[i] - 1;
+      this.combinedRecords += saved;
+      this.combinedBytes += saved * serializedRecordSize(this.outKey);
+    }
+
+    this.featureOrdinals.clear();
+    Arrays.fill(this.featureIds, 0, count, null);
+    Arrays.fill(this.featureCounts, 0, count, 0L);
+  }
+
+  /**
+   * Get the size of a serialized map output record.
+   * @param key the key of the record
+   * @return the size in bytes of the serialized record
+   */
+  private static int serializedRecordSize(final Text key) {
+
+    // A Text is serialized with its length and a LongWritable use 8 bytes
+    final int keySize = WritableUtils.getVIntSize(key.getLength())
+        + key.getLength();
+    final int valueSize = 8;
+
+    // The map output files also store the length of the key and the value
+    return WritableUtils.getVIntSize(keySize)
+        + keySize + WritableUtils.getVIntSize(valueSize) + valueSize;
+  }
+
   //
   // Intervals creation methods
   //
@@ -275,13 +390,12 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
   /**
    * Create single end intervals.
    * @param context Hadoop context
-   * @param record the SAM record
+   * @param samRecord the SAM record
    */
   private List<GenomicInterval> createSingleEndIntervals(final Context context,
-      final String record) {
+      final SAMRecord samRecord) {
 
     final List<GenomicInterval> ivSeq = new ArrayList<>();
-    final SAMRecord samRecord = this.parser.parseLine(record);
 
     // unmapped read
     if (samRecord.getReadUnmappedFlag()) {
@@ -319,17 +433,14 @@ public class HTSeqCountMapper extends Mapper<Text, Text, Text, LongWritable> {
   /**
    * Create paired end intervals.
    * @param context Hadoop context
-   * @param record1 the SAM record of the first end
-   * @param record2 the SAM record of the second end
+   * @param samRecord1 the SAM record of the first end
+   * @param samRecord2 the SAM record of the second end
    */
   private List<GenomicInterval> addPairedEndIntervals(final Context context,
-      final String record1, final String record2) {
+      final SAMRecord samRecord1, final SAMRecord samRecord2) {
 
     final List<GenomicInterval> ivSeq = new ArrayList<>();
 
-    final SAMRecord samRecord1 = this.parser.parseLine(record1);
-    final SAMRecord samRecord2 = this.parser.parseLine(record2);
-
     if (!samRecord1.getReadUnmappedFlag()) {
       ivSeq.addAll(HTSeqUtils.addIntervals(samRecord1, this.stranded));
     }
@@ -25,6 +25,7 @@
 package fr.ens.biologie.genomique.eoulsan.modules.expression.hadoop;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.INVALID_SAM_ENTRIES_COUNTER;
 
 import java.io.IOException;
 import java.util.regex.Pattern;
@@ -38,16 +39,21 @@ import fr.ens.biologie.genomique.eoulsan.CommonHadoop;
 import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
 import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.HadoopEoulsanRuntime;
+import fr.ens.biologie.genomique.eoulsan.bio.io.hadoop.SAMRecordWritable;
 import fr.ens.biologie.genomique.eoulsan.modules.mapping.hadoop.SAMHeaderHadoopUtils;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFormatException;
+import htsjdk.samtools.SAMLineParser;
 
 /**
  * This class define a mapper for the pretreatment of paired-end data before the
- * expression estimation step.
+ * expression estimation step. The SAM lines are parsed only once by this
+ * mapper, the next tasks use the binary alignments.
  * @since 1.2
  * @author Claire Wallon
  */
 public class PreTreatmentExpressionMapper
-    extends Mapper<LongWritable, Text, Text, Text> {
+    extends Mapper<LongWritable, Text, Text, SAMRecordWritable> {
 
   private String counterGroup;
 
@@ -55,8 +61,10 @@ public class PreTreatmentExpressionMapper
 
   private SAMHeaderHadoopUtils.SAMHeaderWriter samHeaderWriter;
 
+  private final SAMLineParser parser = new SAMLineParser(new SAMFileHeader());
+
   private final Text outKey = new Text();
-  private final Text outValue = new Text();
+  private final SAMRecordWritable outValue = new SAMRecordWritable();
 
   //
   // Setup
@@ -87,6 +95,10 @@ public class PreTreatmentExpressionMapper
     this.samHeaderWriter = new SAMHeaderHadoopUtils.SAMHeaderWriter(
         context.getTaskAttemptID().toString());
 
+    // Set the chromosomes sizes in the parser
+    this.parser.getFileHeader().setSequenceDictionary(
+        ExpressionHadoopModule.createSAMSequenceDictionary(conf));
+
     getLogger().info("End of setup()");
   }
 
@@ -120,12 +132,10 @@ public class PreTreatmentExpressionMapper
       // single-end mode
       if (endReadId == -1) {
         this.outKey.set(completeId);
-        this.outValue.set(line.substring(indexOfFirstTab));
       }
       // paired-end mode
       else {
         this.outKey.set(line.substring(0, endReadId + 1));
-        this.outValue.set(line.substring(endReadId + 1));
       }
     }
 
@@ -135,15 +145,23 @@ public class PreTreatmentExpressionMapper
       // mapped read
       if (endReadId == -1) {
         this.outKey.set(completeId);
-        this.outValue.set(line.substring(indexOfFirstTab));
       }
       // unmapped read
       else {
         this.outKey.set(line.substring(0, endReadId));
-        this.outValue.set(line.substring(endReadId));
       }
     }
 
+    try {
+      this.outValue.set(this.parser.parseLine(line));
+    } catch (SAMFormatException e) {
+      context.getCounter(this.counterGroup,
+          INVALID_SAM_ENTRIES_COUNTER.counterName()).increment(1);
+      getLogger().info("Invalid SAM output entry: "
+          + e.getMessage() + " line='" + line + "'");
+      return;
+    }
+
     context.write(this.outKey, this.outValue);
   }
 
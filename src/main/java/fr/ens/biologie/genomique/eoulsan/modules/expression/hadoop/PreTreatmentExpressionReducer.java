@@ -25,10 +25,6 @@
 package fr.ens.biologie.genomique.eoulsan.modules.expression.hadoop;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
-import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.INVALID_SAM_ENTRIES_COUNTER;
-import static fr.ens.biologie.genomique.eoulsan.modules.expression.hadoop.ExpressionHadoopModule.SAM_RECORD_PAIRED_END_SERPARATOR;
-import static fr.ens.biologie.genomique.eoulsan.modules.mapping.hadoop.SAMHeaderHadoopUtils.createSAMSequenceDictionaryFromSAMHeader;
-import static fr.ens.biologie.genomique.eoulsan.modules.mapping.hadoop.SAMHeaderHadoopUtils.loadSAMHeaders;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -42,26 +38,27 @@ import org.apache.hadoop.mapreduce.Reducer;
 import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
 import fr.ens.biologie.genomique.eoulsan.Globals;
 import fr.ens.biologie.genomique.eoulsan.bio.SAMComparator;
+import fr.ens.biologie.genomique.eoulsan.bio.io.hadoop.SAMRecordWritable;
 import htsjdk.samtools.SAMFileHeader;
-import htsjdk.samtools.SAMFormatException;
-import htsjdk.samtools.SAMLineParser;
 import htsjdk.samtools.SAMRecord;
 
 /**
  * This class define a reducer for the pretreatment of paired-end data before
- * the expression estimation step.
+ * the expression estimation step. The alignments of each pair are written in
+ * a {@link SAMRecordWritable} object.
  * @since 1.2
  * @author Claire Wallon
  */
 public class PreTreatmentExpressionReducer
-    extends Reducer<Text, Text, Text, Text> {
+    extends Reducer<Text, SAMRecordWritable, Text, SAMRecordWritable> {
 
   private String counterGroup;
   private final Text outKey = new Text();
-  private final Text outValue = new Text();
+  private final SAMRecordWritable outValue = new SAMRecordWritable();
 
-  private final SAMLineParser parser = new SAMLineParser(new SAMFileHeader());
+  private final SAMFileHeader header = new SAMFileHeader();
   private final List<SAMRecord> records = new ArrayList<>();
+  private final List<SAMRecord> pair = new ArrayList<>();
 
   @Override
   protected void setup(final Context context)
@@ -72,10 +69,9 @@ public class PreTreatmentExpressionReducer
 
     final Configuration conf = context.getConfiguration();
 
-    // Set the chromosomes sizes in the parser
-    final List<String> samHeader = loadSAMHeaders(context);
-    this.parser.getFileHeader().setSequenceDictionary(
-        createSAMSequenceDictionaryFromSAMHeader(samHeader));
+    // Set the chromosomes sizes in the header used to decode the alignments
+    this.header.setSequenceDictionary(
+        ExpressionHadoopModule.createSAMSequenceDictionary(conf));
 
     // Counter group
     this.counterGroup = conf.get(Globals.PARAMETER_PREFIX + ".counter.group");
@@ -88,64 +84,50 @@ public class PreTreatmentExpressionReducer
 
   /**
    * 'key': the identifier of the aligned read without the integer indicating
-   * the member of the pair. 'values': the rest of the paired alignments, i.e
-   * the SAM line of the first paired alignment and the SAM line of the second
-   * paired alignment.
+   * the member of the pair. 'values': the alignments of the read.
    */
   @Override
-  protected void reduce(final Text key, final Iterable<Text> values,
-      final Context context) throws IOException, InterruptedException {
-
-    String stringVal;
-    final String strOutKey;
-    StringBuilder strOutValue = new StringBuilder();
-    SAMRecord samRecord;
-    String stringRecord;
+  protected void reduce(final Text key,
+      final Iterable<SAMRecordWritable> values, final Context context)
+      throws IOException, InterruptedException {
 
     this.records.clear();
 
-    for (Text val : values) {
-
-      stringVal = val.toString();
-      stringRecord = key.toString() + stringVal;
-
-      try {
-        samRecord = this.parser.parseLine(stringRecord);
-        this.records.add(samRecord);
-
-      } catch (SAMFormatException e) {
-        context.getCounter(this.counterGroup,
-            INVALID_SAM_ENTRIES_COUNTER.counterName()).increment(1);
-        getLogger().info("Invalid SAM output entry: "
-            + e.getMessage() + " line='" + stringRecord + "'");
-        return;
-      }
-
+    for (SAMRecordWritable val : values) {
+      this.records.addAll(val.get(this.header));
     }
 
     // sort alignments of the current read
     Collections.sort(this.records, new SAMComparator());
 
-    // Writing records
-    int indexOfFirstTab = this.records.get(0).getSAMString().indexOf("\t");
-    strOutKey =
-        this.records.get(0).getSAMString().substring(0, indexOfFirstTab);
-    strOutValue.append(this.records.get(0).getSAMString()
-        .substring(indexOfFirstTab + 1).replaceAll("\n", ""));
-
-    this.records.remove(0);
+    // Writing records, a new pair start with the first member of a pair
+    this.pair.clear();
 
     for (SAMRecord r : this.records) {
-      if (r.getFirstOfPairFlag()) {
-        strOutValue.append('\n');
-      } else {
-        strOutValue.append(SAM_RECORD_PAIRED_END_SERPARATOR);
+
+      if (r.getFirstOfPairFlag() && !this.pair.isEmpty()) {
+        writePair(context);
       }
-      strOutValue.append(r.getSAMString().replaceAll("\n", ""));
+      this.pair.add(r);
     }
 
-    this.outKey.set(strOutKey);
-    this.outValue.set(strOutValue.toString());
+    writePair(context);
+  }
+
+  /**
+   * Write the alignments of a pair.
+   * @param context the Hadoop context
+   * @throws IOException if an error occurs while writing the pair
+   * @throws InterruptedException if an error occurs while writing the pair
+   */
+  private void writePair(final Context context)
+      throws IOException, InterruptedException {
+
+    this.outKey.set(this.pair.get(0).getReadName());
+    this.outValue.set(this.pair);
     context.write(this.outKey, this.outValue);
+
+    this.pair.clear();
   }
+
 }
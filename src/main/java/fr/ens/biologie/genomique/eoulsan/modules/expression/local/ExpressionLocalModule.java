@@ -25,6 +25,7 @@
 package fr.ens.biologie.genomique.eoulsan.modules.expression.local;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static fr.ens.biologie.genomique.eoulsan.core.ParallelizationMode.OWN_PARALLELIZATION;
 import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.ANNOTATION_GFF;
 import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.ANNOTATION_GTF;
 import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.EXPRESSION_RESULTS_TSV;
@@ -39,6 +40,7 @@ import fr.ens.biologie.genomique.eoulsan.annotations.LocalOnly;
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.ExpressionCounter;
 import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.HTSeqCounter;
+import fr.ens.biologie.genomique.eoulsan.core.ParallelizationMode;
 import fr.ens.biologie.genomique.eoulsan.core.TaskContext;
 import fr.ens.biologie.genomique.eoulsan.core.TaskResult;
 import fr.ens.biologie.genomique.eoulsan.core.TaskStatus;
@@ -57,6 +59,17 @@ import fr.ens.biologie.genomique.eoulsan.util.Reporter;
 @LocalOnly
 public class ExpressionLocalModule extends AbstractExpressionModule {
 
+  @Override
+  public ParallelizationMode getParallelizationMode() {
+
+    // The counter use its own threads if more than one thread is required
+    if (getThreadsNumber() > 1) {
+      return OWN_PARALLELIZATION;
+    }
+
+    return super.getParallelizationMode();
+  }
+
   @Override
   public TaskResult execute(final TaskContext context,
       final TaskStatus status) {
@@ -162,6 +175,9 @@ public class ExpressionLocalModule extends AbstractExpressionModule {
 
     // Set counter temporary directory
     counter.setTempDirectory(tempDirectory);
+
+    // Set the number of threads to use for counting
+    counter.setThreadsNumber(getThreadsNumber());
   }
 
 }
@@ -33,13 +33,24 @@ import static java.util.Collections.singletonList;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
 import javax.xml.stream.XMLStreamException;
 
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+import fr.ens.biologie.genomique.eoulsan.AbstractEoulsanRuntime.EoulsanExecMode;
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.Globals;
 import fr.ens.biologie.genomique.eoulsan.annotations.HadoopCompatible;
@@ -59,11 +70,15 @@ import fr.ens.biologie.genomique.eoulsan.data.DataFiles;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormatRegistry;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
+import fr.ens.biologie.genomique.eoulsan.io.CompressionType;
 import fr.ens.biologie.genomique.eoulsan.modules.AbstractModule;
+import fr.ens.biologie.genomique.eoulsan.util.FanOutBatchProcessor;
+import fr.ens.biologie.genomique.eoulsan.util.FanOutBatchProcessor.BatchConsumer;
 import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 import uk.ac.babraham.FastQC.Modules.AbstractQCModule;
 import uk.ac.babraham.FastQC.Modules.AdapterContent;
 import uk.ac.babraham.FastQC.Modules.BasicStats;
+import uk.ac.babraham.FastQC.Modules.DuplicationLevel;
 import uk.ac.babraham.FastQC.Modules.KmerContent;
 import uk.ac.babraham.FastQC.Modules.NContent;
 import uk.ac.babraham.FastQC.Modules.OverRepresentedSeqs;
@@ -104,10 +119,96 @@ public class FastQCModule extends AbstractModule {
   public static final String FASTQC_CASAVA_PARAMETER_NAME = "fastqc.casava";
   /** Option for filter fastq file if casava=true for all modules */
   public static final String FASTQC_NOFILTER_PARAMETER_NAME = "fastqc.nofilter";
+  /** Process the FastQC modules in parallel */
+  public static final String FASTQC_PARALLEL_PARAMETER_NAME = "fastqc.parallel";
+  /** Process the input files of a task concurrently */
+  public static final String FASTQC_CONCURRENT_FILES_PARAMETER_NAME =
+      "fastqc.concurrent.files";
+
+  /** Memory required to process a file whatever its size. */
+  private static final long FILE_PROCESSING_MIN_MEMORY = 64L * 1024 * 1024;
+  /** Maximal memory required to process a file. */
+  private static final long FILE_PROCESSING_MAX_MEMORY = 512L * 1024 * 1024;
+  /** Fraction of the maximal heap size usable to process the files. */
+  private static final double FILE_PROCESSING_MEMORY_FRACTION = 0.5;
+  /** Unit of the memory permits. */
+  private static final long MEMORY_PERMIT_SIZE = 1024L * 1024;
 
   /** The input format per default */
   private DataFormat inputFormat = DataFormats.READS_FASTQ;
 
+  private boolean parallelProcessing;
+  private boolean concurrentFiles;
+
+  /**
+   * This class define a group of FastQC modules that process the sequences in
+   * the same thread.
+   */
+  private static final class ModuleGroup implements BatchConsumer<Sequence> {
+
+    private final List<QCModule> modules = new ArrayList<>();
+
+    @Override
+    public void process(final List<Sequence> batch) {
+
+      for (final Sequence seq : batch) {
+        for (final QCModule module : this.modules) {
+          module.processSequence(seq);
+        }
+      }
+    }
+  }
+
+  /**
+   * This class define the progress of the processing of the input files of a
+   * task. Each file has its own description and the task status is only
+   * updated by this class, as the files can be processed concurrently.
+   */
+  private static final class FilesProgress {
+
+    private final TaskStatus status;
+    private final String[] descriptions;
+    private int processedFileCount;
+
+    /**
+     * Set the description of the processing of a file.
+     * @param fileIndex index of the file
+     * @param description the description
+     */
+    synchronized void setDescription(final int fileIndex,
+        final String description) {
+
+      this.descriptions[fileIndex] = description;
+      this.status.setDescription(
+          Joiner.on("; ").skipNulls().join(this.descriptions));
+    }
+
+    /**
+     * Inform that the processing of a file is completed.
+     */
+    synchronized void fileProcessed() {
+
+      this.processedFileCount++;
+      this.status.setProgress(0, this.descriptions.length,
+          this.processedFileCount);
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param status the task status
+     * @param fileCount the number of files to process
+     */
+    FilesProgress(final TaskStatus status, final int fileCount) {
+
+      this.status = status;
+      this.descriptions = new String[fileCount];
+    }
+  }
+
   //
   // Module methods
   //
@@ -211,6 +312,14 @@ public class FastQCModule extends AbstractModule {
         System.setProperty("fastqc.nofilter", "" + p.getBooleanValue());
         break;
 
+      case FASTQC_PARALLEL_PARAMETER_NAME:
+        this.parallelProcessing = p.getBooleanValue();
+        break;
+
+      case FASTQC_CONCURRENT_FILES_PARAMETER_NAME:
+        this.concurrentFiles = p.getBooleanValue();
+        break;
+
       default:
         Modules.unknownParameter(context, p);
       }
@@ -247,18 +356,25 @@ public class FastQCModule extends AbstractModule {
       inputFiles.add(inData.getDataFile());
     }
 
+    final FilesProgress progress =
+        new FilesProgress(status, inputFiles.size());
+
     // Process input files
     try {
 
-      int i = 0;
-      for (DataFile inputFile : inputFiles) {
+      if (this.concurrentFiles && inputFiles.size() > 1) {
+        processFilesConcurrently(inputFiles, outData,
+            getTaskMemory(context), context.getLocalTempDirectory(),
+            progress);
+      } else {
 
-        // Define the report output file
-        final DataFile reportFile = outData.getDataFile(i++);
+        for (int i = 0; i < inputFiles.size(); i++) {
 
-        // Launch FastQC analysis
-        processFile(inputFile, this.inputFormat == READS_FASTQ, reportFile,
-            context.getLocalTempDirectory(), status);
+          // Launch FastQC analysis
+          processFile(inputFiles.get(i), this.inputFormat == READS_FASTQ,
+              outData.getDataFile(i), context.getLocalTempDirectory(),
+              progress, i);
+        }
       }
 
       return status.createTaskResult();
@@ -278,24 +394,163 @@ public class FastQCModule extends AbstractModule {
 
   }
 
+  /**
+   * Get the memory that a task can use to process its input files. This bound
+   * is computed from the maximal heap size of the JVM and not from its free
+   * memory that depends on the state of the garbage collector.
+   * @param context the task context
+   * @return the memory in bytes that the task can use
+   */
+  private static long getTaskMemory(final TaskContext context) {
+
+    final long memory = (long) (Runtime.getRuntime().maxMemory()
+        * FILE_PROCESSING_MEMORY_FRACTION);
+
+    // In local mode, the tasks running at the same time share the JVM
+    if (context.getRuntime().getMode() == EoulsanExecMode.LOCAL) {
+      return memory
+          / Math.max(1, context.getSettings().getLocalThreadsNumber());
+    }
+
+    return memory;
+  }
+
+  /**
+   * Estimate the memory required to process a file. The data of the FastQC
+   * modules grows with the number of distinct sequences until the limits of
+   * the modules are reached, so a small file does not require the maximal
+   * memory.
+   * @param file the file to process
+   * @return the memory in bytes required to process the file
+   */
+  private static long getFileMemory(final DataFile file) {
+
+    if (file.getCompressionType() == CompressionType.NONE) {
+
+      try {
+        final long length = file.getMetaData().getContentLength();
+
+        if (length >= 0) {
+          return Math.min(FILE_PROCESSING_MAX_MEMORY,
+              FILE_PROCESSING_MIN_MEMORY + 2 * length);
+        }
+      } catch (IOException e) {
+        // The length of the file is unknown, use the maximal memory
+      }
+    }
+
+    return FILE_PROCESSING_MAX_MEMORY;
+  }
+
+  /**
+   * Process the input files concurrently. A file is only processed when the
+   * memory it requires is available in the memory of the task.
+   * @param inputFiles the input files
+   * @param outData the output data
+   * @param taskMemory the memory in bytes that the task can use
+   * @param tmpDir the temporary directory
+   * @param progress the progress of the processing of the files
+   * @throws SequenceFormatException if an error occurs while processing
+   *           sequences
+   * @throws IOException if an error occurs while processing sequences
+   * @throws XMLStreamException if an error occurs while creating report
+   */
+  private void processFilesConcurrently(final List<DataFile> inputFiles,
+      final Data outData, final long taskMemory, final File tmpDir,
+      final FilesProgress progress)
+      throws SequenceFormatException, IOException, XMLStreamException {
+
+    final int maxPermits =
+        (int) Math.max(1, taskMemory / MEMORY_PERMIT_SIZE);
+    final Semaphore memory = new Semaphore(maxPermits, true);
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(inputFiles.size(),
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("fastqc-file-%d").build());
+
+    try {
+
+      final List<Future<Void>> futures = new ArrayList<>();
+
+      for (int i = 0; i < inputFiles.size(); i++) {
+
+        final DataFile inputFile = inputFiles.get(i);
+        final DataFile reportFile = outData.getDataFile(i);
+        final int fileIndex = i;
+
+        // A file larger than the memory of the task is processed alone
+        final int permits = (int) Math.min(maxPermits,
+            (getFileMemory(inputFile) + MEMORY_PERMIT_SIZE - 1)
+                / MEMORY_PERMIT_SIZE);
+
+        futures.add(executor.submit(new Callable<Void>() {
+
+          @Override
+          public Void call() throws Exception {
+
+            memory.acquire(permits);
+            try {
+              processFile(inputFile, inputFormat == READS_FASTQ, reportFile,
+                  tmpDir, progress, fileIndex);
+            } finally {
+              memory.release(permits);
+            }
+            return null;
+          }
+        }));
+      }
+
+      for (Future<Void> future : futures) {
+
+        try {
+          future.get();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException(e);
+        } catch (ExecutionException e) {
+
+          final Throwable cause = e.getCause();
+
+          if (cause instanceof SequenceFormatException) {
+            throw (SequenceFormatException) cause;
+          }
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          }
+          if (cause instanceof XMLStreamException) {
+            throw (XMLStreamException) cause;
+          }
+          throw new IOException(cause);
+        }
+      }
+
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
   /**
    * Process an input file by FastQC.
    * @param inputFile the input file
    * @param fastqFormat true if the format of the input file is FASTQ
    * @param outputFile the report output file
    * @param tmpDir the temporary directory
-   * @param status the task status
+   * @param progress the progress of the processing of the files
+   * @param fileIndex the index of the file
    * @throws SequenceFormatException if an error occurs while processing
    *           sequences
    * @throws IOException if an error occurs while processing sequences
    * @throws XMLStreamException if an error occurs while creating report
    */
   private void processFile(DataFile inputFile, final boolean fastqFormat,
-      final DataFile outputFile, final File tmpDir, final TaskStatus status)
+      final DataFile outputFile, final File tmpDir,
+      final FilesProgress progress, final int fileIndex)
       throws SequenceFormatException, IOException, XMLStreamException {
 
     // Set the description of the context
-    status.setDescription("Process sequence of " + inputFile + " for FastQC");
+    progress.setDescription(fileIndex,
+        "Process sequence of " + inputFile + " for FastQC");
 
     // Get the SequenceFile object
     final CounterSequenceFile seqFile;
@@ -307,18 +562,9 @@ public class FastQCModule extends AbstractModule {
       seqFile = new SAMSequenceFile(inputFile);
     }
 
-    // Define modules list
-    final OverRepresentedSeqs os = new OverRepresentedSeqs();
-
-    final List<AbstractQCModule> modules = Lists.newArrayList(new BasicStats(),
-        new PerBaseQualityScores(), new PerTileQualityScores(),
-        new PerSequenceQualityScores(), new PerBaseSequenceContent(),
-        new PerSequenceGCContent(), new NContent(),
-        new SequenceLengthDistribution(), os.duplicationLevelModule(), os,
-        new AdapterContent(), new KmerContent());
-
     // Process sequences
-    processSequences(modules, seqFile);
+    final List<AbstractQCModule> modules =
+        processSequences(seqFile, this.parallelProcessing);
 
     // If no entries in the input file use a dedicated module
     final List<AbstractQCModule> reportModules = seqFile.getCount() > 0
@@ -326,7 +572,7 @@ public class FastQCModule extends AbstractModule {
         : singletonList((AbstractQCModule) new EmptyFileQC(inputFile));
 
     // Set the description of the context
-    status.setDescription(
+    progress.setDescription(fileIndex,
         "Create FastQC report on " + inputFile + " in " + outputFile.getName());
 
     // Create the report
@@ -334,6 +580,40 @@ public class FastQCModule extends AbstractModule {
 
     // Keep module data is now unnecessary
     modules.clear();
+
+    progress.fileProcessed();
+  }
+
+  /**
+   * Process the sequences of a file by the FastQC modules.
+   * @param seqFile the sequence file
+   * @param parallelProcessing true if the modules must process the sequences
+   *          in several threads
+   * @return the list of the modules
+   * @throws SequenceFormatException the sequence format exception
+   * @throws IOException if an error occurs while processing sequences
+   */
+  static List<AbstractQCModule> processSequences(final SequenceFile seqFile,
+      final boolean parallelProcessing)
+      throws SequenceFormatException, IOException {
+
+    // Define modules list
+    final OverRepresentedSeqs os = new OverRepresentedSeqs();
+
+    final List<AbstractQCModule> modules = Lists.newArrayList(new BasicStats(),
+        new PerBaseQualityScores(), new PerTileQualityScores(),
+        new PerSequenceQualityScores(), new PerBaseSequenceContent(),
+        new PerSequenceGCContent(), new NContent(),
+        new SequenceLengthDistribution(), os.duplicationLevelModule(), os,
+        new AdapterContent(), new KmerContent());
+
+    if (parallelProcessing) {
+      processSequencesInParallel(modules, seqFile);
+    } else {
+      processSequences(modules, seqFile);
+    }
+
+    return modules;
   }
 
   /**
@@ -342,7 +622,7 @@ public class FastQCModule extends AbstractModule {
    * @param seqFile the sequence file
    * @throws SequenceFormatException the sequence format exception
    */
-  private void processSequences(final List<AbstractQCModule> modules,
+  private static void processSequences(final List<AbstractQCModule> modules,
       final SequenceFile seqFile) throws SequenceFormatException {
 
     while (seqFile.hasNext()) {
@@ -357,6 +637,68 @@ public class FastQCModule extends AbstractModule {
 
   }
 
+  /**
+   * Process sequences with several threads. The sequences are read once and
+   * the costly modules process the sequences in their own thread while the
+   * other modules share a thread. As each module process all the sequences in
+   * the order of the file, the report is the same as the report of
+   * {@link #processSequences(List, SequenceFile)}.
+   * @param modules the modules
+   * @param seqFile the sequence file
+   * @throws SequenceFormatException the sequence format exception
+   * @throws IOException if an error occurs while processing sequences
+   */
+  private static void processSequencesInParallel(
+      final List<AbstractQCModule> modules, final SequenceFile seqFile)
+      throws SequenceFormatException, IOException {
+
+    // An error while closing the processor does not mask the error of the
+    // parsing of the sequences
+    try (FanOutBatchProcessor<Sequence> processor =
+        new FanOutBatchProcessor<>(createModuleGroups(modules))) {
+
+      while (seqFile.hasNext()) {
+        processor.add(seqFile.next());
+      }
+    }
+  }
+
+  /**
+   * Create the groups of modules that process the sequences in the same
+   * thread.
+   * @param modules the modules
+   * @return a list of groups of modules
+   */
+  private static List<ModuleGroup> createModuleGroups(
+      final List<AbstractQCModule> modules) {
+
+    final Map<String, ModuleGroup> groups = new LinkedHashMap<>();
+
+    for (final AbstractQCModule module : modules) {
+
+      final String groupName;
+
+      // The duplication level module use the data of the over represented
+      // sequences module
+      if (module instanceof OverRepresentedSeqs
+          || module instanceof DuplicationLevel) {
+        groupName = "overrepresented";
+      } else if (module instanceof KmerContent
+          || module instanceof AdapterContent) {
+        groupName = module.getClass().getName();
+      } else {
+        groupName = "default";
+      }
+
+      if (!groups.containsKey(groupName)) {
+        groups.put(groupName, new ModuleGroup());
+      }
+      groups.get(groupName).modules.add(module);
+    }
+
+    return new ArrayList<>(groups.values());
+  }
+
   /**
    * Creates the report.
    * @param modules the modules
@@ -366,7 +708,7 @@ public class FastQCModule extends AbstractModule {
    * @throws IOException Signals that an I/O exception has occurred.
    * @throws XMLStreamException the XML stream exception
    */
-  private void createReport(final List<AbstractQCModule> modules,
+  static void createReport(final List<AbstractQCModule> modules,
       final SequenceFile seqFile, final DataFile reportFile,
       final File tempDirectory) throws IOException, XMLStreamException {
 
@@ -24,8 +24,10 @@
 
 package fr.ens.biologie.genomique.eoulsan.modules.generators;
 
+import java.io.File;
 import java.io.IOException;
 
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
 import fr.ens.biologie.genomique.eoulsan.checkers.CheckStore;
@@ -107,9 +109,19 @@ public class GenomeDescriptionCreator {
 
     if (desc == null) {
 
-      // Compute the genome description
-      desc = GenomeDescription.createGenomeDescFromFasta(genomeDataFile.open(),
-          genomeDataFile.getName());
+      // Compute the genome description, uncompressed local files are
+      // memory-mapped
+      final int threads = EoulsanRuntime.getSettings().getLocalThreadsNumber();
+      final File localFile = genomeDataFile.toFile();
+
+      if (localFile != null
+          && !genomeDataFile.getCompressionType().isCompressed()
+          && localFile.isFile()) {
+        desc = GenomeDescription.createGenomeDescFromFasta(localFile, threads);
+      } else {
+        desc = GenomeDescription.createGenomeDescFromFasta(
+            genomeDataFile.open(), genomeDataFile.getName(), threads);
+      }
 
       // Store it if storage exists
       if (this.storage != null) {
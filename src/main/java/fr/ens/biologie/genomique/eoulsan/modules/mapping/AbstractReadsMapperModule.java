@@ -27,9 +27,19 @@ package fr.ens.biologie.genomique.eoulsan.modules.mapping;
 import static fr.ens.biologie.genomique.eoulsan.CommonHadoop.HADOOP_REDUCER_TASK_COUNT_PARAMETER_NAME;
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 import static fr.ens.biologie.genomique.eoulsan.core.OutputPortsBuilder.singleOutputPort;
+import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.MAPPER_RESULTS_BAM;
 import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.MAPPER_RESULTS_SAM;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.ALIGNMENTS_REJECTED_BY_FILTERS_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.ALIGNMENTS_WITH_INVALID_SAM_FORMAT;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.MAPPER_INPUT_PIPE_BYTES_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.MAPPER_INPUT_PIPE_WRITING_TIME_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.OUTPUT_FILTERED_ALIGNMENTS_COUNTER;
+import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.OUTPUT_MAPPING_ALIGNMENTS_COUNTER;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import com.spotify.docker.client.DockerClient;
@@ -37,6 +47,8 @@ import com.spotify.docker.client.DockerClient;
 import fr.ens.biologie.genomique.eoulsan.Common;
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.Globals;
+import fr.ens.biologie.genomique.eoulsan.bio.alignmentsfilters.MultiReadAlignmentsFilterBuilder;
+import fr.ens.biologie.genomique.eoulsan.bio.io.SAMOutputPipeline;
 import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.SequenceReadsMapper;
 import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.SequenceReadsMapperService;
 import fr.ens.biologie.genomique.eoulsan.core.Modules;
@@ -45,6 +57,8 @@ import fr.ens.biologie.genomique.eoulsan.core.Parameter;
 import fr.ens.biologie.genomique.eoulsan.core.StepConfigurationContext;
 import fr.ens.biologie.genomique.eoulsan.core.Version;
 import fr.ens.biologie.genomique.eoulsan.modules.AbstractModule;
+import fr.ens.biologie.genomique.eoulsan.util.Reporter;
+import fr.ens.biologie.genomique.eoulsan.util.ReporterIncrementer;
 import fr.ens.biologie.genomique.eoulsan.util.docker.DockerManager;
 
 /**
@@ -78,6 +92,14 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
   public static final String LOCAL_THREADS_PARAMETER_NAME = "local.threads";
   public static final String MAX_LOCAL_THREADS_PARAMETER_NAME =
       "max.local.threads";
+  public static final String LOCAL_SHARED_INDEX_MEMORY_PARAMETER_NAME =
+      "local.shared.index.memory";
+
+  public static final String OUTPUT_FORMAT_PARAMETER_NAME = "output.format";
+  public static final String SAM_PROCESSING_THREADS_PARAMETER_NAME =
+      "sam.processing.threads";
+  public static final String ALIGNMENTS_FILTER_PARAMETER_PREFIX =
+      "alignments.filter.";
 
   public static final int HADOOP_TIMEOUT = 60 * 60 * 1000;
   static final int DEFAULT_MAPPER_REQUIRED_MEMORY = 8 * 1024;
@@ -93,7 +115,12 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
   private int hadoopThreads;
   private int localThreads;
   private int maxLocalThreads;
+  private boolean localSharedIndexMemory;
   private int hadoopMapperRequiredMemory = DEFAULT_MAPPER_REQUIRED_MEMORY;
+  private boolean bamOutput;
+  private int samProcessingThreads = SAMOutputPipeline.DEFAULT_THREAD_NUMBER;
+  private Map<String, String> alignmentsFilterParameters =
+      Collections.emptyMap();
 
   //
   // Getters
@@ -156,6 +183,16 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
     return Common.getThreadsNumber(this.localThreads, this.maxLocalThreads);
   }
 
+  /**
+   * Test if the index of the mapper must be shared in memory between the
+   * mapper processes in local mode.
+   * @return true if the index of the mapper must be shared in memory
+   */
+  protected boolean isLocalSharedIndexMemory() {
+
+    return this.localSharedIndexMemory;
+  }
+
   /**
    * Get the number of threads to use in local mode.
    * @return Returns the mapperThreads
@@ -175,6 +212,35 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
     return this.hadoopMapperRequiredMemory;
   }
 
+  /**
+   * Test if the alignments must be written in BAM instead of SAM. The
+   * alignments of the BAM file are not sorted.
+   * @return true if the alignments must be written in BAM
+   */
+  protected boolean isBAMOutput() {
+
+    return this.bamOutput;
+  }
+
+  /**
+   * Get the number of threads used to process the output of the mapper.
+   * @return the number of threads used to process the output of the mapper
+   */
+  protected int getSAMProcessingThreads() {
+
+    return this.samProcessingThreads;
+  }
+
+  /**
+   * Get the parameters of the alignments filters applied on the output of the
+   * mapper.
+   * @return a map with all the parameters of the filters
+   */
+  protected Map<String, String> getAlignmentsFilterParameters() {
+
+    return this.alignmentsFilterParameters;
+  }
+
   /**
    * Get the mapper object.
    * @return the mapper object
@@ -217,7 +283,8 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
 
   @Override
   public OutputPorts getOutputPorts() {
-    return singleOutputPort(MAPPER_RESULTS_SAM);
+    return singleOutputPort(
+        this.bamOutput ? MAPPER_RESULTS_BAM : MAPPER_RESULTS_SAM);
   }
 
   @Override
@@ -225,6 +292,7 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
       final Set<Parameter> stepParameters) throws EoulsanException {
 
     String mapperName = null;
+    final Map<String, String> filterParameters = new LinkedHashMap<>();
 
     for (Parameter p : stepParameters) {
 
@@ -269,15 +337,49 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
         this.maxLocalThreads = p.getIntValueGreaterOrEqualsTo(1);
         break;
 
+      case LOCAL_SHARED_INDEX_MEMORY_PARAMETER_NAME:
+        this.localSharedIndexMemory = p.getBooleanValue();
+        break;
+
       case HADOOP_REDUCER_TASK_COUNT_PARAMETER_NAME:
         this.reducerTaskCount = p.getIntValueGreaterOrEqualsTo(1);
         break;
 
+      case OUTPUT_FORMAT_PARAMETER_NAME:
+        switch (p.getLowerStringValue()) {
+        case "sam":
+          this.bamOutput = false;
+          break;
+        case "bam":
+          this.bamOutput = true;
+          break;
+        default:
+          Modules.badParameterValue(context, p,
+              "The output format must be sam or bam");
+        }
+        break;
+
+      case SAM_PROCESSING_THREADS_PARAMETER_NAME:
+        this.samProcessingThreads = p.getIntValueGreaterOrEqualsTo(1);
+        break;
+
       default:
-        Modules.unknownParameter(context, p);
+        if (p.getName().startsWith(ALIGNMENTS_FILTER_PARAMETER_PREFIX)) {
+          filterParameters.put(p.getName()
+              .substring(ALIGNMENTS_FILTER_PARAMETER_PREFIX.length()),
+              p.getStringValue());
+        } else {
+          Modules.unknownParameter(context, p);
+        }
       }
     }
 
+    // Force the checking of the parameters of the alignments filters
+    final MultiReadAlignmentsFilterBuilder filterBuilder =
+        new MultiReadAlignmentsFilterBuilder(filterParameters);
+    filterBuilder.getAlignmentsFilter();
+    this.alignmentsFilterParameters = filterBuilder.getParameters();
+
     if (mapperName == null) {
       Modules.invalidConfiguration(context, "No mapper set");
     }
@@ -297,6 +399,23 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
               + mapperName);
     }
 
+    // Set the mapper arguments as some of them may prevent the sharing of
+    // the index in memory
+    if (this.mapperArguments != null) {
+      this.mapper.setMapperArguments(this.mapperArguments);
+    }
+
+    // Check if the index of the mapper can be shared in memory
+    if (this.localSharedIndexMemory
+        && !this.mapper.isSharedIndexMemoryAllowed()) {
+      getLogger().warning("In "
+          + getName() + ", the index of " + mapperName
+          + " cannot be shared in memory with the mapper arguments \""
+          + this.mapper.getMapperArguments() + "\", "
+          + LOCAL_SHARED_INDEX_MEMORY_PARAMETER_NAME + " parameter ignored");
+      this.localSharedIndexMemory = false;
+    }
+
     // Get Docker client
     final DockerClient dockerClient;
     if (!this.mapperDockerImage.isEmpty()) {
@@ -336,6 +455,60 @@ public abstract class AbstractReadsMapperModule extends AbstractModule {
   // Other methods
   //
 
+  /**
+   * Log the throughput of the mapper input pipes. The throughput is derived
+   * from the bytes written in the pipes and the time spent to write them.
+   * @param reporter the reporter that contains the counters
+   * @param counterGroup the counter group
+   */
+  public static void logMapperInputPipeThroughput(final Reporter reporter,
+      final String counterGroup) {
+
+    final long bytes = reporter.getCounterValue(counterGroup,
+        MAPPER_INPUT_PIPE_BYTES_COUNTER.counterName());
+    final long writingTime = reporter.getCounterValue(counterGroup,
+        MAPPER_INPUT_PIPE_WRITING_TIME_COUNTER.counterName());
+
+    // No data written in the pipes
+    if (bytes <= 0 || writingTime < 0) {
+      return;
+    }
+
+    getLogger().info("Mapper input pipe throughput: "
+        + bytes * 1000 / 1024 / Math.max(1, writingTime) + " KiB/s");
+  }
+
+  /**
+   * Increment the counters of the processing of the output of the mapper.
+   * @param incrementer the incrementer of the counters
+   * @param counterGroup the counter group
+   * @param pipeline the pipeline that has processed the output of the mapper
+   */
+  public static void incrementSAMProcessingCounters(
+      final ReporterIncrementer incrementer, final String counterGroup,
+      final SAMOutputPipeline pipeline) {
+
+    final long input = pipeline.getInputAlignmentCount();
+    final long output = pipeline.getOutputAlignmentCount();
+
+    incrementer.incrCounter(counterGroup,
+        OUTPUT_MAPPING_ALIGNMENTS_COUNTER.counterName(), input);
+
+    if (pipeline.isFiltering()) {
+      incrementer.incrCounter(counterGroup,
+          OUTPUT_FILTERED_ALIGNMENTS_COUNTER.counterName(), output);
+      incrementer.incrCounter(counterGroup,
+          ALIGNMENTS_REJECTED_BY_FILTERS_COUNTER.counterName(),
+          input - output);
+    }
+
+    if (pipeline.getInvalidAlignmentCount() > 0) {
+      incrementer.incrCounter(counterGroup,
+          ALIGNMENTS_WITH_INVALID_SAM_FORMAT.counterName(),
+          pipeline.getInvalidAlignmentCount());
+    }
+  }
+
   /**
    * Check deprecated parameters.
    * @param context context
@@ -8,6 +8,7 @@ import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.MAPPER_RESULTS_
 
 import java.util.Set;
 
+import fr.ens.biologie.genomique.eoulsan.Common;
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.Globals;
 import fr.ens.biologie.genomique.eoulsan.core.InputPorts;
@@ -33,6 +34,8 @@ public abstract class AbstractSAM2BAMModule extends AbstractModule {
 
   private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
   private int reducerTaskCount = -1;
+  private int localThreads;
+  private int maxLocalThreads;
 
   //
   // Getters
@@ -55,6 +58,15 @@ public abstract class AbstractSAM2BAMModule extends AbstractModule {
     return this.reducerTaskCount;
   }
 
+  /**
+   * Get the number of threads to use in local mode.
+   * @return the number of threads to use in local mode
+   */
+  protected int getLocalThreads() {
+
+    return Common.getThreadsNumber(this.localThreads, this.maxLocalThreads);
+  }
+
   //
   // Module methods
   //
@@ -105,6 +117,14 @@ public abstract class AbstractSAM2BAMModule extends AbstractModule {
         Modules.deprecatedParameter(context, p, true);
         break;
 
+      case "local.threads":
+        this.localThreads = p.getIntValueGreaterOrEqualsTo(1);
+        break;
+
+      case "max.local.threads":
+        this.maxLocalThreads = p.getIntValueGreaterOrEqualsTo(1);
+        break;
+
       case HADOOP_REDUCER_TASK_COUNT_PARAMETER_NAME:
         this.reducerTaskCount = p.getIntValueGreaterOrEqualsTo(1);
         break;
@@ -45,7 +45,14 @@ public enum MappingCounters {
   ALIGNMENTS_REJECTED_BY_FILTERS_COUNTER("alignments rejected by filters"),
   ALIGNMENTS_WITH_INVALID_SAM_FORMAT("alignments in invalid sam format"),
   OUTPUT_FILTERED_ALIGNMENTS_COUNTER("output filtered alignments"),
-  ALIGNMENTS_WITH_MORE_ONE_HIT_COUNTER("alignments with more than one match");
+  ALIGNMENTS_WITH_MORE_ONE_HIT_COUNTER("alignments with more than one match"),
+  MAPPER_INPUT_PIPE_BYTES_COUNTER("mapper input pipe bytes"),
+  MAPPER_INPUT_PIPE_WRITING_TIME_COUNTER(
+      "mapper input pipe writing time in ms"),
+  MAPPER_INPUT_PIPE_FULL_STALL_TIME_COUNTER(
+      "mapper input pipe full stall time in ms"),
+  MAPPER_INPUT_PIPE_EMPTY_STALL_TIME_COUNTER(
+      "mapper input pipe empty stall time in ms");
 
   private final String counterName;
 
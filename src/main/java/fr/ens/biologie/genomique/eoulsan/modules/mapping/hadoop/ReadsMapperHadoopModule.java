@@ -120,6 +120,12 @@ public class ReadsMapperHadoopModule extends AbstractReadsMapperModule {
           "Cannot use a mapper Docker image in Hadoop mode");
     }
 
+    // Check if user wants to write the alignments in BAM
+    if (isBAMOutput()) {
+      Modules.invalidConfiguration(context,
+          "The alignments cannot be written in BAM in Hadoop mode");
+    }
+
   }
 
   @Override
@@ -246,6 +252,24 @@ public class ReadsMapperHadoopModule extends AbstractReadsMapperModule {
     jobConf.set(ReadsMapperMapper.INDEX_CHECKSUM_KEY,
         "" + computeZipCheckSum(mapperIndexFile, parentConf));
 
+    // Set the number of threads used to process the output of the mapper
+    jobConf.set(ReadsMapperMapper.SAM_PROCESSING_THREADS_KEY,
+        "" + getSAMProcessingThreads());
+
+    // Set the alignments filters, the order of the filters is kept
+    final Map<String, String> filterParameters =
+        getAlignmentsFilterParameters();
+    if (!filterParameters.isEmpty()) {
+
+      jobConf.setStrings(ReadsMapperMapper.ALIGNMENTS_FILTER_PARAMETERS_KEY,
+          filterParameters.keySet().toArray(new String[0]));
+
+      for (Map.Entry<String, String> e : filterParameters.entrySet()) {
+        jobConf.set(ReadsMapperMapper.ALIGNMENTS_FILTER_PARAMETERS_KEY + "."
+            + e.getKey(), e.getValue());
+      }
+    }
+
     // Set counter group
     jobConf.set(CommonHadoop.COUNTER_GROUP_KEY, COUNTER_GROUP);
 
@@ -24,20 +24,20 @@
 package fr.ens.biologie.genomique.eoulsan.modules.mapping.hadoop;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
-import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.OUTPUT_MAPPING_ALIGNMENTS_COUNTER;
 import static fr.ens.biologie.genomique.eoulsan.util.StringUtils.unDoubleQuotes;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.URI;
 import java.nio.channels.FileLock;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingDeque;
 import java.util.concurrent.LinkedBlockingDeque;
 
@@ -50,15 +50,20 @@ import org.apache.hadoop.mapreduce.Mapper;
 import com.google.common.base.Splitter;
 
 import fr.ens.biologie.genomique.eoulsan.CommonHadoop;
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
 import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.Globals;
 import fr.ens.biologie.genomique.eoulsan.HadoopEoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.bio.FastqFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.io.SAMOutputPipeline;
+import fr.ens.biologie.genomique.eoulsan.bio.io.SAMOutputPipeline.LineHandler;
 import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.MapperProcess;
 import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.SequenceReadsMapper;
 import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.SequenceReadsMapperService;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.modules.mapping.AbstractReadsMapperModule;
+import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
 import fr.ens.biologie.genomique.eoulsan.util.ProcessUtils;
 import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
 import fr.ens.biologie.genomique.eoulsan.util.hadoop.HadoopReporter;
@@ -93,6 +98,10 @@ public class ReadsMapperMapper extends Mapper<Text, Text, Text, Text> {
       Globals.PARAMETER_PREFIX + ".mapper.zookeeper.connect.string";
   static final String ZOOKEEPER_SESSION_TIMEOUT_KEY =
       Globals.PARAMETER_PREFIX + ".mapper.zookeeper.session.timeout";
+  static final String SAM_PROCESSING_THREADS_KEY =
+      Globals.PARAMETER_PREFIX + ".mapper.sam.processing.threads";
+  static final String ALIGNMENTS_FILTER_PARAMETERS_KEY =
+      Globals.PARAMETER_PREFIX + ".mapper.alignments.filter";
 
   private static final Splitter TAB_SPLITTER = Splitter.on('\t').trimResults();
   private static final String MAPPER_INDEX_DIR_PREFIX =
@@ -110,6 +119,8 @@ public class ReadsMapperMapper extends Mapper<Text, Text, Text, Text> {
   private SequenceReadsMapper mapper;
   private MapperProcess process;
   private Thread samResultsParserThread;
+  private SAMOutputPipeline samOutputPipeline;
+  private final LocalReporter filterCounters = new LocalReporter();
   private final BlockingDeque<String> queue = new LinkedBlockingDeque<>();
   private final ExceptionWrapper exception = new ExceptionWrapper();
   private int entriesParsed;
@@ -317,6 +328,7 @@ public class ReadsMapperMapper extends Mapper<Text, Text, Text, Text> {
     }
 
     this.writeHeaders = context.getTaskAttemptID().getTaskID().getId() == 0;
+    this.samOutputPipeline = createSAMOutputPipeline(conf);
     this.samResultsParserThread = startParseSAMResultsThread(this.process);
 
     context.setStatus("Run " + this.mapper.getMapperName());
@@ -339,6 +351,21 @@ public class ReadsMapperMapper extends Mapper<Text, Text, Text, Text> {
     this.process.waitFor();
     this.mapper.throwMappingException();
 
+    final HadoopReporter reporter = new HadoopReporter(context);
+
+    // Add the counters of the processing of the mapper output
+    AbstractReadsMapperModule.incrementSAMProcessingCounters(reporter,
+        this.counterGroup, this.samOutputPipeline);
+    for (String group : this.filterCounters.getCounterGroups()) {
+      for (String name : this.filterCounters.getCounterNames(group)) {
+        reporter.incrCounter(group, name,
+            this.filterCounters.getCounterValue(group, name));
+      }
+    }
+
+    AbstractReadsMapperModule.logMapperInputPipeThroughput(reporter,
+        this.counterGroup);
+
     // Unlock if no multiple instances enabled
     if (!this.mapper.isMultipleInstancesEnabled()) {
       this.lock.unlock();
@@ -380,7 +407,45 @@ public class ReadsMapperMapper extends Mapper<Text, Text, Text, Text> {
   }
 
   /**
-   * Start SAM parser result thread.
+   * Create the pipeline that process the output of the mapper. The counters
+   * of the alignments filters are stored in a local reporter as they are
+   * incremented by the writer thread of the pipeline.
+   * @param conf Hadoop configuration
+   * @return a new SAMOutputPipeline object
+   * @throws IOException if the alignments filters cannot be created
+   */
+  private SAMOutputPipeline createSAMOutputPipeline(final Configuration conf)
+      throws IOException {
+
+    final SAMOutputPipeline result =
+        new SAMOutputPipeline(Integer.parseInt(conf.get(
+            SAM_PROCESSING_THREADS_KEY,
+            "" + SAMOutputPipeline.DEFAULT_THREAD_NUMBER)));
+
+    // Get the parameters of the alignments filters in their order
+    final Map<String, String> filterParameters = new LinkedHashMap<>();
+    final String[] keys = conf.getStrings(ALIGNMENTS_FILTER_PARAMETERS_KEY);
+    if (keys != null) {
+      for (String key : keys) {
+        filterParameters.put(key,
+            conf.get(ALIGNMENTS_FILTER_PARAMETERS_KEY + "." + key, ""));
+      }
+    }
+
+    try {
+      result.setAlignmentsFilter(filterParameters, this.filterCounters,
+          this.counterGroup);
+    } catch (EoulsanException e) {
+      throw new IOException(e);
+    }
+
+    return result;
+  }
+
+  /**
+   * Start SAM parser result thread. The output of the mapper is parsed and
+   * filtered by the SAM output pipeline and the lines are added to the queue
+   * in the order of the output of the mapper.
    * @param mp the mapper process
    * @return the created thread
    */
@@ -392,14 +457,15 @@ public class ReadsMapperMapper extends Mapper<Text, Text, Text, Text> {
       public void run() {
 
         // Parse SAM result file
+        try (InputStream in = mp.getStout()) {
 
-        String line;
-        try (BufferedReader readerResults =
-            new BufferedReader(new InputStreamReader(mp.getStout()))) {
-          while ((line = readerResults.readLine()) != null) {
+          samOutputPipeline.process(in, new LineHandler() {
 
-            queue.add(line);
-          }
+            @Override
+            public void handle(final String line) {
+              queue.add(line);
+            }
+          });
         } catch (IOException e) {
           exception.exception = e;
         }
@@ -447,10 +513,8 @@ public class ReadsMapperMapper extends Mapper<Text, Text, Text, Text> {
           outKey.set(line.substring(0, tabPos));
         }
 
-        // Increment counters if not header
+        // The alignment counters are incremented at the end of the task
         this.entriesParsed++;
-        context.getCounter(this.counterGroup,
-            OUTPUT_MAPPING_ALIGNMENTS_COUNTER.counterName()).increment(1);
 
       } else {
 
@@ -30,18 +30,25 @@ import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.
 import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.OUTPUT_FILTERED_READS_COUNTER;
 import static fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters.READS_REJECTED_BY_FILTERS_COUNTER;
 
+import java.io.BufferedOutputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import com.google.common.base.Joiner;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.annotations.LocalOnly;
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
 import fr.ens.biologie.genomique.eoulsan.bio.FastqFormat;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqBufferReader;
 import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
 import fr.ens.biologie.genomique.eoulsan.bio.io.FastqWriter;
+import fr.ens.biologie.genomique.eoulsan.bio.io.ReadSequenceReader;
+import fr.ens.biologie.genomique.eoulsan.bio.readsfilters.ByteReadFilter;
 import fr.ens.biologie.genomique.eoulsan.bio.readsfilters.MultiReadFilter;
 import fr.ens.biologie.genomique.eoulsan.bio.readsfilters.ReadFilter;
 import fr.ens.biologie.genomique.eoulsan.core.TaskContext;
@@ -49,6 +56,7 @@ import fr.ens.biologie.genomique.eoulsan.core.TaskResult;
 import fr.ens.biologie.genomique.eoulsan.core.TaskStatus;
 import fr.ens.biologie.genomique.eoulsan.data.Data;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.data.DataFiles;
 import fr.ens.biologie.genomique.eoulsan.modules.mapping.AbstractReadsFilterModule;
 import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
 import fr.ens.biologie.genomique.eoulsan.util.Reporter;
@@ -62,6 +70,8 @@ import fr.ens.biologie.genomique.eoulsan.util.Reporter;
 @LocalOnly
 public class ReadsFilterLocalModule extends AbstractReadsFilterModule {
 
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
   @Override
   public TaskResult execute(final TaskContext context,
       final TaskStatus status) {
@@ -189,7 +199,14 @@ public class ReadsFilterLocalModule extends AbstractReadsFilterModule {
     getLogger().info("Filter file: " + inFile);
     getLogger().info("FastqFormat: " + fastqFormat);
 
-    try (FastqReader reader = new FastqReader(inFile.open());
+    if (EoulsanRuntime.getSettings().isFastqBufferReader()
+        && filter instanceof ByteReadFilter) {
+      filterFileWithBufferReader(inFile, outFile, reporter,
+          (ByteReadFilter) filter, fastqFormat);
+      return;
+    }
+
+    try (ReadSequenceReader reader = new FastqReader(inFile.open());
         FastqWriter writer = new FastqWriter(outFile.create())) {
       for (final ReadSequence read : reader) {
 
@@ -239,10 +256,17 @@ public class ReadsFilterLocalModule extends AbstractReadsFilterModule {
     getLogger().info("Filter files: "
         + inFile1 + ", " + inFile2 + ", Fastq format: " + fastqFormat);
 
-    try (FastqReader reader2 = new FastqReader(inFile2.open());
+    if (EoulsanRuntime.getSettings().isFastqBufferReader()
+        && filter instanceof ByteReadFilter) {
+      filterFileWithBufferReader(inFile1, inFile2, outFile1, outFile2,
+          reporter, (ByteReadFilter) filter, fastqFormat);
+      return;
+    }
+
+    try (ReadSequenceReader reader2 = new FastqReader(inFile2.open());
         FastqWriter writer1 = new FastqWriter(outFile1.create());
         FastqWriter writer2 = new FastqWriter(outFile2.create());
-        FastqReader reader1 = new FastqReader(inFile1.open())) {
+        ReadSequenceReader reader1 = new FastqReader(inFile1.open())) {
       for (final ReadSequence read1 : reader1) {
 
         // Test if the second read exists
@@ -289,4 +313,120 @@ public class ReadsFilterLocalModule extends AbstractReadsFilterModule {
 
   }
 
+  /**
+   * Filter a file in single-end mode without creating a ReadSequence object
+   * for each read.
+   * @param inFile input file
+   * @param outFile output file
+   * @param reporter reporter to use
+   * @param filter reads filter to use
+   * @param fastqFormat FastqFormat
+   * @throws IOException if an error occurs while filtering data
+   */
+  private static void filterFileWithBufferReader(final DataFile inFile,
+      final DataFile outFile, final Reporter reporter,
+      final ByteReadFilter filter, final FastqFormat fastqFormat)
+      throws IOException {
+
+    final ByteReadSequence read = new ByteReadSequence();
+    read.setFastqFormat(fastqFormat);
+
+    try (FastqBufferReader reader = DataFiles.newFastqBufferReader(inFile);
+        OutputStream os = new BufferedOutputStream(outFile.create(),
+            OUTPUT_BUFFER_SIZE)) {
+
+      while (reader.hasNext()) {
+
+        reader.nextEntry().copyTo(read);
+
+        reporter.incrCounter(COUNTER_GROUP,
+            INPUT_RAW_READS_COUNTER.counterName(), 1);
+
+        if (filter.acceptByteRead(read)) {
+
+          read.writeFastq(os);
+          reporter.incrCounter(COUNTER_GROUP,
+              OUTPUT_FILTERED_READS_COUNTER.counterName(), 1);
+        } else {
+          reporter.incrCounter(COUNTER_GROUP,
+              READS_REJECTED_BY_FILTERS_COUNTER.counterName(), 1);
+        }
+      }
+      reader.throwException();
+
+    } catch (BadBioEntryException e) {
+
+      throw new IOException("Invalid Fastq format: "
+          + e.getMessage() + " File: " + inFile + " Entry: " + e.getEntry());
+    }
+  }
+
+  /**
+   * Filter a file in pair-end mode without creating a ReadSequence object for
+   * each read.
+   * @param inFile1 first input file
+   * @param inFile2 second input file
+   * @param outFile1 first output file
+   * @param outFile2 second output file
+   * @param reporter reporter to use
+   * @param filter reads filter to use
+   * @param fastqFormat FastqFormat
+   * @throws IOException if an error occurs while filtering data
+   */
+  private static void filterFileWithBufferReader(final DataFile inFile1,
+      final DataFile inFile2, final DataFile outFile1, final DataFile outFile2,
+      final Reporter reporter, final ByteReadFilter filter,
+      final FastqFormat fastqFormat) throws IOException {
+
+    final ByteReadSequence read1 = new ByteReadSequence();
+    final ByteReadSequence read2 = new ByteReadSequence();
+    read1.setFastqFormat(fastqFormat);
+    read2.setFastqFormat(fastqFormat);
+
+    try (FastqBufferReader reader1 = DataFiles.newFastqBufferReader(inFile1);
+        FastqBufferReader reader2 = DataFiles.newFastqBufferReader(inFile2);
+        OutputStream os1 = new BufferedOutputStream(outFile1.create(),
+            OUTPUT_BUFFER_SIZE);
+        OutputStream os2 = new BufferedOutputStream(outFile2.create(),
+            OUTPUT_BUFFER_SIZE)) {
+
+      while (reader1.hasNext()) {
+
+        // Test if the second read exists
+        if (!reader2.hasNext()) {
+          reader2.throwException();
+          throw new IOException("Excepted end of the second reads file.");
+        }
+
+        reader1.nextEntry().copyTo(read1);
+        reader2.nextEntry().copyTo(read2);
+
+        reporter.incrCounter(COUNTER_GROUP,
+            INPUT_RAW_READS_COUNTER.counterName(), 1);
+
+        if (filter.acceptByteRead(read1, read2)) {
+          read1.writeFastq(os1);
+          read2.writeFastq(os2);
+          reporter.incrCounter(COUNTER_GROUP,
+              OUTPUT_FILTERED_READS_COUNTER.counterName(), 1);
+        } else {
+          reporter.incrCounter(COUNTER_GROUP,
+              READS_REJECTED_BY_FILTERS_COUNTER.counterName(), 1);
+        }
+      }
+      reader1.throwException();
+      reader2.throwException();
+
+      if (reader2.hasNext()) {
+        throw new IOException("Excepted end of the first reads file.");
+      }
+
+    } catch (BadBioEntryException e) {
+
+      throw new IOException("Invalid Fastq format: "
+          + e.getMessage() + " File 1: " + inFile1 + " File2:" + inFile2
+          + " Entry: " + e.getEntry());
+    }
+  }
+
 }
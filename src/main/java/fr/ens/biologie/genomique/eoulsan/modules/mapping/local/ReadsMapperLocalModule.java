@@ -26,34 +26,41 @@ package fr.ens.biologie.genomique.eoulsan.modules.mapping.local;
 
 import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
 import static fr.ens.biologie.genomique.eoulsan.core.ParallelizationMode.OWN_PARALLELIZATION;
+import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.MAPPER_RESULTS_BAM;
 import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.MAPPER_RESULTS_SAM;
 import static fr.ens.biologie.genomique.eoulsan.data.DataFormats.READS_FASTQ;
 
-import java.io.BufferedReader;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.nio.charset.StandardCharsets;
-
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import fr.ens.biologie.genomique.eoulsan.AbstractEoulsanRuntime.EoulsanExecMode;
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.annotations.LocalOnly;
 import fr.ens.biologie.genomique.eoulsan.bio.FastqFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.io.SAMOutputPipeline;
+import fr.ens.biologie.genomique.eoulsan.bio.io.SAMOutputPipeline.OutputFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.MapperIndexCache;
 import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.MapperProcess;
 import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.SequenceReadsMapper;
 import fr.ens.biologie.genomique.eoulsan.core.InputPorts;
 import fr.ens.biologie.genomique.eoulsan.core.InputPortsBuilder;
 import fr.ens.biologie.genomique.eoulsan.core.ParallelizationMode;
+import fr.ens.biologie.genomique.eoulsan.core.Step;
 import fr.ens.biologie.genomique.eoulsan.core.TaskContext;
 import fr.ens.biologie.genomique.eoulsan.core.TaskResult;
 import fr.ens.biologie.genomique.eoulsan.core.TaskStatus;
 import fr.ens.biologie.genomique.eoulsan.data.Data;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
 import fr.ens.biologie.genomique.eoulsan.modules.mapping.AbstractReadsMapperModule;
-import fr.ens.biologie.genomique.eoulsan.modules.mapping.MappingCounters;
-import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
 import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
 import fr.ens.biologie.genomique.eoulsan.util.Reporter;
 import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
@@ -67,6 +74,68 @@ import fr.ens.biologie.genomique.eoulsan.util.StringUtils;
 @LocalOnly
 public class ReadsMapperLocalModule extends AbstractReadsMapperModule {
 
+  private static final ConcurrentMap<Step, SharedIndexReleaser> RELEASERS =
+      new ConcurrentHashMap<>();
+
+  //
+  // Inner class
+  //
+
+  /**
+   * This class release the indexes shared in memory by the mappers of a step
+   * at the end of the step. A mapper instance is only released once and the
+   * memory of an index is only released by the last mapper instance that use
+   * it.
+   */
+  static final class SharedIndexReleaser implements Closeable {
+
+    private final Step step;
+    private final Set<SequenceReadsMapper> mappers =
+        Collections.newSetFromMap(
+            new ConcurrentHashMap<SequenceReadsMapper, Boolean>());
+
+    /**
+     * Add a mapper to release.
+     * @param mapper the mapper
+     */
+    void addMapper(final SequenceReadsMapper mapper) {
+
+      this.mappers.add(mapper);
+    }
+
+    @Override
+    public void close() {
+
+      RELEASERS.remove(this.step, this);
+
+      for (SequenceReadsMapper mapper : this.mappers) {
+        try {
+          mapper.releaseSharedIndexMemory();
+        } catch (IOException e) {
+          getLogger().severe("Unable to release the memory of the "
+              + mapper.getMapperName() + " index: " + e.getMessage());
+        }
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param step the step
+     */
+    SharedIndexReleaser(final Step step) {
+
+      this.step = step;
+    }
+  }
+
+  //
+  // Module methods
+  //
+
   @Override
   public ParallelizationMode getParallelizationMode() {
 
@@ -102,9 +171,10 @@ public class ReadsMapperLocalModule extends AbstractReadsMapperModule {
       final Data inData = context.getInputData(READS_FASTQ);
 
       // Get output data
-      final Data outData = context.getOutputData(MAPPER_RESULTS_SAM, inData);
+      final Data outData = context.getOutputData(
+          isBAMOutput() ? MAPPER_RESULTS_BAM : MAPPER_RESULTS_SAM, inData);
 
-      // Define final output SAM file
+      // Define final output SAM or BAM file
       final File samFile = outData.getDataFile().toFile();
 
       // Get FASTQ format
@@ -140,11 +210,18 @@ public class ReadsMapperLocalModule extends AbstractReadsMapperModule {
         // Single read mapping
         final MapperProcess process = mapper.mapSE(inFile);
 
-        // Parse output of the mapper
-        parseSAMResults(process.getStout(), samFile, reporter);
+        try {
+
+          // Parse output of the mapper
+          parseSAMResults(process.getStout(), samFile, reporter);
 
-        // Wait the end of the process and do cleanup
-        process.waitFor();
+          // Wait the end of the process and do cleanup
+          process.waitFor();
+        } finally {
+
+          // Release the index used by the process even after an error
+          process.releaseResources();
+        }
 
         logMsg = "Mapping reads in "
             + fastqFormat + " with " + mapper.getMapperName() + " ("
@@ -170,11 +247,18 @@ public class ReadsMapperLocalModule extends AbstractReadsMapperModule {
         // Single read mapping
         final MapperProcess process = mapper.mapPE(inFile1, inFile2);
 
-        // Parse output of the mapper
-        parseSAMResults(process.getStout(), samFile, reporter);
+        try {
+
+          // Parse output of the mapper
+          parseSAMResults(process.getStout(), samFile, reporter);
+
+          // Wait the end of the process and do cleanup
+          process.waitFor();
+        } finally {
 
-        // Wait the end of the process and do cleanup
-        process.waitFor();
+          // Release the index used by the process even after an error
+          process.releaseResources();
+        }
 
         logMsg = "Mapping reads in "
             + fastqFormat + " with " + mapper.getMapperName() + " ("
@@ -185,6 +269,8 @@ public class ReadsMapperLocalModule extends AbstractReadsMapperModule {
       // Throw an exception if an exception has occurred while mapping
       mapper.throwMappingException();
 
+      logMapperInputPipeThroughput(reporter, COUNTER_GROUP);
+
       // Set the description of the context
       status.setDescription(logMsg);
 
@@ -243,6 +329,20 @@ public class ReadsMapperLocalModule extends AbstractReadsMapperModule {
     mapper.setExecutablesTempDirectory(
         context.getSettings().getExecutablesTempDirectoryFile());
 
+    // Set the node-local cache of the uncompressed indexes
+    mapper.setIndexCache(MapperIndexCache.newInstance(context.getSettings()));
+
+    // Share the index in memory between the tasks of the step. The indexes
+    // are only shared when the tasks are executed by this JVM
+    final boolean sharedIndexMemory = isLocalSharedIndexMemory()
+        && context.getRuntime().getMode() == EoulsanExecMode.LOCAL;
+    mapper.setSharedIndexMemoryEnabled(sharedIndexMemory);
+
+    // Release the indexes shared in memory at the end of the step
+    if (sharedIndexMemory) {
+      getSharedIndexReleaser(context).addMapper(mapper);
+    }
+
     // Init mapper
     mapper.init(archiveIndexFile, indexDir, reporter, COUNTER_GROUP);
 
@@ -253,7 +353,32 @@ public class ReadsMapperLocalModule extends AbstractReadsMapperModule {
   }
 
   /**
-   * Parse the output the mapper (in SAM format).
+   * Get the object that release the indexes shared in memory at the end of
+   * the current step. Only one releaser is registered for each step.
+   * @param context Eoulsan context
+   * @return a SharedIndexReleaser object
+   */
+  private static SharedIndexReleaser getSharedIndexReleaser(
+      final TaskContext context) {
+
+    final Step step = context.getCurrentStep();
+    final SharedIndexReleaser releaser =
+        new SharedIndexReleaser(step);
+    final SharedIndexReleaser previous =
+        RELEASERS.putIfAbsent(step, releaser);
+
+    if (previous != null) {
+      return previous;
+    }
+
+    context.getWorkflow().closeOnStepEnd(step, releaser);
+
+    return releaser;
+  }
+
+  /**
+   * Parse the output the mapper (in SAM format). The alignments are filtered
+   * and written in SAM or in BAM by a pipeline.
    * @param samFileInputStream SAM input stream
    * @param samFile output file to be written
    * @param reporter Eoulsan reporter for the step
@@ -262,38 +387,30 @@ public class ReadsMapperLocalModule extends AbstractReadsMapperModule {
   private void parseSAMResults(final InputStream samFileInputStream,
       final File samFile, final Reporter reporter) throws IOException {
 
-    String line;
-
-    // Parse SAM result file
-    final BufferedReader readerResults =
-        FileUtils.createBufferedReader(samFileInputStream);
-    final Writer writer = new OutputStreamWriter(new FileOutputStream(samFile),
-        StandardCharsets.ISO_8859_1);
-
-    int entriesParsed = 0;
-
-    while ((line = readerResults.readLine()) != null) {
+    // Parse SAM result file in a pipeline to not slow down the mapper
+    final SAMOutputPipeline pipeline =
+        new SAMOutputPipeline(getSAMProcessingThreads());
 
-      writer.write(line);
-      writer.write('\n');
-
-      final String trimmedLine = line.trim();
-      if ("".equals(trimmedLine) || trimmedLine.startsWith("@")) {
-        continue;
-      }
+    if (isBAMOutput()) {
+      pipeline.setOutputFormat(OutputFormat.BAM);
+    }
 
-      final int tabPos = trimmedLine.indexOf('\t');
+    try {
+      pipeline.setAlignmentsFilter(getAlignmentsFilterParameters(), reporter,
+          COUNTER_GROUP);
+    } catch (EoulsanException e) {
+      throw new IOException(e);
+    }
 
-      if (tabPos != -1) {
+    final long entriesParsed;
+    try (final InputStream in = samFileInputStream;
+        final OutputStream out = new FileOutputStream(samFile)) {
 
-        entriesParsed++;
-        reporter.incrCounter(COUNTER_GROUP,
-            MappingCounters.OUTPUT_MAPPING_ALIGNMENTS_COUNTER.counterName(), 1);
-      }
+      pipeline.process(in, out);
+      entriesParsed = pipeline.getInputAlignmentCount();
     }
 
-    readerResults.close();
-    writer.close();
+    incrementSAMProcessingCounters(reporter, COUNTER_GROUP, pipeline);
 
     getLogger().info(entriesParsed
         + " entries parsed in " + getMapperName() + " output file");
@@ -2,19 +2,15 @@ package fr.ens.biologie.genomique.eoulsan.modules.mapping.local;
 
 import static com.google.common.base.Preconditions.checkArgument;
 
-import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
-import htsjdk.samtools.SAMFileHeader.SortOrder;
-import htsjdk.samtools.SAMFileWriter;
-import htsjdk.samtools.SAMFileWriterFactory;
-import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SamInputResource;
-import htsjdk.samtools.SamReader;
-import htsjdk.samtools.SamReaderFactory;
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+import static fr.ens.biologie.genomique.eoulsan.core.ParallelizationMode.OWN_PARALLELIZATION;
 
 import java.io.File;
 import java.io.IOException;
 
 import fr.ens.biologie.genomique.eoulsan.annotations.LocalOnly;
+import fr.ens.biologie.genomique.eoulsan.bio.io.ParallelSAM2BAMConverter;
+import fr.ens.biologie.genomique.eoulsan.core.ParallelizationMode;
 import fr.ens.biologie.genomique.eoulsan.core.TaskContext;
 import fr.ens.biologie.genomique.eoulsan.core.TaskResult;
 import fr.ens.biologie.genomique.eoulsan.core.TaskStatus;
@@ -33,6 +29,17 @@ import fr.ens.biologie.genomique.eoulsan.util.Reporter;
 @LocalOnly
 public class SAM2BAMLocalModule extends AbstractSAM2BAMModule {
 
+  @Override
+  public ParallelizationMode getParallelizationMode() {
+
+    // The converter use its own threads if more than one thread is required
+    if (getLocalThreads() > 1) {
+      return OWN_PARALLELIZATION;
+    }
+
+    return super.getParallelizationMode();
+  }
+
   @Override
   public TaskResult execute(final TaskContext context,
       final TaskStatus status) {
@@ -57,8 +64,16 @@ public class SAM2BAMLocalModule extends AbstractSAM2BAMModule {
       final DataFile bamFile = outBAMData.getDataFile();
       final DataFile bamIndexFile = outBAIData.getDataFile();
 
-      convert(samFile, bamFile, bamIndexFile, getCompressionLevel(), reporter,
-          context.getLocalTempDirectory());
+      // Without own parallelization, the tasks of the step running at the
+      // same time share the memory
+      final int concurrentTasks =
+          getParallelizationMode() == OWN_PARALLELIZATION
+              ? 1 : Math.max(1, context.getSettings().getLocalThreadsNumber());
+
+      convert(samFile, bamFile, bamIndexFile, getCompressionLevel(),
+          getLocalThreads(),
+          ParallelSAM2BAMConverter.getDefaultMaxRunMemory() / concurrentTasks,
+          reporter, context.getLocalTempDirectory());
 
       // Set the description of the context
       status.setDescription("Convert alignments ("
@@ -77,59 +92,49 @@ public class SAM2BAMLocalModule extends AbstractSAM2BAMModule {
   }
 
   /**
-   * Convert SAM file to sorted BAM with Picard
+   * Convert SAM file to sorted BAM. The alignments are parsed, sorted and
+   * compressed using several threads and the index is created while writing
+   * the BAM file.
    * @param samDataFile input SAM file
    * @param bamDataFile output SAM file
    * @param bamIndexDataFile output index file
    * @param compressionLevel compression level
+   * @param threads number of threads to use
+   * @param maxRunMemory maximal memory used by the records sorted in memory
    * @param reporter reporter
    * @param tmpDir temporary directory
    * @throws IOException if an error occurs
    */
   private static void convert(final DataFile samDataFile,
       final DataFile bamDataFile, final DataFile bamIndexDataFile,
-      final int compressionLevel, final Reporter reporter, final File tmpDir)
-      throws IOException {
+      final int compressionLevel, final int threads, final long maxRunMemory,
+      final Reporter reporter, final File tmpDir) throws IOException {
 
     checkArgument(compressionLevel >= 0 && compressionLevel <= 9,
         "Invalid compression level [0-9]: " + compressionLevel);
 
-    // Open sam file
-    final SamReader samReader = SamReaderFactory.makeDefault()
-        .open(SamInputResource.of(samDataFile.open()));
-
-    // Force sort
-    samReader.getFileHeader().setSortOrder(SortOrder.coordinate);
+    getLogger().info("Sort and convert "
+        + samDataFile.getName() + " using " + threads + " threads");
 
-    // Get Bam file
-    final File bamFile = bamDataFile.toFile();
+    final ParallelSAM2BAMConverter converter =
+        new ParallelSAM2BAMConverter(threads, compressionLevel, tmpDir);
+    converter.setMaxRunMemory(maxRunMemory);
 
-    // Open Bam file
-    final SAMFileWriter samWriter = new SAMFileWriterFactory()
-        .setCreateIndex(true).setTempDirectory(tmpDir).makeBAMWriter(
-            samReader.getFileHeader(), false, bamFile, compressionLevel);
+    final long count = converter.convert(samDataFile.open(),
+        bamDataFile.create(), bamIndexDataFile.create());
 
-    for (final SAMRecord samRecord : samReader) {
-      samWriter.addAlignment(samRecord);
-      reporter.incrCounter(COUNTER_GROUP, "sorted records", 1);
-    }
+    reporter.incrCounter(COUNTER_GROUP, "sorted records", count);
 
-    // Change index bai file
+    // Create a symbolic link to the index with the name of the BAM file
     final String bamIndexFilename =
         bamDataFile.getName().substring(0, bamDataFile.getName().length() - 1)
             + "i";
     final File bamIndexFile =
         new File(bamDataFile.toFile().getParentFile(), bamIndexFilename);
-    if (!bamIndexFile.renameTo(bamIndexDataFile.toFile())) {
-      EoulsanLogger.getLogger().warning("Unable to rename the BAI file "
-          + bamIndexFile + " to " + bamIndexDataFile.toFile());
-    }
-
-    // Create a symbolic link
-    bamIndexDataFile.symlink(new DataFile(bamIndexFile), true);
 
-    samReader.close();
-    samWriter.close();
+    if (!bamIndexFile.getName().equals(bamIndexDataFile.getName())) {
+      bamIndexDataFile.symlink(new DataFile(bamIndexFile), true);
+    }
   }
 
 }
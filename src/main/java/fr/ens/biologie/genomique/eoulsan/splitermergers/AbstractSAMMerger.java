@@ -0,0 +1,524 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.splitermergers;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordComparator;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SAMRecordQueryNameComparator;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
+import fr.ens.biologie.genomique.eoulsan.core.Parameter;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+
+/**
+ * This class define an abstract merger for SAM and BAM files. When all the
+ * input files are sorted in the same order, the entries of the files are
+ * merged with a k-way merge, the inputs being read and decoded concurrently by
+ * several threads. When the input files are not sorted, the files are
+ * concatenated without decoding their entries.
+ * @author Laurent Jourdren
+ * @since 2.0
+ */
+abstract class AbstractSAMMerger implements Merger {
+
+  private static final int DEFAULT_THREAD_NUMBER = 4;
+  private static final int PREFETCH_BATCH_SIZE = 4096;
+
+  private boolean fastMerge = true;
+  private int threadNumber = DEFAULT_THREAD_NUMBER;
+
+  /**
+   * This class define a source of entries for the k-way merge. The next batch
+   * of entries of the source is read and decoded by a prefetch thread while
+   * the current batch is merged.
+   */
+  private static final class RecordSource
+      implements Callable<List<SAMRecord>> {
+
+    private final int index;
+    private final SamReader reader;
+    private final SAMRecordIterator iterator;
+    private final ExecutorService executor;
+    private final Object readerLock = new Object();
+
+    private List<SAMRecord> batch = Collections.emptyList();
+    private int position;
+    private Future<List<SAMRecord>> nextBatch;
+
+    @Override
+    public List<SAMRecord> call() {
+
+      final List<SAMRecord> result = new ArrayList<>(PREFETCH_BATCH_SIZE);
+
+      // The reader cannot be closed while reading a batch
+      synchronized (this.readerLock) {
+
+        while (result.size() < PREFETCH_BATCH_SIZE
+            && !Thread.currentThread().isInterrupted()
+            && this.iterator.hasNext()) {
+
+          final SAMRecord record = this.iterator.next();
+
+          // Force the lazy decoding of BAM entries in the prefetch thread
+          record.getReadName();
+          record.getCigar();
+          record.getReadBases();
+          record.getBaseQualities();
+          record.getAttributes();
+
+          result.add(record);
+        }
+      }
+
+      return result;
+    }
+
+    /**
+     * Get the current entry of the source.
+     * @return the current entry
+     */
+    SAMRecord current() {
+
+      return this.batch.get(this.position);
+    }
+
+    /**
+     * Move to the next entry of the source.
+     * @return true if the source has a current entry
+     * @throws IOException if an error occurs while reading the source
+     */
+    boolean advance() throws IOException {
+
+      this.position++;
+
+      if (this.position < this.batch.size()) {
+        return true;
+      }
+
+      if (this.nextBatch == null) {
+        return false;
+      }
+
+      try {
+        this.batch = this.nextBatch.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException(e.getMessage());
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof IOException) {
+          throw (IOException) e.getCause();
+        }
+        throw new IOException(e.getCause());
+      }
+      this.position = 0;
+
+      // A partial batch is the last batch of the source
+      this.nextBatch = this.batch.size() < PREFETCH_BATCH_SIZE
+          ? null : this.executor.submit(this);
+
+      return !this.batch.isEmpty();
+    }
+
+    /**
+     * Close the source. If a batch is being read, the reader is closed at the
+     * end of the reading of the cancelled batch.
+     * @throws IOException if an error occurs while closing the source
+     */
+    void close() throws IOException {
+
+      if (this.nextBatch != null) {
+        this.nextBatch.cancel(true);
+      }
+
+      synchronized (this.readerLock) {
+        this.reader.close();
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param index index of the source
+     * @param reader the reader of the source
+     * @param executor executor of the prefetch threads
+     */
+    RecordSource(final int index, final SamReader reader,
+        final ExecutorService executor) {
+
+      this.index = index;
+      this.reader = reader;
+      this.iterator = reader.iterator();
+      this.executor = executor;
+      this.nextBatch = executor.submit(this);
+    }
+
+  }
+
+  //
+  // Abstract methods
+  //
+
+  /**
+   * Create the writer of the merged entries.
+   * @param factory the writer factory
+   * @param header header of the output file
+   * @param presorted true if the entries are written in the order of the
+   *          header
+   * @param os output stream
+   * @return a new SAMFileWriter
+   */
+  abstract SAMFileWriter createWriter(SAMFileWriterFactory factory,
+      SAMFileHeader header, boolean presorted, OutputStream os);
+
+  /**
+   * Concatenate files without decoding their entries. The output file use the
+   * header of the first input file.
+   * @param inFiles the input files
+   * @param outFile the output file
+   * @throws IOException if an error occurs while concatenating the files
+   */
+  abstract void concatenate(List<DataFile> inFiles, DataFile outFile)
+      throws IOException;
+
+  //
+  // Merger methods
+  //
+
+  @Override
+  public void configure(final Set<Parameter> conf) throws EoulsanException {
+
+    for (Parameter p : conf) {
+
+      switch (p.getName()) {
+
+      case "fast.merge":
+        this.fastMerge = p.getBooleanValue();
+        break;
+
+      case "thread.number":
+        this.threadNumber = p.getIntValueGreaterOrEqualsTo(1);
+        break;
+
+      default:
+        throw new EoulsanException("Unknown parameter for "
+            + getFormat().getName() + " merger: " + p.getName());
+      }
+    }
+  }
+
+  @Override
+  public void merge(final Iterator<DataFile> inFileIterator,
+      final DataFile outFile) throws IOException {
+
+    final List<DataFile> inFiles = new ArrayList<>();
+    while (inFileIterator.hasNext()) {
+      inFiles.add(inFileIterator.next());
+    }
+
+    if (!this.fastMerge || inFiles.isEmpty()) {
+      standardMerge(inFiles, outFile);
+      return;
+    }
+
+    // Read the headers of the files
+    final List<SAMFileHeader> headers = new ArrayList<>();
+    for (DataFile inFile : inFiles) {
+      try (SamReader reader = open(inFile)) {
+        headers.add(reader.getFileHeader());
+      }
+    }
+
+    final SAMFileHeader header = headers.get(0);
+    final SortOrder sortOrder = header.getSortOrder();
+
+    // The entries can only be merged if the references of the files are the
+    // same
+    if (!sameHeaders(headers, false)) {
+      standardMerge(inFiles, outFile);
+      return;
+    }
+
+    switch (sortOrder) {
+
+    case unsorted:
+      getLogger().info("Concatenate "
+          + inFiles.size() + " files to " + outFile.getName());
+      concatenate(inFiles, outFile);
+      break;
+
+    case coordinate:
+    case queryname:
+      if (sameHeaders(headers, true)) {
+        sortedMerge(inFiles, header, outFile);
+      } else {
+        standardMerge(inFiles, outFile);
+      }
+      break;
+
+    default:
+      standardMerge(inFiles, outFile);
+      break;
+    }
+  }
+
+  //
+  // Merge methods
+  //
+
+  /**
+   * Merge the entries of the files without using the sort order of the input
+   * files. If the header of the first file define a sort order, the entries
+   * are sorted by the writer.
+   * @param inFiles the input files
+   * @param outFile the output file
+   * @throws IOException if an error occurs while merging the files
+   */
+  private void standardMerge(final List<DataFile> inFiles,
+      final DataFile outFile) throws IOException {
+
+    // Get temporary directory
+    final File tmpDir = EoulsanRuntime.getRuntime().getTempDirectory();
+
+    SAMFileWriter outputSam = null;
+
+    for (DataFile inFile : inFiles) {
+
+      getLogger()
+          .info("Merge " + inFile.getName() + " to " + outFile.getName());
+
+      // Get reader
+      final SamReader inputSam = open(inFile);
+
+      // Get Writer
+      if (outputSam == null) {
+
+        outputSam = createWriter(
+            new SAMFileWriterFactory().setTempDirectory(tmpDir),
+            inputSam.getFileHeader(), false, outFile.create());
+      }
+
+      // Write all the entries of the input file to the output file
+      for (SAMRecord samRecord : inputSam) {
+        outputSam.addAlignment(samRecord);
+      }
+
+      inputSam.close();
+    }
+
+    outputSam.close();
+  }
+
+  /**
+   * Merge the entries of sorted files with a k-way merge.
+   * @param inFiles the input files
+   * @param header the header of the output file
+   * @param outFile the output file
+   * @throws IOException if an error occurs while merging the files
+   */
+  private void sortedMerge(final List<DataFile> inFiles,
+      final SAMFileHeader header, final DataFile outFile) throws IOException {
+
+    getLogger().info("Merge "
+        + inFiles.size() + " files sorted by " + header.getSortOrder()
+        + " to " + outFile.getName() + " using " + this.threadNumber
+        + " threads");
+
+    final SAMRecordComparator comparator =
+        header.getSortOrder() == SortOrder.coordinate
+            ? new SAMRecordCoordinateComparator()
+            : new SAMRecordQueryNameComparator();
+
+    // Use the index of the sources for equal entries to keep the order of
+    // the input files
+    final PriorityQueue<RecordSource> queue = new PriorityQueue<>(
+        inFiles.size(), new Comparator<RecordSource>() {
+
+          @Override
+          public int compare(final RecordSource s1, final RecordSource s2) {
+
+            final int result =
+                comparator.fileOrderCompare(s1.current(), s2.current());
+
+            return result != 0 ? result : Integer.compare(s1.index, s2.index);
+          }
+        });
+
+    final ExecutorService executor =
+        Executors.newFixedThreadPool(this.threadNumber,
+            new ThreadFactoryBuilder().setDaemon(true)
+                .setNameFormat("sam-merger-prefetch-%d").build());
+
+    final List<RecordSource> sources = new ArrayList<>();
+    SAMFileWriter writer = null;
+    boolean success = false;
+
+    try {
+
+      for (DataFile inFile : inFiles) {
+        sources.add(new RecordSource(sources.size(), open(inFile), executor));
+      }
+
+      for (RecordSource source : sources) {
+        if (source.advance()) {
+          queue.add(source);
+        }
+      }
+
+      writer = createWriter(new SAMFileWriterFactory(), header, true,
+          outFile.create());
+
+      while (!queue.isEmpty()) {
+
+        final RecordSource source = queue.poll();
+        writer.addAlignment(source.current());
+
+        if (source.advance()) {
+          queue.add(source);
+        }
+      }
+
+      writer.close();
+      success = true;
+
+    } finally {
+
+      executor.shutdownNow();
+
+      for (RecordSource source : sources) {
+        source.close();
+      }
+
+      // Do not keep a truncated output file
+      if (!success) {
+        removeOutput(writer, outFile);
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Close the writer and remove the output file of a failed merge.
+   * @param writer the writer of the output file, can be null
+   * @param outFile the output file
+   */
+  private static void removeOutput(final SAMFileWriter writer,
+      final DataFile outFile) {
+
+    try {
+      if (writer != null) {
+        writer.close();
+      }
+    } catch (RuntimeException e) {
+      getLogger().warning("Unable to close the output file of the merge: "
+          + outFile + ": " + e.getMessage());
+    }
+
+    try {
+      if (outFile.exists()) {
+        outFile.delete();
+      }
+    } catch (IOException e) {
+      getLogger().warning("Unable to remove the output file of the failed "
+          + "merge: " + outFile + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Open a SAM or a BAM file.
+   * @param inFile the file to open
+   * @return a new SamReader
+   * @throws IOException if an error occurs while opening the file
+   */
+  private static SamReader open(final DataFile inFile) throws IOException {
+
+    return SamReaderFactory.makeDefault()
+        .open(SamInputResource.of(inFile.open()));
+  }
+
+  /**
+   * Check if headers have the same references and optionally the same sort
+   * order.
+   * @param headers the headers to check
+   * @param checkSortOrder true if the sort order must be checked
+   * @return true if the headers have the same references
+   */
+  private static boolean sameHeaders(final List<SAMFileHeader> headers,
+      final boolean checkSortOrder) {
+
+    final SAMFileHeader first = headers.get(0);
+
+    for (SAMFileHeader header : headers) {
+
+      if (!first.getSequenceDictionary()
+          .equals(header.getSequenceDictionary())) {
+        return false;
+      }
+
+      if (checkSortOrder && first.getSortOrder() != header.getSortOrder()) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+}
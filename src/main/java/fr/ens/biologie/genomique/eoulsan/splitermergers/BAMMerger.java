@@ -24,32 +24,44 @@
 
 package fr.ens.biologie.genomique.eoulsan.splitermergers;
 
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMFileWriterFactory;
-import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SamInputResource;
-import htsjdk.samtools.SamReader;
-import htsjdk.samtools.SamReaderFactory;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Set;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 
-import fr.ens.biologie.genomique.eoulsan.EoulsanException;
-import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
-import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
-import fr.ens.biologie.genomique.eoulsan.core.Parameter;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
+import fr.ens.biologie.genomique.eoulsan.io.ParallelGZipOutputStream;
 
 /**
- * This class define a merger class for SAM files.
+ * This class define a merger class for BAM files. When the BAM files are not
+ * sorted, the compressed BGZF blocks of the files are directly copied in the
+ * output file.
  * @author Laurent Jourdren
  * @since 2.0
  */
-public class BAMMerger implements Merger {
+public class BAMMerger extends AbstractSAMMerger {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private static final int BLOCK_HEADER_SIZE = 18;
+  private static final int BLOCK_FOOTER_SIZE = 8;
+  private static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+  private static final byte[] BAM_MAGIC = {'B', 'A', 'M', 1};
 
   @Override
   public DataFormat getFormat() {
@@ -58,52 +70,221 @@ public class BAMMerger implements Merger {
   }
 
   @Override
-  public void configure(final Set<Parameter> conf) throws EoulsanException {
+  SAMFileWriter createWriter(final SAMFileWriterFactory factory,
+      final SAMFileHeader header, final boolean presorted,
+      final OutputStream os) {
 
-    // The merge does not need any parameter
-    for (Parameter p : conf) {
-      throw new EoulsanException("Unknown parameter for "
-          + getFormat().getName() + " merger: " + p.getName());
-    }
+    return factory.makeBAMWriter(header, presorted, os);
   }
 
   @Override
-  public void merge(final Iterator<DataFile> inFileIterator,
-      final DataFile outFile) throws IOException {
+  void concatenate(final List<DataFile> inFiles, final DataFile outFile)
+      throws IOException {
+
+    final OutputStream out =
+        new BufferedOutputStream(outFile.create(), BUFFER_SIZE);
+
+    // The BGZF stream is only used to compress the first entries of the files
+    // that share a block with the header of the file
+    try (ParallelGZipOutputStream bgzf = new ParallelGZipOutputStream(out, 1)) {
+
+      for (DataFile inFile : inFiles) {
+
+        getLogger()
+            .info("Merge " + inFile.getName() + " to " + outFile.getName());
+
+        try (DataInputStream is = new DataInputStream(
+            new BufferedInputStream(inFile.open(), BUFFER_SIZE))) {
+
+          // Only keep the header of the first file
+          copyBlocks(is, out, bgzf, inFile != inFiles.get(0));
+        }
+      }
+    }
+  }
+
+  /**
+   * Copy the BGZF blocks of a BAM file. The last empty block of the file is
+   * not copied.
+   * @param is input stream
+   * @param out output stream
+   * @param bgzf BGZF output stream that wrap the output stream
+   * @param skipHeader true if the header of the BAM file must not be copied
+   * @throws IOException if an error occurs while copying the blocks
+   */
+  private static void copyBlocks(final DataInputStream is,
+      final OutputStream out, final ParallelGZipOutputStream bgzf,
+      final boolean skipHeader) throws IOException {
+
+    final byte[] block = new byte[MAX_BLOCK_SIZE];
+    final ByteArrayOutputStream header =
+        skipHeader ? new ByteArrayOutputStream() : null;
+    boolean inHeader = skipHeader;
+    int blockSize;
+
+    while ((blockSize = readBlock(is, block)) != -1) {
+
+      // Empty blocks can be safely removed
+      if (getInt(block, blockSize - 4) == 0) {
+        continue;
+      }
+
+      if (!inHeader) {
+        out.write(block, 0, blockSize);
+        continue;
+      }
+
+      // Decompress the blocks until the end of the header
+      header.write(inflateBlock(block, blockSize));
+
+      final byte[] data = header.toByteArray();
+      final int headerLength = getHeaderLength(data);
+
+      if (headerLength != -1) {
+
+        // Compress again the entries of the last block of the header
+        bgzf.write(data, headerLength, data.length - headerLength);
+        bgzf.flush();
+        inHeader = false;
+      }
+    }
+
+    if (inHeader) {
+      throw new EOFException("Unexpected end of BAM file in header");
+    }
+  }
+
+  /**
+   * Read a BGZF block.
+   * @param is input stream
+   * @param block array for the block
+   * @return the size of the block or -1 if the end of the stream has been
+   *         reached
+   * @throws IOException if an error occurs while reading the block
+   */
+  private static int readBlock(final DataInputStream is, final byte[] block)
+      throws IOException {
+
+    final int first = is.read();
+    if (first == -1) {
+      return -1;
+    }
+
+    block[0] = (byte) first;
+    is.readFully(block, 1, BLOCK_HEADER_SIZE - 1);
+
+    // Check the gzip magic, the extra field flag and the BGZF subfield
+    if (block[0] != 0x1f
+        || block[1] != (byte) 0x8b || block[3] != 0x04 || block[12] != 'B'
+        || block[13] != 'C') {
+      throw new IOException("Invalid BGZF block");
+    }
+
+    final int blockSize = ((block[16] & 0xff) | (block[17] & 0xff) << 8) + 1;
+    if (blockSize < BLOCK_HEADER_SIZE + BLOCK_FOOTER_SIZE) {
+      throw new IOException("Invalid BGZF block size: " + blockSize);
+    }
 
-    // Get temporary directory
-    final File tmpDir = EoulsanRuntime.getRuntime().getTempDirectory();
+    is.readFully(block, BLOCK_HEADER_SIZE, blockSize - BLOCK_HEADER_SIZE);
 
-    SAMFileWriter outputSam = null;
+    return blockSize;
+  }
 
-    while (inFileIterator.hasNext()) {
+  /**
+   * Decompress the data of a BGZF block.
+   * @param block the block
+   * @param blockSize the size of the block
+   * @return the uncompressed data of the block
+   * @throws IOException if an error occurs while decompressing the block
+   */
+  private static byte[] inflateBlock(final byte[] block, final int blockSize)
+      throws IOException {
 
-      // Get input file
-      final DataFile inFile = inFileIterator.next();
+    final byte[] result = new byte[getInt(block, blockSize - 4)];
+    final Inflater inflater = new Inflater(true);
 
-      EoulsanLogger.getLogger()
-          .info("Merge " + inFile.getName() + " to " + outFile.getName());
+    try {
+      inflater.setInput(block, BLOCK_HEADER_SIZE,
+          blockSize - BLOCK_HEADER_SIZE - BLOCK_FOOTER_SIZE);
+
+      if (inflater.inflate(result) != result.length) {
+        throw new IOException("Invalid BGZF block data size");
+      }
+    } catch (DataFormatException e) {
+      throw new IOException(e);
+    } finally {
+      inflater.end();
+    }
 
-      // Get reader
-      final SamReader inputSam = SamReaderFactory.makeDefault()
-          .open(SamInputResource.of(inFile.open()));
+    return result;
+  }
 
-      // Get Writer
-      if (outputSam == null) {
+  /**
+   * Get the length of the header of a BAM file.
+   * @param data the beginning of the uncompressed BAM file
+   * @return the length of the header or -1 if the data does not contains all
+   *         the header
+   * @throws IOException if the data is not a BAM file
+   */
+  private static int getHeaderLength(final byte[] data) throws IOException {
 
-        outputSam = new SAMFileWriterFactory().setTempDirectory(tmpDir)
-            .makeBAMWriter(inputSam.getFileHeader(), false, outFile.create());
+    for (int i = 0; i < BAM_MAGIC.length && i < data.length; i++) {
+      if (data[i] != BAM_MAGIC[i]) {
+        throw new IOException("Invalid BAM file");
       }
+    }
+
+    // Magic and text of the header
+    long pos = BAM_MAGIC.length;
+    if (pos + 4 > data.length) {
+      return -1;
+    }
+    pos += 4 + checkLength(getInt(data, (int) pos));
+
+    // References
+    if (pos + 4 > data.length) {
+      return -1;
+    }
+    final int referenceCount = checkLength(getInt(data, (int) pos));
+    pos += 4;
+
+    for (int i = 0; i < referenceCount; i++) {
 
-      // Write all the entries of the input file to the output file
-      for (SAMRecord samRecord : inputSam) {
-        outputSam.addAlignment(samRecord);
+      if (pos + 4 > data.length) {
+        return -1;
       }
+      pos += 4 + checkLength(getInt(data, (int) pos)) + 4;
+    }
+
+    return pos > data.length ? -1 : (int) pos;
+  }
+
+  /**
+   * Check a length read in the header of a BAM file.
+   * @param length the length to check
+   * @return the length
+   * @throws IOException if the length is negative
+   */
+  private static int checkLength(final int length) throws IOException {
 
-      inputSam.close();
+    if (length < 0) {
+      throw new IOException("Invalid BAM header");
     }
 
-    outputSam.close();
+    return length;
+  }
+
+  /**
+   * Get a little endian integer.
+   * @param array the array
+   * @param offset the offset of the integer in the array
+   * @return the integer
+   */
+  private static int getInt(final byte[] array, final int offset) {
+
+    return (array[offset] & 0xff)
+        | (array[offset + 1] & 0xff) << 8 | (array[offset + 2] & 0xff) << 16
+        | (array[offset + 3] & 0xff) << 24;
   }
 
 }
@@ -0,0 +1,391 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.splitermergers;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+
+/**
+ * This class allow to split a local uncompressed file in chunks of lines
+ * without parsing the entries of the file. The file is scanned line by line to
+ * find the byte offsets of the chunks and each chunk is copied in its output
+ * file by a pool of threads using {@link FileChannel#transferTo}. When the
+ * output files are compressed, the chunks are compressed concurrently.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+final class ByteRangeSplitter implements Closeable {
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private final FileChannel channel;
+  private final long fileSize;
+  private final ExecutorService executor;
+  private final int maxPendingChunks;
+  private final Deque<Future<Void>> pendingChunks = new ArrayDeque<>();
+
+  // Line scanning
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private long bufferPosition;
+  private long lineEnd;
+  private long lineLength;
+  private int firstByte;
+  private boolean trimmed;
+
+  // Chunks
+  private long headerLength;
+  private long chunkStart;
+
+  /**
+   * This class define the copy task of a chunk.
+   */
+  private final class ChunkCopier implements Callable<Void> {
+
+    private final long start;
+    private final long end;
+    private final long headerLength;
+    private final DataFile outFile;
+
+    @Override
+    public Void call() throws IOException {
+
+      final File localFile = this.outFile.toFile();
+
+      // Use a file channel for local uncompressed output files to avoid copies
+      try (WritableByteChannel out = localFile != null
+          && !this.outFile.getCompressionType().isCompressed()
+              ? new FileOutputStream(localFile).getChannel()
+              : Channels.newChannel(this.outFile.create())) {
+
+        transfer(0, this.headerLength, out);
+        transfer(this.start, this.end, out);
+      }
+
+      return null;
+    }
+
+    /**
+     * Copy a range of bytes of the input file.
+     * @param from start of the range
+     * @param to end of the range
+     * @param out output channel
+     * @throws IOException if an error occurs while copying the range
+     */
+    private void transfer(final long from, final long to,
+        final WritableByteChannel out) throws IOException {
+
+      long position = from;
+      while (position < to) {
+        position += ByteRangeSplitter.this.channel.transferTo(position,
+            to - position, out);
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param start start of the chunk in the input file
+     * @param end end of the chunk in the input file
+     * @param headerLength length of the header to copy before the chunk
+     * @param outFile output file
+     */
+    ChunkCopier(final long start, final long end, final long headerLength,
+        final DataFile outFile) {
+
+      this.start = start;
+      this.end = end;
+      this.headerLength = headerLength;
+      this.outFile = outFile;
+    }
+  }
+
+  //
+  // Line scanning methods
+  //
+
+  /**
+   * Read the next line of the input file.
+   * @return false if there is no more line to read
+   * @throws IOException if an error occurs while reading the file
+   */
+  public boolean nextLine() throws IOException {
+
+    final ByteBuffer buffer = this.buffer;
+
+    this.firstByte = -1;
+    final long lineStart = this.bufferPosition + buffer.position();
+    boolean empty = true;
+    int first = -1;
+    int last = -1;
+
+    while (true) {
+
+      if (!buffer.hasRemaining() && !fillBuffer()) {
+        this.lineEnd = this.bufferPosition + buffer.position();
+        this.lineLength = this.lineEnd - lineStart;
+        this.trimmed = false;
+        return !empty;
+      }
+
+      empty = false;
+      final byte b = buffer.get();
+
+      if (b == '\n') {
+        this.lineEnd = this.bufferPosition + buffer.position();
+        this.lineLength = this.lineEnd - lineStart - 1;
+        this.trimmed = first == -1 || (first > ' ' && last > ' ');
+        return true;
+      }
+
+      last = b & 0xff;
+      if (first == -1) {
+        first = last;
+      }
+
+      if (this.firstByte == -1 && last > ' ') {
+        this.firstByte = last;
+      }
+    }
+  }
+
+  /**
+   * Get the first character of the current line that is not a whitespace.
+   * @return the first character of the line or -1 if the line is blank
+   */
+  public int getFirstByte() {
+
+    return this.firstByte;
+  }
+
+  /**
+   * Test if the current line ends with a newline character and has no
+   * whitespace at its start and at its end.
+   * @return true if the current line is trimmed
+   */
+  public boolean isTrimmed() {
+
+    return this.trimmed;
+  }
+
+  /**
+   * Get the length of the current line, without the newline character.
+   * @return the length of the current line
+   */
+  public long getLineLength() {
+
+    return this.lineLength;
+  }
+
+  /**
+   * Get the position of the end of the current line in the file, including
+   * the newline character.
+   * @return the position of the end of the current line
+   */
+  public long getLineEnd() {
+
+    return this.lineEnd;
+  }
+
+  /**
+   * Fill the buffer with the next bytes of the file.
+   * @return false if the end of the file has been reached
+   * @throws IOException if an error occurs while reading the file
+   */
+  private boolean fillBuffer() throws IOException {
+
+    this.bufferPosition += this.buffer.limit();
+    this.buffer.clear();
+
+    int n;
+    do {
+      n = this.channel.read(this.buffer, this.bufferPosition);
+    } while (n == 0);
+
+    this.buffer.flip();
+
+    return n > 0;
+  }
+
+  //
+  // Chunk methods
+  //
+
+  /**
+   * Get the position in the file of the first byte that has not been written
+   * in a chunk.
+   * @return the position of the start of the next chunk
+   */
+  public long getChunkStart() {
+
+    return this.chunkStart;
+  }
+
+  /**
+   * Set the length of the header that is copied at the beginning of each
+   * chunk. The first chunk starts after the header.
+   * @param headerLength the length of the header
+   */
+  public void setHeaderLength(final long headerLength) {
+
+    this.headerLength = headerLength;
+    this.chunkStart = headerLength;
+  }
+
+  /**
+   * Copy the lines from the end of the previous chunk to the end of the
+   * current line in an output file. The copy is asynchronous.
+   * @param outFile the output file
+   * @throws IOException if an error occurs while copying a previous chunk
+   */
+  public void writeChunk(final DataFile outFile) throws IOException {
+
+    submitChunk(this.lineEnd, outFile);
+  }
+
+  /**
+   * Copy the lines from the end of the previous chunk to the end of the file
+   * in an output file. The copy is asynchronous.
+   * @param outFile the output file
+   * @throws IOException if an error occurs while copying a previous chunk
+   */
+  public void writeLastChunk(final DataFile outFile) throws IOException {
+
+    submitChunk(this.fileSize, outFile);
+  }
+
+  /**
+   * Submit the copy of a chunk.
+   * @param end end of the chunk
+   * @param outFile the output file
+   * @throws IOException if an error occurs while copying a previous chunk
+   */
+  private void submitChunk(final long end, final DataFile outFile)
+      throws IOException {
+
+    if (outFile == null) {
+      throw new NullPointerException("outFile argument cannot be null");
+    }
+
+    // Limit the number of chunks copied at the same time
+    while (this.pendingChunks.size() >= this.maxPendingChunks) {
+      waitNextChunk();
+    }
+
+    this.pendingChunks.add(this.executor.submit(
+        new ChunkCopier(this.chunkStart, end, this.headerLength, outFile)));
+    this.chunkStart = end;
+  }
+
+  /**
+   * Wait the end of the copy of the oldest chunk.
+   * @throws IOException if an error occurs while copying the chunk
+   */
+  private void waitNextChunk() throws IOException {
+
+    try {
+      this.pendingChunks.poll().get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Wait the end of the copy of all the chunks and close the input file.
+   * @throws IOException if an error occurs while copying a chunk
+   */
+  @Override
+  public void close() throws IOException {
+
+    try {
+      while (!this.pendingChunks.isEmpty()) {
+        waitNextChunk();
+      }
+    } finally {
+      this.executor.shutdownNow();
+      this.channel.close();
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param inFile the file to split
+   * @param threadNumber the number of threads used to copy the chunks
+   * @throws IOException if an error occurs while opening the file
+   */
+  ByteRangeSplitter(final File inFile, final int threadNumber)
+      throws IOException {
+
+    if (inFile == null) {
+      throw new NullPointerException("inFile argument cannot be null");
+    }
+
+    if (threadNumber < 1) {
+      throw new IllegalArgumentException(
+          "threadNumber must be greater than 0: " + threadNumber);
+    }
+
+    this.channel = new FileInputStream(inFile).getChannel();
+    this.fileSize = this.channel.size();
+    this.executor = Executors.newFixedThreadPool(threadNumber,
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("splitter-chunk-copy-%d").build());
+    this.maxPendingChunks = 2 * threadNumber;
+
+    this.buffer.limit(0);
+  }
+
+}
@@ -1,19 +1,12 @@
 package fr.ens.biologie.genomique.eoulsan.splitermergers;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
-import java.io.Writer;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Set;
 
-import com.google.common.collect.HashMultiset;
-import com.google.common.collect.Multiset;
-
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
 import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
+import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.CountTable;
 import fr.ens.biologie.genomique.eoulsan.core.Parameter;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
@@ -46,8 +39,9 @@ public class ExpressionMerger implements Merger {
   public void merge(final Iterator<DataFile> inFileIterator, DataFile outFile)
       throws IOException {
 
-    final Multiset<String> counts = HashMultiset.create();
-    final Set<String> emptyCounts = new HashSet<>();
+    // The counts of all the chunks are summed in a single column
+    final CountTable table = new CountTable();
+    final int sampleIndex = table.addSample(outFile.getName());
 
     while (inFileIterator.hasNext()) {
 
@@ -57,69 +51,11 @@ public class ExpressionMerger implements Merger {
       EoulsanLogger.getLogger()
           .info("Merge " + inFile.getName() + " to " + outFile.getName());
 
-      boolean first = true;
-
-      try (BufferedReader reader =
-          new BufferedReader(new InputStreamReader(inFile.open()))) {
-
-        String line = null;
-
-        while ((line = reader.readLine()) != null) {
-
-          // Do no handle header
-          if (first) {
-            first = false;
-            continue;
-          }
-
-          final int tabPos = line.indexOf('\t');
-
-          // Do not handle empty or invalid lines
-          if (tabPos == -1) {
-            continue;
-          }
-
-          try {
-
-            final String id = line.substring(0, tabPos).trim();
-            final int count = Integer.parseInt(line.substring(tabPos).trim());
-
-            if (count == 0) {
-              emptyCounts.add(id);
-            }
-
-            counts.add(id, count);
-
-          } catch (NumberFormatException e) {
-            // Do not handle parsing errors
-          }
-        }
-      }
+      table.loadCounts(sampleIndex, inFile.open(), true, true);
     }
 
     // Write the result file
-    try (Writer writer = new OutputStreamWriter(outFile.create())) {
-
-      writer.write(ExpressionSplitter.EXPRESSION_FILE_HEADER);
-
-      // Write the non empty counts
-      for (Multiset.Entry<String> e : counts.entrySet()) {
-
-        final String id = e.getElement();
-
-        // Remove the id from empty counts
-        emptyCounts.remove(id);
-
-        // Write the entry
-        writer.write(id + '\t' + e.getCount() + '\n');
-      }
-
-      // Write the empty counts
-      for (String id : emptyCounts) {
-        writer.write(id + "\t0\n");
-      }
-    }
-
+    table.writeCounts(sampleIndex, outFile.create());
   }
 
 }
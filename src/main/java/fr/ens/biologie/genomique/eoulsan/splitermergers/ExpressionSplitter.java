@@ -9,6 +9,7 @@ import java.util.Iterator;
 import java.util.Set;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.expressioncounters.CountTable;
 import fr.ens.biologie.genomique.eoulsan.core.Parameter;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
@@ -22,7 +23,7 @@ import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
 public class ExpressionSplitter implements Splitter {
 
   private static final int DEFAULT_SPLIT_MAX_ENTRIES = 10000;
-  static final String EXPRESSION_FILE_HEADER = "Id\tCount\n";
+  static final String EXPRESSION_FILE_HEADER = CountTable.COUNT_FILE_HEADER;
 
   private int splitMaxEntries = DEFAULT_SPLIT_MAX_ENTRIES;
 
@@ -24,17 +24,24 @@
 
 package fr.ens.biologie.genomique.eoulsan.splitermergers;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Iterator;
 import java.util.Set;
 
 import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
 import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
 import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqBufferReader;
 import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
 import fr.ens.biologie.genomique.eoulsan.bio.io.FastqWriter;
 import fr.ens.biologie.genomique.eoulsan.core.Parameter;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.data.DataFiles;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
 
@@ -46,8 +53,11 @@ import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
 public class FastqSplitter implements Splitter {
 
   private static final int DEFAULT_SPLIT_MAX_ENTRIES = 1000000;
+  private static final int DEFAULT_THREAD_NUMBER = 4;
+  private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
 
   private int splitMaxEntries = DEFAULT_SPLIT_MAX_ENTRIES;
+  private int threadNumber = DEFAULT_THREAD_NUMBER;
 
   @Override
   public DataFormat getFormat() {
@@ -66,6 +76,10 @@ public class FastqSplitter implements Splitter {
         this.splitMaxEntries = p.getIntValueGreaterOrEqualsTo(1);
         break;
 
+      case "thread.number":
+        this.threadNumber = p.getIntValueGreaterOrEqualsTo(1);
+        break;
+
       default:
         throw new EoulsanException("Unknown parameter for "
             + getFormat().getName() + " splitter: " + p.getName());
@@ -77,6 +91,20 @@ public class FastqSplitter implements Splitter {
   public void split(final DataFile inFile,
       final Iterator<DataFile> outFileIterator) throws IOException {
 
+    final File localFile = inFile.toFile();
+
+    if (localFile != null
+        && !inFile.getCompressionType().isCompressed() && localFile.isFile()) {
+      splitByByteRanges(localFile, outFileIterator);
+      return;
+    }
+
+    if (EoulsanRuntime.getSettings().isFastqBufferReader()) {
+      splitWithBufferReader(DataFiles.newFastqBufferReader(inFile),
+          outFileIterator);
+      return;
+    }
+
     final FastqReader reader = new FastqReader(inFile.open());
 
     final int max = this.splitMaxEntries;
@@ -114,4 +142,154 @@ public class FastqSplitter implements Splitter {
 
   }
 
+  /**
+   * Split a local uncompressed file by copying the bytes of the entries. Only
+   * the lines of the file are parsed to find the bounds of the chunks. The
+   * bytes are copied as long as the entries are in the format of the
+   * FastqWriter output (no whitespace around the lines, no empty lines between
+   * the entries and no name after the '+'). From the first chunk that contains
+   * another entry, the entries are normalized using the FastqBufferReader.
+   * @param inFile input file
+   * @param outFileIterator the output file iterator
+   * @throws IOException if an error occurs while splitting data
+   */
+  private void splitByByteRanges(final File inFile,
+      final Iterator<DataFile> outFileIterator) throws IOException {
+
+    final int max = this.splitMaxEntries;
+    int entryCount = 0;
+    int entryLine = 0;
+    int lineCount = 0;
+    long normalizationStart = -1;
+
+    try (ByteRangeSplitter splitter =
+        new ByteRangeSplitter(inFile, this.threadNumber)) {
+
+      while (splitter.nextLine()) {
+
+        lineCount++;
+        final int firstByte = splitter.getFirstByte();
+
+        switch (entryLine) {
+
+        case 0:
+
+          // Empty lines between entries are removed by the normalization
+          if (firstByte == -1) {
+            normalizationStart = splitter.getChunkStart();
+          } else if (firstByte != '@') {
+            throw new IOException(
+                "Invalid Fastq file. First line of the entry don't start with '@' at line "
+                    + lineCount);
+          }
+          break;
+
+        case 2:
+          if (firstByte != '+') {
+            throw new IOException(
+                "Invalid Fastq file. Third line of the entry don't start with '+' at line "
+                    + lineCount);
+          }
+
+          // The name of the read is not repeated in the FastqWriter output
+          if (splitter.getLineLength() != 1) {
+            normalizationStart = splitter.getChunkStart();
+          }
+          break;
+
+        default:
+          break;
+        }
+
+        if (!splitter.isTrimmed()) {
+          normalizationStart = splitter.getChunkStart();
+        }
+
+        // The entries of the current chunk must be normalized
+        if (normalizationStart != -1) {
+          break;
+        }
+
+        entryLine++;
+
+        if (entryLine == 4) {
+
+          entryLine = 0;
+          entryCount++;
+
+          if (entryCount % max == 0) {
+            splitter.writeChunk(outFileIterator.next());
+          }
+        }
+      }
+
+      if (normalizationStart == -1) {
+
+        if (entryLine != 0) {
+          throw new IOException(
+              "Invalid Fastq file. Incomplete entry at the end of the file");
+        }
+
+        // Write the last entries
+        if (entryCount % max != 0) {
+          splitter.writeLastChunk(outFileIterator.next());
+        }
+      }
+    }
+
+    // Normalize the entries that remain
+    if (normalizationStart != -1) {
+
+      final FileInputStream is = new FileInputStream(inFile);
+      is.getChannel().position(normalizationStart);
+
+      splitWithBufferReader(new FastqBufferReader(is), outFileIterator);
+    }
+  }
+
+  /**
+   * Split a file using the FastqBufferReader. The entries are directly written
+   * from the bytes of the input file.
+   * @param reader the reader of the input file
+   * @param outFileIterator the output file iterator
+   * @throws IOException if an error occurs while splitting data
+   */
+  private void splitWithBufferReader(final FastqBufferReader reader,
+      final Iterator<DataFile> outFileIterator) throws IOException {
+
+    final int max = this.splitMaxEntries;
+    int entryCount = 0;
+    OutputStream os = null;
+
+    while (reader.hasNext()) {
+
+      if (entryCount % max == 0) {
+
+        // Close previous output stream
+        if (os != null) {
+          os.close();
+        }
+
+        // Create new output stream
+        os = new BufferedOutputStream(outFileIterator.next().create(),
+            OUTPUT_BUFFER_SIZE);
+      }
+
+      reader.nextEntry().writeFastq(os);
+      entryCount++;
+    }
+
+    // Close reader and output stream
+    reader.close();
+    if (os != null) {
+      os.close();
+    }
+
+    try {
+      reader.throwException();
+    } catch (BadBioEntryException e) {
+      throw new IOException(e);
+    }
+  }
+
 }
@@ -24,22 +24,19 @@
 
 package fr.ens.biologie.genomique.eoulsan.splitermergers;
 
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import htsjdk.samtools.SAMFileHeader;
 import htsjdk.samtools.SAMFileWriter;
 import htsjdk.samtools.SAMFileWriterFactory;
-import htsjdk.samtools.SAMRecord;
-import htsjdk.samtools.SamInputResource;
-import htsjdk.samtools.SamReader;
-import htsjdk.samtools.SamReaderFactory;
 
-import java.io.File;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.util.Iterator;
-import java.util.Set;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
 
-import fr.ens.biologie.genomique.eoulsan.EoulsanException;
-import fr.ens.biologie.genomique.eoulsan.EoulsanLogger;
-import fr.ens.biologie.genomique.eoulsan.EoulsanRuntime;
-import fr.ens.biologie.genomique.eoulsan.core.Parameter;
 import fr.ens.biologie.genomique.eoulsan.data.DataFile;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormat;
 import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
@@ -49,7 +46,9 @@ import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
  * @author Laurent Jourdren
  * @since 2.0
  */
-public class SAMMerger implements Merger {
+public class SAMMerger extends AbstractSAMMerger {
+
+  private static final int BUFFER_SIZE = 64 * 1024;
 
   @Override
   public DataFormat getFormat() {
@@ -58,52 +57,79 @@ public class SAMMerger implements Merger {
   }
 
   @Override
-  public void configure(final Set<Parameter> conf) throws EoulsanException {
+  SAMFileWriter createWriter(final SAMFileWriterFactory factory,
+      final SAMFileHeader header, final boolean presorted,
+      final OutputStream os) {
 
-    // The merge does not need any parameter
-    for (Parameter p : conf) {
-      throw new EoulsanException("Unknown parameter for "
-          + getFormat().getName() + " merger: " + p.getName());
-    }
+    return factory.makeSAMWriter(header, presorted, os);
   }
 
   @Override
-  public void merge(final Iterator<DataFile> inFileIterator,
-      final DataFile outFile) throws IOException {
+  void concatenate(final List<DataFile> inFiles, final DataFile outFile)
+      throws IOException {
 
-    // Get temporary directory
-    final File tmpDir = EoulsanRuntime.getRuntime().getTempDirectory();
+    final byte[] buffer = new byte[BUFFER_SIZE];
+    int lastByte = '\n';
 
-    SAMFileWriter outputSam = null;
+    try (OutputStream os =
+        new BufferedOutputStream(outFile.create(), BUFFER_SIZE)) {
 
-    while (inFileIterator.hasNext()) {
+      for (DataFile inFile : inFiles) {
 
-      // Get input file
-      final DataFile inFile = inFileIterator.next();
+        getLogger()
+            .info("Merge " + inFile.getName() + " to " + outFile.getName());
 
-      EoulsanLogger.getLogger()
-          .info("Merge " + inFile.getName() + " to " + outFile.getName());
+        try (InputStream is =
+            new BufferedInputStream(inFile.open(), BUFFER_SIZE)) {
 
-      // Get reader
-      final SamReader inputSam = SamReaderFactory.makeDefault()
-          .open(SamInputResource.of(inFile.open()));
+          // Only keep the header of the first file
+          if (inFile != inFiles.get(0)) {
+            skipHeader(is);
+          }
 
-      // Get Writer
-      if (outputSam == null) {
+          // The last line of the previous file may not end with a newline
+          if (lastByte != '\n') {
+            os.write('\n');
+            lastByte = '\n';
+          }
 
-        outputSam = new SAMFileWriterFactory().setTempDirectory(tmpDir)
-            .makeSAMWriter(inputSam.getFileHeader(), false, outFile.create());
+          int n;
+          while ((n = is.read(buffer)) != -1) {
+
+            if (n > 0) {
+              os.write(buffer, 0, n);
+              lastByte = buffer[n - 1];
+            }
+          }
+        }
       }
+    }
+  }
 
-      // Write all the entries of the input file to the output file
-      for (SAMRecord samRecord : inputSam) {
-        outputSam.addAlignment(samRecord);
+  /**
+   * Skip the header lines of a SAM file.
+   * @param is input stream that support mark
+   * @throws IOException if an error occurs while reading the stream
+   */
+  private static void skipHeader(final InputStream is) throws IOException {
+
+    while (true) {
+
+      is.mark(1);
+      if (is.read() != '@') {
+        is.reset();
+        return;
       }
 
-      inputSam.close();
-    }
+      int c;
+      do {
+        c = is.read();
+      } while (c != '\n' && c != -1);
 
-    outputSam.close();
+      if (c == -1) {
+        return;
+      }
+    }
   }
 
 }
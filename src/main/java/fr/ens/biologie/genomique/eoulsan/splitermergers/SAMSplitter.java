@@ -54,9 +54,11 @@ import fr.ens.biologie.genomique.eoulsan.data.DataFormats;
 public class SAMSplitter implements Splitter {
 
   private static final int DEFAULT_SPLIT_MAX_ENTRIES = 1000000;
+  private static final int DEFAULT_THREAD_NUMBER = 4;
 
   private int splitMaxEntries = DEFAULT_SPLIT_MAX_ENTRIES;
   private boolean splitByChromosomes;
+  private int threadNumber = DEFAULT_THREAD_NUMBER;
 
   @Override
   public DataFormat getFormat() {
@@ -79,6 +81,10 @@ public class SAMSplitter implements Splitter {
         this.splitByChromosomes = p.getBooleanValue();
         break;
 
+      case "thread.number":
+        this.threadNumber = p.getIntValueGreaterOrEqualsTo(1);
+        break;
+
       default:
         throw new EoulsanException("Unknown parameter for "
             + getFormat().getName() + " splitter: " + p.getName());
@@ -107,6 +113,14 @@ public class SAMSplitter implements Splitter {
   private void splitByLineCount(final DataFile inFile,
       final Iterator<DataFile> outFileIterator) throws IOException {
 
+    final File localFile = inFile.toFile();
+
+    if (localFile != null
+        && !inFile.getCompressionType().isCompressed() && localFile.isFile()) {
+      splitByByteRanges(localFile, outFileIterator);
+      return;
+    }
+
     // Get temporary directory
     final File tmpDir = EoulsanRuntime.getRuntime().getTempDirectory();
 
@@ -146,6 +160,57 @@ public class SAMSplitter implements Splitter {
     }
   }
 
+  /**
+   * Split a local uncompressed SAM file by line count by copying the bytes of
+   * the entries. The header of the input file is copied at the beginning of
+   * each output file.
+   * @param inFile input file
+   * @param outFileIterator output files iterator
+   * @throws IOException if an error occurs while reading or creating output
+   *           files
+   */
+  private void splitByByteRanges(final File inFile,
+      final Iterator<DataFile> outFileIterator) throws IOException {
+
+    final int max = this.splitMaxEntries;
+    int entryCount = 0;
+    boolean inHeader = true;
+
+    try (ByteRangeSplitter splitter =
+        new ByteRangeSplitter(inFile, this.threadNumber)) {
+
+      while (splitter.nextLine()) {
+
+        final int firstByte = splitter.getFirstByte();
+
+        if (inHeader) {
+
+          if (firstByte == '@') {
+            splitter.setHeaderLength(splitter.getLineEnd());
+            continue;
+          }
+          inHeader = false;
+        }
+
+        // Skip empty lines
+        if (firstByte == -1) {
+          continue;
+        }
+
+        entryCount++;
+
+        if (entryCount % max == 0) {
+          splitter.writeChunk(outFileIterator.next());
+        }
+      }
+
+      // Write the last entries
+      if (entryCount % max != 0) {
+        splitter.writeLastChunk(outFileIterator.next());
+      }
+    }
+  }
+
   /**
    * Split SAM file by chromosomes.
    * @param inFile input file
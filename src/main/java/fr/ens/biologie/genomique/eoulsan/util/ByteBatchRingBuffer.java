@@ -0,0 +1,257 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class define a ring buffer of byte batches for one producer thread and
+ * one consumer thread. The batches are preallocated and reused, so no object
+ * is created when bytes are transferred. When the ring is full the producer is
+ * parked until the consumer releases a batch, and when the ring is empty the
+ * consumer is parked until the producer publishes a batch. The time spent by
+ * the two threads waiting is recorded.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ByteBatchRingBuffer {
+
+  private final ByteBuffer[] batches;
+
+  // Index of the next batch to consume
+  private final AtomicLong head = new AtomicLong();
+  // Index of the next batch to produce
+  private final AtomicLong tail = new AtomicLong();
+
+  private volatile Thread waitingProducer;
+  private volatile Thread waitingConsumer;
+  private volatile boolean closed;
+  private volatile boolean aborted;
+
+  private volatile long producerWaitingTime;
+  private volatile long consumerWaitingTime;
+
+  //
+  // Producer methods
+  //
+
+  /**
+   * Get the next batch to fill. The batch is cleared. This method waits until
+   * a batch is available.
+   * @return a ByteBuffer or null if the ring buffer has been aborted by the
+   *         consumer
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public ByteBuffer acquire() throws InterruptedException {
+
+    final long t = this.tail.get();
+
+    if (t - this.head.get() == this.batches.length && !this.aborted) {
+
+      final long start = System.nanoTime();
+      this.waitingProducer = Thread.currentThread();
+
+      try {
+        while (t - this.head.get() == this.batches.length && !this.aborted) {
+
+          LockSupport.park(this);
+
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+        }
+      } finally {
+        this.waitingProducer = null;
+        this.producerWaitingTime += System.nanoTime() - start;
+      }
+    }
+
+    if (this.aborted) {
+      return null;
+    }
+
+    final ByteBuffer result = this.batches[index(t)];
+    result.clear();
+
+    return result;
+  }
+
+  /**
+   * Publish the last batch returned by acquire(). The batch is flipped before
+   * being available to the consumer.
+   */
+  public void publish() {
+
+    final long t = this.tail.get();
+    this.batches[index(t)].flip();
+    this.tail.set(t + 1);
+
+    unpark(this.waitingConsumer);
+  }
+
+  /**
+   * Inform the consumer that no more batch will be published.
+   */
+  public void close() {
+
+    this.closed = true;
+
+    unpark(this.waitingConsumer);
+  }
+
+  //
+  // Consumer methods
+  //
+
+  /**
+   * Get the next batch to consume. This method waits until a batch is
+   * published.
+   * @return a ByteBuffer or null if the producer has closed the ring buffer and
+   *         all the batches has been consumed
+   * @throws InterruptedException if the thread is interrupted while waiting
+   */
+  public ByteBuffer take() throws InterruptedException {
+
+    final long h = this.head.get();
+
+    if (h == this.tail.get()) {
+
+      final long start = System.nanoTime();
+      this.waitingConsumer = Thread.currentThread();
+
+      try {
+        while (h == this.tail.get()) {
+
+          // The batches published before the closing are visible here
+          if (this.closed && h == this.tail.get()) {
+            return null;
+          }
+
+          LockSupport.park(this);
+
+          if (Thread.interrupted()) {
+            throw new InterruptedException();
+          }
+        }
+      } finally {
+        this.waitingConsumer = null;
+        this.consumerWaitingTime += System.nanoTime() - start;
+      }
+    }
+
+    return this.batches[index(h)];
+  }
+
+  /**
+   * Release the last batch returned by take(). The batch can then be reused by
+   * the producer.
+   */
+  public void release() {
+
+    this.head.set(this.head.get() + 1);
+
+    unpark(this.waitingProducer);
+  }
+
+  /**
+   * Abort the transfer. The producer will not be able to acquire new batches.
+   * This method must be used by the consumer when it cannot process the
+   * batches anymore.
+   */
+  public void abort() {
+
+    this.aborted = true;
+
+    unpark(this.waitingProducer);
+  }
+
+  //
+  // Getters
+  //
+
+  /**
+   * Get the time spent by the producer waiting a free batch.
+   * @return the waiting time in nanoseconds
+   */
+  public long getProducerWaitingTime() {
+
+    return this.producerWaitingTime;
+  }
+
+  /**
+   * Get the time spent by the consumer waiting a published batch.
+   * @return the waiting time in nanoseconds
+   */
+  public long getConsumerWaitingTime() {
+
+    return this.consumerWaitingTime;
+  }
+
+  //
+  // Other methods
+  //
+
+  private int index(final long i) {
+
+    return (int) (i % this.batches.length);
+  }
+
+  private static void unpark(final Thread thread) {
+
+    if (thread != null) {
+      LockSupport.unpark(thread);
+    }
+  }
+
+  //
+  // Constructor
+  //
+
+  /**
+   * Constructor.
+   * @param batchCount number of batches in the ring
+   * @param batchSize size of a batch in bytes
+   */
+  public ByteBatchRingBuffer(final int batchCount, final int batchSize) {
+
+    if (batchCount < 1) {
+      throw new IllegalArgumentException(
+          "batchCount must be greater than 0: " + batchCount);
+    }
+
+    if (batchSize < 1) {
+      throw new IllegalArgumentException(
+          "batchSize must be greater than 0: " + batchSize);
+    }
+
+    this.batches = new ByteBuffer[batchCount];
+    for (int i = 0; i < batchCount; i++) {
+      this.batches[i] = ByteBuffer.allocate(batchSize);
+    }
+  }
+
+}
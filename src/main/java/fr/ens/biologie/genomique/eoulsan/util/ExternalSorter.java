@@ -0,0 +1,565 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.util;
+
+import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * This class implements an external merge sort of key/value pairs. Entries are
+ * kept in memory until a threshold is reached, then sorted and spilled in a
+ * temporary file (a run) in a compact binary format. The runs are finally
+ * merged using a k-way heap merge. Entries are sorted by key then by value.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ExternalSorter implements Closeable {
+
+  /** Default maximal memory used by the entries before a spill. */
+  public static final long DEFAULT_SPILL_THRESHOLD = 64 * 1024 * 1024;
+
+  /** Maximal number of runs merged at the same time. */
+  private static final int MAX_MERGE_RUNS = 64;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  /** Estimated memory overhead of an entry in bytes. */
+  private static final int ENTRY_OVERHEAD = 96;
+
+  private final File tmpDir;
+  private final long spillThreshold;
+  private final boolean compress;
+
+  private List<Entry> entries = new ArrayList<>();
+  private long entriesSize;
+  private final List<File> runFiles = new ArrayList<>();
+  private final List<RunReader> openedRuns = new ArrayList<>();
+  private boolean sorted;
+
+  /**
+   * This class define a key/value entry.
+   */
+  public static final class Entry implements Comparable<Entry> {
+
+    private final String key;
+    private final String value;
+
+    /**
+     * Get the key of the entry.
+     * @return the key of the entry
+     */
+    public String getKey() {
+
+      return this.key;
+    }
+
+    /**
+     * Get the value of the entry.
+     * @return the value of the entry
+     */
+    public String getValue() {
+
+      return this.value;
+    }
+
+    @Override
+    public int compareTo(final Entry o) {
+
+      final int result = this.key.compareTo(o.key);
+
+      return result != 0 ? result : this.value.compareTo(o.value);
+    }
+
+    @Override
+    public String toString() {
+
+      return this.key + '\t' + this.value;
+    }
+
+    /**
+     * Constructor.
+     * @param key the key
+     * @param value the value
+     */
+    private Entry(final String key, final String value) {
+
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  /**
+   * This class define a reader of sorted entries.
+   */
+  private abstract static class RunReader
+      implements Comparable<RunReader>, Closeable {
+
+    private Entry current;
+
+    /**
+     * Read the next entry of the run.
+     * @return the next entry or null if there is no more entry
+     * @throws IOException if an error occurs while reading the entry
+     */
+    protected abstract Entry read() throws IOException;
+
+    /**
+     * Move to the next entry of the run.
+     * @return true if an entry is available
+     * @throws IOException if an error occurs while reading the entry
+     */
+    boolean advance() throws IOException {
+
+      this.current = read();
+
+      return this.current != null;
+    }
+
+    @Override
+    public int compareTo(final RunReader o) {
+
+      return this.current.compareTo(o.current);
+    }
+
+    @Override
+    public void close() throws IOException {
+    }
+  }
+
+  /**
+   * This class define a reader of the in memory entries.
+   */
+  private static final class MemoryRunReader extends RunReader {
+
+    private final Iterator<Entry> it;
+
+    @Override
+    protected Entry read() {
+
+      return this.it.hasNext() ? this.it.next() : null;
+    }
+
+    MemoryRunReader(final List<Entry> entries) {
+
+      this.it = entries.iterator();
+    }
+  }
+
+  /**
+   * This class define a reader of a run file.
+   */
+  private static final class FileRunReader extends RunReader {
+
+    private final InputStream in;
+    private byte[] buffer = new byte[256];
+
+    @Override
+    protected Entry read() throws IOException {
+
+      final int keyLength = readVarInt(this.in);
+
+      if (keyLength == -1) {
+        return null;
+      }
+
+      final String key = readString(keyLength);
+      final int valueLength = readVarInt(this.in);
+
+      if (valueLength == -1) {
+        throw new EOFException("Unexpected end of sort run file");
+      }
+
+      return new Entry(key, readString(valueLength));
+    }
+
+    private String readString(final int length) throws IOException {
+
+      if (length > this.buffer.length) {
+        this.buffer = new byte[Math.max(length, this.buffer.length * 2)];
+      }
+
+      int pos = 0;
+      while (pos < length) {
+
+        final int n = this.in.read(this.buffer, pos, length - pos);
+        if (n == -1) {
+          throw new EOFException("Unexpected end of sort run file");
+        }
+        pos += n;
+      }
+
+      return new String(this.buffer, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() throws IOException {
+
+      this.in.close();
+    }
+
+    FileRunReader(final File file, final boolean compress)
+        throws IOException {
+
+      final InputStream is = new FileInputStream(file);
+
+      this.in = new BufferedInputStream(
+          compress ? new InflaterInputStream(is) : is, BUFFER_SIZE);
+    }
+  }
+
+  //
+  // Entry management
+  //
+
+  /**
+   * Add an entry to sort.
+   * @param key key of the entry
+   * @param value value of the entry
+   * @throws IOException if an error occurs while spilling the entries
+   */
+  public void add(final String key, final String value) throws IOException {
+
+    if (key == null) {
+      throw new NullPointerException("key argument cannot be null");
+    }
+
+    if (value == null) {
+      throw new NullPointerException("value argument cannot be null");
+    }
+
+    if (this.sorted) {
+      throw new IllegalStateException("The entries have already been sorted");
+    }
+
+    this.entries.add(new Entry(key, value));
+    this.entriesSize +=
+        ENTRY_OVERHEAD + 2L * (key.length() + value.length());
+
+    if (this.entriesSize >= this.spillThreshold) {
+      spill();
+    }
+  }
+
+  /**
+   * Get the number of runs spilled on disk.
+   * @return the number of runs spilled on disk
+   */
+  public int getRunCount() {
+
+    return this.runFiles.size();
+  }
+
+  /**
+   * Sort the in memory entries and write them in a new run file.
+   * @throws IOException if an error occurs while writing the run
+   */
+  private void spill() throws IOException {
+
+    Collections.sort(this.entries);
+    this.runFiles.add(writeRun(this.entries.iterator()));
+
+    // Free memory
+    this.entries = new ArrayList<>();
+    this.entriesSize = 0;
+  }
+
+  /**
+   * Write sorted entries in a new run file.
+   * @param it iterator over the sorted entries
+   * @return the run file
+   * @throws IOException if an error occurs while writing the run
+   */
+  private File writeRun(final Iterator<Entry> it) throws IOException {
+
+    final File runFile = File.createTempFile("sort-", ".run", this.tmpDir);
+
+    final OutputStream os = new FileOutputStream(runFile);
+    final Deflater deflater =
+        this.compress ? new Deflater(Deflater.BEST_SPEED) : null;
+
+    try (OutputStream out = new BufferedOutputStream(
+        this.compress ? new DeflaterOutputStream(os, deflater, BUFFER_SIZE) : os,
+        BUFFER_SIZE)) {
+
+      while (it.hasNext()) {
+        final Entry e = it.next();
+        writeString(out, e.key);
+        writeString(out, e.value);
+      }
+    } finally {
+      if (deflater != null) {
+        deflater.end();
+      }
+    }
+
+    return runFile;
+  }
+
+  /**
+   * Merge run files until their number is lower than the maximal number of
+   * runs that can be merged at the same time.
+   * @throws IOException if an error occurs while merging the runs
+   */
+  private void mergeRunFiles() throws IOException {
+
+    while (this.runFiles.size() > MAX_MERGE_RUNS) {
+
+      final List<File> toMerge =
+          new ArrayList<>(this.runFiles.subList(0, MAX_MERGE_RUNS));
+      final List<RunReader> runs = new ArrayList<>();
+
+      try {
+        for (File runFile : toMerge) {
+          runs.add(new FileRunReader(runFile, this.compress));
+        }
+
+        this.runFiles.add(writeRun(merge(runs)));
+
+      } finally {
+        for (RunReader run : runs) {
+          run.close();
+        }
+      }
+
+      for (File runFile : toMerge) {
+        if (!runFile.delete()) {
+          getLogger().warning(
+              "Can not delete sort run file: " + runFile.getAbsolutePath());
+        }
+      }
+      this.runFiles.removeAll(toMerge);
+    }
+  }
+
+  /**
+   * Get an iterator over the sorted entries. This method can only be called
+   * once.
+   * @return an iterator over the sorted entries
+   * @throws IOException if an error occurs while opening the runs
+   */
+  public Iterator<Entry> sortedIterator() throws IOException {
+
+    if (this.sorted) {
+      throw new IllegalStateException("The entries have already been sorted");
+    }
+    this.sorted = true;
+
+    Collections.sort(this.entries);
+    mergeRunFiles();
+
+    final List<RunReader> runs = new ArrayList<>();
+    runs.add(new MemoryRunReader(this.entries));
+    for (File runFile : this.runFiles) {
+      runs.add(new FileRunReader(runFile, this.compress));
+    }
+    this.openedRuns.addAll(runs);
+
+    return merge(runs);
+  }
+
+  /**
+   * Merge sorted runs.
+   * @param runs the runs to merge
+   * @return an iterator over the merged entries
+   * @throws IOException if an error occurs while reading the runs
+   */
+  private static Iterator<Entry> merge(final List<RunReader> runs)
+      throws IOException {
+
+    final PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size());
+
+    for (RunReader run : runs) {
+      if (run.advance()) {
+        queue.add(run);
+      }
+    }
+
+    return new Iterator<Entry>() {
+
+      @Override
+      public boolean hasNext() {
+
+        return !queue.isEmpty();
+      }
+
+      @Override
+      public Entry next() {
+
+        final RunReader run = queue.poll();
+
+        if (run == null) {
+          throw new NoSuchElementException();
+        }
+
+        final Entry result = run.current;
+
+        try {
+          if (run.advance()) {
+            queue.add(run);
+          }
+        } catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+
+        return result;
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  /**
+   * Close the sorter and remove the run files.
+   */
+  @Override
+  public void close() throws IOException {
+
+    for (RunReader run : this.openedRuns) {
+      run.close();
+    }
+    this.openedRuns.clear();
+
+    for (File runFile : this.runFiles) {
+      if (!runFile.delete()) {
+        getLogger().warning(
+            "Can not delete sort run file: " + runFile.getAbsolutePath());
+      }
+    }
+    this.runFiles.clear();
+    this.entries.clear();
+  }
+
+  //
+  // Encoding methods
+  //
+
+  private static void writeString(final OutputStream out, final String s)
+      throws IOException {
+
+    final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+
+    writeVarInt(out, bytes.length);
+    out.write(bytes);
+  }
+
+  private static void writeVarInt(final OutputStream out, final int value)
+      throws IOException {
+
+    int v = value;
+
+    while ((v & ~0x7f) != 0) {
+      out.write((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+
+    out.write(v);
+  }
+
+  private static int readVarInt(final InputStream in) throws IOException {
+
+    int result = 0;
+    int shift = 0;
+
+    while (true) {
+
+      final int b = in.read();
+
+      if (b == -1) {
+
+        if (shift == 0) {
+          return -1;
+        }
+        throw new EOFException("Unexpected end of sort run file");
+      }
+
+      result |= (b & 0x7f) << shift;
+
+      if ((b & 0x80) == 0) {
+        return result;
+      }
+
+      shift += 7;
+    }
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param tmpDir temporary directory for the runs. If null the default
+   *          temporary directory will be used
+   */
+  public ExternalSorter(final File tmpDir) {
+
+    this(tmpDir, DEFAULT_SPILL_THRESHOLD, false);
+  }
+
+  /**
+   * Constructor.
+   * @param tmpDir temporary directory for the runs. If null the default
+   *          temporary directory will be used
+   * @param spillThreshold maximal memory in bytes used by the entries before a
+   *          spill
+   * @param compress true if the runs must be compressed
+   */
+  public ExternalSorter(final File tmpDir, final long spillThreshold,
+      final boolean compress) {
+
+    if (spillThreshold < 1) {
+      throw new IllegalArgumentException(
+          "Invalid spill threshold: " + spillThreshold);
+    }
+
+    this.tmpDir = tmpDir;
+    this.spillThreshold = spillThreshold;
+    this.compress = compress;
+  }
+
+}
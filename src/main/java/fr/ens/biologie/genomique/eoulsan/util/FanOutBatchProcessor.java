@@ -0,0 +1,298 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.util;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * This class allow to process the same elements by several consumers running
+ * in their own thread. The elements are added in batches that are published to
+ * a bounded queue for each consumer, so each consumer receive all the
+ * elements in the order of their addition. The producer is blocked when a
+ * consumer is too slow.
+ * @param <E> type of the elements
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FanOutBatchProcessor<E> implements AutoCloseable {
+
+  /** Default number of elements in a batch. */
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  /** Default number of batches in the queue of a consumer. */
+  public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+  // Batch that marks the end of the elements
+  private final List<E> endOfElements = new ArrayList<>(0);
+
+  private final int batchSize;
+  private final List<BlockingQueue<List<E>>> queues = new ArrayList<>();
+  private final ExecutorService executor;
+  private List<E> batch;
+  private volatile Throwable exception;
+  private boolean closed;
+
+  /**
+   * This interface define a consumer of batches of elements.
+   * @param <E> type of the elements
+   */
+  public interface BatchConsumer<E> {
+
+    /**
+     * Process a batch of elements.
+     * @param batch the batch to process
+     */
+    void process(List<E> batch);
+  }
+
+  /**
+   * This class define the task that feed a consumer with the batches of its
+   * queue.
+   */
+  private final class ConsumerTask implements Runnable {
+
+    private final BatchConsumer<E> consumer;
+    private final BlockingQueue<List<E>> queue;
+
+    @Override
+    public void run() {
+
+      final List<E> end = FanOutBatchProcessor.this.endOfElements;
+
+      try {
+
+        List<E> batch;
+        while ((batch = this.queue.take()) != end) {
+
+          // After an error, the batches are only removed from the queue to
+          // not block the producer
+          if (FanOutBatchProcessor.this.exception == null) {
+            try {
+              this.consumer.process(batch);
+            } catch (RuntimeException | Error e) {
+              FanOutBatchProcessor.this.setException(e);
+            }
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    //
+    // Constructor
+    //
+
+    /**
+     * Constructor.
+     * @param consumer the consumer
+     * @param queue the queue of the consumer
+     */
+    ConsumerTask(final BatchConsumer<E> consumer,
+        final BlockingQueue<List<E>> queue) {
+
+      this.consumer = consumer;
+      this.queue = queue;
+    }
+  }
+
+  //
+  // Processing methods
+  //
+
+  /**
+   * Add an element to process.
+   * @param element the element to add
+   * @throws IOException if a consumer has failed or if the thread has been
+   *           interrupted
+   */
+  public void add(final E element) throws IOException {
+
+    checkState();
+
+    this.batch.add(element);
+
+    if (this.batch.size() == this.batchSize) {
+      publish(this.batch);
+      this.batch = new ArrayList<>(this.batchSize);
+    }
+  }
+
+  /**
+   * Process the last elements and wait the end of the consumers.
+   * @throws IOException if a consumer has failed or if the thread has been
+   *           interrupted
+   */
+  @Override
+  public void close() throws IOException {
+
+    if (this.closed) {
+      return;
+    }
+
+    try {
+
+      if (!this.batch.isEmpty() && this.exception == null) {
+        publish(this.batch);
+      }
+      publish(this.endOfElements);
+
+      this.executor.shutdown();
+      while (!this.executor.awaitTermination(1, TimeUnit.SECONDS)) {
+        // Wait the end of the consumers
+      }
+
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } finally {
+      this.closed = true;
+      this.batch = null;
+      this.executor.shutdownNow();
+    }
+
+    checkException();
+  }
+
+  //
+  // Other methods
+  //
+
+  /**
+   * Publish a batch to the queues of all the consumers.
+   * @param batch the batch to publish
+   * @throws InterruptedIOException if the thread has been interrupted
+   */
+  private void publish(final List<E> batch) throws InterruptedIOException {
+
+    try {
+      for (BlockingQueue<List<E>> queue : this.queues) {
+        queue.put(batch);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
+  private synchronized void setException(final Throwable e) {
+
+    if (this.exception == null) {
+      this.exception = e;
+    }
+  }
+
+  private void checkState() throws IOException {
+
+    if (this.closed) {
+      throw new IOException("The processor is closed");
+    }
+
+    checkException();
+  }
+
+  private void checkException() throws IOException {
+
+    final Throwable e = this.exception;
+
+    if (e != null) {
+      throw new IOException(
+          "Error while processing elements: " + e.getMessage(), e);
+    }
+  }
+
+  //
+  // Constructors
+  //
+
+  /**
+   * Constructor.
+   * @param consumers the consumers of the elements
+   */
+  public FanOutBatchProcessor(
+      final List<? extends BatchConsumer<E>> consumers) {
+
+    this(consumers, DEFAULT_BATCH_SIZE, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  /**
+   * Constructor.
+   * @param consumers the consumers of the elements
+   * @param batchSize the number of elements in a batch
+   * @param queueCapacity the number of batches in the queue of a consumer
+   */
+  public FanOutBatchProcessor(final List<? extends BatchConsumer<E>> consumers,
+      final int batchSize, final int queueCapacity) {
+
+    if (consumers == null) {
+      throw new NullPointerException("consumers argument cannot be null");
+    }
+
+    if (consumers.isEmpty()) {
+      throw new IllegalArgumentException("consumers argument cannot be empty");
+    }
+
+    if (batchSize < 1) {
+      throw new IllegalArgumentException(
+          "batchSize must be greater than 0: " + batchSize);
+    }
+
+    if (queueCapacity < 1) {
+      throw new IllegalArgumentException(
+          "queueCapacity must be greater than 0: " + queueCapacity);
+    }
+
+    for (BatchConsumer<E> consumer : consumers) {
+      if (consumer == null) {
+        throw new NullPointerException("consumer cannot be null");
+      }
+    }
+
+    this.batchSize = batchSize;
+    this.batch = new ArrayList<>(batchSize);
+    this.executor = Executors.newFixedThreadPool(consumers.size(),
+        new ThreadFactoryBuilder().setDaemon(true)
+            .setNameFormat("fan-out-consumer-%d").build());
+
+    for (BatchConsumer<E> consumer : consumers) {
+
+      final BlockingQueue<List<E>> queue =
+          new ArrayBlockingQueue<>(queueCapacity);
+      this.queues.add(queue);
+      this.executor.execute(new ConsumerTask(consumer, queue));
+    }
+  }
+
+}
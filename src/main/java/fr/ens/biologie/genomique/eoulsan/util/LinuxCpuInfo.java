@@ -86,6 +86,27 @@ public class LinuxCpuInfo extends LinuxInfo {
     return get("cpu cores");
   }
 
+  /**
+   * Get the number of logical processors of the system. The processors are
+   * numbered from 0 in the cpuinfo file and the last entry is kept by the
+   * parser.
+   * @return the number of logical processors or -1 if unknown
+   */
+  public int getProcessorCount() {
+
+    final String value = getProcessor();
+
+    if (value == null) {
+      return -1;
+    }
+
+    try {
+      return Integer.parseInt(value.trim()) + 1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
   //
   // Constructor
   //
@@ -50,6 +50,29 @@ public class LinuxMemInfo extends LinuxInfo {
     return get("MemTotal");
   }
 
+  /**
+   * Get the total memory of the system in MiB.
+   * @return the total memory of the system in MiB or -1 if the value is not
+   *         available
+   */
+  public int getMemTotalInMiB() {
+
+    final String value = getMemTotal();
+
+    if (value == null) {
+      return -1;
+    }
+
+    // The value is in kB
+    final String[] fields = value.trim().split("\\s+");
+
+    try {
+      return (int) (Long.parseLong(fields[0]) / 1024);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
   //
   // Constructor
   //
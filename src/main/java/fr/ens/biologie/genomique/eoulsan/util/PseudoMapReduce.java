@@ -24,8 +24,6 @@
 
 package fr.ens.biologie.genomique.eoulsan.util;
 
-import static fr.ens.biologie.genomique.eoulsan.EoulsanLogger.getLogger;
-
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
@@ -35,15 +33,15 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.nio.charset.Charset;
-import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
 
 /**
- * This class implements a pseudo map-reduce framework.
+ * This class implements a pseudo map-reduce framework. The output of the
+ * mappers is sorted in the JVM using an external merge sort with a bounded
+ * memory usage.
  * @since 1.0
  * @author Laurent Jourdren
  */
@@ -54,95 +52,72 @@ public abstract class PseudoMapReduce {
       Charset.forName(System.getProperty("file.encoding"));
 
   private File tmpDir;
-  private final List<File> listMapOutputFile = new ArrayList<>();
+  private long spillThreshold = ExternalSorter.DEFAULT_SPILL_THRESHOLD;
+  private boolean compressSpills;
 
-  private File sortOutputFile;
+  private ExternalSorter sorter;
   private final LocalReporter reporter = new LocalReporter();
 
   /**
-   * This class avoid storing repeated entries of a list in memory.
-   * @author Laurent Jourdren
+   * This class define an iterator over the values of a key of the sorted
+   * entries.
    */
-  private static final class RepeatedEntriesList<E> extends AbstractList<E> {
+  private static final class GroupValuesIterator implements Iterator<String> {
 
-    private int count;
-    private final Map<E, Integer> map = new LinkedHashMap<>();
+    private final Iterator<ExternalSorter.Entry> it;
+    private final String key;
+    private ExternalSorter.Entry pending;
 
     @Override
-    public E get(final int index) {
+    public boolean hasNext() {
 
-      throw new UnsupportedOperationException();
+      return this.pending != null && this.key.equals(this.pending.getKey());
     }
 
     @Override
-    public int size() {
+    public String next() {
 
-      return this.count;
-    }
-
-    @Override
-    public boolean add(final E e) {
-
-      if (this.map.containsKey(e)) {
-
-        final int count = this.map.get(e);
-        this.map.put(e, count + 1);
-
-        return true;
+      if (!hasNext()) {
+        throw new NoSuchElementException();
       }
-      this.map.put(e, 1);
 
-      return true;
+      final String result = this.pending.getValue();
+      this.pending = this.it.hasNext() ? this.it.next() : null;
+
+      return result;
     }
 
     @Override
-    public Iterator<E> iterator() {
-
-      return new Iterator<E>() {
-
-        private final Iterator<Map.Entry<E, Integer>> it =
-            RepeatedEntriesList.this.map.entrySet().iterator();
-        private E currentValue;
-        private int currentCount;
-
-        @Override
-        public boolean hasNext() {
-
-          return this.it.hasNext() || this.currentCount > 0;
-        }
-
-        @Override
-        public E next() {
-
-          if (this.currentCount == 0) {
-
-            if (!this.it.hasNext()) {
-              return null;
-            }
-
-            final Map.Entry<E, Integer> e = this.it.next();
-            this.currentValue = e.getKey();
-            this.currentCount = e.getValue();
-          }
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
 
-          this.currentCount--;
-          return this.currentValue;
-        }
+    /**
+     * Skip the values of the key that has not been read.
+     * @return the first entry of the next key or null if there is no more
+     *         entries
+     */
+    ExternalSorter.Entry skipToNextKey() {
 
-        @Override
-        public void remove() {
-          throw new UnsupportedOperationException();
-        }
+      while (hasNext()) {
+        next();
+      }
 
-      };
+      return this.pending;
     }
 
-    @Override
-    public void clear() {
-
-      this.map.clear();
+    /**
+     * Constructor.
+     * @param it iterator over the sorted entries
+     * @param first first entry of the key
+     */
+    GroupValuesIterator(final Iterator<ExternalSorter.Entry> it,
+        final ExternalSorter.Entry first) {
+
+      this.it = it;
+      this.key = first.getKey();
+      this.pending = first;
     }
-
   }
 
   //
@@ -200,17 +175,9 @@ public abstract class PseudoMapReduce {
     doMap(FileUtils.createInputStream(inputFile));
   }
 
-  protected File getMapOutputTempFile() throws IOException {
-
-    final File outputFile = File.createTempFile("map-", ".txt", this.tmpDir);
-    this.listMapOutputFile.add(outputFile);
-
-    return outputFile;
-  }
-
   /**
-   * Execute the map phase with an InputStream as input Create a list of file :
-   * one for each index file used
+   * Execute the map phase with an InputStream as input. The output of the
+   * mapper is added to the entries to sort.
    * @param is input stream for the mapper
    */
   public void doMap(final InputStream is) throws IOException {
@@ -221,32 +188,40 @@ public abstract class PseudoMapReduce {
 
     this.reporter.clear();
 
+    if (this.sorter == null) {
+      this.sorter = new ExternalSorter(this.tmpDir, this.spillThreshold,
+          this.compressSpills);
+    }
+
     final BufferedReader br =
         new BufferedReader(new InputStreamReader(is, CHARSET));
-    final UnSynchronizedBufferedWriter bw =
-        FileUtils.createFastBufferedWriter(getMapOutputTempFile());
 
     final List<String> results = new ArrayList<>();
     String line;
 
-    final StringBuilder sb = new StringBuilder();
+    try {
+      while ((line = br.readLine()) != null) {
+
+        map(line, results, this.reporter);
 
-    while ((line = br.readLine()) != null) {
+        for (String r : results) {
 
-      map(line, results, this.reporter);
+          final int indexFirstTab = r.indexOf('\t');
 
-      for (String r : results) {
-        sb.setLength(0);
-        sb.append(r);
-        sb.append('\n');
-        bw.write(sb.toString());
-      }
+          // Do not process entries without key
+          if (indexFirstTab == -1) {
+            continue;
+          }
 
-      results.clear();
-    }
+          this.sorter.add(r.substring(0, indexFirstTab),
+              r.substring(indexFirstTab + 1));
+        }
 
-    br.close();
-    bw.close();
+        results.clear();
+      }
+    } finally {
+      br.close();
+    }
   }
 
   //
@@ -272,50 +247,28 @@ public abstract class PseudoMapReduce {
   }
 
   /**
-   * Sort several files in sortOutputFile
-   * @return true if success sort
-   * @throws IOException
+   * Set the maximal memory used to store the output of the mappers before
+   * writing a sorted run in the temporary directory.
+   * @param spillThreshold the threshold in bytes
    */
-  private boolean sort() throws IOException {
-
-    this.sortOutputFile = File.createTempFile("sort-", ".txt", this.tmpDir);
+  public void setSpillThreshold(final long spillThreshold) {
 
-    // Create command line to execute
-    final List<String> command = new ArrayList<>();
-    command.add("sort");
-
-    // Set the temporary directory if needed
-    if (this.tmpDir != null) {
-      command.add("-T");
-      command.add(this.tmpDir.getAbsolutePath());
-    }
-
-    // Set the output file
-    command.add("-o");
-    command.add(this.sortOutputFile.getAbsolutePath());
-
-    // Set the files to sort
-    for (File mapOutputFile : this.listMapOutputFile) {
-      command.add(mapOutputFile.getAbsolutePath());
+    if (spillThreshold < 1) {
+      throw new IllegalArgumentException(
+          "Invalid spill threshold: " + spillThreshold);
     }
 
-    // Execute command
-    final boolean result;
-    try {
-      result = new ProcessBuilder(command).start().waitFor() == 0;
-    } catch (InterruptedException e) {
-      throw new IOException(e);
-    }
+    this.spillThreshold = spillThreshold;
+  }
 
-    // Remove temporary map output files
-    for (File mapOutputFile : this.listMapOutputFile) {
-      if (!mapOutputFile.delete()) {
-        getLogger().warning("Can not delete map output file: "
-            + mapOutputFile.getAbsolutePath());
-      }
-    }
+  /**
+   * Set if the sorted runs written in the temporary directory must be
+   * compressed.
+   * @param compress true to compress the sorted runs
+   */
+  public void setCompressSpills(final boolean compress) {
 
-    return result;
+    this.compressSpills = compress;
   }
 
   //
@@ -345,72 +298,38 @@ public abstract class PseudoMapReduce {
       throw new NullPointerException("The output stream is null.");
     }
 
-    if (!sort()) {
-      throw new IOException("Unable to sort/shuffle data.");
-    }
-
-    // Create reader
-    final BufferedReader br =
-        FileUtils.createBufferedReader(this.sortOutputFile);
+    final ExternalSorter sorter = this.sorter != null
+        ? this.sorter : new ExternalSorter(this.tmpDir);
+    this.sorter = null;
 
     // Create writer
     final BufferedWriter bw =
         new BufferedWriter(new OutputStreamWriter(os, CHARSET));
 
-    String line = null;
-    String currentKey = null;
-    final List<String> values = new RepeatedEntriesList<>();
     final List<String> results = new ArrayList<>();
 
-    final StringBuilder sb = new StringBuilder();
-
-    while ((line = br.readLine()) != null) {
-
-      final int indexFirstTab = line.indexOf('\t');
-
-      // Do not process line
-      if (line.isEmpty() || indexFirstTab == -1) {
-        continue;
-      }
+    try {
 
-      final String key = line.substring(0, indexFirstTab);
-      final String value = line.substring(indexFirstTab + 1);
+      final Iterator<ExternalSorter.Entry> it = sorter.sortedIterator();
+      ExternalSorter.Entry next = it.hasNext() ? it.next() : null;
 
-      if (currentKey == null) {
-        currentKey = key;
-      } else if (!key.equals(currentKey)) {
+      while (next != null) {
 
-        reduce(currentKey, values.iterator(), results, this.reporter);
+        final GroupValuesIterator values = new GroupValuesIterator(it, next);
+        reduce(next.getKey(), values, results, this.reporter);
+        next = values.skipToNextKey();
 
         for (String result : results) {
-          sb.setLength(0);
-          sb.append(result);
-          sb.append('\n');
-          bw.write(sb.toString());
+          bw.write(result);
+          bw.write('\n');
         }
 
         results.clear();
-        values.clear();
-        currentKey = key;
       }
 
-      values.add(value);
-    }
-
-    // Process lasts values
-    if (currentKey != null) {
-      reduce(currentKey, values.iterator(), results, this.reporter);
-    }
-
-    for (String result : results) {
-      bw.write(result);
-    }
-
-    br.close();
-    bw.close();
-    if (!this.sortOutputFile.delete()) {
-      getLogger().warning("Can not delete sort output file: "
-          + this.sortOutputFile.getAbsolutePath());
+    } finally {
+      bw.close();
+      sorter.close();
     }
   }
 
@@ -0,0 +1,137 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio;
+
+import static fr.ens.biologie.genomique.eoulsan.util.StatUtils.mean;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * This class test the ByteReadSequence class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ByteReadSequenceTest {
+
+  @Test
+  public void testSet() {
+
+    final ByteReadSequence read = new ByteReadSequence();
+    final ByteBuffer buffer =
+        ByteBuffer.wrap("xx@read1\nATGC\n+\nIIJJ\n".getBytes());
+
+    read.set(5, buffer, 3, 5, 9, 4, 16, 4);
+    assertEquals(5, read.getId());
+    assertEquals("read1", read.getName());
+    assertEquals("ATGC", read.getSequence());
+    assertEquals("IIJJ", read.getQuality());
+    assertEquals(4, read.length());
+    assertEquals('G', read.getSequenceByte(2));
+    assertEquals('J', read.getQualityByte(2));
+    assertEquals(41, read.getQualityScore(2));
+
+    // Read-only buffers do not give access to their array
+    read.set(6, buffer.asReadOnlyBuffer(), 3, 5, 9, 4, 16, 4);
+    assertEquals("read1", read.getName());
+    assertEquals("ATGC", read.getSequence());
+
+    // Arrays must grow with long reads
+    final String longSequence = new String(new char[1000]).replace('\0', 'A');
+    final ReadSequence rs = new ReadSequence(7, "long", longSequence,
+        longSequence.replace('A', 'I'), FastqFormat.FASTQ_SOLEXA);
+    read.set(rs);
+    assertEquals(7, read.getId());
+    assertEquals(longSequence, read.getSequence());
+    assertEquals(FastqFormat.FASTQ_SOLEXA, read.getFastqFormat());
+    assertEquals(rs, read.toReadSequence());
+  }
+
+  @Test
+  public void testTrim() throws IOException {
+
+    final ByteReadSequence read = new ByteReadSequence();
+    read.set(new ReadSequence(0, "read1", "ATGCATGC", "ABCDEFGH"));
+
+    read.trim(1, 7);
+    assertEquals("TGCATG", read.getSequence());
+    assertEquals("BCDEFG", read.getQuality());
+
+    read.trim(2, 4);
+    assertEquals("CA", read.getSequence());
+    assertEquals("DE", read.getQuality());
+    assertEquals('A', read.getSequenceByte(1));
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    read.writeFastq(os);
+    assertEquals(read.toReadSequence().toFastQ() + '\n',
+        new String(os.toByteArray()));
+
+    try {
+      read.trim(0, 3);
+      fail();
+    } catch (StringIndexOutOfBoundsException e) {
+      // Expected exception
+    }
+
+    read.trim(1, 1);
+    assertEquals(0, read.length());
+  }
+
+  @Test
+  public void testQualityAndValidation() {
+
+    final ByteReadSequence read = new ByteReadSequence();
+
+    for (String[] r : new String[][] {{"read1", "ATGCN", "IIIII"},
+        {"read1", "ATGCX", "IIIII"}, {"read1", "ATGC", "IIIII"},
+        {"", "ATGC", "IIII"}, {"read1", "AtgC", "I!5I"},
+        {"read1", "ATGC", "II I"}, {"read1", "", ""}}) {
+
+      final ReadSequence rs = new ReadSequence(0, r[0], r[1], r[2]);
+      read.set(rs);
+
+      assertEquals(rs.validate(), read.validate());
+
+      if (r[1].length() == r[2].length() && r[1].length() > 0) {
+        assertEquals(mean(rs.qualityScores()), read.meanQuality(), 0.0);
+      }
+    }
+
+    read.set(new ReadSequence(0, "read1", "ATGC", "II#I"));
+    assertTrue(read.validate());
+    read.setFastqFormat(FastqFormat.FASTQ_ILLUMINA);
+    assertFalse(read.validate());
+    assertTrue(Double.isNaN(new ByteReadSequence().meanQuality()));
+  }
+
+}
@@ -172,6 +172,37 @@ public class FastqFormatTest {
 
   }
 
+  @Test
+  public void testTables() {
+
+    for (FastqFormat format : FastqFormat.values()) {
+
+      final double[] probabilities = format.getProbabilityTable();
+
+      assertEquals(256, probabilities.length);
+
+      for (char c = 0; c < 256; c++) {
+
+        final int score = c - format.getAsciiOffset();
+        assertEquals(format.getProbability(c), probabilities[c], 0.0);
+
+        final double expected = format.isPhredScore()
+            ? Math.pow(10.0, score / -10.0)
+            : 1.0 / ((1.0 / Math.pow(10.0, -score / 10.0)) + 1.0);
+        assertEquals(expected, format.convertScoreToProbability(score), 0.0);
+      }
+
+      // The returned table is a copy
+      probabilities[65] = -1.0;
+      assertEquals(format.getProbability((char) 65),
+          format.getProbabilityTable()[65], 0.0);
+    }
+
+    // Out of the range of the tables
+    assertEquals(Math.pow(10.0, 300 / -10.0),
+        FASTQ_SANGER.convertScoreToProbability(300), 0.0);
+  }
+
   @Test
   public void testConvertProbabilitytoScore() {
 
@@ -0,0 +1,261 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.Globals;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastaLineParser;
+
+/**
+ * This class test the GenomeFastaScanner class against a line by line parsing
+ * of the FASTA files.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class GenomeFastaScannerTest {
+
+  @Test
+  public void testScan() throws IOException, BadBioEntryException {
+
+    final Random random = new Random(7);
+
+    for (int i = 0; i < 20; i++) {
+
+      final String fasta = createFasta(random, 1 + random.nextInt(8));
+
+      checkScan(fasta, false);
+      checkScan("##gff-version 3\nchr1\t.\tgene\t1\t10\t.\t+\t.\tID=g1\n"
+          + "##FASTA\n" + fasta, true);
+    }
+
+    // Empty files
+    checkScan("", false);
+    checkScan("\n\n", false);
+    checkScan("##gff-version 3\n", true);
+  }
+
+  @Test
+  public void testErrors() throws IOException {
+
+    checkError(">chr1\nACGT\nACXT\n", false);
+    checkError(">chr1 desc\nACGT\n>chr2\nAC GT\n", false);
+    checkError("ACGT\n>chr1\nACGT\n", false);
+    checkError(">chr1\nACGT\n>chr2\nAAAA\n>chr1\nCCCC\n>chr3\nGGGG\n",
+        false);
+    checkError(">\nACGT\n", false);
+    checkError("> chr1\nACGT\n", false);
+    checkError("##FASTA\n>chr1\nACGT\nAC-T\n", true);
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static void checkScan(final String fasta, final boolean gffFormat)
+      throws IOException, BadBioEntryException {
+
+    final GenomeDescription expected = parseLineByLine(fasta, gffFormat);
+
+    for (int threads : new int[] {1, 3}) {
+      for (int chunkSize : new int[] {1, 7, 100,
+          GenomeFastaScanner.DEFAULT_CHUNK_SIZE}) {
+
+        assertEquals(expected.toString(),
+            new GenomeFastaScanner("genome", threads, chunkSize)
+                .scan(toStream(fasta), gffFormat).toString());
+
+        if (!gffFormat) {
+          assertEquals(expected.toString(),
+              new GenomeFastaScanner("genome", threads, chunkSize)
+                  .scan(toFile(fasta)).toString());
+        }
+      }
+    }
+  }
+
+  private static void checkError(final String fasta,
+      final boolean gffFormat) throws IOException {
+
+    final String expected;
+    try {
+      parseLineByLine(fasta, gffFormat);
+      fail();
+      return;
+    } catch (IOException | BadBioEntryException e) {
+      expected = e.getClass().getName() + ": " + e.getMessage();
+    }
+
+    for (int threads : new int[] {1, 3}) {
+      for (int chunkSize : new int[] {1, 5, 1000}) {
+
+        try {
+          new GenomeFastaScanner("genome", threads, chunkSize)
+              .scan(toStream(fasta), gffFormat);
+          fail();
+        } catch (IOException | BadBioEntryException e) {
+          assertEquals(expected,
+              e.getClass().getName() + ": " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  private static String createFasta(final Random random, final int count) {
+
+    final String bases = "ACGTNacgtnRYKMSWBDHV";
+    final String[] newLines = {"\n", "\r\n", "\r"};
+    final String newLine = newLines[random.nextInt(newLines.length)];
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < count; i++) {
+
+      sb.append(">chr" + i);
+      if (random.nextBoolean()) {
+        sb.append(" description of chr" + i + " \t");
+      }
+      sb.append(newLine);
+
+      final int lineLength = 1 + random.nextInt(80);
+      final int length = random.nextInt(2000);
+
+      for (int j = 0; j < length; j++) {
+
+        sb.append(bases.charAt(random.nextInt(bases.length())));
+
+        if (j % lineLength == lineLength - 1) {
+
+          if (random.nextInt(10) == 0) {
+            sb.append("  ");
+          }
+          sb.append(newLine);
+
+          if (random.nextInt(20) == 0) {
+            sb.append(newLine);
+          }
+        }
+      }
+      sb.append(newLine);
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * Compute the genome description with a line by line parsing.
+   */
+  private static GenomeDescription parseLineByLine(final String fasta,
+      final boolean gffFormat) throws IOException, BadBioEntryException {
+
+    final GenomeDescription result = new GenomeDescription();
+    result.setGenomeName("genome");
+
+    final MessageDigest md5Digest;
+    try {
+      md5Digest = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+
+    final FastaLineParser parser =
+        new FastaLineParser(toStream(fasta), gffFormat);
+    final Alphabet alphabet = Alphabets.AMBIGUOUS_DNA_ALPHABET;
+    String seqName = null;
+    String lastSeqName = null;
+    String parsedSeqName = null;
+    long chrSize = 0;
+
+    while ((seqName = parser.parseNextLineAndGetSequenceName()) != null) {
+
+      if (!seqName.equals(lastSeqName)) {
+
+        if (result.getSequenceLength(lastSeqName) != -1) {
+          throw new BadBioEntryException(
+              "Sequence name found twice: " + lastSeqName, lastSeqName);
+        }
+
+        if (lastSeqName != null) {
+          result.addSequence(parsedSeqName, chrSize);
+        }
+
+        parsedSeqName = GenomeDescription.parseChromosomeName(seqName);
+        md5Digest.update(parsedSeqName.getBytes(Globals.DEFAULT_CHARSET));
+
+        lastSeqName = seqName;
+        chrSize = 0;
+      }
+
+      final String sequence = parser.getSequence();
+
+      for (char c : sequence.toCharArray()) {
+        if (!alphabet.isLetterValid(c)) {
+          throw new BadBioEntryException("Invalid base in genome: " + c,
+              lastSeqName);
+        }
+      }
+
+      chrSize += sequence.length();
+      md5Digest.update(sequence.getBytes(Globals.DEFAULT_CHARSET));
+    }
+
+    if (lastSeqName != null) {
+      result.addSequence(parsedSeqName, chrSize);
+    }
+
+    result.setMD5Sum(new BigInteger(1, md5Digest.digest()).toString(16));
+
+    return result;
+  }
+
+  private static InputStream toStream(final String s) {
+
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  private static File toFile(final String s) throws IOException {
+
+    final File file = File.createTempFile("genome", ".fasta");
+    file.deleteOnExit();
+    Files.write(s.getBytes(StandardCharsets.ISO_8859_1), file);
+
+    return file;
+  }
+
+}
@@ -24,12 +24,14 @@
 
 package fr.ens.biologie.genomique.eoulsan.bio;
 
+import static fr.ens.biologie.genomique.eoulsan.util.StatUtils.mean;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.lang.reflect.Modifier;
@@ -196,6 +198,38 @@ public class ReadSequenceTest {
 
   }
 
+  @Test
+  public void testQualityScoresArray() {
+
+    assertNull(new ReadSequence().qualityScores(new int[4]));
+
+    final ReadSequence s = new ReadSequence(0, "read1", "ATGC", "!+5I");
+    final int[] array = new int[4];
+    assertSame(array, s.qualityScores(array));
+    assertArrayEquals(new int[] {0, 10, 20, 40}, array);
+    assertArrayEquals(new int[] {0, 10, 20, 40}, s.qualityScores(new int[3]));
+    assertArrayEquals(new int[] {0, 10, 20, 40}, s.qualityScores(null));
+
+    final double[] probabilities = new double[4];
+    assertSame(probabilities, s.errorProbabilities(probabilities));
+    assertArrayEquals(s.errorProbabilities(), probabilities, 0.0);
+  }
+
+  @Test
+  public void testMeanQuality() {
+
+    final ReadSequence s = new ReadSequence(0, "read1", "ATGC", "!+5I");
+    assertEquals(17.5, s.meanQuality(), 0.0);
+    assertEquals(mean(s.qualityScores()), s.meanQuality(), 0.0);
+
+    s.setFastqFormat(FastqFormat.FASTQ_SOLEXA);
+    s.setQuality("@JT^");
+    assertEquals(mean(s.qualityScores()), s.meanQuality(), 0.0);
+
+    s.setQuality("");
+    assertTrue(Double.isNaN(s.meanQuality()));
+  }
+
   @Test
   public void testErrorProbabilities() {
 
@@ -0,0 +1,203 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.expressioncounters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * This class test the CountTable class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class CountTableTest {
+
+  @Test
+  public void testAddCounts() {
+
+    final CountTable table = new CountTable();
+
+    final int s1 = table.addSample("s1");
+    final int f1 = table.addFeature("f1");
+    final int s2 = table.addSample("s2");
+
+    assertEquals(0, s1);
+    assertEquals(1, s2);
+    assertEquals(0, f1);
+    assertEquals(f1, table.addFeature("f1"));
+    assertEquals(-1, table.getFeatureOrdinal("f2"));
+
+    // Enlarge the columns
+    for (int i = 0; i < 5000; i++) {
+      table.addCount(s1, table.addFeature("g" + i), i);
+    }
+    table.addCount(s2, f1, 3);
+    table.addCount(s2, f1, 4);
+
+    assertEquals(5001, table.getFeatureCount());
+    assertEquals(2, table.getSampleCount());
+    assertEquals(7, table.getCount(s2, f1));
+    assertEquals(0, table.getCount(s1, f1));
+    assertEquals(4999, table.getCount(s1, table.getFeatureOrdinal("g4999")));
+    assertEquals(0, table.getCount(s2, table.getFeatureOrdinal("g4999")));
+
+    try {
+      table.addSample("s1");
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected exception
+    }
+
+    try {
+      table.getCount(s1, 5001);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected exception
+    }
+  }
+
+  @Test
+  public void testLoadAndWriteCounts() throws IOException {
+
+    final CountTable table = new CountTable();
+    final int sample = table.addSample("sample");
+
+    table.loadCounts(sample,
+        toStream("Id\tCount\ngene3\t5\ngene1\t0\n\ngene2\t2\n"), true, true);
+    table.loadCounts(sample, toStream("Id\tCount\ngene2\t3\ngene4\t1\n"),
+        true, true);
+
+    assertEquals("Id\tCount\ngene1\t0\ngene2\t5\ngene3\t5\ngene4\t1\n",
+        writeCounts(table, sample));
+
+    // Ignore unknown features
+    table.loadCounts(sample, toStream("gene1\t1\ngene5\t1\n"), false, false);
+
+    assertEquals("Id\tCount\ngene1\t1\ngene2\t5\ngene3\t5\ngene4\t1\n",
+        writeCounts(table, sample));
+
+    // Ignore invalid lines
+    table.loadCounts(sample,
+        toStream("gene1\tabc\ngene1 1\ngene6\t1\t2\ngene2\t1\n"), false,
+        true);
+
+    assertEquals("Id\tCount\ngene1\t1\ngene2\t6\ngene3\t5\ngene4\t1\n",
+        writeCounts(table, sample));
+  }
+
+  @Test
+  public void testWriteMatrix() throws IOException {
+
+    final CountTable table = new CountTable();
+
+    final int s1 = table.addSample("s1");
+    table.loadCounts(s1, toStream("b\t1\na\t2\n"), false, true);
+
+    final int s2 = table.addSample("s2");
+    table.loadCounts(s2, toStream("c\t3\na\t4\nb\t0\n"), false, true);
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    table.writeMatrix(os);
+
+    // Only the features with a count in all the samples are written
+    assertEquals("Id\ts1\ts2\na\t2\t4\nb\t1\t0\n",
+        new String(os.toByteArray(), StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testLoadExpressionFile() throws IOException {
+
+    final CountTable table = new CountTable();
+    final int sample = table.addSample("sample");
+
+    // Select the columns by name in the header
+    table.loadExpressionFile(sample,
+        toStream("Count\tId\tOther\n5\tgene2\tx\n\n3\tgene1\ty\n"), true);
+    assertEquals("Id\tCount\ngene1\t3\ngene2\t5\n",
+        writeCounts(table, sample));
+
+    // Use the two first columns without header
+    table.loadExpressionFile(sample, toStream("gene3\t1\n"), false);
+    assertEquals("Id\tCount\ngene1\t3\ngene2\t5\ngene3\t1\n",
+        writeCounts(table, sample));
+
+    for (String content : new String[] {"Name\tCount\ngene1\t1\n",
+        "Id\tCount\ngene1 1\n", "Id\tCount\ngene1\tabc\n", ""}) {
+
+      try {
+        table.loadExpressionFile(sample, toStream(content), true);
+        fail();
+      } catch (IOException e) {
+        // Expected exception
+      }
+    }
+  }
+
+  @Test
+  public void testSetCount() {
+
+    final CountTable table = new CountTable();
+    final int sample = table.addSample("sample");
+    final int f1 = table.addFeature("f1");
+
+    table.addCount(sample, f1, 3);
+    table.setCount(sample, f1, 2);
+    assertEquals(2, table.getCount(sample, f1));
+
+    try {
+      table.setCount(sample, 1, 2);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // Expected exception
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static InputStream toStream(final String s) {
+
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static String writeCounts(final CountTable table,
+      final int sampleIndex) throws IOException {
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    table.writeCounts(sampleIndex, os);
+
+    return new String(os.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+}
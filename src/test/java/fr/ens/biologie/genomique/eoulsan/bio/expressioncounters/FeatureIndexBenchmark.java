@@ -0,0 +1,224 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.expressioncounters;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.bio.GenomicArray;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomicInterval;
+
+/**
+ * This class define a benchmark that compare the FeatureIndex and the
+ * GenomicArray classes for the HTSeq counting: the time to load a GTF
+ * annotation, the memory used by the loaded annotation and the number of
+ * alignments that can be assigned to features per second. This class is not a
+ * test, it must be launched with its main() method. The argument is the path
+ * of a GTF file (e.g. a human GENCODE annotation) or the number of genes of a
+ * synthetic GTF file with 20 exons per gene on 24 chromosomes (20000 genes
+ * by default).
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FeatureIndexBenchmark {
+
+  private static final int CHROMOSOME_COUNT = 24;
+  private static final int CHROMOSOME_LENGTH = 100000000;
+  private static final int GENE_COUNT = 20000;
+  private static final int EXONS_PER_GENE = 20;
+  private static final int QUERY_COUNT = 1000000;
+  private static final int READ_LENGTH = 100;
+
+  /**
+   * Create a synthetic GTF file.
+   * @param file the output file
+   * @param geneCount the number of genes
+   * @throws IOException if an error occurs while writing the file
+   */
+  private static void createGTF(final File file, final int geneCount)
+      throws IOException {
+
+    final Random random = new Random(1);
+
+    try (Writer writer = Files.newWriter(file, StandardCharsets.UTF_8)) {
+
+      for (int i = 0; i < geneCount; i++) {
+
+        final String chromosome =
+            "chr" + (1 + random.nextInt(CHROMOSOME_COUNT));
+        final char strand = random.nextBoolean() ? '+' : '-';
+        int start = 1 + random.nextInt(CHROMOSOME_LENGTH - 1000000);
+
+        for (int j = 0; j < EXONS_PER_GENE; j++) {
+
+          final int end = start + 50 + random.nextInt(300);
+          writer.write(chromosome
+              + "\tbenchmark\texon\t" + start + '\t' + end + "\t.\t" + strand
+              + "\t.\tgene_id \"gene" + i + "\"; transcript_id \"transcript"
+              + i + "\";\n");
+          start = end + 100 + random.nextInt(5000);
+        }
+      }
+    }
+  }
+
+  /**
+   * Create the alignments to assign. The alignments are located at random
+   * positions of the chromosomes.
+   * @param random random generator
+   * @param chromosomes the chromosomes to use
+   * @return a list of alignments
+   */
+  private static List<List<GenomicInterval>> createQueries(
+      final Random random, final List<String> chromosomes) {
+
+    final List<List<GenomicInterval>> result = new ArrayList<>(QUERY_COUNT);
+
+    for (int i = 0; i < QUERY_COUNT; i++) {
+
+      final int start = 1 + random.nextInt(CHROMOSOME_LENGTH);
+      final List<GenomicInterval> ivSeq = new ArrayList<>(1);
+      ivSeq.add(new GenomicInterval(
+          chromosomes.get(random.nextInt(chromosomes.size())), start,
+          start + READ_LENGTH - 1, '.'));
+      result.add(ivSeq);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the memory used by the JVM after a garbage collection.
+   * @return the memory in MiB
+   */
+  private static long usedMemory() {
+
+    final Runtime runtime = Runtime.getRuntime();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+
+    return (runtime.totalMemory() - runtime.freeMemory()) / (1024 * 1024);
+  }
+
+  //
+  // Main method
+  //
+
+  public static void main(final String[] args) throws Exception {
+
+    final File gtfFile;
+    if (args.length > 0 && !args[0].matches("\\d+")) {
+      gtfFile = new File(args[0]);
+    } else {
+      gtfFile = File.createTempFile("benchmark-", ".gtf");
+      gtfFile.deleteOnExit();
+      createGTF(gtfFile,
+          args.length > 0 ? Integer.parseInt(args[0]) : GENE_COUNT);
+    }
+
+    System.out.println("Annotation: " + gtfFile);
+
+    // Load the annotation in a FeatureIndex
+    long memory = usedMemory();
+    long start = System.nanoTime();
+    final FeatureIndex.Builder builder = new FeatureIndex.Builder();
+    try (InputStream is = new FileInputStream(gtfFile)) {
+      HTSeqUtils.storeAnnotation(builder, is, true, "exon", StrandUsage.NO,
+          "gene_id", false);
+    }
+    final FeatureIndex index = builder.build();
+    System.out.println("FeatureIndex load: "
+        + (System.nanoTime() - start) / 1000000 + " ms, "
+        + (usedMemory() - memory) + " MiB, " + index.getFeatureCount()
+        + " features");
+
+    // Load the annotation in a GenomicArray
+    memory = usedMemory();
+    start = System.nanoTime();
+    final GenomicArray<String> array = new GenomicArray<>();
+    try (InputStream is = new FileInputStream(gtfFile)) {
+      HTSeqUtils.storeAnnotation(array, is, true, "exon", StrandUsage.NO,
+          "gene_id", false, new HashMap<String, Integer>());
+    }
+    System.out.println("GenomicArray load: "
+        + (System.nanoTime() - start) / 1000000 + " ms, "
+        + (usedMemory() - memory) + " MiB");
+
+    final List<String> chromosomes = new ArrayList<>();
+    for (String chromosome : index.getChromosomesNames()) {
+      if (array.containsChromosome(chromosome)) {
+        chromosomes.add(chromosome);
+      }
+    }
+    final List<List<GenomicInterval>> queries =
+        createQueries(new Random(2), chromosomes);
+
+    // Run the queries twice, the first run is a warm-up
+    for (int run = 0; run < 2; run++) {
+
+      final FeatureIndex.FeatureSet fs = index.newFeatureSet();
+      long assigned = 0;
+      start = System.nanoTime();
+      for (List<GenomicInterval> ivSeq : queries) {
+        HTSeqUtils.featuresOverlapped(ivSeq, index, OverlapMode.UNION,
+            StrandUsage.NO, fs);
+        assigned += fs.size();
+      }
+      final long indexTime = System.nanoTime() - start;
+
+      long assigned2 = 0;
+      start = System.nanoTime();
+      for (List<GenomicInterval> ivSeq : queries) {
+        assigned2 += HTSeqUtils.featuresOverlapped(ivSeq, array,
+            OverlapMode.UNION, StrandUsage.NO).size();
+      }
+      final long arrayTime = System.nanoTime() - start;
+
+      if (assigned != assigned2) {
+        throw new IllegalStateException(
+            "Different results: " + assigned + " " + assigned2);
+      }
+
+      if (run > 0) {
+        System.out.println("FeatureIndex queries: "
+            + QUERY_COUNT * 1000000000L / indexTime + " alignments/s");
+        System.out.println("GenomicArray queries: "
+            + QUERY_COUNT * 1000000000L / arrayTime + " alignments/s");
+      }
+    }
+  }
+
+}
@@ -0,0 +1,282 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.expressioncounters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomicArray;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomicInterval;
+
+/**
+ * This class test the FeatureIndex class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FeatureIndexTest {
+
+  private static final String[] CHROMOSOMES = {"chr1", "chr2"};
+
+  @Test
+  public void testFeatureIds() {
+
+    final FeatureIndex.Builder builder = new FeatureIndex.Builder();
+    builder.addEntry(new GenomicInterval("chr1", 10, 20, '+'), "c");
+    builder.addEntry(new GenomicInterval("chr1", 15, 30, '+'), "a");
+    builder.addEntry(new GenomicInterval("chr2", 1, 5, '-'), "b");
+    builder.addEntry(new GenomicInterval("chr2", 8, 9, '-'), "a");
+    builder.addChromosome("chr3");
+
+    assertEquals(3, builder.getFeatureCount());
+
+    final FeatureIndex index = builder.build();
+
+    assertEquals(3, index.getFeatureCount());
+    assertEquals("a", index.getFeatureId(0));
+    assertEquals("b", index.getFeatureId(1));
+    assertEquals("c", index.getFeatureId(2));
+    assertEquals(2, index.getFeatureOrdinal("c"));
+    assertEquals(-1, index.getFeatureOrdinal("d"));
+    assertTrue(index.containsChromosome("chr3"));
+    assertEquals(3, index.getChromosomesNames().size());
+  }
+
+  @Test
+  public void testFeaturesOverlapped() throws EoulsanException {
+
+    final FeatureIndex.Builder builder = new FeatureIndex.Builder();
+    builder.addEntry(new GenomicInterval("chr1", 1, 20, '+'), "a");
+    builder.addEntry(new GenomicInterval("chr1", 25, 45, '+'), "b");
+
+    final FeatureIndex index = builder.build();
+    final FeatureIndex.FeatureSet fs = index.newFeatureSet();
+    final List<GenomicInterval> ivSeq = new ArrayList<>();
+
+    ivSeq.add(new GenomicInterval("chr1", 15, 30, '+'));
+    HTSeqUtils.featuresOverlapped(ivSeq, index, OverlapMode.UNION,
+        StrandUsage.YES, fs);
+    assertEquals(2, fs.size());
+    assertEquals(0, fs.get(0));
+    assertEquals(1, fs.get(1));
+
+    HTSeqUtils.featuresOverlapped(ivSeq, index,
+        OverlapMode.INTERSECTION_NONEMPTY, StrandUsage.YES, fs);
+    assertEquals(0, fs.size());
+
+    ivSeq.clear();
+    ivSeq.add(new GenomicInterval("chr1", 30, 55, '+'));
+    HTSeqUtils.featuresOverlapped(ivSeq, index,
+        OverlapMode.INTERSECTION_NONEMPTY, StrandUsage.YES, fs);
+    assertEquals(1, fs.size());
+    assertEquals(1, fs.get(0));
+
+    HTSeqUtils.featuresOverlapped(ivSeq, index,
+        OverlapMode.INTERSECTION_STRICT, StrandUsage.YES, fs);
+    assertEquals(0, fs.size());
+
+    ivSeq.clear();
+    ivSeq.add(new GenomicInterval("chrX", 30, 55, '+'));
+    try {
+      HTSeqUtils.featuresOverlapped(ivSeq, index, OverlapMode.UNION,
+          StrandUsage.YES, fs);
+      fail();
+    } catch (EoulsanException e) {
+      assertTrue(true);
+    }
+  }
+
+  @Test
+  public void testSaveLoad() throws IOException, EoulsanException {
+
+    final Random random = new Random(7);
+    final FeatureIndex.Builder builder = new FeatureIndex.Builder();
+    builder.addChromosome("chr3");
+
+    for (int i = 0; i < 200; i++) {
+
+      final int start = 1 + random.nextInt(10000);
+      final char strand = random.nextBoolean() ? '+' : '-';
+      builder.addEntry(new GenomicInterval(CHROMOSOMES[random.nextInt(2)],
+          start, start + random.nextInt(500), strand),
+          "gène" + random.nextInt(50));
+    }
+
+    final FeatureIndex index = builder.build();
+
+    final File file = File.createTempFile("featureindex-", ".fidx");
+    try {
+      index.save(file);
+      final FeatureIndex loaded = FeatureIndex.load(file);
+
+      assertEquals(index.getFeatureIds(), loaded.getFeatureIds());
+      assertEquals(index.getChromosomesNames(), loaded.getChromosomesNames());
+
+      final FeatureIndex.FeatureSet fs1 = index.newFeatureSet();
+      final FeatureIndex.FeatureSet fs2 = loaded.newFeatureSet();
+      final List<GenomicInterval> ivSeq = new ArrayList<>();
+
+      for (int i = 0; i < 500; i++) {
+
+        final int start = 1 + random.nextInt(11000);
+        ivSeq.clear();
+        ivSeq.add(new GenomicInterval(CHROMOSOMES[random.nextInt(2)], start,
+            start + random.nextInt(100), random.nextBoolean() ? '+' : '-'));
+
+        for (OverlapMode mode : OverlapMode.values()) {
+
+          HTSeqUtils.featuresOverlapped(ivSeq, index, mode, StrandUsage.YES,
+              fs1);
+          HTSeqUtils.featuresOverlapped(ivSeq, loaded, mode, StrandUsage.YES,
+              fs2);
+          assertEquals(fs1.toString(), fs2.toString());
+        }
+      }
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testLoadInvalidFile() throws IOException {
+
+    final File file = File.createTempFile("featureindex-", ".fidx");
+    try {
+      Files.write(file.toPath(), new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+      FeatureIndex.load(file);
+    } finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * Compare the results of the FeatureIndex with the results of the
+   * GenomicArray on random annotations and alignments.
+   */
+  @Test
+  public void testSameResultsAsGenomicArray()
+      throws EoulsanException, IOException {
+
+    final Random random = new Random(42);
+
+    for (StrandUsage stranded : StrandUsage.values()) {
+      for (int run = 0; run < 20; run++) {
+        compareWithGenomicArray(random, stranded);
+      }
+    }
+  }
+
+  private static void compareWithGenomicArray(final Random random,
+      final StrandUsage stranded) throws EoulsanException, IOException {
+
+    final GenomicArray<String> ga = new GenomicArray<>();
+    final FeatureIndex.Builder builder = new FeatureIndex.Builder();
+
+    for (String chromosome : CHROMOSOMES) {
+      ga.addChromosome(chromosome);
+      builder.addChromosome(chromosome);
+    }
+
+    final int featureCount = 1 + random.nextInt(30);
+
+    for (int i = 0; i < featureCount; i++) {
+
+      final String featureId = "gene" + random.nextInt(featureCount);
+      final int start = 1 + random.nextInt(1000);
+      final int end = start + random.nextInt(100);
+      final GenomicInterval iv = new GenomicInterval(
+          CHROMOSOMES[random.nextInt(CHROMOSOMES.length)], start, end,
+          randomStrand(random, stranded));
+
+      ga.addEntry(iv, featureId);
+      builder.addEntry(iv, featureId);
+    }
+
+    final FeatureIndex index = builder.build();
+    final FeatureIndex.FeatureSet fs = index.newFeatureSet();
+
+    for (int i = 0; i < 200; i++) {
+
+      final List<GenomicInterval> ivSeq = new ArrayList<>();
+      final String chromosome =
+          CHROMOSOMES[random.nextInt(CHROMOSOMES.length)];
+      final char strand = stranded.isSaveStrandInfo()
+          ? (random.nextBoolean() ? '+' : '-') : '.';
+      int pos = 1 + random.nextInt(1100);
+
+      for (int j = random.nextInt(3); j >= 0; j--) {
+
+        final int end = pos + random.nextInt(50);
+        ivSeq.add(new GenomicInterval(chromosome, pos, end, strand));
+        pos = end + 1 + random.nextInt(100);
+      }
+
+      for (OverlapMode mode : OverlapMode.values()) {
+
+        final Set<String> expected = new TreeSet<>();
+        final Set<String> r =
+            HTSeqUtils.featuresOverlapped(ivSeq, ga, mode, stranded);
+        if (r != null) {
+          expected.addAll(r);
+        }
+
+        HTSeqUtils.featuresOverlapped(ivSeq, index, mode, stranded, fs);
+
+        final List<String> actual = new ArrayList<>();
+        for (int k = 0; k < fs.size(); k++) {
+          actual.add(index.getFeatureId(fs.get(k)));
+        }
+        Collections.sort(actual);
+
+        assertEquals(mode + " " + stranded + " " + ivSeq,
+            new ArrayList<>(expected), actual);
+      }
+    }
+  }
+
+  private static char randomStrand(final Random random,
+      final StrandUsage stranded) {
+
+    if (!stranded.isSaveStrandInfo()) {
+      return '.';
+    }
+
+    return random.nextBoolean() ? '+' : '-';
+  }
+
+}
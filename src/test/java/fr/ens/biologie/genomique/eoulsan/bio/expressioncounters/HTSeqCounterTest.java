@@ -0,0 +1,250 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.expressioncounters;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Strings;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters;
+import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
+
+/**
+ * This class test the multithreaded counting of the HTSeqCounter class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class HTSeqCounterTest {
+
+  private static final String COUNTER_GROUP = "expression";
+  private static final String[] CHROMOSOMES = {"chr1", "chr2"};
+  private static final int CHROMOSOME_LENGTH = 100000;
+  private static final int READ_LENGTH = 50;
+
+  private File dir;
+  private DataFile annotationFile;
+  private DataFile genomeDescFile;
+
+  @Before
+  public void setUp() throws IOException, EoulsanException {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+
+    this.dir = Files.createTempDirectory("htseqcountertest-").toFile();
+
+    final Random random = new Random(12);
+
+    // Create the genome description
+    final GenomeDescription desc = new GenomeDescription();
+    for (String chromosome : CHROMOSOMES) {
+      desc.addSequence(chromosome, CHROMOSOME_LENGTH);
+    }
+    final File genomeFile = new File(this.dir, "genome.txt");
+    desc.save(genomeFile);
+    this.genomeDescFile = new DataFile(genomeFile);
+
+    // Create the annotation
+    final File gffFile = new File(this.dir, "annotation.gff");
+    try (Writer writer = new FileWriter(gffFile)) {
+
+      writer.write("##gff-version 3\n");
+      for (int i = 0; i < 300; i++) {
+
+        final int start = 1 + random.nextInt(CHROMOSOME_LENGTH - 2000);
+        final int end = start + 100 + random.nextInt(1000);
+        writer.write(CHROMOSOMES[random.nextInt(CHROMOSOMES.length)]
+            + "\ttest\texon\t" + start + '\t' + end + "\t.\t"
+            + (random.nextBoolean() ? '+' : '-') + "\t.\tParent=gene"
+            + random.nextInt(200) + '\n');
+      }
+    }
+    this.annotationFile = new DataFile(gffFile);
+  }
+
+  @After
+  public void tearDown() {
+
+    for (File f : this.dir.listFiles()) {
+      f.delete();
+    }
+    this.dir.delete();
+  }
+
+  @Test
+  public void testSingleEndThreads()
+      throws IOException, EoulsanException, BadBioEntryException {
+
+    final DataFile samFile = createSAMFile(false, 25000);
+
+    for (StrandUsage stranded : StrandUsage.values()) {
+      for (OverlapMode mode : OverlapMode.values()) {
+        compareCounts(samFile, stranded, mode, true);
+        compareCounts(samFile, stranded, mode, false);
+      }
+    }
+  }
+
+  @Test
+  public void testPairedEndThreads()
+      throws IOException, EoulsanException, BadBioEntryException {
+
+    final DataFile samFile = createSAMFile(true, 15000);
+
+    for (StrandUsage stranded : StrandUsage.values()) {
+      for (OverlapMode mode : OverlapMode.values()) {
+        compareCounts(samFile, stranded, mode, true);
+        compareCounts(samFile, stranded, mode, false);
+      }
+    }
+  }
+
+  private void compareCounts(final DataFile samFile,
+      final StrandUsage stranded, final OverlapMode mode,
+      final boolean removeAmbiguousCases)
+      throws IOException, EoulsanException, BadBioEntryException {
+
+    final LocalReporter reporter1 = new LocalReporter();
+    final LocalReporter reporter4 = new LocalReporter();
+
+    final File out1 = count(samFile, stranded, mode, removeAmbiguousCases, 1,
+        reporter1, "counts1.tsv");
+    final File out4 = count(samFile, stranded, mode, removeAmbiguousCases, 4,
+        reporter4, "counts4.tsv");
+
+    assertArrayEquals(stranded + " " + mode,
+        Files.readAllBytes(out1.toPath()), Files.readAllBytes(out4.toPath()));
+
+    for (ExpressionCounters c : ExpressionCounters.values()) {
+      assertEquals(c.counterName(),
+          reporter1.getCounterValue(COUNTER_GROUP, c.counterName()),
+          reporter4.getCounterValue(COUNTER_GROUP, c.counterName()));
+    }
+  }
+
+  private File count(final DataFile samFile, final StrandUsage stranded,
+      final OverlapMode mode, final boolean removeAmbiguousCases,
+      final int threads, final LocalReporter reporter, final String filename)
+      throws IOException, EoulsanException, BadBioEntryException {
+
+    final File outFile = new File(this.dir, filename);
+
+    final ExpressionCounter counter = new HTSeqCounter();
+    counter.init("exon", "Parent", reporter, COUNTER_GROUP);
+    counter.setStranded(stranded);
+    counter.setOverlapMode(mode);
+    counter.setRemoveAmbiguousCases(removeAmbiguousCases);
+    counter.setTempDirectory(this.dir.getAbsolutePath());
+    counter.setThreadsNumber(threads);
+
+    counter.count(samFile, this.annotationFile, false, new DataFile(outFile),
+        this.genomeDescFile);
+
+    return outFile;
+  }
+
+  private DataFile createSAMFile(final boolean pairedEnd, final int count)
+      throws IOException {
+
+    final Random random = new Random(pairedEnd ? 1 : 2);
+    final File file = new File(this.dir, pairedEnd ? "pe.sam" : "se.sam");
+
+    final String sequence = Strings.repeat("A", READ_LENGTH);
+    final String quality = Strings.repeat("I", READ_LENGTH);
+
+    try (Writer writer = new FileWriter(file)) {
+
+      writer.write("@HD\tVN:1.4\n");
+      for (String chromosome : CHROMOSOMES) {
+        writer.write(
+            "@SQ\tSN:" + chromosome + "\tLN:" + CHROMOSOME_LENGTH + '\n');
+      }
+
+      for (int i = 0; i < count; i++) {
+
+        final String chromosome =
+            CHROMOSOMES[random.nextInt(CHROMOSOMES.length)];
+        final int pos = 1 + random.nextInt(CHROMOSOME_LENGTH - 1000);
+        final int mate = pos + random.nextInt(300);
+        final boolean reverse = random.nextBoolean();
+        final boolean unmapped = random.nextInt(20) == 0;
+        final int nh = random.nextInt(10) == 0 ? 2 : 1;
+        final String cigar = random.nextInt(5) == 0 ? "20M100N30M" : "50M";
+
+        if (!pairedEnd) {
+          final int flag = (unmapped ? 4 : 0) | (reverse ? 16 : 0);
+          writer.write(samLine("read" + i, flag, chromosome, pos, cigar, nh,
+              "*", 0, sequence, quality));
+          continue;
+        }
+
+        final int flag1 = 1 | 64 | (reverse ? 16 : 32) | (unmapped ? 4 : 0);
+        final int flag2 = 1 | 128 | (reverse ? 32 : 16);
+
+        writer.write(samLine("read" + i, flag1, chromosome, pos, cigar, nh,
+            "=", mate, sequence, quality));
+
+        // Some pairs are incomplete
+        if (random.nextInt(50) != 0) {
+          writer.write(samLine("read" + i, flag2, chromosome, mate, "50M", nh,
+              "=", pos, sequence, quality));
+        }
+      }
+    }
+
+    return new DataFile(file);
+  }
+
+  private static String samLine(final String name, final int flag,
+      final String chromosome, final int pos, final String cigar, final int nh,
+      final String mateChromosome, final int matePos, final String sequence,
+      final String quality) {
+
+    final boolean unmapped = (flag & 4) != 0;
+
+    return name
+        + '\t' + flag + '\t' + chromosome + '\t' + pos + '\t'
+        + (unmapped ? "0\t*" : "255\t" + cigar) + '\t' + mateChromosome
+        + '\t' + matePos + "\t0\t" + sequence + '\t' + quality + "\tNH:i:"
+        + nh + '\n';
+  }
+
+}
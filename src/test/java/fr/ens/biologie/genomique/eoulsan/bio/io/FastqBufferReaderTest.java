@@ -0,0 +1,215 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.bio.BadBioEntryException;
+import fr.ens.biologie.genomique.eoulsan.bio.FastqFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+
+/**
+ * This class test the FastqBufferReader class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FastqBufferReaderTest {
+
+  @Test
+  public void testSameResultsAsFastqReader()
+      throws IOException, BadBioEntryException {
+
+    final List<ReadSequence> expected = readAll(new FastqReader(
+        this.getClass().getResourceAsStream("/illumina_1_8.fastq")));
+    final List<ReadSequence> actual = readAll(new FastqBufferReader(
+        this.getClass().getResourceAsStream("/illumina_1_8.fastq")));
+
+    assertTrue(expected.size() > 0);
+    assertReadsEquals(expected, actual);
+  }
+
+  @Test
+  public void testBufferBoundaries() throws IOException, BadBioEntryException {
+
+    final byte[] data = createFastq(new Random(5), 500);
+    final List<ReadSequence> expected =
+        readAll(new FastqReader(new ByteArrayInputStream(data)));
+
+    assertEquals(500, expected.size());
+
+    final File file = File.createTempFile("fastqbufferreader-", ".fastq");
+    try {
+      Files.write(file.toPath(), data);
+
+      for (int size : new int[] {7, 64, 100, 1000, 100000}) {
+
+        assertReadsEquals(expected, readAll(
+            new FastqBufferReader(new ByteArrayInputStream(data), size)));
+        assertReadsEquals(expected,
+            readAll(new FastqBufferReader(file, size)));
+      }
+
+      assertReadsEquals(expected, readAll(new FastqBufferReader(file)));
+
+    } finally {
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testEntry() throws IOException, BadBioEntryException {
+
+    final String s = "@read1 1:N:0\r\nATGC\r\n+read1\r\nIIII\r\n\r\n"
+        + "@read2\nGGCCA\n+\n#III!";
+
+    final FastqBufferReader reader = new FastqBufferReader(toStream(s));
+
+    assertTrue(reader.hasNext());
+    FastqBufferReader.Entry entry = reader.nextEntry();
+    assertEquals(0, entry.getId());
+    assertEquals("read1 1:N:0", entry.getName());
+    assertEquals("ATGC", entry.getSequence());
+    assertEquals("IIII", entry.getQuality());
+    assertEquals(4, entry.getSequenceLength());
+    assertEquals('G', entry.getSequenceByte(2));
+    assertEquals(-1, entry.findInvalidQualityChar(FastqFormat.FASTQ_SANGER));
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    entry.writeFastq(os);
+    assertEquals(entry.toReadSequence().toFastQ() + '\n',
+        new String(os.toByteArray(), StandardCharsets.ISO_8859_1));
+
+    assertTrue(reader.hasNext());
+    entry = reader.nextEntry();
+    assertEquals(1, entry.getId());
+    assertEquals("read2", entry.getName());
+    assertEquals("#III!", entry.getQuality());
+    assertEquals('#',
+        entry.findInvalidQualityChar(FastqFormat.FASTQ_ILLUMINA_1_5));
+
+    assertFalse(reader.hasNext());
+    reader.close();
+    reader.throwException();
+  }
+
+  @Test
+  public void testInvalidEntry() throws IOException {
+
+    final FastqBufferReader reader =
+        new FastqBufferReader(toStream("@read1\nATGC\n-\nIIII\n"));
+
+    assertFalse(reader.hasNext());
+    reader.close();
+
+    try {
+      reader.throwException();
+      fail();
+    } catch (BadBioEntryException e) {
+      assertEquals("-", e.getEntry());
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static InputStream toStream(final String s) {
+
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  private static byte[] createFastq(final Random random, final int count) {
+
+    final StringBuilder sb = new StringBuilder();
+    final String bases = "ATGCN";
+
+    for (int i = 0; i < count; i++) {
+
+      final int len = 1 + random.nextInt(150);
+      sb.append("@read");
+      sb.append(i);
+      sb.append('\n');
+      for (int j = 0; j < len; j++) {
+        sb.append(bases.charAt(random.nextInt(bases.length())));
+      }
+      sb.append("\n+\n");
+      for (int j = 0; j < len; j++) {
+        sb.append((char) ('!' + random.nextInt(41)));
+      }
+      sb.append('\n');
+    }
+
+    return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+  }
+
+  private static List<ReadSequence> readAll(final ReadSequenceReader reader)
+      throws IOException, BadBioEntryException {
+
+    final List<ReadSequence> result = new ArrayList<>();
+
+    for (ReadSequence read : reader) {
+      result.add(read);
+    }
+    reader.throwException();
+    reader.close();
+
+    return result;
+  }
+
+  private static void assertReadsEquals(final List<ReadSequence> expected,
+      final List<ReadSequence> actual) {
+
+    assertEquals(expected.size(), actual.size());
+
+    for (int i = 0; i < expected.size(); i++) {
+
+      final ReadSequence e = expected.get(i);
+      final ReadSequence a = actual.get(i);
+
+      assertEquals(e.getId(), a.getId());
+      assertArrayEquals(
+          new String[] {e.getName(), e.getSequence(), e.getQuality()},
+          new String[] {a.getName(), a.getSequence(), a.getQuality()});
+    }
+  }
+
+}
@@ -0,0 +1,236 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+
+/**
+ * This class define a benchmark of the throughput in reads per second of the
+ * FastqReader and FastqBufferReader classes on plain and gzip FASTQ files.
+ * This class is not a test, it must be launched with its main() method: the
+ * argument is the path of a FASTQ file or the number of reads of a synthetic
+ * FASTQ file with 100 bp reads (2000000 by default).
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FastqReaderBenchmark {
+
+  private static final int READ_COUNT = 2000000;
+  private static final int READ_LENGTH = 100;
+  private static final int ITERATIONS = 5;
+
+  /**
+   * This interface define a way to read a FASTQ file.
+   */
+  private interface ReadMethod {
+
+    /**
+     * Read all the entries of a file.
+     * @param file the file to read
+     * @return a checksum of the entries
+     */
+    long read(File file) throws Exception;
+  }
+
+  /**
+   * Create a synthetic FASTQ file.
+   * @param os the output stream
+   * @param readCount the number of reads
+   * @throws IOException if an error occurs while writing the file
+   */
+  private static void createFastq(final OutputStream os, final int readCount)
+      throws IOException {
+
+    final Random random = new Random(1);
+    final String bases = "ACGTN";
+    final StringBuilder sb = new StringBuilder();
+
+    try (OutputStream out = new BufferedOutputStream(os)) {
+
+      for (int i = 0; i < readCount; i++) {
+
+        sb.setLength(0);
+        sb.append("@read").append(i).append(" 1:N:0:ACGT\n");
+        for (int j = 0; j < READ_LENGTH; j++) {
+          sb.append(bases.charAt(random.nextInt(4)));
+        }
+        sb.append("\n+\n");
+        for (int j = 0; j < READ_LENGTH; j++) {
+          sb.append((char) ('#' + random.nextInt(40)));
+        }
+        sb.append('\n');
+
+        out.write(sb.toString().getBytes(StandardCharsets.US_ASCII));
+      }
+    }
+  }
+
+  private static InputStream open(final File file) throws IOException {
+
+    final InputStream is = new FileInputStream(file);
+
+    return file.getName().endsWith(".gz") ? new GZIPInputStream(is) : is;
+  }
+
+  /**
+   * Benchmark a read method and print the median throughput.
+   */
+  private static void benchmark(final String name, final File file,
+      final ReadMethod method) throws Exception {
+
+    // Warm-up
+    final long checksum = method.read(file);
+
+    final long[] times = new long[ITERATIONS];
+    long readCount = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+
+      final long start = System.nanoTime();
+      readCount = method.read(file);
+      times[i] = System.nanoTime() - start;
+
+      if (readCount != checksum) {
+        throw new IllegalStateException("Different results");
+      }
+    }
+    Arrays.sort(times);
+
+    System.out.println(name
+        + ": " + readCount * 1000000000L / times[ITERATIONS / 2]
+        + " reads/s");
+  }
+
+  /**
+   * Benchmark the readers on a file.
+   * @param file the file
+   */
+  private static void benchmark(final File file) throws Exception {
+
+    final boolean gzip = file.getName().endsWith(".gz");
+    final String suffix = gzip ? " (gzip)" : " (plain)";
+
+    System.out.println(file + ": " + file.length() / (1024 * 1024) + " MiB");
+
+    benchmark("FastqReader" + suffix, file, new ReadMethod() {
+
+      @Override
+      public long read(final File file) throws Exception {
+
+        long result = 0;
+        try (FastqReader reader = new FastqReader(open(file))) {
+          for (ReadSequence read : reader) {
+            result += read.length() > 0 ? 1 : 0;
+          }
+          reader.throwException();
+        }
+
+        return result;
+      }
+    });
+
+    benchmark("FastqBufferReader entries" + suffix, file, new ReadMethod() {
+
+      @Override
+      public long read(final File file) throws Exception {
+
+        long result = 0;
+        try (FastqBufferReader reader = gzip
+            ? new FastqBufferReader(open(file)) : new FastqBufferReader(file)) {
+          while (reader.hasNext()) {
+            result += reader.nextEntry().getSequenceLength() > 0 ? 1 : 0;
+          }
+          reader.throwException();
+        }
+
+        return result;
+      }
+    });
+
+    benchmark("FastqBufferReader ReadSequence" + suffix, file,
+        new ReadMethod() {
+
+          @Override
+          public long read(final File file) throws Exception {
+
+            long result = 0;
+            try (FastqBufferReader reader = gzip
+                ? new FastqBufferReader(open(file))
+                : new FastqBufferReader(file)) {
+              for (ReadSequence read : reader) {
+                result += read.length() > 0 ? 1 : 0;
+              }
+              reader.throwException();
+            }
+
+            return result;
+          }
+        });
+  }
+
+  //
+  // Main method
+  //
+
+  public static void main(final String[] args) throws Exception {
+
+    if (args.length > 0 && !args[0].matches("\\d+")) {
+      benchmark(new File(args[0]));
+      return;
+    }
+
+    final int readCount =
+        args.length > 0 ? Integer.parseInt(args[0]) : READ_COUNT;
+
+    final File plainFile = File.createTempFile("benchmark-", ".fastq");
+    final File gzipFile = File.createTempFile("benchmark-", ".fastq.gz");
+
+    try {
+      createFastq(new FileOutputStream(plainFile), readCount);
+      createFastq(new GZIPOutputStream(new FileOutputStream(gzipFile)),
+          readCount);
+
+      benchmark(plainFile);
+      benchmark(gzipFile);
+
+    } finally {
+      plainFile.delete();
+      gzipFile.delete();
+    }
+  }
+
+}
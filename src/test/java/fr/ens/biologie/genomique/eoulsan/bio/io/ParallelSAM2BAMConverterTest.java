@@ -0,0 +1,267 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordIterator;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+/**
+ * This class test the ParallelSAM2BAMConverter class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ParallelSAM2BAMConverterTest {
+
+  private static final String[] CHROMOSOMES = {"chr1", "chr2", "chr3"};
+  private static final int CHROMOSOME_LENGTH = 100000;
+
+  private File tmpDir;
+
+  @Before
+  public void setUp() {
+
+    this.tmpDir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+
+    for (File f : this.tmpDir.listFiles()) {
+      f.delete();
+    }
+    this.tmpDir.delete();
+  }
+
+  @Test
+  public void testConvert() throws IOException {
+
+    final String sam = createSAM(new Random(5), 30000);
+    final List<String> expected = sortWithHtsjdk(sam);
+
+    // All the records in memory and several spilled runs
+    for (long maxRunMemory : new long[] {
+        ParallelSAM2BAMConverter.getDefaultMaxRunMemory(), 1024 * 1024}) {
+
+      for (int threads : new int[] {1, 3}) {
+        for (boolean indexWhileWriting : new boolean[] {true, false}) {
+          checkConvert(sam, expected, maxRunMemory, threads,
+              indexWhileWriting);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEmptyFile() throws IOException {
+
+    final File bamFile = new File(this.tmpDir, "test.bam");
+    final File baiFile = new File(this.tmpDir, "test.bai");
+
+    final ParallelSAM2BAMConverter converter =
+        new ParallelSAM2BAMConverter(2, 5, this.tmpDir);
+
+    assertEquals(0, converter.convert(toStream(createSAM(new Random(1), 0)),
+        new FileOutputStream(bamFile), new FileOutputStream(baiFile)));
+
+    try (SamReader reader = SamReaderFactory.makeDefault()
+        .open(SamInputResource.of(bamFile).index(baiFile))) {
+
+      assertEquals(CHROMOSOMES.length,
+          reader.getFileHeader().getSequenceDictionary().size());
+      assertTrue(!reader.iterator().hasNext());
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private void checkConvert(final String sam, final List<String> expected,
+      final long maxRunMemory, final int threads,
+      final boolean indexWhileWriting) throws IOException {
+
+    final File bamFile = new File(this.tmpDir, "test.bam");
+    final File baiFile = new File(this.tmpDir, "test.bai");
+
+    final ParallelSAM2BAMConverter converter =
+        new ParallelSAM2BAMConverter(threads, 5, this.tmpDir);
+    converter.setMaxRunMemory(maxRunMemory);
+    converter.setIndexWhileWriting(indexWhileWriting);
+
+    assertEquals(expected.size(),
+        converter.convert(toStream(sam), new FileOutputStream(bamFile),
+            new FileOutputStream(baiFile)));
+
+    // Only the BAM and its index must remain in the temporary directory
+    assertEquals(2, this.tmpDir.listFiles().length);
+
+    try (SamReader reader = SamReaderFactory.makeDefault()
+        .open(SamInputResource.of(bamFile).index(baiFile))) {
+
+      assertEquals(SortOrder.coordinate,
+          reader.getFileHeader().getSortOrder());
+
+      final List<String> records = new ArrayList<>();
+      try (SAMRecordIterator it = reader.iterator()) {
+        while (it.hasNext()) {
+          records.add(it.next().getSAMString());
+        }
+      }
+      assertEquals(expected, records);
+
+      // Query the BAM file with the index
+      for (String chromosome : CHROMOSOMES) {
+
+        final int start = CHROMOSOME_LENGTH / 3;
+        final int end = CHROMOSOME_LENGTH / 2;
+
+        int count = 0;
+        try (SAMRecordIterator it =
+            reader.queryOverlapping(chromosome, start, end)) {
+
+          while (it.hasNext()) {
+
+            final SAMRecord r = it.next();
+            assertEquals(chromosome, r.getReferenceName());
+            assertTrue(r.getAlignmentStart() <= end
+                && r.getAlignmentEnd() >= start);
+            count++;
+          }
+        }
+
+        assertEquals(countOverlapping(expected, chromosome, start, end),
+            count);
+      }
+    }
+  }
+
+  private static String createSAM(final Random random, final int count) {
+
+    final StringBuilder sb = new StringBuilder();
+    sb.append("@HD\tVN:1.4\tSO:unsorted\n");
+    for (String chromosome : CHROMOSOMES) {
+      sb.append("@SQ\tSN:" + chromosome + "\tLN:" + CHROMOSOME_LENGTH + '\n');
+    }
+
+    for (int i = 0; i < count; i++) {
+
+      final StringBuilder seq = new StringBuilder();
+      for (int j = 0; j < 36; j++) {
+        seq.append("ACGT".charAt(random.nextInt(4)));
+      }
+
+      sb.append("read" + i);
+
+      if (random.nextInt(20) == 0) {
+        sb.append("\t4\t*\t0\t0\t*\t*\t0\t0\t");
+      } else {
+
+        // Use few positions to get records with the same position
+        sb.append(random.nextBoolean() ? "\t0\t" : "\t16\t");
+        sb.append(CHROMOSOMES[random.nextInt(CHROMOSOMES.length)]);
+        sb.append('\t');
+        sb.append(1 + random.nextInt(CHROMOSOME_LENGTH / 100) * 100);
+        sb.append("\t" + random.nextInt(60) + "\t36M\t*\t0\t0\t");
+      }
+
+      sb.append(seq);
+      sb.append("\tIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIIII\tNH:i:1\n");
+    }
+
+    return sb.toString();
+  }
+
+  private static List<String> sortWithHtsjdk(final String sam)
+      throws IOException {
+
+    final List<SAMRecord> records = new ArrayList<>();
+
+    try (SamReader reader = SamReaderFactory.makeDefault()
+        .open(SamInputResource.of(toStream(sam)))) {
+
+      for (SAMRecord r : reader) {
+        records.add(r);
+      }
+    }
+
+    Collections.sort(records, new SAMRecordCoordinateComparator());
+
+    final List<String> result = new ArrayList<>();
+    for (SAMRecord r : records) {
+      result.add(r.getSAMString());
+    }
+
+    return result;
+  }
+
+  private static int countOverlapping(final List<String> records,
+      final String chromosome, final int start, final int end) {
+
+    int result = 0;
+
+    for (String r : records) {
+
+      final String[] fields = r.split("\t");
+      final int pos = Integer.parseInt(fields[3]);
+
+      if (chromosome.equals(fields[2]) && pos <= end && pos + 35 >= start) {
+        result++;
+      }
+    }
+
+    return result;
+  }
+
+  private static InputStream toStream(final String s) {
+
+    return new ByteArrayInputStream(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+}
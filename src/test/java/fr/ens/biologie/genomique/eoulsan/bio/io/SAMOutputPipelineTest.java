@@ -0,0 +1,379 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+
+package fr.ens.biologie.genomique.eoulsan.bio.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.alignmentsfilters.MultiReadAlignmentsFilterBuilder;
+import fr.ens.biologie.genomique.eoulsan.bio.alignmentsfilters.ReadAlignmentsFilter;
+import fr.ens.biologie.genomique.eoulsan.bio.alignmentsfilters.ReadAlignmentsFilterBuffer;
+import fr.ens.biologie.genomique.eoulsan.bio.io.SAMOutputPipeline.LineHandler;
+import fr.ens.biologie.genomique.eoulsan.bio.io.SAMOutputPipeline.OutputFormat;
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMLineParser;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMTextHeaderCodec;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+import htsjdk.samtools.util.StringLineReader;
+
+/**
+ * This class test the SAMOutputPipeline class. The results of the pipeline
+ * are compared to the results of the line by line copy of the mapper output.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SAMOutputPipelineTest {
+
+  private static final String[] FILES =
+      {"/mapper_results_SE.sam", "/mapper_results_PE.sam"};
+  private static final int[] THREADS = {1, 3};
+  private static final int[] BLOCK_SIZES = {2, 100, 1000, 1024 * 1024};
+  private static final String COUNTER_GROUP = "test";
+
+  @Test
+  public void testSAM() throws IOException {
+
+    for (String file : FILES) {
+
+      final byte[] sam = readResource(file);
+      final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+      final long expectedEntries = copyLoop(sam, expected);
+
+      for (int threads : THREADS) {
+        for (int blockSize : BLOCK_SIZES) {
+
+          final SAMOutputPipeline pipeline =
+              new SAMOutputPipeline(threads, blockSize);
+          final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+          assertEquals(expectedEntries,
+              pipeline.process(new ByteArrayInputStream(sam), out));
+          assertEquals(expectedEntries, pipeline.getInputAlignmentCount());
+          assertArrayEquals(expected.toByteArray(), out.toByteArray());
+        }
+      }
+    }
+
+    // Carriage returns and missing end of line at the end of the data
+    final byte[] sam = "@HD\r\n\r\nr1\t4\t*\r\nr2\t4\t*".getBytes();
+    final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    assertEquals(copyLoop(sam, expected), new SAMOutputPipeline(2, 4)
+        .process(new ByteArrayInputStream(sam), out));
+    assertEquals("@HD\n\nr1\t4\t*\nr2\t4\t*\n", new String(out.toByteArray()));
+    assertArrayEquals(expected.toByteArray(), out.toByteArray());
+  }
+
+  @Test
+  public void testLineHandler() throws IOException {
+
+    for (String file : FILES) {
+
+      final byte[] sam = readResource(file);
+      final List<String> expected = readLines(sam);
+
+      for (int threads : THREADS) {
+        for (int blockSize : BLOCK_SIZES) {
+
+          final SAMOutputPipeline pipeline =
+              new SAMOutputPipeline(threads, blockSize);
+          final List<String> lines = new ArrayList<>();
+
+          pipeline.process(new ByteArrayInputStream(sam), new LineHandler() {
+
+            @Override
+            public void handle(final String line) {
+              lines.add(line);
+            }
+          });
+
+          assertEquals(expected, lines);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFilter() throws IOException, EoulsanException {
+
+    final Map<String, String> parameters = new LinkedHashMap<>();
+    parameters.put("removeunmapped", "");
+    parameters.put("mappingquality.threshold", "30");
+
+    for (String file : FILES) {
+
+      final byte[] sam = readResource(file);
+      final LocalReporter expectedCounters = new LocalReporter();
+      final List<String> expected =
+          filterLoop(sam, parameters, expectedCounters);
+
+      // Check that the filters remove alignments
+      assertTrue(expected.size() < readRecords(sam).size());
+
+      for (int threads : THREADS) {
+        for (int blockSize : BLOCK_SIZES) {
+
+          final LocalReporter counters = new LocalReporter();
+          final SAMOutputPipeline pipeline =
+              new SAMOutputPipeline(threads, blockSize);
+          pipeline.setAlignmentsFilter(parameters, counters, COUNTER_GROUP);
+          final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+          assertEquals(expected.size(),
+              pipeline.process(new ByteArrayInputStream(sam), out));
+          assertEquals(readRecords(sam).size(),
+              pipeline.getInputAlignmentCount());
+          assertEquals(expected, readRecords(out.toByteArray()));
+          assertEquals(expectedCounters.toString(), counters.toString());
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBAM() throws IOException, EoulsanException {
+
+    final Map<String, String> parameters = new LinkedHashMap<>();
+    parameters.put("removeunmapped", "");
+
+    for (String file : FILES) {
+
+      final byte[] sam = readResource(file);
+      final List<String> expected = readRecords(sam);
+      final List<String> expectedFiltered =
+          filterLoop(sam, parameters, new LocalReporter());
+
+      for (int blockSize : new int[] {50, 1024 * 1024}) {
+
+        // Without filter
+        SAMOutputPipeline pipeline = new SAMOutputPipeline(3, blockSize);
+        pipeline.setOutputFormat(OutputFormat.BAM);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertEquals(expected.size(),
+            pipeline.process(new ByteArrayInputStream(sam), out));
+        assertEquals(expected, readBAMRecords(out.toByteArray()));
+
+        // With filter
+        pipeline = new SAMOutputPipeline(3, blockSize);
+        pipeline.setOutputFormat(OutputFormat.BAM);
+        pipeline.setAlignmentsFilter(parameters, null, COUNTER_GROUP);
+        out = new ByteArrayOutputStream();
+
+        assertEquals(expectedFiltered.size(),
+            pipeline.process(new ByteArrayInputStream(sam), out));
+        assertEquals(expectedFiltered, readBAMRecords(out.toByteArray()));
+      }
+    }
+  }
+
+  //
+  // Reference implementations
+  //
+
+  /**
+   * Copy the SAM data line by line like the mapping module before the
+   * pipeline.
+   * @param sam SAM data
+   * @param os output stream
+   * @return the number of alignments
+   */
+  private static long copyLoop(final byte[] sam, final ByteArrayOutputStream os)
+      throws IOException {
+
+    final BufferedReader reader =
+        FileUtils.createBufferedReader(new ByteArrayInputStream(sam));
+    final Writer writer =
+        new OutputStreamWriter(os, StandardCharsets.ISO_8859_1);
+
+    long entries = 0;
+    String line;
+
+    while ((line = reader.readLine()) != null) {
+
+      writer.write(line);
+      writer.write('\n');
+
+      final String trimmedLine = line.trim();
+      if ("".equals(trimmedLine) || trimmedLine.startsWith("@")) {
+        continue;
+      }
+
+      if (trimmedLine.indexOf('\t') != -1) {
+        entries++;
+      }
+    }
+
+    reader.close();
+    writer.close();
+
+    return entries;
+  }
+
+  /**
+   * Filter the alignments sequentially like the SAM filter module, without
+   * sorting the alignments.
+   * @param sam SAM data
+   * @param parameters parameters of the filters
+   * @param counters counters of the filters
+   * @return the kept alignments
+   */
+  private static List<String> filterLoop(final byte[] sam,
+      final Map<String, String> parameters, final LocalReporter counters)
+      throws IOException, EoulsanException {
+
+    final MultiReadAlignmentsFilterBuilder builder =
+        new MultiReadAlignmentsFilterBuilder();
+    builder.addParameters(parameters);
+    final ReadAlignmentsFilter filter =
+        builder.getAlignmentsFilter(counters, COUNTER_GROUP);
+    final ReadAlignmentsFilterBuffer buffer =
+        new ReadAlignmentsFilterBuffer(filter);
+
+    final List<String> result = new ArrayList<>();
+
+    for (SAMRecord record : parseRecords(sam)) {
+
+      if (!buffer.addAlignment(record)) {
+        addRecords(buffer.getFilteredAlignments(), result);
+        buffer.addAlignment(record);
+      }
+    }
+    addRecords(buffer.getFilteredAlignments(), result);
+
+    return result;
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] readResource(final String name) throws IOException {
+
+    final InputStream is =
+        SAMOutputPipelineTest.class.getResourceAsStream(name);
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    FileUtils.copy(is, os);
+
+    return os.toByteArray();
+  }
+
+  private static List<String> readLines(final byte[] data) throws IOException {
+
+    final List<String> result = new ArrayList<>();
+    final BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new ByteArrayInputStream(data)));
+
+    String line;
+    while ((line = reader.readLine()) != null) {
+      result.add(line);
+    }
+    reader.close();
+
+    return result;
+  }
+
+  private static List<SAMRecord> parseRecords(final byte[] sam)
+      throws IOException {
+
+    final StringBuilder headerText = new StringBuilder();
+    final List<String> alignments = new ArrayList<>();
+
+    for (String line : readLines(sam)) {
+      if (line.startsWith("@")) {
+        headerText.append(line).append('\n');
+      } else if (!line.trim().isEmpty()) {
+        alignments.add(line);
+      }
+    }
+
+    final SAMFileHeader header = new SAMTextHeaderCodec()
+        .decode(new StringLineReader(headerText.toString()), null);
+    final SAMLineParser parser = new SAMLineParser(header);
+    final List<SAMRecord> result = new ArrayList<>();
+
+    for (String line : alignments) {
+      result.add(parser.parseLine(line));
+    }
+
+    return result;
+  }
+
+  private static List<String> readRecords(final byte[] sam)
+      throws IOException {
+
+    final List<String> result = new ArrayList<>();
+    addRecords(parseRecords(sam), result);
+
+    return result;
+  }
+
+  private static List<String> readBAMRecords(final byte[] bam)
+      throws IOException {
+
+    final List<String> result = new ArrayList<>();
+
+    try (SamReader reader = SamReaderFactory.makeDefault()
+        .open(SamInputResource.of(new ByteArrayInputStream(bam)))) {
+      addRecords(reader, result);
+    }
+
+    return result;
+  }
+
+  private static void addRecords(final Iterable<SAMRecord> records,
+      final List<String> result) {
+
+    for (SAMRecord r : records) {
+      result.add(r.getSAMString());
+    }
+  }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.io.hadoop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.junit.Test;
+
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMLineParser;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMSequenceRecord;
+
+/**
+ * This class test the SAMRecordWritable class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SAMRecordWritableTest {
+
+  private static final String[] RECORDS = {
+      "read1\t99\tchr2\t100\t255\t10M5N10M\t=\t300\t220\t"
+          + "ACGTACGTACGTACGTACGT\tIIIIIIIIIIIIIIIIIIII\tNH:i:1\tXS:A:+",
+      "read1\t147\tchr2\t300\t255\t20M\t=\t100\t-220\t"
+          + "TTTTACGTACGTACGTAAAA\tHHHHHHHHHHHHHHHHHHHH\tNH:i:1",
+      "read2\t4\t*\t0\t0\t*\t*\t0\t0\tACGTN\t!!!!!"};
+
+  @Test
+  public void testReadWrite() throws IOException {
+
+    final SAMFileHeader header = createHeader();
+    final SAMLineParser parser = new SAMLineParser(header);
+
+    final SAMRecord r1 = parser.parseLine(RECORDS[0]);
+    final SAMRecord r2 = parser.parseLine(RECORDS[1]);
+    final SAMRecord r3 = parser.parseLine(RECORDS[2]);
+
+    final DataOutputBuffer out = new DataOutputBuffer();
+    final SAMRecordWritable writable = new SAMRecordWritable();
+
+    writable.set(Arrays.asList(r1, r2));
+    writable.write(out);
+    writable.set(r3);
+    writable.write(out);
+
+    final DataInputBuffer in = new DataInputBuffer();
+    in.reset(out.getData(), out.getLength());
+
+    // The same object is used to read all the entries like in Hadoop
+    final SAMRecordWritable result = new SAMRecordWritable();
+
+    result.readFields(in);
+    assertEquals(2, result.size());
+
+    final List<SAMRecord> pair = result.get(header);
+    assertEquals("chr2", pair.get(0).getReferenceName());
+    assertEquals(1, (int) pair.get(0).getReferenceIndex());
+    assertEquals("10M5N10M", pair.get(0).getCigarString());
+    assertEquals(1, (int) pair.get(0).getIntegerAttribute("NH"));
+    assertEquals(RECORDS[0], pair.get(0).getSAMString().trim());
+    assertEquals(RECORDS[1], pair.get(1).getSAMString().trim());
+
+    result.readFields(in);
+    assertEquals(1, result.size());
+    assertTrue(result.get(header).get(0).getReadUnmappedFlag());
+    assertEquals(RECORDS[2], result.get(header).get(0).getSAMString().trim());
+
+    assertEquals(0, in.available());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static SAMFileHeader createHeader() {
+
+    final SAMFileHeader result = new SAMFileHeader();
+    result.addSequence(new SAMSequenceRecord("chr1", 1000));
+    result.addSequence(new SAMSequenceRecord("chr2", 2000));
+
+    return result;
+  }
+
+}
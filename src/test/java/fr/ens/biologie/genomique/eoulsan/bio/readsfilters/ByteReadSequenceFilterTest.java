@@ -0,0 +1,248 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.ByteReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.util.LocalReporter;
+
+/**
+ * This class test that the read filters give the same results with
+ * ReadSequence and ByteReadSequence objects.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ByteReadSequenceFilterTest {
+
+  /**
+   * This class define a filter that does not handle ByteReadSequence objects.
+   * It removes the last base of the reads and rejects the empty reads.
+   */
+  private static final class TrimLastBaseReadFilter implements ReadFilter {
+
+    @Override
+    public boolean accept(final ReadSequence read) {
+
+      final int len = read.length();
+      if (len < 2) {
+        return false;
+      }
+
+      read.setSequence(read.getSequence().substring(0, len - 1));
+      read.setQuality(read.getQuality().substring(0, len - 1));
+
+      return true;
+    }
+
+    @Override
+    public boolean accept(final ReadSequence read1, final ReadSequence read2) {
+
+      return accept(read1) && accept(read2);
+    }
+
+    @Override
+    public String getName() {
+      return "trimlastbase";
+    }
+
+    @Override
+    public String getDescription() {
+      return "Trim the last base";
+    }
+
+    @Override
+    public void setParameter(final String key, final String value) {
+    }
+
+    @Override
+    public void init() {
+    }
+  }
+
+  @Test
+  public void testSingleEnd() throws EoulsanException {
+
+    for (ReadFilter f : createFilters()) {
+
+      final ByteReadFilter filter = (ByteReadFilter) f;
+      final Random random = new Random(17);
+      final ByteReadSequence byteRead = new ByteReadSequence();
+
+      assertFalse(filter.acceptByteRead(null));
+
+      for (int i = 0; i < 2000; i++) {
+
+        final ReadSequence read = createRead(random, i, i % 2 == 0 ? 1 : 2);
+        byteRead.set(read);
+
+        assertEquals(filter.getName() + " " + read,
+            filter.accept(read), filter.acceptByteRead(byteRead));
+        assertEquals(filter.getName(), read.getSequence(),
+            byteRead.getSequence());
+        assertEquals(filter.getName(), read.getQuality(),
+            byteRead.getQuality());
+      }
+    }
+  }
+
+  @Test
+  public void testPairedEnd() throws EoulsanException {
+
+    for (ReadFilter f : createFilters()) {
+
+      final ByteReadFilter filter = (ByteReadFilter) f;
+      final Random random = new Random(23);
+      final ByteReadSequence byteRead1 = new ByteReadSequence();
+      final ByteReadSequence byteRead2 = new ByteReadSequence();
+
+      for (int i = 0; i < 2000; i++) {
+
+        final ReadSequence read1 = createRead(random, i, 1);
+        final ReadSequence read2 =
+            createRead(random, random.nextInt(10) == 0 ? i + 1 : i, 2);
+        byteRead1.set(read1);
+        byteRead2.set(read2);
+
+        assertEquals(filter.getName(), filter.accept(read1, read2),
+            filter.acceptByteRead(byteRead1, byteRead2));
+        assertEquals(read1.getSequence(), byteRead1.getSequence());
+        assertEquals(read2.getSequence(), byteRead2.getSequence());
+      }
+    }
+  }
+
+  @Test
+  public void testMultiReadFilter() throws EoulsanException {
+
+    final LocalReporter reporter1 = new LocalReporter();
+    final LocalReporter reporter2 = new LocalReporter();
+    final List<ReadFilter> filters1 = createFilters();
+    final List<ReadFilter> filters2 = createFilters();
+
+    // Filters that only implement ReadFilter are also supported
+    filters1.add(0, new TrimLastBaseReadFilter());
+    filters2.add(0, new TrimLastBaseReadFilter());
+
+    final MultiReadFilter filter1 =
+        new MultiReadFilter(reporter1, "group", filters1);
+    final MultiReadFilter filter2 =
+        new MultiReadFilter(reporter2, "group", filters2);
+
+    final Random random = new Random(29);
+    final ByteReadSequence byteRead = new ByteReadSequence();
+
+    for (int i = 0; i < 2000; i++) {
+
+      final ReadSequence read = createRead(random, i, 1);
+      byteRead.set(read);
+
+      assertEquals(filter1.accept(read), filter2.acceptByteRead(byteRead));
+      assertEquals(read.getSequence(), byteRead.getSequence());
+      assertEquals(read.getQuality(), byteRead.getQuality());
+    }
+
+    for (String counter : reporter1.getCounterNames("group")) {
+      assertEquals(counter, reporter1.getCounterValue("group", counter),
+          reporter2.getCounterValue("group", counter));
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static List<ReadFilter> createFilters() throws EoulsanException {
+
+    final List<ReadFilter> result = new ArrayList<>();
+
+    final ReadFilter trimPolyN = new TrimPolyNEndReadFilter();
+    result.add(trimPolyN);
+
+    final ReadFilter trim = new TrimReadFilter();
+    trim.setParameter("length.threshold", "10");
+    result.add(trim);
+
+    final ReadFilter length = new LengthReadFilter();
+    length.setParameter("minimal.length.threshold", "20");
+    result.add(length);
+
+    final ReadFilter maxLength = new MaxLengthReadFilter();
+    maxLength.setParameter("maximum.length.threshold", "45");
+    result.add(maxLength);
+
+    final ReadFilter quality = new QualityReadFilter();
+    quality.setParameter("threshold", "25");
+    result.add(quality);
+
+    result.add(new ValidReadFilter());
+    result.add(new PairCheckReadFilter());
+
+    // This filter use the default implementation of AbstractReadFilter
+    final ReadFilter startsWith = new ReadNameStartsWithReadFilter();
+    startsWith.setParameter("forbidden.prefixes", "read1");
+    result.add(startsWith);
+
+    for (ReadFilter filter : result) {
+      filter.init();
+    }
+
+    return result;
+  }
+
+  private static ReadSequence createRead(final Random random, final int id,
+      final int member) {
+
+    final String bases = "ATGCNNx";
+    final int len = random.nextInt(50);
+    final StringBuilder sequence = new StringBuilder();
+    final StringBuilder quality = new StringBuilder();
+
+    for (int i = 0; i < len; i++) {
+      sequence.append(bases.charAt(random.nextInt(bases.length())));
+      quality.append((char) ('!' + random.nextInt(42)));
+    }
+
+    // Add polyN ends
+    final int polyN = random.nextInt(4);
+    for (int i = 0; i < polyN; i++) {
+      sequence.append('N');
+      quality.append('#');
+    }
+
+    return new ReadSequence(id, "read" + id + '/' + member,
+        sequence.toString(), quality.toString());
+  }
+
+}
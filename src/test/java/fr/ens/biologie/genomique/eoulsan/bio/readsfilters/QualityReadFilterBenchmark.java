@@ -0,0 +1,263 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.readsfilters;
+
+import static fr.ens.biologie.genomique.eoulsan.util.StatUtils.mean;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.bio.FastqFormat;
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+
+/**
+ * This class define a benchmark of the QualityReadFilter and of the error
+ * probabilities of the reads, with the quality lookup tables and with the
+ * previous implementation that allocates an array for each read and calls
+ * Math.pow() for each base. This class is not a test, it must be launched
+ * with its main() method: the argument is the number of 100 bp reads (100000
+ * by default).
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class QualityReadFilterBenchmark {
+
+  private static final int READ_COUNT = 100000;
+  private static final int READ_LENGTH = 100;
+  private static final int ITERATIONS = 21;
+  private static final double THRESHOLD = 21.0;
+
+  private static volatile double sink;
+
+  /**
+   * This interface define the code to benchmark.
+   */
+  private interface Method {
+
+    /**
+     * Process all the reads.
+     * @param reads the reads
+     * @return a checksum of the result
+     */
+    double run(ReadSequence[] reads);
+  }
+
+  //
+  // Previous implementation
+  //
+
+  /**
+   * Get the quality scores of a read like ReadSequence.qualityScores() before
+   * the lookup tables.
+   */
+  private static int[] oldQualityScores(final ReadSequence read) {
+
+    final char[] qualities = read.getQuality().toCharArray();
+    final int len = qualities.length;
+    final FastqFormat format = read.getFastqFormat();
+    final int[] result = new int[len];
+
+    for (int i = 0; i < len; i++) {
+      result[i] = format.getScore(qualities[i]);
+    }
+
+    return result;
+  }
+
+  /**
+   * Get the error probabilities of a read like
+   * ReadSequence.errorProbabilities() before the lookup tables.
+   */
+  private static double[] oldErrorProbabilities(final ReadSequence read) {
+
+    final char[] qualities = read.getQuality().toCharArray();
+    final int len = qualities.length;
+    final int offset = read.getFastqFormat().getAsciiOffset();
+    final double[] result = new double[len];
+
+    for (int i = 0; i < len; i++) {
+      result[i] = Math.pow(10.0, (double) (qualities[i] - offset) / -10.0);
+    }
+
+    return result;
+  }
+
+  //
+  // Benchmark methods
+  //
+
+  /**
+   * Create random reads.
+   * @param count the number of reads
+   * @return an array with the reads
+   */
+  private static ReadSequence[] createReads(final int count) {
+
+    final Random random = new Random(1);
+    final ReadSequence[] result = new ReadSequence[count];
+    final char[] sequence = new char[READ_LENGTH];
+    final char[] quality = new char[READ_LENGTH];
+
+    for (int i = 0; i < count; i++) {
+
+      for (int j = 0; j < READ_LENGTH; j++) {
+        sequence[j] = "ACGT".charAt(random.nextInt(4));
+        quality[j] = (char) ('#' + random.nextInt(40));
+      }
+
+      result[i] = new ReadSequence(i, "read" + i, new String(sequence),
+          new String(quality));
+    }
+
+    return result;
+  }
+
+  /**
+   * Benchmark a method and print the median time.
+   * @param name name of the method
+   * @param reads the reads
+   * @param method the method to benchmark
+   * @return the checksum of the method
+   */
+  private static double benchmark(final String name,
+      final ReadSequence[] reads, final Method method) {
+
+    // Warm-up
+    for (int i = 0; i < ITERATIONS; i++) {
+      sink = method.run(reads);
+    }
+
+    final long[] times = new long[ITERATIONS];
+    double result = 0;
+    for (int i = 0; i < ITERATIONS; i++) {
+
+      final long start = System.nanoTime();
+      result = method.run(reads);
+      times[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(times);
+
+    final long median = times[ITERATIONS / 2];
+    System.out.printf("%-40s %8.2f ms %8.1f M reads/s%n", name,
+        median / 1000000.0, reads.length * 1000.0 / median);
+
+    return result;
+  }
+
+  private static void checkEquals(final double expected,
+      final double actual) {
+
+    if (Math.abs(expected - actual) > 1e-6 * Math.abs(expected)) {
+      throw new IllegalStateException(
+          "Different results: " + expected + " and " + actual);
+    }
+  }
+
+  //
+  // Main method
+  //
+
+  public static void main(final String[] args) throws EoulsanException {
+
+    final int readCount =
+        args.length > 0 ? Integer.parseInt(args[0]) : READ_COUNT;
+    final ReadSequence[] reads = createReads(readCount);
+
+    final QualityReadFilter filter = new QualityReadFilter();
+    filter.setParameter("threshold", Double.toString(THRESHOLD));
+    filter.init();
+
+    final double before = benchmark("QualityReadFilter before", reads,
+        new Method() {
+
+          @Override
+          public double run(final ReadSequence[] reads) {
+
+            int result = 0;
+            for (ReadSequence read : reads) {
+              if (mean(oldQualityScores(read)) > THRESHOLD) {
+                result++;
+              }
+            }
+
+            return result;
+          }
+        });
+
+    final double after = benchmark("QualityReadFilter after", reads,
+        new Method() {
+
+          @Override
+          public double run(final ReadSequence[] reads) {
+
+            int result = 0;
+            for (ReadSequence read : reads) {
+              if (filter.accept(read)) {
+                result++;
+              }
+            }
+
+            return result;
+          }
+        });
+
+    checkEquals(before, after);
+
+    final double probabilitiesBefore =
+        benchmark("errorProbabilities before", reads, new Method() {
+
+          @Override
+          public double run(final ReadSequence[] reads) {
+
+            double result = 0;
+            for (ReadSequence read : reads) {
+              result += oldErrorProbabilities(read)[0];
+            }
+
+            return result;
+          }
+        });
+
+    final double probabilitiesAfter =
+        benchmark("errorProbabilities(double[]) after", reads, new Method() {
+
+          @Override
+          public double run(final ReadSequence[] reads) {
+
+            final double[] array = new double[READ_LENGTH];
+            double result = 0;
+            for (ReadSequence read : reads) {
+              result += read.errorProbabilities(array)[0];
+            }
+
+            return result;
+          }
+        });
+
+    checkEquals(probabilitiesBefore, probabilitiesAfter);
+  }
+
+}
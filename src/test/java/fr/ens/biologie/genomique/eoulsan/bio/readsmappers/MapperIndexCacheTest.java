@@ -0,0 +1,176 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.readsmappers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+
+/**
+ * This class test the MapperIndexCache class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class MapperIndexCacheTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() {
+
+    this.dir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+
+    FileUtils.recursiveDelete(this.dir);
+  }
+
+  @Test
+  public void testCreateKey() throws IOException {
+
+    final File archive1 = createArchive("a1", "index", 100);
+    final File archive2 = createArchive("a2", "index", 100);
+    final File archive3 = createArchive("a3", "index", 101);
+
+    final String key = MapperIndexCache.createKey("Bowtie2", archive1);
+
+    assertTrue(key.startsWith("bowtie2-"));
+    assertEquals(key, MapperIndexCache.createKey("bowtie2", archive2));
+    assertNotEquals(key, MapperIndexCache.createKey("bowtie2", archive3));
+    assertNotEquals(key, MapperIndexCache.createKey("bwa", archive1));
+  }
+
+  @Test
+  public void testAcquire() throws IOException {
+
+    final File archive = createArchive("a1", "index", 100);
+    final String key = MapperIndexCache.createKey("bowtie2", archive);
+    final MapperIndexCache cache =
+        new MapperIndexCache(new File(this.dir, "cache"), 0);
+
+    try (MapperIndexCache.Lease lease1 = cache.acquire(key, archive);
+        MapperIndexCache.Lease lease2 = cache.acquire(key, archive)) {
+
+      assertEquals(lease1.getDirectory(), lease2.getDirectory());
+      assertEquals(100, new File(lease1.getDirectory(), "index").length());
+      assertEquals(1, cache.getEntryCount());
+
+      // Entries in use cannot be removed
+      assertEquals(0, cache.collectGarbage(0));
+      lease1.close();
+      assertEquals(0, cache.collectGarbage(0));
+      assertTrue(lease1.getDirectory().isDirectory());
+    }
+
+    assertEquals(1, cache.collectGarbage(0));
+    assertEquals(0, cache.getEntryCount());
+  }
+
+  @Test
+  public void testCollectGarbage() throws IOException {
+
+    final MapperIndexCache cache =
+        new MapperIndexCache(new File(this.dir, "cache"), 0);
+
+    final File archive1 = createArchive("a1", "index", 1000);
+    final File archive2 = createArchive("a2", "index", 1001);
+    final File archive3 = createArchive("a3", "index", 1002);
+    final String key1 = MapperIndexCache.createKey("bowtie2", archive1);
+    final String key2 = MapperIndexCache.createKey("bowtie2", archive2);
+    final String key3 = MapperIndexCache.createKey("bowtie2", archive3);
+
+    final File entry1 = acquireAndRelease(cache, key1, archive1);
+    final File entry2 = acquireAndRelease(cache, key2, archive2);
+    final File entry3 = acquireAndRelease(cache, key3, archive3);
+
+    setLastUse(key1, 3);
+    setLastUse(key2, 1);
+    setLastUse(key3, 2);
+
+    // Reference of a crashed task
+    final File refsDir = new File(entry2.getParentFile(), key2 + ".refs");
+    Files.write(new byte[0], new File(refsDir, "stale"));
+
+    // The least recently used entries are removed first
+    assertEquals(2, cache.collectGarbage(1500));
+    assertFalse(entry1.exists());
+    assertTrue(entry2.exists());
+    assertFalse(entry3.exists());
+
+    assertEquals(0, cache.collectGarbage(1500));
+    assertEquals(1, cache.collectGarbage(0));
+    assertEquals(0, cache.getEntryCount());
+
+    // The entries are uncompressed again when needed
+    assertTrue(acquireAndRelease(cache, key1, archive1).isDirectory());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private File createArchive(final String name, final String filename,
+      final int size) throws IOException {
+
+    final File indexDir = new File(this.dir, name);
+    assertTrue(indexDir.mkdir());
+    Files.write(new byte[size], new File(indexDir, filename));
+
+    final File result = new File(this.dir, name + ".zip");
+    FileUtils.createZip(indexDir, result);
+
+    return result;
+  }
+
+  private static File acquireAndRelease(final MapperIndexCache cache,
+      final String key, final File archive) throws IOException {
+
+    try (MapperIndexCache.Lease lease = cache.acquire(key, archive)) {
+      return lease.getDirectory();
+    }
+  }
+
+  private void setLastUse(final String key, final int daysAgo) {
+
+    final File refsDir = new File(new File(this.dir, "cache"), key + ".refs");
+    assertTrue(refsDir.setLastModified(
+        System.currentTimeMillis() - daysAgo * 24 * 60 * 60 * 1000L));
+  }
+
+}
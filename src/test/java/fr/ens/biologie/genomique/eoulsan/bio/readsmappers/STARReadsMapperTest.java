@@ -0,0 +1,152 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.bio.readsmappers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+
+/**
+ * This class test the sharing of the STAR indexes in memory.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class STARReadsMapperTest {
+
+  /**
+   * This class define a STAR mapper that records the released indexes
+   * instead of launching STAR.
+   */
+  private static final class ReleaseRecorderMapper extends STARReadsMapper {
+
+    private final List<File> releasedIndexes;
+
+    @Override
+    protected void internalReleaseSharedIndexMemory(final File indexDir) {
+
+      synchronized (this.releasedIndexes) {
+        this.releasedIndexes.add(indexDir);
+      }
+    }
+
+    ReleaseRecorderMapper(final List<File> releasedIndexes) {
+      this.releasedIndexes = releasedIndexes;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException, EoulsanException {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+  }
+
+  @Test
+  public void testIsSharedIndexMemoryAllowed() {
+
+    assertTrue(isSharedIndexMemoryAllowed(""));
+    assertTrue(isSharedIndexMemoryAllowed("--outSAMunmapped Within"));
+
+    // Splice junctions inserted on the fly
+    assertFalse(isSharedIndexMemoryAllowed("--sjdbGTFfile genes.gtf"));
+    assertFalse(isSharedIndexMemoryAllowed(
+        "--outSAMunmapped Within --sjdbFileChrStartEnd sj.tab"));
+    assertTrue(isSharedIndexMemoryAllowed("--sjdbGTFfile -"));
+    assertTrue(isSharedIndexMemoryAllowed("--sjdbFileChrStartEnd -"));
+
+    // Two pass mode
+    assertFalse(isSharedIndexMemoryAllowed("--twopassMode Basic"));
+    assertTrue(isSharedIndexMemoryAllowed("--twopassMode None"));
+
+    // Option without value at the end of the arguments
+    assertFalse(isSharedIndexMemoryAllowed("--twopassMode"));
+    assertFalse(isSharedIndexMemoryAllowed("--sjdbGTFfile"));
+
+    // The shared memory is only enabled when allowed
+    final STARReadsMapper mapper = new STARReadsMapper();
+    mapper.setMapperArguments("--twopassMode Basic");
+    mapper.setSharedIndexMemoryEnabled(true);
+    assertFalse(mapper.isSharedIndexMemoryEnabled());
+  }
+
+  @Test
+  public void testReleaseSharedIndexMemory() throws IOException {
+
+    final File index1 = new File("/tmp/star-index-1");
+    final File index2 = new File("/tmp/star-index-2");
+    final List<File> released = new ArrayList<>();
+
+    // Several mapper instances of the same step use the same index
+    final ReleaseRecorderMapper mapper1 = new ReleaseRecorderMapper(released);
+    final ReleaseRecorderMapper mapper2 = new ReleaseRecorderMapper(released);
+    final ReleaseRecorderMapper mapper3 = new ReleaseRecorderMapper(released);
+
+    mapper1.addSharedIndex(index1, null);
+    mapper1.addSharedIndex(index1, null);
+    mapper2.addSharedIndex(index1, null);
+    mapper2.addSharedIndex(index2, null);
+    mapper3.addSharedIndex(index1, null);
+
+    // The memory is only released by the last mapper that use the index
+    mapper1.releaseSharedIndexMemory();
+    assertEquals(0, released.size());
+
+    mapper2.releaseSharedIndexMemory();
+    assertEquals(1, released.size());
+    assertEquals(index2, released.get(0));
+
+    mapper3.releaseSharedIndexMemory();
+    assertEquals(2, released.size());
+    assertEquals(index1, released.get(1));
+
+    // Nothing to release after the first call
+    mapper1.releaseSharedIndexMemory();
+    mapper3.releaseSharedIndexMemory();
+    assertEquals(2, released.size());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static boolean isSharedIndexMemoryAllowed(final String arguments) {
+
+    final STARReadsMapper mapper = new STARReadsMapper();
+    mapper.setMapperArguments(arguments);
+
+    return mapper.isSharedIndexMemoryAllowed();
+  }
+
+}
@@ -0,0 +1,292 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.schedulers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.AbstractStep;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.FakeTasks;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.TaskContextImpl;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.TaskResultImpl;
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+
+/**
+ * This class test the concurrency of the MultiThreadTaskScheduler and
+ * AbstractTaskScheduler classes.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class MultiThreadTaskSchedulerTest {
+
+  private static final int TIMEOUT = 60000;
+
+  private File dir;
+
+  /**
+   * This class define a scheduler that does not execute the tasks but call a
+   * TaskAction object.
+   */
+  private static final class FakeScheduler extends MultiThreadTaskScheduler {
+
+    private final TaskAction action;
+
+    @Override
+    protected TaskResultImpl executeTask(final TaskContextImpl context) {
+
+      final long startTime = System.currentTimeMillis();
+      this.action.execute(context);
+
+      return FakeTasks.newResult(context, startTime);
+    }
+
+    FakeScheduler(final int threadNumber, final TaskAction action) {
+
+      super(threadNumber);
+      this.action = action;
+    }
+  }
+
+  /**
+   * This interface define the action of a fake task.
+   */
+  private interface TaskAction {
+
+    void execute(TaskContextImpl context);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+    this.dir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+
+    FileUtils.recursiveDelete(this.dir);
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testCompletion() throws EoulsanException {
+
+    final Set<Integer> executed =
+        Collections.synchronizedSet(new HashSet<Integer>());
+
+    final FakeScheduler scheduler = new FakeScheduler(4, new TaskAction() {
+
+      @Override
+      public void execute(final TaskContextImpl context) {
+
+        sleep(context.getId() % 5);
+        executed.add(context.getId());
+      }
+    });
+    scheduler.start();
+
+    final AbstractStep step1 = FakeTasks.newStep(newDir());
+    final AbstractStep step2 = FakeTasks.newStep(newDir());
+    final List<TaskContextImpl> contexts1 = FakeTasks.newContexts(step1, 200);
+    final List<TaskContextImpl> contexts2 = FakeTasks.newContexts(step2, 200);
+
+    for (int i = 0; i < contexts1.size(); i++) {
+      scheduler.submit(step1, contexts1.get(i));
+      scheduler.submit(step2, contexts2.get(i));
+    }
+
+    // All the tasks of the step are done when waitEndOfTasks() returns
+    scheduler.waitEndOfTasks(step1);
+    assertEquals(200, scheduler.getTaskSubmittedCount(step1));
+    assertEquals(200, scheduler.getTaskDoneCount(step1));
+    assertEquals(0, scheduler.getTaskRunningCount(step1));
+    for (TaskContextImpl context : contexts1) {
+      assertTrue(executed.contains(context.getId()));
+    }
+
+    scheduler.waitEndOfTasks(step2);
+    assertEquals(200, scheduler.getTaskDoneCount(step2));
+    assertEquals(400, scheduler.getTotalTaskDoneCount());
+    assertEquals(400, executed.size());
+    assertTrue(scheduler.getResult(step1).isSuccess());
+    assertTrue(scheduler.getResult(step2).isSuccess());
+
+    scheduler.stop();
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testFailedTask() throws EoulsanException {
+
+    final FakeScheduler scheduler = new FakeScheduler(2, new TaskAction() {
+
+      @Override
+      public void execute(final TaskContextImpl context) {
+
+        if (context.getId() % 2 == 0) {
+          throw new IllegalStateException("task failed");
+        }
+      }
+    });
+    scheduler.start();
+
+    final AbstractStep step = FakeTasks.newStep(newDir());
+    for (TaskContextImpl context : FakeTasks.newContexts(step, 10)) {
+      scheduler.submit(step, context);
+    }
+
+    // The failed tasks are set done by the scheduler thread
+    scheduler.waitEndOfTasks(step);
+    assertEquals(10, scheduler.getTaskDoneCount(step));
+    assertFalse(scheduler.getResult(step).isSuccess());
+
+    scheduler.stop();
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testNoLostWakeUp() throws EoulsanException {
+
+    final int count = 200;
+    final FakeScheduler scheduler = new FakeScheduler(2, new TaskAction() {
+
+      @Override
+      public void execute(final TaskContextImpl context) {
+      }
+    });
+    scheduler.start();
+
+    final AbstractStep step = FakeTasks.newStep(newDir());
+    final List<TaskContextImpl> contexts = FakeTasks.newContexts(step, count);
+
+    // Each waitEndOfTasks() call must be woken up by the end of the task and
+    // not by the safety timeout of 500 ms
+    final long start = System.currentTimeMillis();
+    for (int i = 0; i < count; i++) {
+
+      scheduler.submit(step, contexts.get(i));
+      scheduler.waitEndOfTasks(step);
+      assertEquals(i + 1, scheduler.getTaskDoneCount(step));
+    }
+    final long duration = System.currentTimeMillis() - start;
+
+    assertTrue("Too long: " + duration + " ms", duration < count * 500 / 4);
+
+    scheduler.stop();
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testStop() throws EoulsanException, InterruptedException {
+
+    final CountDownLatch started = new CountDownLatch(2);
+    final AtomicInteger interrupted = new AtomicInteger();
+
+    final FakeScheduler scheduler = new FakeScheduler(2, new TaskAction() {
+
+      @Override
+      public void execute(final TaskContextImpl context) {
+
+        started.countDown();
+        try {
+          Thread.sleep(TIMEOUT);
+        } catch (InterruptedException e) {
+          interrupted.incrementAndGet();
+        }
+      }
+    });
+    scheduler.start();
+
+    final AbstractStep step = FakeTasks.newStep(newDir());
+    for (TaskContextImpl context : FakeTasks.newContexts(step, 4)) {
+      scheduler.submit(step, context);
+    }
+
+    // A thread wait the end of the tasks that never ends
+    final CountDownLatch waitEnded = new CountDownLatch(1);
+    final Thread waiter = new Thread() {
+
+      @Override
+      public void run() {
+
+        scheduler.waitEndOfTasks(step);
+        waitEnded.countDown();
+      }
+    };
+    waiter.start();
+
+    // Stop the scheduler once the tasks are running and the thread waits
+    assertTrue(started.await(TIMEOUT, TimeUnit.MILLISECONDS));
+    while (waiter.getState() != Thread.State.TIMED_WAITING) {
+      sleep(1);
+    }
+    scheduler.stop();
+
+    // The running tasks are interrupted and the waiting thread is woken up
+    assertEquals(2, interrupted.get());
+    assertTrue(waitEnded.await(TIMEOUT / 10, TimeUnit.MILLISECONDS));
+    waiter.join();
+
+    // The waiting tasks have not been started
+    assertEquals(0, scheduler.getTaskDoneCount(step));
+  }
+
+  //
+  // Utility methods
+  //
+
+  private File newDir() {
+
+    final File result = new File(this.dir, "step" + this.dir.list().length);
+    assertTrue(result.mkdir());
+
+    return result;
+  }
+
+  private static void sleep(final long millis) {
+
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+}
@@ -0,0 +1,223 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.schedulers;
+
+import static fr.ens.biologie.genomique.eoulsan.core.schedulers.ResourceQueue.getTaskMemory;
+import static fr.ens.biologie.genomique.eoulsan.core.schedulers.ResourceQueue.getTaskProcessors;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * This class test the admission of the tasks by the resource aware scheduler.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ResourceQueueTest {
+
+  /**
+   * This class define a task with fixed requirements.
+   */
+  private static final class FakeTask implements ResourceQueue.Task {
+
+    private final String name;
+    private final int processors;
+    private final int memory;
+
+    @Override
+    public int getProcessors() {
+      return this.processors;
+    }
+
+    @Override
+    public int getMemory() {
+      return this.memory;
+    }
+
+    @Override
+    public String toString() {
+      return this.name;
+    }
+
+    FakeTask(final String name, final int processors, final int memory) {
+
+      this.name = name;
+      this.processors = processors;
+      this.memory = memory;
+    }
+  }
+
+  @Test
+  public void testProcessorLimit() {
+
+    final ResourceQueue<FakeTask> queue = new ResourceQueue<>(4, 1000);
+    final FakeTask a = new FakeTask("a", 2, 0);
+    final FakeTask b = new FakeTask("b", 2, 0);
+    final FakeTask c = new FakeTask("c", 1, 0);
+
+    queue.add(a);
+    queue.add(b);
+    queue.add(c);
+
+    assertEquals(asList(a, b), queue.next());
+    assertEquals(4, queue.getUsedProcessors());
+    assertEquals(1, queue.getWaitingTaskCount());
+    assertEquals(emptyList(), queue.next());
+
+    queue.release(a);
+    assertEquals(asList(c), queue.next());
+    assertEquals(3, queue.getUsedProcessors());
+    assertEquals(0, queue.getWaitingTaskCount());
+
+    queue.release(b);
+    queue.release(c);
+    assertEquals(0, queue.getUsedProcessors());
+  }
+
+  @Test
+  public void testMemoryLimit() {
+
+    final ResourceQueue<FakeTask> queue = new ResourceQueue<>(4, 1000);
+    final FakeTask a = new FakeTask("a", 1, 600);
+    final FakeTask b = new FakeTask("b", 1, 600);
+    final FakeTask c = new FakeTask("c", 1, 400);
+
+    queue.add(a);
+    queue.add(b);
+    queue.add(c);
+
+    // b does not fit in the memory, c is backfilled
+    assertEquals(asList(a, c), queue.next());
+    assertEquals(1000, queue.getUsedMemory());
+    assertEquals(2, queue.getUsedProcessors());
+
+    queue.release(c);
+    assertEquals(emptyList(), queue.next());
+
+    queue.release(a);
+    assertEquals(asList(b), queue.next());
+    assertEquals(600, queue.getUsedMemory());
+  }
+
+  @Test
+  public void testBackfillCap() {
+
+    // At most 2 * 2 tasks are started while the first waiting task is blocked
+    final ResourceQueue<FakeTask> queue = new ResourceQueue<>(2, 1000);
+
+    final FakeTask first = new FakeTask("first", 1, 0);
+    queue.add(first);
+    assertEquals(asList(first), queue.next());
+
+    final FakeTask big = new FakeTask("big", 2, 0);
+    queue.add(big);
+    final FakeTask[] small = new FakeTask[10];
+    for (int i = 0; i < small.length; i++) {
+      small[i] = new FakeTask("small" + i, 1, 0);
+      queue.add(small[i]);
+    }
+
+    assertEquals(asList(small[0]), queue.next());
+    queue.release(first);
+    assertEquals(asList(small[1]), queue.next());
+    queue.release(small[0]);
+    assertEquals(asList(small[2]), queue.next());
+    queue.release(small[1]);
+    assertEquals(asList(small[3]), queue.next());
+
+    // The cap is reached, the free processor is kept for the big task
+    queue.release(small[2]);
+    assertEquals(emptyList(), queue.next());
+    assertEquals(1, queue.getUsedProcessors());
+
+    queue.release(small[3]);
+    assertEquals(asList(big), queue.next());
+
+    // The count of the backfilled tasks restarts with the new blocked task
+    queue.release(big);
+    assertEquals(asList(small[4], small[5]), queue.next());
+    assertEquals(4, queue.getWaitingTaskCount());
+  }
+
+  @Test
+  public void testOwnParallelizationDefaults() {
+
+    // Steps with their own parallelization use all the processors by default
+    assertEquals(8, getTaskProcessors(true, 0, 8));
+    assertEquals(1, getTaskProcessors(false, 0, 8));
+
+    // The number of processors defined by the step is used when it is set
+    assertEquals(2, getTaskProcessors(true, 2, 8));
+    assertEquals(3, getTaskProcessors(false, 3, 8));
+
+    // A task that uses all the processors is executed alone
+    final ResourceQueue<FakeTask> queue = new ResourceQueue<>(8, 1000);
+    final FakeTask own = new FakeTask("own", getTaskProcessors(true, 0, 8), 0);
+    final FakeTask other =
+        new FakeTask("other", getTaskProcessors(false, 0, 8), 0);
+
+    queue.add(own);
+    queue.add(other);
+    assertEquals(asList(own), queue.next());
+    queue.release(own);
+    assertEquals(asList(other), queue.next());
+  }
+
+  @Test
+  public void testTaskLargerThanBudget() {
+
+    // The requirements are limited to the resources of the scheduler
+    assertEquals(8, getTaskProcessors(false, 16, 8));
+    assertEquals(1000, getTaskMemory(4000, 1000));
+    assertEquals(0, getTaskMemory(0, 1000));
+    assertEquals(500, getTaskMemory(500, 1000));
+
+    final ResourceQueue<FakeTask> queue = new ResourceQueue<>(8, 1000);
+    final FakeTask small = new FakeTask("small", 1, 100);
+    final FakeTask huge = new FakeTask("huge", getTaskProcessors(false, 16, 8),
+        getTaskMemory(4000, 1000));
+
+    queue.add(small);
+    assertEquals(asList(small), queue.next());
+
+    // The huge task waits the end of the running task and is executed alone
+    queue.add(huge);
+    assertEquals(emptyList(), queue.next());
+    queue.release(small);
+    assertEquals(asList(huge), queue.next());
+    assertEquals(8, queue.getUsedProcessors());
+    assertEquals(1000, queue.getUsedMemory());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testAddTaskLargerThanBudget() {
+
+    // A task that can never fit is rejected instead of blocking the queue
+    new ResourceQueue<FakeTask>(8, 1000).add(new FakeTask("huge", 16, 0));
+  }
+
+}
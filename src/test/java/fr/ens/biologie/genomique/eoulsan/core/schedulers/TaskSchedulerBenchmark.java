@@ -0,0 +1,172 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.schedulers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.AbstractStep;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.FakeTasks;
+import fr.ens.biologie.genomique.eoulsan.core.workflow.TaskContextImpl;
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+
+/**
+ * This class define a benchmark of the overhead of the local task schedulers.
+ * The tasks are executed by the FakeModule module that does nothing, so the
+ * measured time is the time spent in the scheduler to start the tasks, to
+ * handle their end and to wake up the thread that waits the end of the steps.
+ * This class is not a test, it must be launched with its main() method:
+ * arguments are the number of tasks (10000 by default), the number of steps
+ * and the number of threads.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class TaskSchedulerBenchmark {
+
+  private static final int ITERATIONS = 5;
+
+  /**
+   * This interface define a factory for the scheduler to benchmark.
+   */
+  private interface SchedulerFactory {
+
+    AbstractTaskScheduler newScheduler(int threads);
+  }
+
+  /**
+   * Run the tasks with a scheduler.
+   * @param factory the scheduler factory
+   * @param taskCount number of tasks
+   * @param stepCount number of steps
+   * @param threads number of threads
+   * @return the time in milliseconds to execute the tasks
+   */
+  private static long run(final SchedulerFactory factory, final int taskCount,
+      final int stepCount, final int threads) throws Exception {
+
+    final File dir = Files.createTempDir();
+
+    try {
+
+      final List<AbstractStep> steps = new ArrayList<>();
+      final List<List<TaskContextImpl>> contexts = new ArrayList<>();
+      for (int i = 0; i < stepCount; i++) {
+
+        final File stepDir = new File(dir, "step" + i);
+        stepDir.mkdir();
+        final AbstractStep step = FakeTasks.newStep(stepDir);
+        steps.add(step);
+        contexts.add(FakeTasks.newContexts(step, taskCount / stepCount));
+      }
+
+      final AbstractTaskScheduler scheduler = factory.newScheduler(threads);
+      scheduler.start();
+
+      final long start = System.nanoTime();
+
+      for (int i = 0; i < stepCount; i++) {
+        for (TaskContextImpl context : contexts.get(i)) {
+          scheduler.submit(steps.get(i), context);
+        }
+      }
+
+      for (AbstractStep step : steps) {
+        scheduler.waitEndOfTasks(step);
+      }
+
+      final long end = System.nanoTime();
+      scheduler.stop();
+
+      return (end - start) / 1000000;
+
+    } finally {
+      FileUtils.recursiveDelete(dir);
+    }
+  }
+
+  /**
+   * Benchmark a scheduler and print the median time of the iterations after a
+   * warm-up iteration.
+   */
+  private static void benchmark(final String name,
+      final SchedulerFactory factory, final int taskCount,
+      final int stepCount, final int threads) throws Exception {
+
+    run(factory, taskCount, stepCount, threads);
+
+    final long[] times = new long[ITERATIONS];
+    for (int i = 0; i < ITERATIONS; i++) {
+      times[i] = run(factory, taskCount, stepCount, threads);
+    }
+    Arrays.sort(times);
+
+    final long median = times[ITERATIONS / 2];
+    System.out.println(name
+        + ": " + median + " ms (min " + times[0] + " ms, max "
+        + times[ITERATIONS - 1] + " ms), "
+        + (median == 0 ? "-" : taskCount * 1000L / median) + " tasks/s");
+  }
+
+  //
+  // Main method
+  //
+
+  public static void main(final String[] args) throws Exception {
+
+    final int taskCount = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+    final int stepCount = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+    final int threads = args.length > 2
+        ? Integer.parseInt(args[2])
+        : Runtime.getRuntime().availableProcessors();
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+
+    System.out.println(taskCount
+        + " FakeModule tasks in " + stepCount + " steps, " + threads
+        + " threads");
+
+    benchmark("MultiThreadTaskScheduler", new SchedulerFactory() {
+
+      @Override
+      public AbstractTaskScheduler newScheduler(final int threads) {
+        return new MultiThreadTaskScheduler(threads);
+      }
+    }, taskCount, stepCount, threads);
+
+    benchmark("ResourceAwareTaskScheduler", new SchedulerFactory() {
+
+      @Override
+      public AbstractTaskScheduler newScheduler(final int threads) {
+        return new ResourceAwareTaskScheduler(threads, Integer.MAX_VALUE);
+      }
+    }, taskCount, stepCount, threads);
+  }
+
+}
@@ -0,0 +1,130 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.workflow;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * This class test the EventSignal class used by the token managers.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class EventSignalTest {
+
+  private static final int TIMEOUT = 10000;
+
+  @Test
+  public void testSignalBeforeAwait() throws InterruptedException {
+
+    final EventSignal signal = new EventSignal();
+
+    // No event
+    assertFalse(signal.await(10));
+
+    // An event sent before the wait is not lost
+    signal.signal();
+    assertTrue(signal.await(0));
+    assertFalse(signal.await(10));
+  }
+
+  @Test
+  public void testMergedSignals() throws InterruptedException {
+
+    final EventSignal signal = new EventSignal();
+
+    signal.signal();
+    signal.signal();
+    signal.signal();
+
+    // The events sent while the thread works give a single wake-up
+    assertTrue(signal.await(0));
+    assertFalse(signal.await(0));
+  }
+
+  @Test(timeout = TIMEOUT)
+  public void testWakeUp() throws InterruptedException {
+
+    final EventSignal signal = new EventSignal();
+    final AtomicBoolean received = new AtomicBoolean();
+
+    final Thread t = new Thread() {
+
+      @Override
+      public void run() {
+
+        try {
+          received.set(signal.await(TIMEOUT));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    };
+    t.start();
+
+    final long start = System.currentTimeMillis();
+    signal.signal();
+    t.join();
+
+    // The thread is woken up by the signal and not by the timeout
+    assertTrue(received.get());
+    assertTrue(System.currentTimeMillis() - start < TIMEOUT / 2);
+  }
+
+  @Test(timeout = 4 * TIMEOUT)
+  public void testNoLostWakeUp() throws InterruptedException {
+
+    final int count = 100000;
+    final EventSignal signal = new EventSignal();
+    final AtomicInteger produced = new AtomicInteger();
+
+    final Thread producer = new Thread() {
+
+      @Override
+      public void run() {
+
+        for (int i = 0; i < count; i++) {
+          produced.incrementAndGet();
+          signal.signal();
+        }
+      }
+    };
+    producer.start();
+
+    // Each time the consumer has not seen all the events, a signal must be
+    // pending or sent later
+    while (produced.get() < count) {
+      assertTrue(signal.await(TIMEOUT));
+    }
+
+    producer.join();
+  }
+
+}
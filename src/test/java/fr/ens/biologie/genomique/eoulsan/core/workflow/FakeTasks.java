@@ -0,0 +1,123 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.workflow;
+
+import static fr.ens.biologie.genomique.eoulsan.design.DesignFactory.createEmptyDesign;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.core.InputPort;
+import fr.ens.biologie.genomique.eoulsan.core.OutputPort;
+import fr.ens.biologie.genomique.eoulsan.core.Step.StepType;
+import fr.ens.biologie.genomique.eoulsan.data.Data;
+
+/**
+ * This class allow to create steps and task contexts outside a workflow run
+ * for the tests of the task schedulers. The steps use the FakeModule module
+ * and the task contexts have no input and no output.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public final class FakeTasks {
+
+  /**
+   * Create a new step in a new workflow.
+   * @param dir working directory of the workflow
+   * @return a new step
+   * @throws EoulsanException if an error occurs while creating the workflow
+   */
+  public static AbstractStep newStep(final File dir) throws EoulsanException {
+
+    final ExecutorArguments arguments = new ExecutorArguments();
+    final String path = dir.toURI().toString();
+    arguments.setJobPathname(path);
+    arguments.setTaskPathname(path);
+    arguments.setTemporaryPathname(path);
+    arguments.setLocalWorkingPathname(path);
+    arguments.setOutputPathname(path);
+    arguments.setWorkflowPathname(new File(dir, "workflow.xml").getPath());
+    arguments.setDesignPathname(new File(dir, "design.txt").getPath());
+    arguments.setJobDescription("test");
+    arguments.setJobEnvironment("test");
+
+    final AbstractWorkflow workflow =
+        new AbstractWorkflow(arguments, createEmptyDesign()) {
+
+          private static final long serialVersionUID = 1L;
+        };
+
+    return new CommandStep(workflow, StepType.FIRST_STEP);
+  }
+
+  /**
+   * Create task contexts for a step.
+   * @param step the step
+   * @param count the number of task contexts to create
+   * @return a list with the task contexts
+   */
+  public static List<TaskContextImpl> newContexts(final AbstractStep step,
+      final int count) {
+
+    final List<TaskContextImpl> result = new ArrayList<>(count);
+
+    for (int i = 0; i < count; i++) {
+      result.add(new TaskContextImpl(
+          step.getAbstractWorkflow().getWorkflowContext(), step,
+          Collections.<InputPort, Data> emptyMap(),
+          Collections.<OutputPort, AbstractData> emptyMap()));
+    }
+
+    return result;
+  }
+
+  /**
+   * Create the result of a successful task.
+   * @param context the context of the task
+   * @param startTime the start time of the task
+   * @return a new task result
+   */
+  public static TaskResultImpl newResult(final TaskContextImpl context,
+      final long startTime) {
+
+    final long endTime = System.currentTimeMillis();
+
+    return new TaskResultImpl(context, new Date(startTime), new Date(endTime),
+        endTime - startTime, null, "", Collections.<String, Long> emptyMap(),
+        true);
+  }
+
+  //
+  // Constructor
+  //
+
+  private FakeTasks() {
+  }
+
+}
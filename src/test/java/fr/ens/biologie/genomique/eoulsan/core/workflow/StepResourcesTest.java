@@ -0,0 +1,189 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.workflow;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.core.Step;
+import fr.ens.biologie.genomique.eoulsan.core.Step.StepState;
+
+/**
+ * This class test the StepResources class that close the resources of the
+ * steps when they reach a final state or when the workflow is stopped.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class StepResourcesTest {
+
+  /**
+   * This class define a resource that count the calls to close().
+   */
+  private static final class CountingResource implements Closeable {
+
+    private final AtomicInteger closeCount = new AtomicInteger();
+    private final boolean fail;
+
+    @Override
+    public void close() throws IOException {
+
+      this.closeCount.incrementAndGet();
+
+      if (this.fail) {
+        throw new IOException("close error");
+      }
+    }
+
+    CountingResource(final boolean fail) {
+      this.fail = fail;
+    }
+  }
+
+  /**
+   * This class define a step with a modifiable state.
+   */
+  private static final class StepHandler implements InvocationHandler {
+
+    private final String id;
+    private StepState state = StepState.CREATED;
+
+    @Override
+    public Object invoke(final Object proxy, final Method method,
+        final Object[] args) {
+
+      switch (method.getName()) {
+
+      case "getId":
+        return this.id;
+
+      case "getState":
+        return this.state;
+
+      case "hashCode":
+        return System.identityHashCode(proxy);
+
+      case "equals":
+        return proxy == args[0];
+
+      case "toString":
+        return this.id;
+
+      default:
+        throw new UnsupportedOperationException(method.getName());
+      }
+    }
+
+    StepHandler(final String id) {
+      this.id = id;
+    }
+  }
+
+  @Test
+  public void testCloseOnFinalState() {
+
+    final StepResources resources = new StepResources();
+
+    final StepHandler handler1 = new StepHandler("step1");
+    final Step step1 = createStep(handler1);
+    final Step step2 = createStep(new StepHandler("step2"));
+
+    final CountingResource r1 = new CountingResource(false);
+    final CountingResource r2 = new CountingResource(false);
+
+    // A resource is only closed once even if it has been added several times
+    resources.add(step1, r1);
+    resources.add(step1, r1);
+    resources.add(step2, r2);
+
+    // The resources are not closed while the step is working
+    for (StepState state : new StepState[] {StepState.READY,
+        StepState.WORKING, StepState.PARTIALLY_DONE}) {
+
+      handler1.state = state;
+      resources.updateStepState(step1);
+      assertEquals(0, r1.closeCount.get());
+    }
+
+    for (StepState state : new StepState[] {StepState.DONE, StepState.FAILED,
+        StepState.ABORTED}) {
+
+      handler1.state = state;
+      resources.updateStepState(step1);
+      assertEquals(1, r1.closeCount.get());
+    }
+
+    // The resources of the other steps are not closed
+    assertEquals(0, r2.closeCount.get());
+  }
+
+  @Test
+  public void testCloseAll() {
+
+    final StepResources resources = new StepResources();
+
+    final Step step1 = createStep(new StepHandler("step1"));
+    final Step step2 = createStep(new StepHandler("step2"));
+
+    final CountingResource r1 = new CountingResource(true);
+    final CountingResource r2 = new CountingResource(false);
+    final CountingResource r3 = new CountingResource(false);
+
+    resources.add(step1, r1);
+    resources.add(step1, r2);
+    resources.add(step2, r3);
+
+    // Close the resources of the steps when the workflow is stopped, an error
+    // while closing a resource does not prevent to close the other resources
+    resources.closeAll();
+    assertEquals(1, r1.closeCount.get());
+    assertEquals(1, r2.closeCount.get());
+    assertEquals(1, r3.closeCount.get());
+
+    // The resources are only closed once
+    resources.closeAll();
+    resources.close(step1);
+    assertEquals(1, r1.closeCount.get());
+    assertEquals(1, r3.closeCount.get());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static Step createStep(final StepHandler handler) {
+
+    return (Step) Proxy.newProxyInstance(Step.class.getClassLoader(),
+        new Class<?>[] {Step.class}, handler);
+  }
+
+}
@@ -0,0 +1,158 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.core.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+/**
+ * This class test the garbage collection of the TaskResultCache class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class TaskResultCacheTest {
+
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  private File dir;
+
+  @Before
+  public void setUp() {
+
+    this.dir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+
+    delete(this.dir);
+  }
+
+  @Test
+  public void testCollectGarbageByAge() throws IOException {
+
+    final long now = System.currentTimeMillis();
+
+    final File e1 = createEntry("e1", 100, now - 10 * DAY);
+    final File e2 = createEntry("e2", 100, now - DAY);
+    final File tmp1 = createEntry("tmp-1", 100, now - 2 * DAY);
+    final File tmp2 = createEntry("tmp-2", 100, now);
+
+    final TaskResultCache cache = new TaskResultCache(this.dir, false);
+    assertEquals(2, cache.getEntryCount());
+    assertEquals(4 * 100 + entrySize(e1, e2, tmp1, tmp2), cache.getSize());
+
+    // No limit
+    assertEquals(0, cache.collectGarbage(-1, -1));
+    assertTrue(e1.exists());
+    assertTrue(e2.exists());
+
+    // Old incomplete entries are always removed
+    assertFalse(tmp1.exists());
+    assertTrue(tmp2.exists());
+
+    assertEquals(1, cache.collectGarbage(5 * DAY, -1));
+    assertFalse(e1.exists());
+    assertTrue(e2.exists());
+    assertEquals(1, cache.getEntryCount());
+  }
+
+  @Test
+  public void testCollectGarbageBySize() throws IOException {
+
+    final long now = System.currentTimeMillis();
+
+    final File e1 = createEntry("e1", 1000, now - 3 * DAY);
+    final File e2 = createEntry("e2", 1000, now - DAY);
+    final File e3 = createEntry("e3", 1000, now - 2 * DAY);
+
+    final TaskResultCache cache = new TaskResultCache(this.dir, false);
+    assertEquals(3, cache.getEntryCount());
+
+    // The least recently used entries are removed first
+    assertEquals(2, cache.collectGarbage(-1, 1500));
+    assertFalse(e1.exists());
+    assertTrue(e2.exists());
+    assertFalse(e3.exists());
+
+    assertEquals(0, cache.collectGarbage(-1, 1500));
+    assertEquals(1, cache.collectGarbage(-1, 0));
+    assertEquals(0, cache.getEntryCount());
+    assertEquals(0, cache.getSize());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private File createEntry(final String name, final int size,
+      final long lastUse) throws IOException {
+
+    final File entry = new File(this.dir, name);
+    assertTrue(entry.mkdir());
+
+    final File dataFile = new File(entry, "output.0");
+    Files.write(new byte[size], dataFile);
+
+    final File entryFile = new File(entry, "entry.json");
+    Files.write("{}".getBytes(), entryFile);
+
+    entryFile.setLastModified(lastUse);
+    entry.setLastModified(lastUse);
+
+    return entry;
+  }
+
+  private static long entrySize(final File... entries) {
+
+    long result = 0;
+    for (File entry : entries) {
+      result += new File(entry, "entry.json").length();
+    }
+
+    return result;
+  }
+
+  private static void delete(final File file) {
+
+    if (file.isDirectory()) {
+      for (File f : file.listFiles()) {
+        delete(f);
+      }
+    }
+    file.delete();
+  }
+
+}
@@ -0,0 +1,221 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+
+/**
+ * This class test the DataFileStager class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class DataFileStagerTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException, EoulsanException {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+    this.dir = Files.createTempDirectory("datafilestagertest-").toFile();
+  }
+
+  @After
+  public void tearDown() {
+
+    for (File f : this.dir.listFiles()) {
+      f.delete();
+    }
+    this.dir.delete();
+  }
+
+  @Test
+  public void testStage() throws IOException {
+
+    final byte[] data = createData(1000000);
+    final DataFile in = new DataFile(new File(this.dir, "in.txt"));
+    write(in, data);
+
+    final DataFile link = new DataFile(new File(this.dir, "link.txt"));
+    final DataFile gzip = new DataFile(new File(this.dir, "out.txt.gz"));
+    final DataFile back = new DataFile(new File(this.dir, "back.txt"));
+
+    try (DataFileStager stager = new DataFileStager(2, 2)) {
+
+      stager.stage(in, link, true);
+      stager.stage(in, gzip, true);
+      stager.waitEnd();
+
+      assertEquals(data.length, stager.getBytesCopied());
+      assertEquals(0, stager.getSkippedFileCount());
+    }
+
+    assertTrue(Files.isSymbolicLink(link.toFile().toPath()));
+    assertTrue(Arrays.equals(data, read(link)));
+    assertTrue(gzip.toFile().length() < data.length);
+    assertTrue(Arrays.equals(data, read(gzip)));
+
+    // Uncompress the copy
+    try (DataFileStager stager = new DataFileStager(1)) {
+
+      stager.stage(gzip, back, true);
+      stager.waitEnd();
+    }
+
+    assertTrue(Arrays.equals(data, read(back)));
+  }
+
+  @Test
+  public void testExistingOutput() throws IOException {
+
+    final byte[] data = createData(10000);
+    final DataFile in = new DataFile(new File(this.dir, "in.txt.gz"));
+    final DataFile same = new DataFile(new File(this.dir, "same.txt.gz"));
+    final DataFile other = new DataFile(new File(this.dir, "other.txt.gz"));
+    write(in, data);
+    Files.copy(in.toFile().toPath(), same.toFile().toPath());
+    write(other, createData(20000));
+
+    // The output file with the same content is skipped
+    try (DataFileStager stager = new DataFileStager(1)) {
+
+      stager.stage(in, same, true);
+      stager.waitEnd();
+
+      assertEquals(0, stager.getBytesCopied());
+      assertEquals(1, stager.getSkippedFileCount());
+    }
+
+    // The output file with another content is an error
+    try (DataFileStager stager = new DataFileStager(1)) {
+
+      stager.stage(in, other, true);
+      stager.waitEnd();
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().startsWith("Output file already exists"));
+    }
+  }
+
+  @Test
+  public void testExistingOlderOutput() throws IOException {
+
+    final byte[] data = createData(10000);
+    final byte[] otherData = createData(10000);
+    otherData[0] = (byte) (otherData[0] == 'a' ? 'b' : 'a');
+
+    final DataFile in = new DataFile(new File(this.dir, "in.txt"));
+    final DataFile same = new DataFile(new File(this.dir, "same.txt"));
+    final DataFile other = new DataFile(new File(this.dir, "other.txt"));
+    write(same, data);
+    write(other, otherData);
+    write(in, data);
+
+    // The output files are older than the input file
+    final long time = in.toFile().lastModified() - 60000;
+    assertTrue(same.toFile().setLastModified(time));
+    assertTrue(other.toFile().setLastModified(time));
+
+    // The checksum confirms that the output file has the same content
+    try (DataFileStager stager = new DataFileStager(1)) {
+
+      stager.stage(in, same, true);
+      stager.waitEnd();
+
+      assertEquals(1, stager.getSkippedFileCount());
+    }
+
+    // The checksum of the output file with the same size is different
+    try (DataFileStager stager = new DataFileStager(1)) {
+
+      stager.stage(in, other, true);
+      stager.waitEnd();
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().startsWith("Output file already exists"));
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] createData(final int size) {
+
+    final Random random = new Random(size);
+    final byte[] result = new byte[size];
+
+    // Compressible data
+    for (int i = 0; i < size; i++) {
+      result[i] = (byte) ('a' + random.nextInt(4));
+    }
+
+    return result;
+  }
+
+  private static void write(final DataFile file, final byte[] data)
+      throws IOException {
+
+    try (OutputStream os = file.create()) {
+      os.write(data);
+    }
+  }
+
+  private static byte[] read(final DataFile file) throws IOException {
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+    try (InputStream is = file.open()) {
+
+      final byte[] buffer = new byte[8192];
+      int n;
+
+      while ((n = is.read(buffer)) != -1) {
+        os.write(buffer, 0, n);
+      }
+    }
+
+    return os.toByteArray();
+  }
+
+}
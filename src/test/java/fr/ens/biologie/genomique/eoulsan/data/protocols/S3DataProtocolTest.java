@@ -0,0 +1,60 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.data.protocols;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * This class test the S3DataProtocol class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class S3DataProtocolTest {
+
+  @Test
+  public void testGetPartSize() {
+
+    final int mib = 1024 * 1024;
+
+    assertEquals(16 * mib, S3DataProtocol.getPartSize(16));
+
+    // The part size is at least the minimal part size of S3
+    assertEquals(S3ParallelTransfer.MIN_PART_SIZE,
+        S3DataProtocol.getPartSize(1));
+    assertEquals(S3ParallelTransfer.MIN_PART_SIZE,
+        S3DataProtocol.getPartSize(-1));
+
+    // Large values do not overflow
+    assertEquals(S3ParallelTransfer.MAX_PART_SIZE,
+        S3DataProtocol.getPartSize(1024));
+    assertEquals(S3ParallelTransfer.MAX_PART_SIZE,
+        S3DataProtocol.getPartSize(4096));
+    assertEquals(S3ParallelTransfer.MAX_PART_SIZE,
+        S3DataProtocol.getPartSize(Integer.MAX_VALUE));
+  }
+
+}
@@ -0,0 +1,381 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.data.protocols;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+
+/**
+ * This class define a benchmark of the throughput of the S3ParallelTransfer
+ * class against an in-process fake S3 service. Each request of the fake
+ * service has a latency and each connection has a limited bandwidth, like a
+ * remote object storage. The serial download with one GET request, which is
+ * the previous behavior of S3DataProtocol, is compared to the parallel
+ * transfers with several thread numbers. This class is not a test, it must be
+ * launched with its main() method: the arguments are the size of the object in
+ * MiB (256 by default), the latency of the requests in milliseconds (30 by
+ * default) and the bandwidth of a connection in MiB/s (50 by default).
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class S3ParallelTransferBenchmark {
+
+  private static final String BUCKET = "bucket";
+  private static final String KEY = "object";
+  private static final int PART_SIZE = 8 * 1024 * 1024;
+  private static final int ITERATIONS = 3;
+  private static final int[] THREAD_NUMBERS = {1, 2, 4, 8, 16};
+
+  /**
+   * This interface define a transfer to benchmark.
+   */
+  private interface Transfer {
+
+    /**
+     * Execute the transfer.
+     * @return the number of bytes transferred
+     */
+    long run() throws Exception;
+  }
+
+  /**
+   * This class define an in-memory fake S3 service with a latency for each
+   * request and a limited bandwidth for each connection.
+   */
+  private static final class LatencyFakeS3 implements InvocationHandler {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads =
+        new ConcurrentHashMap<>();
+    private final AtomicInteger uploadCount = new AtomicInteger();
+    private final long latency;
+    private final long bandwidth;
+
+    @Override
+    public Object invoke(final Object proxy, final Method method,
+        final Object[] args) throws Throwable {
+
+      Thread.sleep(this.latency);
+
+      switch (method.getName()) {
+
+      case "getObjectMetadata":
+        final ObjectMetadata metadata = new ObjectMetadata();
+        metadata.setContentLength(this.objects.get(args[1]).length);
+        return metadata;
+
+      case "getObject":
+        return getObject((GetObjectRequest) args[0]);
+
+      case "putObject":
+        this.objects.put((String) args[1], read((InputStream) args[2]));
+        return new PutObjectResult();
+
+      case "initiateMultipartUpload":
+        final InitiateMultipartUploadResult initResult =
+            new InitiateMultipartUploadResult();
+        final String uploadId = "upload" + this.uploadCount.incrementAndGet();
+        this.uploads.put(uploadId, new ConcurrentHashMap<Integer, byte[]>());
+        initResult.setUploadId(uploadId);
+        return initResult;
+
+      case "uploadPart":
+        final UploadPartRequest request = (UploadPartRequest) args[0];
+        this.uploads.get(request.getUploadId()).put(request.getPartNumber(),
+            read(request.getInputStream()));
+        final UploadPartResult partResult = new UploadPartResult();
+        partResult.setPartNumber(request.getPartNumber());
+        partResult.setETag("etag" + request.getPartNumber());
+        return partResult;
+
+      case "completeMultipartUpload":
+        return completeMultipartUpload(
+            (CompleteMultipartUploadRequest) args[0]);
+
+      case "abortMultipartUpload":
+        return null;
+
+      default:
+        throw new UnsupportedOperationException(method.getName());
+      }
+    }
+
+    private S3Object getObject(final GetObjectRequest request) {
+
+      final byte[] data = this.objects.get(request.getKey());
+      final long[] range = request.getRange();
+
+      final int start = range == null ? 0 : (int) range[0];
+      final int end = range == null ? data.length : (int) range[1] + 1;
+
+      final S3Object result = new S3Object();
+      result.setObjectContent(throttle(
+          new ByteArrayInputStream(data, start, end - start)));
+
+      return result;
+    }
+
+    private CompleteMultipartUploadResult completeMultipartUpload(
+        final CompleteMultipartUploadRequest request) throws IOException {
+
+      final Map<Integer, byte[]> parts =
+          this.uploads.remove(request.getUploadId());
+
+      int length = 0;
+      for (byte[] part : parts.values()) {
+        length += part.length;
+      }
+
+      final byte[] data = new byte[length];
+      int offset = 0;
+      for (PartETag partETag : request.getPartETags()) {
+
+        final byte[] part = parts.get(partETag.getPartNumber());
+        System.arraycopy(part, 0, data, offset, part.length);
+        offset += part.length;
+      }
+
+      this.objects.put(request.getKey(), data);
+
+      return new CompleteMultipartUploadResult();
+    }
+
+    /**
+     * Read a stream with the bandwidth of a connection.
+     * @param is the input stream
+     * @return the content of the stream
+     */
+    private byte[] read(final InputStream is) throws IOException {
+
+      return toByteArray(throttle(is));
+    }
+
+    /**
+     * Limit the bandwidth of a stream.
+     * @param is the input stream
+     * @return an input stream with a limited bandwidth
+     */
+    private InputStream throttle(final InputStream is) {
+
+      final long bandwidth = this.bandwidth;
+
+      return new InputStream() {
+
+        private final long start = System.nanoTime();
+        private long count;
+
+        @Override
+        public int read() throws IOException {
+
+          final byte[] b = new byte[1];
+          return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len)
+            throws IOException {
+
+          final int n = is.read(b, off, Math.min(len, 64 * 1024));
+
+          if (n > 0) {
+            this.count += n;
+
+            // Wait until the bytes read fit in the bandwidth
+            final long wait = this.count * 1000000000L / bandwidth
+                - (System.nanoTime() - this.start);
+            if (wait > 0) {
+              try {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+              }
+            }
+          }
+
+          return n;
+        }
+      };
+    }
+
+    LatencyFakeS3(final long latency, final long bandwidth) {
+
+      this.latency = latency;
+      this.bandwidth = bandwidth;
+    }
+  }
+
+  /**
+   * Benchmark a transfer and print the median throughput.
+   */
+  private static void benchmark(final String name, final Transfer transfer)
+      throws Exception {
+
+    final long[] times = new long[ITERATIONS];
+    long length = 0;
+
+    for (int i = 0; i < ITERATIONS; i++) {
+
+      final long start = System.nanoTime();
+      length = transfer.run();
+      times[i] = System.nanoTime() - start;
+    }
+    Arrays.sort(times);
+
+    final long time = times[ITERATIONS / 2];
+    System.out.println(name
+        + ": " + time / 1000000 + " ms, "
+        + length * 1000000000L / time / (1024 * 1024) + " MiB/s");
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] toByteArray(final InputStream is) throws IOException {
+
+    final byte[] buffer = new byte[64 * 1024];
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    int n;
+
+    while ((n = is.read(buffer)) != -1) {
+      os.write(buffer, 0, n);
+    }
+
+    return os.toByteArray();
+  }
+
+  private static long consume(final InputStream is) throws IOException {
+
+    final byte[] buffer = new byte[64 * 1024];
+    long result = 0;
+    int n;
+
+    try (InputStream in = is) {
+      while ((n = in.read(buffer)) != -1) {
+        result += n;
+      }
+    }
+
+    return result;
+  }
+
+  //
+  // Main method
+  //
+
+  /**
+   * Main method.
+   * @param args command line arguments
+   */
+  public static void main(final String[] args) throws Exception {
+
+    final int sizeMiB = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+    final long latency = args.length > 1 ? Long.parseLong(args[1]) : 30;
+    final long bandwidth =
+        (args.length > 2 ? Long.parseLong(args[2]) : 50) * 1024 * 1024;
+
+    final LatencyFakeS3 fake = new LatencyFakeS3(latency, bandwidth);
+    final AmazonS3 s3 = (AmazonS3) Proxy.newProxyInstance(
+        AmazonS3.class.getClassLoader(), new Class<?>[] {AmazonS3.class},
+        fake);
+
+    final byte[] data = new byte[sizeMiB * 1024 * 1024];
+    new Random(1).nextBytes(data);
+    fake.objects.put(KEY, data);
+
+    System.out.println("Object: "
+        + sizeMiB + " MiB, latency: " + latency + " ms, bandwidth: "
+        + bandwidth / (1024 * 1024) + " MiB/s by connection, part size: "
+        + PART_SIZE / (1024 * 1024) + " MiB");
+
+    // Previous behavior of S3DataProtocol.getData()
+    benchmark("serial GET", new Transfer() {
+
+      @Override
+      public long run() throws Exception {
+
+        return consume(
+            s3.getObject(new GetObjectRequest(BUCKET, KEY)).getObjectContent());
+      }
+    });
+
+    for (int threads : THREAD_NUMBERS) {
+
+      final S3ParallelTransfer transfer =
+          new S3ParallelTransfer(s3, threads, PART_SIZE);
+
+      try {
+
+        benchmark("ranged GETs, " + threads + " threads", new Transfer() {
+
+          @Override
+          public long run() throws Exception {
+
+            return consume(transfer.download(BUCKET, KEY));
+          }
+        });
+
+        benchmark("part uploads, " + threads + " threads", new Transfer() {
+
+          @Override
+          public long run() throws Exception {
+
+            transfer.upload(BUCKET, "upload", new ByteArrayInputStream(data),
+                data.length, null, null);
+
+            return fake.objects.get("upload").length;
+          }
+        });
+
+      } finally {
+        transfer.shutdown();
+      }
+    }
+  }
+
+}
@@ -0,0 +1,439 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.data.protocols;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.amazonaws.util.BinaryUtils;
+
+/**
+ * This class test the S3ParallelTransfer class with an in-memory fake S3
+ * service.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class S3ParallelTransferTest {
+
+  private static final String BUCKET = "bucket";
+  private static final int PART_SIZE = S3ParallelTransfer.MIN_PART_SIZE;
+
+  private FakeS3 fake;
+  private S3ParallelTransfer transfer;
+
+  /**
+   * This class define an in-memory fake S3 service. The first request on a
+   * part can fail to test the retries.
+   */
+  private static final class FakeS3 implements InvocationHandler {
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+    private final Map<String, Map<Integer, byte[]>> uploads =
+        new ConcurrentHashMap<>();
+    private final Set<String> failedRequests =
+        Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final AtomicInteger uploadCount = new AtomicInteger();
+    private boolean failFirstRequests;
+    private boolean multipartETag;
+    private String eTag;
+
+    @Override
+    public Object invoke(final Object proxy, final Method method,
+        final Object[] args) throws Throwable {
+
+      switch (method.getName()) {
+
+      case "getObjectMetadata":
+        return getObjectMetadata((String) args[1]);
+
+      case "getObject":
+        return getObject((GetObjectRequest) args[0]);
+
+      case "putObject":
+        return putObject((String) args[1], (InputStream) args[2],
+            (ObjectMetadata) args[3]);
+
+      case "initiateMultipartUpload":
+        final InitiateMultipartUploadResult initResult =
+            new InitiateMultipartUploadResult();
+        final String uploadId = "upload" + this.uploadCount.incrementAndGet();
+        this.uploads.put(uploadId, new ConcurrentHashMap<Integer, byte[]>());
+        initResult.setUploadId(uploadId);
+        return initResult;
+
+      case "uploadPart":
+        return uploadPart((UploadPartRequest) args[0]);
+
+      case "completeMultipartUpload":
+        return completeMultipartUpload(
+            (CompleteMultipartUploadRequest) args[0]);
+
+      case "abortMultipartUpload":
+        return null;
+
+      default:
+        throw new UnsupportedOperationException(method.getName());
+      }
+    }
+
+    private ObjectMetadata getObjectMetadata(final String key) {
+
+      final byte[] data = this.objects.get(key);
+
+      if (data == null) {
+        throw new AmazonClientException("No such key: " + key);
+      }
+
+      final ObjectMetadata result = new ObjectMetadata();
+      result.setContentLength(data.length);
+      result.setHeader("ETag", getETag(data));
+
+      return result;
+    }
+
+    private String getETag(final byte[] data) {
+
+      if (this.eTag != null) {
+        return this.eTag;
+      }
+
+      return this.multipartETag ? "abcdef-2" : BinaryUtils.toHex(md5(data));
+    }
+
+    private S3Object getObject(final GetObjectRequest request) {
+
+      final byte[] data = this.objects.get(request.getKey());
+      final long[] range = request.getRange();
+
+      checkFailure("get" + range[0]);
+
+      // The object does not match the ETag constraint
+      final List<String> eTags = request.getMatchingETagConstraints();
+      if (!eTags.isEmpty() && !eTags.contains(getETag(data))) {
+        return null;
+      }
+
+      final S3Object result = new S3Object();
+      result.setObjectContent(new ByteArrayInputStream(data, (int) range[0],
+          (int) (range[1] - range[0] + 1)));
+
+      return result;
+    }
+
+    private PutObjectResult putObject(final String key, final InputStream is,
+        final ObjectMetadata metadata) throws IOException {
+
+      final byte[] data = toByteArray(is);
+
+      if (!BinaryUtils.toBase64(md5(data)).equals(metadata.getContentMD5())) {
+        throw new AmazonClientException("Invalid MD5 digest");
+      }
+
+      this.objects.put(key, data);
+
+      return new PutObjectResult();
+    }
+
+    private UploadPartResult uploadPart(final UploadPartRequest request)
+        throws IOException {
+
+      final byte[] data = toByteArray(request.getInputStream());
+
+      checkFailure(request.getUploadId() + "-" + request.getPartNumber());
+
+      if (data.length != request.getPartSize() || !BinaryUtils
+          .toBase64(md5(data)).equals(request.getMd5Digest())) {
+        throw new AmazonClientException("Invalid part");
+      }
+
+      this.uploads.get(request.getUploadId()).put(request.getPartNumber(),
+          data);
+
+      final UploadPartResult result = new UploadPartResult();
+      result.setPartNumber(request.getPartNumber());
+      result.setETag(BinaryUtils.toHex(md5(data)));
+
+      return result;
+    }
+
+    private CompleteMultipartUploadResult completeMultipartUpload(
+        final CompleteMultipartUploadRequest request) throws IOException {
+
+      final Map<Integer, byte[]> parts =
+          this.uploads.remove(request.getUploadId());
+      final ByteArrayOutputStream os = new ByteArrayOutputStream();
+
+      int partNumber = 1;
+      for (PartETag partETag : request.getPartETags()) {
+
+        assertEquals(partNumber++, partETag.getPartNumber());
+        os.write(parts.get(partETag.getPartNumber()));
+      }
+
+      this.objects.put(request.getKey(), os.toByteArray());
+
+      return new CompleteMultipartUploadResult();
+    }
+
+    private void checkFailure(final String request) {
+
+      if (this.failFirstRequests && this.failedRequests.add(request)) {
+        throw new AmazonClientException("Simulated failure: " + request);
+      }
+    }
+  }
+
+  @Before
+  public void setUp() {
+
+    this.fake = new FakeS3();
+
+    final AmazonS3 s3 = (AmazonS3) Proxy.newProxyInstance(
+        AmazonS3.class.getClassLoader(), new Class<?>[] {AmazonS3.class},
+        this.fake);
+
+    this.transfer = new S3ParallelTransfer(s3, 3, PART_SIZE);
+  }
+
+  @After
+  public void tearDown() {
+
+    this.transfer.shutdown();
+  }
+
+  @Test
+  public void testTransfers() throws IOException {
+
+    for (int size : new int[] {0, 1000, PART_SIZE, 5 * PART_SIZE / 2,
+        7 * PART_SIZE + 1}) {
+
+      final byte[] data = createData(size);
+      final String key = "file" + size;
+
+      this.transfer.upload(BUCKET, key, new ByteArrayInputStream(data),
+          data.length, "text/plain", null);
+      assertTrue(Arrays.equals(data, this.fake.objects.get(key)));
+
+      // Upload of unknown length
+      this.transfer.upload(BUCKET, key, new ByteArrayInputStream(data), -1,
+          "text/plain", null);
+      assertTrue(Arrays.equals(data, this.fake.objects.get(key)));
+
+      try (InputStream is = this.transfer.download(BUCKET, key)) {
+        assertTrue(Arrays.equals(data, toByteArray(is)));
+      }
+    }
+
+    // Objects uploaded with multipart uploads have no MD5 ETag
+    this.fake.multipartETag = true;
+    final String key = "file" + (7 * PART_SIZE + 1);
+    try (InputStream is = this.transfer.download(BUCKET, key)) {
+      assertTrue(Arrays.equals(this.fake.objects.get(key), toByteArray(is)));
+    }
+  }
+
+  @Test
+  public void testRetries() throws IOException {
+
+    this.fake.failFirstRequests = true;
+
+    final byte[] data = createData(2 * PART_SIZE + 10);
+
+    this.transfer.upload(BUCKET, "file", new ByteArrayInputStream(data),
+        data.length, null, null);
+    assertTrue(Arrays.equals(data, this.fake.objects.get("file")));
+
+    try (InputStream is = this.transfer.download(BUCKET, "file")) {
+      assertTrue(Arrays.equals(data, toByteArray(is)));
+    }
+
+    assertTrue(this.fake.failedRequests.contains("upload1-3"));
+    assertTrue(this.fake.failedRequests.contains("get" + PART_SIZE));
+  }
+
+  @Test
+  public void testInvalidDigest() throws IOException {
+
+    final byte[] data = createData(2 * PART_SIZE);
+    this.transfer.upload(BUCKET, "file", new ByteArrayInputStream(data),
+        data.length, null, null);
+
+    // Set the ETag of other data
+    this.fake.eTag = BinaryUtils.toHex(md5(createData(10)));
+
+    try (InputStream is = this.transfer.download(BUCKET, "file")) {
+      toByteArray(is);
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().startsWith("Invalid MD5 digest"));
+    }
+  }
+
+  @Test
+  public void testModifiedObject() throws IOException {
+
+    final byte[] data = createData(3 * PART_SIZE);
+    this.transfer.upload(BUCKET, "file", new ByteArrayInputStream(data),
+        data.length, null, null);
+
+    try (InputStream is = this.transfer.download(BUCKET, "file")) {
+
+      // Replace the object after the start of the download
+      final byte[] newData = createData(3 * PART_SIZE);
+      newData[0]++;
+      this.fake.objects.put("file", newData);
+
+      toByteArray(is);
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("has been modified"));
+    }
+  }
+
+  @Test
+  public void testGetUploadPartSize() {
+
+    final long maxLength = (long) PART_SIZE * S3ParallelTransfer.MAX_PARTS;
+
+    // The part size is increased for large objects
+    assertEquals(PART_SIZE, this.transfer.getUploadPartSize(0, 1));
+    assertEquals(PART_SIZE, this.transfer.getUploadPartSize(maxLength, 1));
+    assertEquals(PART_SIZE + 1,
+        this.transfer.getUploadPartSize(maxLength + 1, 1));
+    assertEquals(S3ParallelTransfer.MAX_PART_SIZE,
+        this.transfer.getUploadPartSize(Long.MAX_VALUE, 1));
+
+    // The part size of uploads of unknown length grows with the number of
+    // parts
+    assertEquals(PART_SIZE, this.transfer.getUploadPartSize(-1, 1));
+    assertEquals(PART_SIZE, this.transfer.getUploadPartSize(-1, 1000));
+    assertEquals(2 * PART_SIZE, this.transfer.getUploadPartSize(-1, 1001));
+    assertEquals(32 * PART_SIZE, this.transfer.getUploadPartSize(-1, 5001));
+    assertEquals(S3ParallelTransfer.MAX_PART_SIZE,
+        this.transfer.getUploadPartSize(-1, S3ParallelTransfer.MAX_PARTS));
+  }
+
+  @Test
+  public void testGetExpectedMD5() {
+
+    final String md5 = BinaryUtils.toHex(md5(createData(10)));
+
+    final ObjectMetadata metadata = new ObjectMetadata();
+    metadata.setHeader("ETag", md5);
+    assertEquals(md5, S3ParallelTransfer.getExpectedMD5(metadata));
+
+    // SSE-S3
+    metadata.setServerSideEncryption(
+        ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+    assertEquals(md5, S3ParallelTransfer.getExpectedMD5(metadata));
+
+    // SSE-KMS
+    metadata.setServerSideEncryption("aws:kms");
+    assertNull(S3ParallelTransfer.getExpectedMD5(metadata));
+
+    // SSE-C
+    final ObjectMetadata metadata2 = new ObjectMetadata();
+    metadata2.setHeader("ETag", md5);
+    metadata2.setHeader("x-amz-server-side-encryption-customer-algorithm",
+        "AES256");
+    assertNull(S3ParallelTransfer.getExpectedMD5(metadata2));
+
+    // Multipart upload
+    final ObjectMetadata metadata3 = new ObjectMetadata();
+    metadata3.setHeader("ETag", "abcdef-2");
+    assertNull(S3ParallelTransfer.getExpectedMD5(metadata3));
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] createData(final int size) {
+
+    final byte[] result = new byte[size];
+    new Random(size).nextBytes(result);
+
+    return result;
+  }
+
+  private static byte[] toByteArray(final InputStream is) throws IOException {
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[8192];
+    int n;
+
+    while ((n = is.read(buffer)) != -1) {
+      os.write(buffer, 0, n);
+    }
+
+    return os.toByteArray();
+  }
+
+  private static byte[] md5(final byte[] data) {
+
+    try {
+      return MessageDigest.getInstance("MD5").digest(data);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+}
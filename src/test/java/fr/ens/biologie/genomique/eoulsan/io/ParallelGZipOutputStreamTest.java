@@ -0,0 +1,135 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+/**
+ * This class test the ParallelGZipOutputStream class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ParallelGZipOutputStreamTest {
+
+  @Test
+  public void testCompression() throws IOException {
+
+    final Random random = new Random(7);
+
+    for (int size : new int[] {0, 1, 1000,
+        ParallelGZipOutputStream.MAX_BLOCK_DATA_SIZE,
+        ParallelGZipOutputStream.MAX_BLOCK_DATA_SIZE + 1, 2000000}) {
+
+      final byte[] data = createData(random, size);
+
+      for (int threads : new int[] {1, 4}) {
+
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final OutputStream os = new ParallelGZipOutputStream(baos, threads);
+
+        // Write the data with several write methods
+        int i = 0;
+        while (i < data.length) {
+
+          if (random.nextInt(10) == 0) {
+            os.write(data[i++]);
+          } else {
+            final int n = Math.min(data.length - i, random.nextInt(100000));
+            os.write(data, i, n);
+            i += n;
+          }
+
+          if (random.nextInt(50) == 0) {
+            os.flush();
+          }
+        }
+        os.close();
+
+        assertArrayEquals(data,
+            readAll(new GZIPInputStream(
+                new ByteArrayInputStream(baos.toByteArray()))));
+      }
+    }
+  }
+
+  @Test
+  public void testClosedStream() throws IOException {
+
+    final OutputStream os =
+        new ParallelGZipOutputStream(new ByteArrayOutputStream(), 2);
+    os.close();
+    os.close();
+
+    try {
+      os.write(0);
+      fail();
+    } catch (IOException e) {
+      // Expected exception
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] createData(final Random random, final int size) {
+
+    final byte[] result = new byte[size];
+    final byte[] alphabet = "ATGCN\n".getBytes();
+
+    for (int i = 0; i < size; i++) {
+      result[i] = alphabet[random.nextInt(alphabet.length)];
+    }
+
+    return result;
+  }
+
+  private static byte[] readAll(final InputStream is) throws IOException {
+
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int n;
+
+    while ((n = is.read(buffer)) != -1) {
+      result.write(buffer, 0, n);
+    }
+    is.close();
+
+    return result.toByteArray();
+  }
+
+}
@@ -0,0 +1,230 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.io;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * This class test the ReadAheadInputStream class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ReadAheadInputStreamTest {
+
+  /**
+   * This class define a source that fails after some bytes.
+   */
+  private static final class FailingInputStream extends InputStream {
+
+    private final Throwable exception;
+    private int count;
+
+    @Override
+    public int read() throws IOException {
+
+      if (this.count++ == 100) {
+
+        if (this.exception instanceof IOException) {
+          throw (IOException) this.exception;
+        }
+        if (this.exception instanceof Error) {
+          throw (Error) this.exception;
+        }
+        throw (RuntimeException) this.exception;
+      }
+
+      return 'A';
+    }
+
+    FailingInputStream(final Throwable exception) {
+      this.exception = exception;
+    }
+  }
+
+  /**
+   * This class define a source that blocks in read() until it is closed, even
+   * if the reading thread is interrupted.
+   */
+  private static final class BlockingInputStream extends InputStream {
+
+    private final CountDownLatch closeLatch = new CountDownLatch(1);
+    private final CountDownLatch readLatch = new CountDownLatch(1);
+
+    @Override
+    public int read() throws IOException {
+
+      this.readLatch.countDown();
+
+      while (true) {
+        try {
+          this.closeLatch.await();
+          return -1;
+        } catch (InterruptedException e) {
+          // Ignore interruptions like a blocking socket read
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+
+      this.closeLatch.countDown();
+    }
+  }
+
+  @Test
+  public void testRead() throws IOException {
+
+    final byte[] data = createData(new Random(3), 1000000);
+
+    assertArrayEquals(data, readAll(
+        new ReadAheadInputStream(new ByteArrayInputStream(data), 1000, 2)));
+    assertArrayEquals(data,
+        readAll(new ReadAheadInputStream(new ByteArrayInputStream(data))));
+    assertArrayEquals(new byte[0], readAll(
+        new ReadAheadInputStream(new ByteArrayInputStream(new byte[0]))));
+
+    // Read byte by byte
+    final InputStream is =
+        new ReadAheadInputStream(new ByteArrayInputStream(data), 7, 3);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(data[i] & 0xff, is.read());
+    }
+    is.close();
+
+    // Close the stream before the end of the data
+    final InputStream is2 =
+        new ReadAheadInputStream(new ByteArrayInputStream(data), 10, 1);
+    assertEquals(data[0] & 0xff, is2.read());
+    is2.close();
+
+    try {
+      is2.read();
+      fail();
+    } catch (IOException e) {
+      // Expected exception
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testIOException() throws IOException {
+
+    try {
+      readAll(new ReadAheadInputStream(
+          new FailingInputStream(new IOException("test")), 10, 2));
+      fail();
+    } catch (IOException e) {
+      assertEquals("test", e.getMessage());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testRuntimeException() throws IOException {
+
+    try {
+      readAll(new ReadAheadInputStream(
+          new FailingInputStream(new IllegalStateException("test")), 10, 2));
+      fail();
+    } catch (IllegalStateException e) {
+      assertEquals("test", e.getMessage());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testError() throws IOException {
+
+    try {
+      readAll(new ReadAheadInputStream(
+          new FailingInputStream(new AssertionError("test")), 10, 2));
+      fail();
+    } catch (AssertionError e) {
+      assertEquals("test", e.getMessage());
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void testCloseBlockedSource()
+      throws IOException, InterruptedException {
+
+    final BlockingInputStream source = new BlockingInputStream();
+    final InputStream is = new ReadAheadInputStream(source, 10, 2);
+
+    // Wait that the reader thread is blocked in the source
+    source.readLatch.await();
+
+    final long start = System.currentTimeMillis();
+    is.close();
+
+    // The source has been closed without waiting for ever the reader thread
+    assertEquals(0, source.closeLatch.getCount());
+    assertTrue(System.currentTimeMillis() - start < 5000);
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static byte[] createData(final Random random, final int size) {
+
+    final byte[] result = new byte[size];
+    final byte[] alphabet = "ATGCN\n".getBytes();
+
+    for (int i = 0; i < size; i++) {
+      result[i] = alphabet[random.nextInt(alphabet.length)];
+    }
+
+    return result;
+  }
+
+  private static byte[] readAll(final InputStream is) throws IOException {
+
+    final ByteArrayOutputStream result = new ByteArrayOutputStream();
+    final byte[] buffer = new byte[4096];
+    int n;
+
+    try {
+      while ((n = is.read(buffer)) != -1) {
+        result.write(buffer, 0, n);
+      }
+    } finally {
+      is.close();
+    }
+
+    return result.toByteArray();
+  }
+
+}
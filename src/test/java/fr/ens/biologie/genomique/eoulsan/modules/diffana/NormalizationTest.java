@@ -0,0 +1,125 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.modules.diffana;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+
+/**
+ * This class test the creation of the count matrix of the Normalization
+ * class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class NormalizationTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException, EoulsanException {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+
+    this.dir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+
+    FileUtils.recursiveDelete(this.dir);
+  }
+
+  @Test
+  public void testCreateCountMatrix() throws IOException {
+
+    final DataFile file1 =
+        createFile("expression1.tsv", "Id\tCount\ngene2\t5\ngene1\t3\n");
+    final DataFile file2 =
+        createFile("expression2.tsv", "Id\tCount\ngene1\t7\ngene2\t0\n");
+
+    assertEquals("Id\ts2\ts1\ngene1\t7\t3\ngene2\t0\t5\n",
+        Normalization.createCountMatrix(asList("s2", "s1"),
+            asList(file2, file1), true));
+
+    final DataFile file3 = createFile("expression3.tsv", "gene1\t1\n");
+
+    assertEquals("Id\ts3\ngene1\t1\n", Normalization
+        .createCountMatrix(asList("s3"), asList(file3), false));
+
+    // Only the features present in all the files are kept
+    final DataFile file4 =
+        createFile("expression4.tsv", "Id\tCount\ngene3\t2\ngene1\t4\n");
+
+    assertEquals("Id\ts1\ts4\ngene1\t3\t4\n", Normalization
+        .createCountMatrix(asList("s1", "s4"), asList(file1, file4), true));
+  }
+
+  @Test
+  public void testCreateCountMatrixInvalidFile() throws IOException {
+
+    final DataFile file1 =
+        createFile("expression1.tsv", "Id\tCount\ngene1\t3\n");
+    final DataFile file2 =
+        createFile("expression2.tsv", "Id\tCount\ngene1\tNA\n");
+
+    try {
+      Normalization.createCountMatrix(asList("s1", "s2"),
+          asList(file1, file2), true);
+      fail();
+    } catch (IOException e) {
+      // Expected exception
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private DataFile createFile(final String filename, final String content)
+      throws IOException {
+
+    final File file = new File(this.dir, filename);
+    Files.write(content, file, StandardCharsets.UTF_8);
+
+    return new DataFile(file);
+  }
+
+}
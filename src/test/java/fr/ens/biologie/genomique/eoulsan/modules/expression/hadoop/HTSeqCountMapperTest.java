@@ -0,0 +1,308 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.modules.expression.hadoop;
+
+import static fr.ens.biologie.genomique.eoulsan.modules.expression.ExpressionCounters.COMBINED_MAP_OUTPUT_RECORDS_COUNTER;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.MRJobConfig;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.mapreduce.lib.map.WrappedMapper;
+import org.apache.hadoop.mapreduce.task.MapContextImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.CommonHadoop;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomeDescription;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomicArray;
+import fr.ens.biologie.genomique.eoulsan.bio.GenomicInterval;
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+
+/**
+ * This class test the in-mapper combining of the HTSeqCountMapper class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class HTSeqCountMapperTest {
+
+  private static final String COUNTER_GROUP = "expression";
+  private static final int FEATURE_COUNT = 5;
+  private static final int FEATURE_SPACING = 100;
+  private static final int FEATURE_LENGTH = 50;
+  private static final int READ_LENGTH = 10;
+
+  private File dir;
+  private final List<String> samLines = new ArrayList<>();
+  private final Map<String, Long> expectedCounts = new HashMap<>();
+  private long expectedRecords;
+
+  /**
+   * This class define the result of a run of the mapper.
+   */
+  private static final class MapperOutput {
+
+    private final List<String> keys = new ArrayList<>();
+    private final List<Long> values = new ArrayList<>();
+    private final Counters counters = new Counters();
+    private int recordsBeforeCleanup;
+
+    private Map<String, Long> sumCounts() {
+
+      final Map<String, Long> result = new HashMap<>();
+
+      for (int i = 0; i < this.keys.size(); i++) {
+
+        final String key = this.keys.get(i);
+        final Long count = result.get(key);
+        result.put(key, (count == null ? 0 : count) + this.values.get(i));
+      }
+
+      return result;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException {
+
+    this.dir = Files.createTempDir();
+
+    // Create the features and the genome description
+    final GenomicArray<String> features = new GenomicArray<>();
+    for (int i = 0; i < FEATURE_COUNT; i++) {
+
+      final int start = 1 + i * FEATURE_SPACING;
+      features.addEntry(new GenomicInterval("chr1", start,
+          start + FEATURE_LENGTH - 1, '+'), "gene" + i);
+    }
+    features.save(new File(this.dir, "annotation.ser"));
+
+    final GenomeDescription genome = new GenomeDescription();
+    genome.addSequence("chr1", FEATURE_COUNT * FEATURE_SPACING);
+    genome.save(new File(this.dir, "genome.desc"));
+
+    // Create alignments on the features, between the features and unmapped
+    // alignments
+    final Random random = new Random(13);
+    for (int i = 0; i < 500; i++) {
+
+      final int feature = random.nextInt(FEATURE_COUNT);
+      final int kind = random.nextInt(10);
+      final int start;
+
+      if (kind == 0) {
+        this.samLines.add(samLine(i, 4, "*", 0, "*"));
+        continue;
+      }
+
+      if (kind == 1) {
+        start = feature * FEATURE_SPACING + FEATURE_LENGTH + 1
+            + random.nextInt(FEATURE_SPACING - FEATURE_LENGTH - READ_LENGTH);
+      } else {
+        start = feature * FEATURE_SPACING + 1
+            + random.nextInt(FEATURE_LENGTH - READ_LENGTH);
+
+        // Without combining, a record is written for each alignment on a
+        // feature
+        final String id = "gene" + feature;
+        final Long count = this.expectedCounts.get(id);
+        this.expectedCounts.put(id, (count == null ? 0 : count) + 1);
+        this.expectedRecords++;
+      }
+
+      this.samLines.add(samLine(i, 0, "chr1", start, READ_LENGTH + "M"));
+    }
+  }
+
+  @After
+  public void tearDown() {
+
+    FileUtils.recursiveDelete(this.dir);
+  }
+
+  @Test
+  public void testCombining() throws IOException, InterruptedException {
+
+    // Without flush before the end of the task
+    final MapperOutput combined =
+        runMapper(HTSeqCountMapper.DEFAULT_MAX_COMBINED_FEATURES);
+
+    assertEquals(this.expectedCounts, combined.sumCounts());
+    assertEquals(FEATURE_COUNT, combined.keys.size());
+    assertEquals(0, combined.recordsBeforeCleanup);
+    checkCombinedRecords(combined);
+
+    // With flushes when the number of features reach the threshold
+    for (int maxCombinedFeatures : new int[] {1, 2, FEATURE_COUNT - 1}) {
+
+      final MapperOutput flushed = runMapper(maxCombinedFeatures);
+
+      assertEquals(this.expectedCounts, flushed.sumCounts());
+      assertTrue(flushed.recordsBeforeCleanup > 0);
+      assertTrue(flushed.keys.size() > FEATURE_COUNT);
+      assertTrue(flushed.keys.size() < this.expectedRecords);
+      checkCombinedRecords(flushed);
+    }
+
+    // No feature is written before the threshold is reached
+    final MapperOutput notFlushed = runMapper(FEATURE_COUNT);
+
+    assertEquals(this.expectedCounts, notFlushed.sumCounts());
+    assertEquals(0, notFlushed.recordsBeforeCleanup);
+    assertEquals(FEATURE_COUNT, notFlushed.keys.size());
+  }
+
+  //
+  // Utility methods
+  //
+
+  /**
+   * Check that the counter of the saved records matches the output.
+   * @param output the output of the mapper
+   */
+  private void checkCombinedRecords(final MapperOutput output) {
+
+    assertEquals(this.expectedRecords - output.keys.size(),
+        output.counters.findCounter(COUNTER_GROUP,
+            COMBINED_MAP_OUTPUT_RECORDS_COUNTER.counterName()).getValue());
+  }
+
+  /**
+   * Run the mapper on the alignments.
+   * @param maxCombinedFeatures the maximal number of combined features
+   * @return the output of the mapper
+   */
+  private MapperOutput runMapper(final int maxCombinedFeatures)
+      throws IOException, InterruptedException {
+
+    final MapperOutput result = new MapperOutput();
+
+    final Configuration conf = new Configuration(false);
+    conf.set(MRJobConfig.CACHE_FILES,
+        new File(this.dir, "annotation.ser").toURI().toString());
+    conf.set(ExpressionHadoopModule.GENOME_DESC_PATH_KEY,
+        new File(this.dir, "genome.desc").toURI().toString());
+    conf.set(CommonHadoop.COUNTER_GROUP_KEY, COUNTER_GROUP);
+    conf.set(HTSeqCountMapper.STRANDED_PARAM, "no");
+    conf.set(HTSeqCountMapper.OVERLAP_MODE_PARAM, "union");
+    conf.setBoolean(HTSeqCountMapper.REMOVE_AMBIGUOUS_CASES, true);
+    conf.setInt(HTSeqCountMapper.MAX_COMBINED_FEATURES, maxCombinedFeatures);
+
+    final RecordWriter<Text, LongWritable> writer =
+        new RecordWriter<Text, LongWritable>() {
+
+          @Override
+          public void write(final Text key, final LongWritable value) {
+
+            result.keys.add(key.toString());
+            result.values.add(value.get());
+          }
+
+          @Override
+          public void close(final TaskAttemptContext context) {
+          }
+        };
+
+    final StatusReporter reporter = new StatusReporter() {
+
+      @Override
+      public Counter getCounter(final Enum<?> name) {
+        return result.counters.findCounter(name);
+      }
+
+      @Override
+      public Counter getCounter(final String group, final String name) {
+        return result.counters.findCounter(group, name);
+      }
+
+      @Override
+      public void progress() {
+      }
+
+      @Override
+      public float getProgress() {
+        return 0;
+      }
+
+      @Override
+      public void setStatus(final String status) {
+      }
+    };
+
+    final MapContextImpl<Text, Writable, Text, LongWritable> mapContext =
+        new MapContextImpl<>(conf, new TaskAttemptID(), null, writer, null,
+            reporter, null);
+    final Mapper<Text, Writable, Text, LongWritable>.Context context =
+        new WrappedMapper<Text, Writable, Text, LongWritable>()
+            .getMapContext(mapContext);
+
+    final HTSeqCountMapper mapper = new HTSeqCountMapper();
+    mapper.setup(context);
+
+    final Text key = new Text();
+    for (String line : this.samLines) {
+      key.set(line.substring(0, line.indexOf('\t')));
+      mapper.map(key, new Text(line), context);
+    }
+
+    result.recordsBeforeCleanup = result.keys.size();
+    mapper.cleanup(context);
+
+    return result;
+  }
+
+  private static String samLine(final int index, final int flags,
+      final String chromosome, final int start, final String cigar) {
+
+    // The mapping quality of unmapped reads must be 0
+    final int mappingQuality = "*".equals(chromosome) ? 0 : 255;
+
+    return "read" + index + '\t' + flags + '\t' + chromosome + '\t' + start
+        + '\t' + mappingQuality + '\t' + cigar
+        + "\t*\t0\t0\tACGTACGTAC\tIIIIIIIIII";
+  }
+
+}
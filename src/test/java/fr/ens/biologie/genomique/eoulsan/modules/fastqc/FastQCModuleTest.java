@@ -0,0 +1,145 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.modules.fastqc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import fr.ens.biologie.genomique.eoulsan.util.FileUtils;
+import uk.ac.babraham.FastQC.Modules.AbstractQCModule;
+import uk.ac.babraham.FastQC.Sequence.SequenceFormatException;
+
+/**
+ * This class test that the processing of the FastQC modules in several threads
+ * create the same report as the processing in a single thread.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FastQCModuleTest {
+
+  private File dir;
+
+  @BeforeClass
+  public static void patchFastQC() throws EoulsanException {
+
+    System.setProperty("java.awt.headless", "true");
+    FastQCRuntimePatcher.patchFastQC();
+  }
+
+  @Before
+  public void setUp() {
+
+    this.dir = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() {
+
+    FileUtils.recursiveDelete(this.dir);
+  }
+
+  @Test
+  public void testParallelProcessing()
+      throws IOException, SequenceFormatException, XMLStreamException {
+
+    final File fastqFile = new File(this.dir, "reads.fq");
+    Files.write(createFastq(new Random(5), 20000), fastqFile,
+        StandardCharsets.UTF_8);
+
+    final String serialReport = createReport(fastqFile, false);
+    final String parallelReport = createReport(fastqFile, true);
+
+    assertTrue(serialReport.length() > 0);
+    assertEquals(serialReport, parallelReport);
+  }
+
+  //
+  // Utility methods
+  //
+
+  private String createReport(final File fastqFile, final boolean parallel)
+      throws IOException, SequenceFormatException, XMLStreamException {
+
+    final File reportFile = new File(this.dir,
+        "report-" + (parallel ? "parallel" : "serial") + ".html");
+
+    final CounterSequenceFile seqFile =
+        new FastqSequenceFile(new DataFile(fastqFile));
+    final List<AbstractQCModule> modules =
+        FastQCModule.processSequences(seqFile, parallel);
+
+    FastQCModule.createReport(modules, seqFile, new DataFile(reportFile),
+        this.dir);
+
+    return Files.toString(reportFile, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Create FASTQ entries. Some sequences are repeated to be reported as over
+   * represented sequences.
+   */
+  private static String createFastq(final Random random, final int count) {
+
+    final String bases = "ACGTN";
+    final StringBuilder sb = new StringBuilder();
+
+    for (int i = 0; i < count; i++) {
+
+      final int length = 50 + random.nextInt(51);
+      final Random seqRandom =
+          random.nextInt(10) == 0 ? new Random(random.nextInt(3)) : random;
+
+      sb.append("@read").append(i).append('\n');
+      for (int j = 0; j < length; j++) {
+        sb.append(bases.charAt(seqRandom.nextInt(bases.length())));
+      }
+      sb.append("\n+\n");
+      for (int j = 0; j < length; j++) {
+        sb.append((char) ('#' + random.nextInt(40)));
+      }
+      sb.append('\n');
+    }
+
+    return sb.toString();
+  }
+
+}
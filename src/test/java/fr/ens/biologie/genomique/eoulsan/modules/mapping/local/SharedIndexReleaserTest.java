@@ -0,0 +1,130 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.modules.mapping.local;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+import fr.ens.biologie.genomique.eoulsan.bio.readsmappers.STARReadsMapper;
+import fr.ens.biologie.genomique.eoulsan.core.Step;
+import fr.ens.biologie.genomique.eoulsan.modules.mapping.local.ReadsMapperLocalModule.SharedIndexReleaser;
+
+/**
+ * This class test the release of the indexes shared in memory at the end of a
+ * step by ReadsMapperLocalModule.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SharedIndexReleaserTest {
+
+  /**
+   * This class define a mapper that count the releases of its indexes.
+   */
+  private static final class CountingMapper extends STARReadsMapper {
+
+    private final AtomicInteger releaseCount = new AtomicInteger();
+    private final boolean fail;
+
+    @Override
+    public void releaseSharedIndexMemory() throws IOException {
+
+      this.releaseCount.incrementAndGet();
+
+      if (this.fail) {
+        throw new IOException("release error");
+      }
+    }
+
+    CountingMapper(final boolean fail) {
+      this.fail = fail;
+    }
+  }
+
+  @Before
+  public void setUp() throws IOException, EoulsanException {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+  }
+
+  @Test
+  public void testClose() {
+
+    final SharedIndexReleaser releaser = new SharedIndexReleaser(createStep());
+
+    final CountingMapper mapper1 = new CountingMapper(true);
+    final CountingMapper mapper2 = new CountingMapper(false);
+
+    // The tasks of the step add the same mapper several times
+    releaser.addMapper(mapper1);
+    releaser.addMapper(mapper2);
+    releaser.addMapper(mapper1);
+    releaser.addMapper(mapper2);
+
+    // An error while releasing an index does not prevent to release the other
+    // mappers
+    releaser.close();
+    assertEquals(1, mapper1.releaseCount.get());
+    assertEquals(1, mapper2.releaseCount.get());
+  }
+
+  //
+  // Utility methods
+  //
+
+  private static Step createStep() {
+
+    return (Step) Proxy.newProxyInstance(Step.class.getClassLoader(),
+        new Class<?>[] {Step.class}, new InvocationHandler() {
+
+          @Override
+          public Object invoke(final Object proxy, final Method method,
+              final Object[] args) {
+
+            switch (method.getName()) {
+
+            case "hashCode":
+              return System.identityHashCode(proxy);
+
+            case "equals":
+              return proxy == args[0];
+
+            default:
+              return "step";
+            }
+          }
+        });
+  }
+
+}
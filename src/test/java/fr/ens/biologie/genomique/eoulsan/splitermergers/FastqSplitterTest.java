@@ -0,0 +1,222 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.splitermergers;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+import fr.ens.biologie.genomique.eoulsan.bio.ReadSequence;
+import fr.ens.biologie.genomique.eoulsan.bio.io.FastqReader;
+import fr.ens.biologie.genomique.eoulsan.core.Parameter;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+
+/**
+ * This class test the FastqSplitter class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FastqSplitterTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException, EoulsanException {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+    this.dir = Files.createTempDirectory("fastqsplittertest-").toFile();
+  }
+
+  @After
+  public void tearDown() {
+
+    for (File f : this.dir.listFiles()) {
+      f.delete();
+    }
+    this.dir.delete();
+  }
+
+  @Test
+  public void testSplit() throws IOException, EoulsanException {
+
+    final Random random = new Random(5);
+    final List<String> reads = new ArrayList<>();
+    final File inFile = new File(this.dir, "input.fastq");
+
+    try (Writer writer = new FileWriter(inFile)) {
+      for (int i = 0; i < 1000; i++) {
+
+        final ReadSequence read = createRead(random, i);
+        reads.add(read.toFastQ());
+        writer.write(read.toFastQ() + '\n');
+      }
+    }
+
+    for (String extension : new String[] {".fastq", ".fastq.gz"}) {
+      for (int max : new int[] {1, 7, 1000, 2000}) {
+
+        final List<File> outFiles = split(inFile, max, extension);
+        assertEquals((reads.size() + max - 1) / max, outFiles.size());
+
+        final List<String> actual = new ArrayList<>();
+        for (File outFile : outFiles) {
+
+          final List<String> chunk = readFastq(outFile);
+          assertEquals(Math.min(max, reads.size() - actual.size()),
+              chunk.size());
+          actual.addAll(chunk);
+          outFile.delete();
+        }
+
+        assertEquals(reads, actual);
+      }
+    }
+  }
+
+  @Test
+  public void testSplitNotNormalizedFile()
+      throws IOException, EoulsanException {
+
+    final String content = "@read1\nATGC\n+\nIIII\n"
+        + "@read2\nAAAA\n+\nJJJJ\n" + "@read3\nCCCC\n+read3\nKKKK\n"
+        + "\n@read4 \nGGGG\n+\nLLLL\n" + "@read5\nTTTT\n+\nMMMM";
+
+    final File inFile = new File(this.dir, "input.fastq");
+    Files.write(inFile.toPath(), content.getBytes());
+
+    final List<File> outFiles = split(inFile, 2, ".fastq");
+    assertEquals(3, outFiles.size());
+
+    // The chunks must always be in the FastqWriter format
+    assertEquals("@read1\nATGC\n+\nIIII\n@read2\nAAAA\n+\nJJJJ\n",
+        new String(Files.readAllBytes(outFiles.get(0).toPath())));
+    assertEquals("@read3\nCCCC\n+\nKKKK\n@read4\nGGGG\n+\nLLLL\n",
+        new String(Files.readAllBytes(outFiles.get(1).toPath())));
+    assertEquals("@read5\nTTTT\n+\nMMMM\n",
+        new String(Files.readAllBytes(outFiles.get(2).toPath())));
+  }
+
+  @Test
+  public void testInvalidFile() throws IOException, EoulsanException {
+
+    for (String content : new String[] {"@read1\nATGC\n+\nIIII\nread2\n",
+        "@read1\nATGC\n-\nIIII\n", "@read1\nATGC\n+\n"}) {
+
+      final File inFile = new File(this.dir, "invalid.fastq");
+      Files.write(inFile.toPath(), content.getBytes());
+
+      try {
+        split(inFile, 1, ".fastq");
+        fail();
+      } catch (IOException e) {
+        // Expected exception
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private List<File> split(final File inFile, final int max,
+      final String extension) throws IOException, EoulsanException {
+
+    final FastqSplitter splitter = new FastqSplitter();
+    splitter.configure(new HashSet<>(
+        Arrays.asList(new Parameter("max.entries", Integer.toString(max)),
+            new Parameter("thread.number", "3"))));
+
+    final List<File> result = new ArrayList<>();
+    splitter.split(new DataFile(inFile), new Iterator<DataFile>() {
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public DataFile next() {
+
+        final File f = new File(FastqSplitterTest.this.dir,
+            "chunk" + result.size() + extension);
+        result.add(f);
+        return new DataFile(f);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    });
+
+    return result;
+  }
+
+  private static List<String> readFastq(final File file) throws IOException {
+
+    final List<String> result = new ArrayList<>();
+
+    try (FastqReader reader = new FastqReader(new DataFile(file).open())) {
+      for (ReadSequence read : reader) {
+        result.add(read.toFastQ());
+      }
+    }
+
+    return result;
+  }
+
+  private static ReadSequence createRead(final Random random, final int id) {
+
+    final int len = 20 + random.nextInt(30);
+    final StringBuilder sequence = new StringBuilder();
+    final StringBuilder quality = new StringBuilder();
+
+    for (int i = 0; i < len; i++) {
+      sequence.append("ATGCN".charAt(random.nextInt(5)));
+      quality.append((char) ('!' + random.nextInt(42)));
+    }
+
+    return new ReadSequence(id, "read" + id, sequence.toString(),
+        quality.toString());
+  }
+
+}
@@ -0,0 +1,229 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.splitermergers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import htsjdk.samtools.SAMFileHeader;
+import htsjdk.samtools.SAMFileHeader.SortOrder;
+import htsjdk.samtools.SAMFileWriter;
+import htsjdk.samtools.SAMFileWriterFactory;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SAMRecordComparator;
+import htsjdk.samtools.SAMRecordCoordinateComparator;
+import htsjdk.samtools.SAMRecordQueryNameComparator;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+/**
+ * This class test the SAMMerger and BAMMerger classes.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SAMMergerTest {
+
+  private static final int CHUNK_COUNT = 3;
+
+  private File dir;
+  private SAMFileHeader header;
+  private List<SAMRecord> records;
+
+  @Before
+  public void setUp()
+      throws IOException, EoulsanException, CloneNotSupportedException {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+
+    this.dir = Files.createTempDirectory("sammergertest-").toFile();
+
+    try (SamReader reader = SamReaderFactory.makeDefault()
+        .open(SamInputResource.of(this.getClass()
+            .getResourceAsStream("/mapper_results_SE.sam")))) {
+
+      this.header = reader.getFileHeader();
+      this.records = new ArrayList<>();
+
+      final List<SAMRecord> entries = new ArrayList<>();
+      for (SAMRecord record : reader) {
+        entries.add(record);
+      }
+
+      // Create enough entries to use several BGZF blocks
+      for (int i = 0; i < 500; i++) {
+        for (SAMRecord entry : entries) {
+
+          final SAMRecord record = (SAMRecord) entry.clone();
+          record.setReadName(entry.getReadName() + '_' + i);
+          this.records.add(record);
+        }
+      }
+    }
+  }
+
+  @After
+  public void tearDown() {
+
+    for (File f : this.dir.listFiles()) {
+      f.delete();
+    }
+    this.dir.delete();
+  }
+
+  @Test
+  public void testConcatenate() throws IOException {
+
+    for (boolean bam : new boolean[] {false, true}) {
+
+      final List<List<SAMRecord>> chunks = createChunks();
+      final List<SAMRecord> expected = new ArrayList<>();
+      for (List<SAMRecord> chunk : chunks) {
+        expected.addAll(chunk);
+      }
+
+      this.header.setSortOrder(SortOrder.unsorted);
+      assertEquals(toStrings(expected), merge(bam, chunks));
+    }
+  }
+
+  @Test
+  public void testSortedMerge() throws IOException {
+
+    for (boolean bam : new boolean[] {false, true}) {
+      for (SortOrder sortOrder : new SortOrder[] {SortOrder.coordinate,
+          SortOrder.queryname}) {
+
+        final SAMRecordComparator comparator =
+            sortOrder == SortOrder.coordinate
+                ? new SAMRecordCoordinateComparator()
+                : new SAMRecordQueryNameComparator();
+        final Comparator<SAMRecord> fileOrderComparator =
+            new Comparator<SAMRecord>() {
+
+              @Override
+              public int compare(final SAMRecord r1, final SAMRecord r2) {
+                return comparator.fileOrderCompare(r1, r2);
+              }
+            };
+
+        final List<List<SAMRecord>> chunks = createChunks();
+        final List<SAMRecord> expected = new ArrayList<>();
+        for (List<SAMRecord> chunk : chunks) {
+          Collections.sort(chunk, fileOrderComparator);
+          expected.addAll(chunk);
+        }
+        Collections.sort(expected, fileOrderComparator);
+
+        this.header.setSortOrder(sortOrder);
+        assertEquals(toStrings(expected), merge(bam, chunks));
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private List<List<SAMRecord>> createChunks() {
+
+    final List<List<SAMRecord>> result = new ArrayList<>();
+    for (int i = 0; i < CHUNK_COUNT; i++) {
+      result.add(new ArrayList<SAMRecord>());
+    }
+
+    for (int i = 0; i < this.records.size(); i++) {
+      result.get(i % CHUNK_COUNT).add(this.records.get(i));
+    }
+
+    return result;
+  }
+
+  private List<String> merge(final boolean bam,
+      final List<List<SAMRecord>> chunks) throws IOException {
+
+    final String extension = bam ? ".bam" : ".sam";
+    final List<DataFile> inFiles = new ArrayList<>();
+
+    for (List<SAMRecord> chunk : chunks) {
+
+      final File file =
+          new File(this.dir, "chunk" + inFiles.size() + extension);
+      final SAMFileWriterFactory factory = new SAMFileWriterFactory();
+      final SAMFileWriter writer = bam
+          ? factory.makeBAMWriter(this.header, true, file)
+          : factory.makeSAMWriter(this.header, true, file);
+
+      for (SAMRecord record : chunk) {
+        writer.addAlignment(record);
+      }
+      writer.close();
+
+      inFiles.add(new DataFile(file));
+    }
+
+    final File outFile = new File(this.dir, "merged" + extension);
+    final AbstractSAMMerger merger = bam ? new BAMMerger() : new SAMMerger();
+    merger.merge(inFiles.iterator(), new DataFile(outFile));
+
+    final List<String> result = new ArrayList<>();
+    try (SamReader reader = SamReaderFactory.makeDefault().open(outFile)) {
+
+      assertEquals(this.header.getSortOrder(),
+          reader.getFileHeader().getSortOrder());
+
+      for (SAMRecord record : reader) {
+        result.add(record.getSAMString());
+      }
+    }
+
+    return result;
+  }
+
+  private static List<String> toStrings(final List<SAMRecord> records) {
+
+    final List<String> result = new ArrayList<>();
+    for (SAMRecord record : records) {
+      result.add(record.getSAMString());
+    }
+
+    return result;
+  }
+
+}
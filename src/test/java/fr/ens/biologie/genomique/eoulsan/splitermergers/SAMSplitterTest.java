@@ -0,0 +1,175 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.splitermergers;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.EoulsanException;
+import fr.ens.biologie.genomique.eoulsan.EoulsanRuntimeDebug;
+import fr.ens.biologie.genomique.eoulsan.core.Parameter;
+import fr.ens.biologie.genomique.eoulsan.data.DataFile;
+import htsjdk.samtools.SAMRecord;
+import htsjdk.samtools.SamInputResource;
+import htsjdk.samtools.SamReader;
+import htsjdk.samtools.SamReaderFactory;
+
+/**
+ * This class test the SAMSplitter class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class SAMSplitterTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException, EoulsanException {
+
+    EoulsanRuntimeDebug.initDebugEoulsanRuntime();
+    this.dir = Files.createTempDirectory("samsplittertest-").toFile();
+  }
+
+  @After
+  public void tearDown() {
+
+    for (File f : this.dir.listFiles()) {
+      f.delete();
+    }
+    this.dir.delete();
+  }
+
+  @Test
+  public void testSplitByLineCount() throws IOException, EoulsanException {
+
+    final File inFile = new File(this.dir, "input.sam");
+    try (InputStream is =
+        this.getClass().getResourceAsStream("/mapper_results_SE.sam")) {
+      Files.copy(is, inFile.toPath());
+    }
+
+    final String header = readHeader(inFile);
+    final List<String> records = readRecords(inFile);
+
+    for (String extension : new String[] {".sam", ".sam.gz"}) {
+      for (int max : new int[] {1, 5, 22, 100}) {
+
+        final SAMSplitter splitter = new SAMSplitter();
+        splitter.configure(new HashSet<>(
+            Arrays.asList(new Parameter("max.entries", Integer.toString(max)),
+                new Parameter("thread.number", "2"))));
+
+        final List<File> outFiles = new ArrayList<>();
+        splitter.split(new DataFile(inFile), createIterator(outFiles,
+            extension));
+        assertEquals((records.size() + max - 1) / max, outFiles.size());
+
+        final List<String> actual = new ArrayList<>();
+        for (File outFile : outFiles) {
+
+          final List<String> chunk = readRecords(outFile);
+          assertEquals(header, readHeader(outFile));
+          assertEquals(Math.min(max, records.size() - actual.size()),
+              chunk.size());
+          actual.addAll(chunk);
+          outFile.delete();
+        }
+
+        assertEquals(records, actual);
+      }
+    }
+  }
+
+  //
+  // Utility methods
+  //
+
+  private Iterator<DataFile> createIterator(final List<File> outFiles,
+      final String extension) {
+
+    return new Iterator<DataFile>() {
+
+      @Override
+      public boolean hasNext() {
+        return true;
+      }
+
+      @Override
+      public DataFile next() {
+
+        final File f = new File(SAMSplitterTest.this.dir,
+            "chunk" + outFiles.size() + extension);
+        outFiles.add(f);
+        return new DataFile(f);
+      }
+
+      @Override
+      public void remove() {
+        throw new UnsupportedOperationException();
+      }
+    };
+  }
+
+  private static SamReader open(final File file) throws IOException {
+
+    return SamReaderFactory.makeDefault()
+        .open(SamInputResource.of(new DataFile(file).open()));
+  }
+
+  private static String readHeader(final File file) throws IOException {
+
+    try (SamReader reader = open(file)) {
+      return reader.getFileHeader().getTextHeader();
+    }
+  }
+
+  private static List<String> readRecords(final File file)
+      throws IOException {
+
+    final List<String> result = new ArrayList<>();
+
+    try (SamReader reader = open(file)) {
+      for (SAMRecord record : reader) {
+        result.add(record.getSAMString());
+      }
+    }
+
+    return result;
+  }
+
+}
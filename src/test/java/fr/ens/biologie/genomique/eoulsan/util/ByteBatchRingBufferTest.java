@@ -0,0 +1,148 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * This class test the ByteBatchRingBuffer class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ByteBatchRingBufferTest {
+
+  @Test
+  public void testTransfer() throws Exception {
+
+    final byte[] data = new byte[1000000];
+    new Random(5).nextBytes(data);
+
+    for (int batchCount : new int[] {1, 2, 16}) {
+
+      final ByteBatchRingBuffer ring = new ByteBatchRingBuffer(batchCount, 100);
+      final ByteArrayOutputStream result = new ByteArrayOutputStream();
+
+      final Thread consumer = new Thread() {
+
+        @Override
+        public void run() {
+
+          try {
+            ByteBuffer b;
+            while ((b = ring.take()) != null) {
+              result.write(b.array(), b.position(), b.remaining());
+              ring.release();
+            }
+          } catch (InterruptedException e) {
+            fail();
+          }
+        }
+      };
+      consumer.start();
+
+      // Write batches of random lengths
+      final Random random = new Random(7);
+      int pos = 0;
+      while (pos < data.length) {
+
+        final ByteBuffer b = ring.acquire();
+        final int len = Math.min(1 + random.nextInt(100), data.length - pos);
+        b.put(data, pos, len);
+        ring.publish();
+        pos += len;
+      }
+      ring.close();
+      consumer.join();
+
+      assertArrayEquals(data, result.toByteArray());
+      assertTrue(ring.getProducerWaitingTime() >= 0);
+      assertTrue(ring.getConsumerWaitingTime() >= 0);
+    }
+  }
+
+  @Test
+  public void testAbort() throws Exception {
+
+    final ByteBatchRingBuffer ring = new ByteBatchRingBuffer(2, 10);
+
+    ring.acquire();
+    ring.publish();
+    ring.acquire();
+    ring.publish();
+
+    // The ring is full, the producer must wait the abort of the consumer
+    final Thread consumer = new Thread() {
+
+      @Override
+      public void run() {
+
+        try {
+          Thread.sleep(100);
+        } catch (InterruptedException e) {
+          // Do nothing
+        }
+        ring.abort();
+      }
+    };
+    consumer.start();
+
+    assertNull(ring.acquire());
+    consumer.join();
+    assertTrue(ring.getProducerWaitingTime() > 0);
+  }
+
+  @Test
+  public void testClose() throws Exception {
+
+    final ByteBatchRingBuffer ring = new ByteBatchRingBuffer(4, 10);
+    ring.acquire().put((byte) 1);
+    ring.publish();
+    ring.close();
+
+    final ByteBuffer b = ring.take();
+    assertEquals(1, b.remaining());
+    assertEquals(1, b.get(0));
+    ring.release();
+    assertNull(ring.take());
+
+    try {
+      new ByteBatchRingBuffer(0, 10);
+      fail();
+    } catch (IllegalArgumentException e) {
+      // Expected exception
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This class test the ExternalSorter and PseudoMapReduce classes.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class ExternalSorterTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+
+    this.dir = Files.createTempDirectory("externalsortertest-").toFile();
+  }
+
+  @After
+  public void tearDown() {
+
+    for (File f : this.dir.listFiles()) {
+      f.delete();
+    }
+    this.dir.delete();
+  }
+
+  @Test
+  public void testSort() throws IOException {
+
+    final Random random = new Random(9);
+    final List<String> expected = new ArrayList<>();
+    final List<String[]> input = new ArrayList<>();
+
+    for (int i = 0; i < 20000; i++) {
+
+      final String key = "key" + random.nextInt(1000);
+      final String value = random.nextInt(10) + "é" + random.nextInt(50);
+      input.add(new String[] {key, value});
+      expected.add(key + '\t' + value);
+    }
+
+    Collections.sort(expected);
+
+    for (boolean compress : new boolean[] {false, true}) {
+      for (long threshold : new long[] {100, 10000, 1000000,
+          ExternalSorter.DEFAULT_SPILL_THRESHOLD}) {
+
+        final ExternalSorter sorter =
+            new ExternalSorter(this.dir, threshold, compress);
+
+        for (String[] e : input) {
+          sorter.add(e[0], e[1]);
+        }
+
+        if (threshold == 100) {
+          assertTrue(sorter.getRunCount() > 64);
+        }
+
+        final List<String> actual = new ArrayList<>();
+        final Iterator<ExternalSorter.Entry> it = sorter.sortedIterator();
+        while (it.hasNext()) {
+          actual.add(it.next().toString());
+        }
+        sorter.close();
+
+        assertEquals(expected, actual);
+        assertEquals(0, this.dir.listFiles().length);
+      }
+    }
+  }
+
+  @Test
+  public void testPseudoMapReduce() throws IOException {
+
+    final PseudoMapReduce pmr = new PseudoMapReduce() {
+
+      @Override
+      public void map(final String value, final List<String> output,
+          final Reporter reporter) {
+
+        for (String word : value.split(" ")) {
+          output.add(word + "\t1");
+        }
+      }
+
+      @Override
+      public void reduce(final String key, final Iterator<String> values,
+          final List<String> output, final Reporter reporter) {
+
+        int count = 0;
+        while (values.hasNext()) {
+          count += Integer.parseInt(values.next());
+
+          // Do not read all the values of some keys
+          if ("b".equals(key)) {
+            break;
+          }
+        }
+
+        output.add(key + '\t' + count);
+      }
+    };
+
+    pmr.setMapReduceTemporaryDirectory(this.dir);
+    pmr.setSpillThreshold(500);
+    pmr.setCompressSpills(true);
+
+    pmr.doMap(new ByteArrayInputStream("a b c a\nc a b\nd".getBytes()));
+    pmr.doMap(new ByteArrayInputStream("a d".getBytes()));
+
+    final ByteArrayOutputStream os = new ByteArrayOutputStream();
+    pmr.doReduce(os);
+
+    assertEquals("a\t4\nb\t1\nc\t2\nd\t2\n", new String(os.toByteArray()));
+    assertEquals(0, this.dir.listFiles().length);
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+ *                  Eoulsan development code
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public License version 2.1 or
+ * later and CeCILL-C. This should be distributed with the code.
+ * If you do not have a copy, see:
+ *
+ *      http://www.gnu.org/licenses/lgpl-2.1.txt
+ *      http://www.cecill.info/licences/Licence_CeCILL-C_V1-en.txt
+ *
+ * Copyright for this code is held jointly by the Genomic platform
+ * of the Institut de Biologie de l'École normale supérieure and
+ * the individual authors. These should be listed in @author doc
+ * comments.
+ *
+ * For more information on the Eoulsan project and its aims,
+ * or to join the Eoulsan Google group, visit the home page
+ * at:
+ *
+ *      http://outils.genomique.biologie.ens.fr/eoulsan
+ *
+ */
+
+package fr.ens.biologie.genomique.eoulsan.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import fr.ens.biologie.genomique.eoulsan.util.FanOutBatchProcessor.BatchConsumer;
+
+/**
+ * This class test the FanOutBatchProcessor class.
+ * @since 2.0
+ * @author Laurent Jourdren
+ */
+public class FanOutBatchProcessorTest {
+
+  private static class ListConsumer implements BatchConsumer<Integer> {
+
+    private final List<Integer> elements = new ArrayList<>();
+    private final int failAt;
+
+    @Override
+    public void process(final List<Integer> batch) {
+
+      for (Integer e : batch) {
+
+        if (e == this.failAt) {
+          throw new IllegalStateException("Failure at " + e);
+        }
+        this.elements.add(e);
+      }
+    }
+
+    ListConsumer(final int failAt) {
+      this.failAt = failAt;
+    }
+  }
+
+  @Test
+  public void testProcess() throws IOException {
+
+    for (int batchSize : new int[] {1, 7, 1000}) {
+
+      final List<ListConsumer> consumers = Arrays.asList(new ListConsumer(-1),
+          new ListConsumer(-1), new ListConsumer(-1));
+
+      final FanOutBatchProcessor<Integer> processor =
+          new FanOutBatchProcessor<>(consumers, batchSize, 2);
+
+      final List<Integer> expected = new ArrayList<>();
+      for (int i = 0; i < 10000; i++) {
+        processor.add(i);
+        expected.add(i);
+      }
+      processor.close();
+      processor.close();
+
+      for (ListConsumer consumer : consumers) {
+        assertEquals(expected, consumer.elements);
+      }
+
+      try {
+        processor.add(0);
+        fail();
+      } catch (IOException e) {
+        // Expected exception
+      }
+    }
+  }
+
+  @Test
+  public void testConsumerFailure() {
+
+    final List<ListConsumer> consumers =
+        Arrays.asList(new ListConsumer(-1), new ListConsumer(500));
+
+    final FanOutBatchProcessor<Integer> processor =
+        new FanOutBatchProcessor<>(consumers, 10, 1);
+
+    try {
+      try {
+        for (int i = 0; i < 100000; i++) {
+          processor.add(i);
+        }
+      } finally {
+        processor.close();
+      }
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getCause() instanceof IllegalStateException);
+    }
+
+    assertEquals(500, consumers.get(1).elements.size());
+  }
+
+}